@@ -39,6 +39,11 @@ public class AlarmManagerImpl implements IAlarmManager {
 		alarmManager.setInexactRepeating(type, triggerAtTime, interval, operation);
 	}
 
+	public void set(final int type, final long triggerAtTime, 
+			final PendingIntent operation) {
+		alarmManager.set(type, triggerAtTime, operation);
+	}
+
 	public void cancel(final PendingIntent operation) {
 		alarmManager.cancel(operation);
 	}
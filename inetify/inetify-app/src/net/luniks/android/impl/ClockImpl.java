@@ -0,0 +1,49 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.impl;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.luniks.android.interfaces.IClock;
+import android.os.SystemClock;
+
+/**
+ * Implementation of IClock using the system clocks.
+ * @see java.lang.System#currentTimeMillis()
+ * @see android.os.SystemClock#elapsedRealtime()
+ * 
+ * @author torsten.roemer@luniks.net
+ */
+public class ClockImpl implements IClock {
+
+	public long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+
+	public long elapsedRealtime() {
+		return SystemClock.elapsedRealtime();
+	}
+
+	/**
+	 * Waits until the given latch is counted down or the given time in ms
+	 * has elapsed, and returns true if the latch was counted down.
+	 */
+	public boolean await(final CountDownLatch latch, final long millis) throws InterruptedException {
+		return latch.await(millis, TimeUnit.MILLISECONDS);
+	}
+
+}
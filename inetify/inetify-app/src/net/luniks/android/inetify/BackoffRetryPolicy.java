@@ -0,0 +1,105 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify;
+
+import java.util.Random;
+
+/**
+ * RetryPolicy making the first attempt almost immediately and retrying with
+ * an exponentially growing, jittered delay. The base delay depends on how
+ * the previous attempt failed: DNS and connect failures often clear up quickly
+ * after the Wifi connection is established, while an HTTP timeout or a page
+ * with an unexpected title or a rejected certificate usually takes longer to change.
+ * 
+ * @author torsten.roemer@luniks.net
+ */
+public final class BackoffRetryPolicy implements RetryPolicy {
+	
+	/** Max. number of attempts */
+	public static final int MAX_ATTEMPTS = 4;
+	
+	/** Delay before the first attempt, giving the Wifi connection a moment to settle */
+	public static final long FIRST_DELAY = 500;
+	
+	/** Base delay after resolving the host name failed */
+	public static final long DNS_DELAY = 1000;
+	
+	/** Base delay after connecting failed */
+	public static final long CONNECT_DELAY = 1000;
+	
+	/** Base delay after the HTTP request or something else failed */
+	public static final long HTTP_DELAY = 2000;
+	
+	/** Base delay after a page with an unexpected title or a rejected certificate */
+	public static final long TITLE_DELAY = 3000;
+	
+	/** Max. delay before an attempt */
+	public static final long MAX_DELAY = 16000;
+	
+	/** Random used for the jitter */
+	private final Random random;
+	
+	/**
+	 * Constructs an instance.
+	 */
+	public BackoffRetryPolicy() {
+		this(new Random());
+	}
+	
+	/**
+	 * Constructs an instance using the given Random for the jitter.
+	 * @param random
+	 */
+	public BackoffRetryPolicy(final Random random) {
+		this.random = random;
+	}
+
+	/**
+	 * Returns FIRST_DELAY before the first attempt, and a delay between half and the full 
+	 * base delay for the failure of the previous attempt, doubled with each attempt, 
+	 * before each following attempt. Returns STOP after MAX_ATTEMPTS.
+	 */
+	public long getDelay(final int attempt, final TestInfo info) {
+		if(attempt >= MAX_ATTEMPTS) {
+			return STOP;
+		}
+		if(attempt == 0 || info == null) {
+			return FIRST_DELAY;
+		}
+		
+		long delay = Math.min(getBaseDelay(info) << (attempt - 1), MAX_DELAY);
+		
+		// Spread the delays so retries of different devices don't line up
+		long half = delay / 2;
+		return half + (long)(random.nextDouble() * (delay - half));
+	}
+	
+	/**
+	 * Returns the base delay depending on how the given test results failed.
+	 * @param info test results
+	 * @return long base delay in ms
+	 */
+	private static long getBaseDelay(final TestInfo info) {
+		switch(info.getFailedStage()) {
+			case ProbeException.STAGE_DNS: return DNS_DELAY;
+			case ProbeException.STAGE_CONNECT: return CONNECT_DELAY;
+			case ProbeException.STAGE_HTTP: return HTTP_DELAY;
+			case ProbeException.STAGE_CERTIFICATE: return TITLE_DELAY;
+			default: return info.getException() == null ? TITLE_DELAY : HTTP_DELAY;
+		}
+	}
+
+}
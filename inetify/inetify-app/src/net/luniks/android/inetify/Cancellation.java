@@ -0,0 +1,169 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.luniks.android.interfaces.IClock;
+
+/**
+ * Token to cancel a test, passed down to where the test waits or blocks in network I/O.
+ * Cancelling closes all registered resources, i.e. open connections, so that blocking 
+ * I/O is aborted immediately instead of only when it times out.
+ * An instance can be cancelled only once. A child instance is cancelled with its
+ * parent, but can be cancelled on its own, i.e. to abort one of several concurrent
+ * requests.
+ * 
+ * @author torsten.roemer@luniks.net
+ */
+public final class Cancellation {
+	
+	/** Counted down when cancelled */
+	private final CountDownLatch latch = new CountDownLatch(1);
+	
+	/** Resources closed when cancelled, guarded by this */
+	private final List<Closeable> closeables = new ArrayList<Closeable>();
+	
+	/** Parent of this instance, null if there is none */
+	private final Cancellation parent;
+	
+	/** Registered with the parent to cancel this instance */
+	private final Closeable canceller = new Closeable() {
+		public void close() {
+			cancel();
+		}
+	};
+	
+	/**
+	 * Constructs an instance without parent.
+	 */
+	public Cancellation() {
+		this(null);
+	}
+	
+	/**
+	 * Constructs an instance with the given parent.
+	 * @param parent
+	 */
+	private Cancellation(final Cancellation parent) {
+		this.parent = parent;
+	}
+	
+	/**
+	 * Returns a new child instance that is cancelled when this one is cancelled,
+	 * or right away if this one is already cancelled.
+	 * @return Cancellation child
+	 */
+	public Cancellation newChild() {
+		Cancellation child = new Cancellation(this);
+		register(child.canceller);
+		return child;
+	}
+	
+	/**
+	 * Cancels and closes all registered resources. Does nothing if already cancelled.
+	 */
+	public void cancel() {
+		List<Closeable> toClose;
+		synchronized(this) {
+			if(isCancelled()) {
+				return;
+			}
+			latch.countDown();
+			toClose = new ArrayList<Closeable>(closeables);
+			closeables.clear();
+		}
+		if(parent != null) {
+			parent.unregister(canceller);
+		}
+		for(Closeable closeable : toClose) {
+			close(closeable);
+		}
+	}
+	
+	/**
+	 * Returns true if cancelled.
+	 * @return boolean true if cancelled
+	 */
+	public boolean isCancelled() {
+		return latch.getCount() == 0;
+	}
+	
+	/**
+	 * Registers the given resource to be closed when cancelled, 
+	 * or closes it right away if already cancelled.
+	 * @param closeable
+	 */
+	public void register(final Closeable closeable) {
+		synchronized(this) {
+			if(! isCancelled()) {
+				closeables.add(closeable);
+				return;
+			}
+		}
+		close(closeable);
+	}
+	
+	/**
+	 * Unregisters the given resource so it is not closed when cancelled.
+	 * @param closeable
+	 */
+	public synchronized void unregister(final Closeable closeable) {
+		closeables.remove(closeable);
+	}
+	
+	/**
+	 * Waits the given time in ms or until cancelled, and returns true if cancelled.
+	 * @param millis time to wait in ms
+	 * @return boolean true if cancelled
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public boolean await(final long millis) throws InterruptedException {
+		return latch.await(millis, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Waits the given time in ms or until cancelled on the given clock, 
+	 * and returns true if cancelled.
+	 * @param millis time to wait in ms
+	 * @param clock clock to wait on
+	 * @return boolean true if cancelled
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public boolean await(final long millis, final IClock clock) throws InterruptedException {
+		return clock.await(latch, millis);
+	}
+	
+	/**
+	 * Closes the given resource, ignoring any exception.
+	 * @param closeable
+	 */
+	private static void close(final Closeable closeable) {
+		try {
+			closeable.close();
+		} catch(IOException e) {
+			// Ignore
+		} catch(RuntimeException e) {
+			// Ignore
+		}
+	}
+
+}
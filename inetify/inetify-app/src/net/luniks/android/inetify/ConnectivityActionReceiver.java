@@ -36,6 +36,9 @@ public class ConnectivityActionReceiver extends BroadcastReceiver {
 	
 	/** Lookup key for a boolean that provides extra information if wifi is connected or not */
 	public static final String EXTRA_IS_WIFI_CONNECTED = "isWifiConnected";
+	
+	/** Lookup key for a long with the sequence number of the event, see EventCoalescer */
+	public static final String EXTRA_SEQUENCE = "sequence";
 
 	/**
 	 * Checks if Wifi connected or disconnected and then starts InetifyIntentService,
@@ -57,13 +60,13 @@ public class ConnectivityActionReceiver extends BroadcastReceiver {
 				NetworkInfo networkInfo = intent.getParcelableExtra(WifiManager.EXTRA_NETWORK_INFO);
 				if(networkInfo.isConnected()) {
 					// Log.d(Inetify.LOG_TAG, String.format("Wifi connected: %s", String.valueOf(networkInfo)));
-					startService(context, true);
+					startService(context, sharedPreferences, true, intent.getStringExtra(WifiManager.EXTRA_BSSID));
 				}
 			} else if(action.equals(ConnectivityManager.CONNECTIVITY_ACTION)) {
 				NetworkInfo networkInfo = intent.getParcelableExtra(ConnectivityManager.EXTRA_NETWORK_INFO);
 				if(networkInfo.getType() == ConnectivityManager.TYPE_WIFI && ! networkInfo.isConnected()) {
 					// Log.d(Inetify.LOG_TAG, String.format("Wifi disconnected: %s", String.valueOf(networkInfo)));
-					startService(context, false);
+					startService(context, sharedPreferences, false, null);
 				}
 			}
 		}
@@ -71,9 +74,18 @@ public class ConnectivityActionReceiver extends BroadcastReceiver {
 	
 	/**
 	 * Starts InetifyIntentService, passing an intent with EXTRA_IS_WIFI_CONNECTED
+	 * and the EXTRA_SEQUENCE of the event given by EventCoalescer, using the
+	 * coalescing window in the settings.
+	 * @param sharedPreferences
 	 * @param isWifiConnected
+	 * @param bssid BSSID of the Wifi network that connected, may be null
 	 */
-	private void startService(final Context context, final boolean isWifiConnected) {
+	private void startService(final Context context, final SharedPreferences sharedPreferences, 
+			final boolean isWifiConnected, final String bssid) {
+		
+		EventCoalescer coalescer = EventCoalescer.getInstance();
+		coalescer.setWindow(getSettingsWindow(sharedPreferences));
+		long sequence = coalescer.received(isWifiConnected, bssid, System.currentTimeMillis());
 		
 		if(InetifyIntentService.wakeLock == null) {
 			PowerManager powerManager = (PowerManager)context.getSystemService(Context.POWER_SERVICE);
@@ -88,7 +100,22 @@ public class ConnectivityActionReceiver extends BroadcastReceiver {
 		
 		Intent serviceIntent = new Intent(context, InetifyIntentService.class);
 		serviceIntent.putExtra(EXTRA_IS_WIFI_CONNECTED, isWifiConnected);
+		serviceIntent.putExtra(EXTRA_SEQUENCE, sequence);
 		context.startService(serviceIntent);
 	}
+	
+	/**
+	 * Returns the coalescing window in the settings in ms.
+	 * @param sharedPreferences
+	 * @return long window in ms
+	 */
+	private long getSettingsWindow(final SharedPreferences sharedPreferences) {
+		try {
+			return Long.valueOf(sharedPreferences.getString(Settings.INTERNET_COALESCE_WINDOW, 
+					String.valueOf(EventCoalescer.DEFAULT_WINDOW / 1000))) * 1000;
+		} catch(NumberFormatException e) {
+			return EventCoalescer.DEFAULT_WINDOW;
+		}
+	}
 
 }
@@ -102,6 +102,16 @@ public interface DatabaseAdapter {
 	 */
 	public WifiLocation getNearestLocationTo(Location location);
 	
+	/**
+	 * Returns the location that is nearest to the given location as a WifiLocation
+	 * including the distance to the given location, or null if there is none within
+	 * the given max. distance.
+	 * @param location
+	 * @param maxDistance max. distance in meters
+	 * @return WifiLocation
+	 */
+	public WifiLocation getNearestLocationTo(Location location, float maxDistance);
+	
 	/**
 	 * Inserts or replaces the given test result details in the database.
 	 * @param timestamp
@@ -111,14 +121,100 @@ public interface DatabaseAdapter {
 	 * @return boolean
 	 */
 	public boolean updateTestResult(long timestamp, int type, String subtype, boolean status);
+	
+	/**
+	 * Inserts or replaces the details of the given test results in the database,
+	 * including the time each phase of the probe took and the verdict, and adds them to the history
+	 * of the test results.
+	 * @param info test results
+	 * @return boolean
+	 */
+	public boolean updateTestResult(TestInfo info);
 
 	/**
 	 * Returns the latest test results from the database as partially initialized TestInfo 
-	 * instance
+	 * instance, including the time each phase of the probe took and the verdict, without looking 
+	 * at the history.
 	 * @return TestInfo
 	 */
 	public TestInfo fetchTestResult();
 	
+	/**
+	 * Returns a cursor to the test results in the history done from the given time
+	 * to the given time, including both, the latest first.
+	 * @param from time in milliseconds
+	 * @param to time in milliseconds
+	 * @return Cursor test results
+	 */
+	public Cursor fetchTestResults(long from, long to);
+	
+	/**
+	 * Returns a cursor to the test results in the history of the Wifi network with
+	 * the given SSID, or of the mobile network with the given subtype, the latest first.
+	 * @param ssid SSID or subtype
+	 * @return Cursor test results
+	 */
+	public Cursor fetchTestResults(String ssid);
+	
+	/**
+	 * Inserts or replaces the verdict of the given test results for the Wifi network
+	 * identified by its BSSID (extra2), replacing any verdict for the same BSSID.
+	 * @param info test results
+	 * @return boolean true if successfully updated, false otherwise
+	 */
+	public boolean updateVerdict(TestInfo info);
+	
+	/**
+	 * Returns the verdict for the Wifi network identified by the given BSSID as
+	 * partially initialized TestInfo instance, or null if there is none.
+	 * @param bssid
+	 * @return TestInfo
+	 */
+	public TestInfo fetchVerdict(String bssid);
+	
+	/**
+	 * Inserts or replaces the fingerprint of the page of the given internet site on
+	 * the Wifi network with the given SSID and BSSID.
+	 * @param ssid
+	 * @param bssid
+	 * @param site internet site
+	 * @param fingerprint
+	 * @return boolean true if successfully updated, false otherwise
+	 */
+	public boolean updateFingerprint(String ssid, String bssid, String site, PortalFingerprint fingerprint);
+	
+	/**
+	 * Returns the fingerprint of the page of the given internet site on the Wifi
+	 * network with the given BSSID, or null if there is none.
+	 * @param bssid
+	 * @param site internet site
+	 * @return PortalFingerprint
+	 */
+	public PortalFingerprint fetchFingerprint(String bssid, String site);
+	
+	/**
+	 * Adds the given number of bytes of a test done at the given time to the 
+	 * traffic of that day, and deletes the traffic of days more than a year ago.
+	 * @param timestamp time of the test
+	 * @param bytes number of bytes sent and received by the test
+	 * @return boolean true if successfully added, false otherwise
+	 */
+	public boolean addTraffic(long timestamp, long bytes);
+	
+	/**
+	 * Returns the number of bytes of the tests done on the day of the given time.
+	 * @param timestamp
+	 * @return long number of bytes
+	 */
+	public long fetchDailyTraffic(long timestamp);
+	
+	/**
+	 * Returns the number of bytes of the tests done in the month of the given time.
+	 * @param timestamp
+	 * @return long number of bytes
+	 */
+	public long fetchMonthlyTraffic(long timestamp);
+	
 	/**
 	 * Effectively closes the database.
 	 */
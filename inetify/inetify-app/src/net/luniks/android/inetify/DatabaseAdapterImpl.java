@@ -15,6 +15,11 @@
  */
 package net.luniks.android.inetify;
 
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Set;
+
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
@@ -23,6 +28,8 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteStatement;
 import android.location.Location;
+import android.net.ConnectivityManager;
+import android.text.TextUtils;
 
 /**
  * Implementation of DatabaseAdapter using a SQLite database.
@@ -34,6 +41,18 @@ import android.location.Location;
  * For the locationlist, the BSSID is used to identify a Wifi network, 
  * since the same SSID can exist at different locations, like
  * commercial hotspots.
+ * The SSID's of the ignored Wifi networks are kept in memory by IgnoredWifis,
+ * shared by all instances and replaced each time the ignorelist changes.
+ * Likewise, the Wifi locations are kept in memory by WifiLocations to find
+ * the nearest one, and loaded again after the locationlist changed.
+ * The ignorelist and locationlist have indexes covering their sorted lists,
+ * with the UNICODE collation of Android, so the database can't be changed 
+ * with an SQLite that does not have it.
+ * The traffic of the tests is kept per day, identified by the local date 
+ * as number like 20111231, so that the days of a month are a range.
+ * The latest test result is kept in a single row of the test results, and 
+ * each test result is also added to the test history, that keeps the latest
+ * ones up to a max. number and is pruned in batches.
  * 
  * @author torsten.roemer@luniks.net
  */
@@ -72,6 +91,54 @@ public class DatabaseAdapterImpl implements DatabaseAdapter {
 	/** Status of the connection */
 	public static final String COLUMN_STATUS = "status";
 	
+	/** Verdict of a test, i.e. TestInfo.VERDICT_PORTAL */
+	public static final String COLUMN_VERDICT = "verdict";
+	
+	/** Internet site used for testing */
+	public static final String COLUMN_SITE = "site";
+	
+	/** Expected page title */
+	public static final String COLUMN_TITLE = "title";
+	
+	/** Page title found */
+	public static final String COLUMN_PAGETITLE = "pagetitle";
+	
+	/** ETag of a page */
+	public static final String COLUMN_ETAG = "etag";
+	
+	/** Last modification date of a page */
+	public static final String COLUMN_LASTMODIFIED = "lastmodified";
+	
+	/** URL a request was redirected to */
+	public static final String COLUMN_LOCATION = "location";
+	
+	/** Hash of the beginning of a page */
+	public static final String COLUMN_HASH = "hash";
+	
+	/** Time in ms resolving the host name */
+	public static final String COLUMN_DNS = "dns";
+	
+	/** Time in ms connecting */
+	public static final String COLUMN_CONNECT = "connect";
+	
+	/** Time in ms of the TLS handshake */
+	public static final String COLUMN_TLS = "tls";
+	
+	/** Time in ms until the first byte of the response */
+	public static final String COLUMN_FIRSTBYTE = "firstbyte";
+	
+	/** Time in ms reading the page */
+	public static final String COLUMN_DOWNLOAD = "download";
+	
+	/** Local date as number, i.e. 20111231 */
+	public static final String COLUMN_DAY = "day";
+	
+	/** Number of bytes transferred */
+	public static final String COLUMN_BYTES = "bytes";
+	
+	/** Number of tests */
+	public static final String COLUMN_TESTS = "tests";
+	
 	/** Table used for the ignore list */
 	public static final String IGNORELIST_TABLE_NAME = "ignorelist";
 	
@@ -81,6 +148,43 @@ public class DatabaseAdapterImpl implements DatabaseAdapter {
 	/** Table used for the test results */
 	public static final String TESTRESULTS_TABLE_NAME = "testresults";
 	
+	/** Table used for the history of the test results */
+	public static final String TESTHISTORY_TABLE_NAME = "testhistory";
+	
+	/** Table used for the verdicts per Wifi network */
+	public static final String VERDICTS_TABLE_NAME = "verdicts";
+	
+	/** Table used for the fingerprints of pages per Wifi network and internet site */
+	public static final String FINGERPRINTS_TABLE_NAME = "fingerprints";
+	
+	/** Table used for the traffic of the tests per day */
+	public static final String TRAFFIC_TABLE_NAME = "traffic";
+	
+	/** Index of the ignore list by SSID */
+	public static final String IGNORELIST_SSID_INDEX_NAME = "ignorelist_ssid";
+	
+	/** Index of the ignore list sorted by SSID, covering the list of ignored Wifi networks */
+	public static final String IGNORELIST_SORTED_INDEX_NAME = "ignorelist_sorted";
+	
+	/** Index of the location list sorted by name, covering the list of Wifi locations */
+	public static final String LOCATIONLIST_SORTED_INDEX_NAME = "locationlist_sorted";
+	
+	/** Index of the test history by timestamp */
+	public static final String TESTHISTORY_TIMESTAMP_INDEX_NAME = "testhistory_timestamp";
+	
+	/** Index of the test history by subtype, that is the SSID of a Wifi network, and timestamp */
+	public static final String TESTHISTORY_SUBTYPE_INDEX_NAME = "testhistory_subtype";
+	
+	/** 
+	 * Max. number of test results kept in the history, about a month of tests with
+	 * monitoring on. The history is pruned each time a tenth of that number of test 
+	 * results were added, so it has up to that many more test results in between.
+	 */
+	public static final int MAX_HISTORY = 1000;
+	
+	/** Number of test results added to the history between pruning it */
+	public static final int PRUNE_BATCH = MAX_HISTORY / 10;
+	
 	/** Database name */
 	public static final String DATABASE_NAME = "inetifydb";
 	
@@ -88,7 +192,7 @@ public class DatabaseAdapterImpl implements DatabaseAdapter {
 	private static final int NAME_MAX_LENGTH = 32;
 	
 	/** Database version */
-	private static final int DATABASE_VERSION = 3;
+	private static final int DATABASE_VERSION = 11;
 	
 	/** SQL to create the inital database */
 	private static final String IGNORELIST_TABLE_CREATE =
@@ -113,7 +217,108 @@ public class DatabaseAdapterImpl implements DatabaseAdapter {
 		COLUMN_TIMESTAMP + " LONG, " +
 		COLUMN_TYPE + " INTEGER, " +
 		COLUMN_SUBTYPE + " TEXT, " +
-		COLUMN_STATUS + " INTEGER)";
+		COLUMN_STATUS + " INTEGER, " +
+		COLUMN_DNS + " LONG, " +
+		COLUMN_CONNECT + " LONG, " +
+		COLUMN_TLS + " LONG, " +
+		COLUMN_FIRSTBYTE + " LONG, " +
+		COLUMN_DOWNLOAD + " LONG, " +
+		COLUMN_VERDICT + " INTEGER)";
+	private static final String TESTHISTORY_TABLE_CREATE =
+		"CREATE TABLE " + TESTHISTORY_TABLE_NAME + " (" +
+		COLUMN_ROWID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+		COLUMN_TIMESTAMP + " LONG, " +
+		COLUMN_TYPE + " INTEGER, " +
+		COLUMN_SUBTYPE + " TEXT, " +
+		COLUMN_STATUS + " INTEGER, " +
+		COLUMN_DNS + " LONG, " +
+		COLUMN_CONNECT + " LONG, " +
+		COLUMN_TLS + " LONG, " +
+		COLUMN_FIRSTBYTE + " LONG, " +
+		COLUMN_DOWNLOAD + " LONG, " +
+		COLUMN_VERDICT + " INTEGER)";
+	private static final String VERDICTS_TABLE_CREATE =
+		"CREATE TABLE " + VERDICTS_TABLE_NAME + " (" +
+		COLUMN_ROWID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+		COLUMN_BSSID + " TEXT NOT NULL, " +
+		COLUMN_SSID + " TEXT NOT NULL, " +
+		COLUMN_TIMESTAMP + " LONG, " +
+		COLUMN_SITE + " TEXT, " +
+		COLUMN_TITLE + " TEXT, " +
+		COLUMN_PAGETITLE + " TEXT, " +
+		COLUMN_STATUS + " INTEGER, " +
+		"UNIQUE (" + COLUMN_BSSID + ") ON CONFLICT REPLACE)";
+	private static final String FINGERPRINTS_TABLE_CREATE =
+		"CREATE TABLE " + FINGERPRINTS_TABLE_NAME + " (" +
+		COLUMN_ROWID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+		COLUMN_BSSID + " TEXT NOT NULL, " +
+		COLUMN_SSID + " TEXT NOT NULL, " +
+		COLUMN_SITE + " TEXT NOT NULL, " +
+		COLUMN_ETAG + " TEXT, " +
+		COLUMN_LASTMODIFIED + " TEXT, " +
+		COLUMN_LOCATION + " TEXT, " +
+		COLUMN_HASH + " INTEGER, " +
+		COLUMN_PAGETITLE + " TEXT, " +
+		"UNIQUE (" + COLUMN_BSSID + ", " + COLUMN_SITE + ") ON CONFLICT REPLACE)";
+	private static final String TRAFFIC_TABLE_CREATE =
+		"CREATE TABLE " + TRAFFIC_TABLE_NAME + " (" +
+		COLUMN_DAY + " INTEGER PRIMARY KEY, " +
+		COLUMN_BYTES + " LONG NOT NULL, " +
+		COLUMN_TESTS + " INTEGER NOT NULL)";
+	
+	/** SQL to create the indexes, the sorted ones with the collation used to sort the lists */
+	private static final String IGNORELIST_SSID_INDEX_CREATE =
+		"CREATE INDEX " + IGNORELIST_SSID_INDEX_NAME + " ON " + IGNORELIST_TABLE_NAME + " (" +
+		COLUMN_SSID + ")";
+	private static final String IGNORELIST_SORTED_INDEX_CREATE =
+		"CREATE INDEX " + IGNORELIST_SORTED_INDEX_NAME + " ON " + IGNORELIST_TABLE_NAME + " (" +
+		COLUMN_SSID + " COLLATE UNICODE, " + 
+		COLUMN_BSSID + ")";
+	private static final String LOCATIONLIST_SORTED_INDEX_CREATE =
+		"CREATE INDEX " + LOCATIONLIST_SORTED_INDEX_NAME + " ON " + LOCATIONLIST_TABLE_NAME + " (" +
+		COLUMN_NAME + " COLLATE UNICODE, " + 
+		COLUMN_BSSID + ", " + 
+		COLUMN_SSID + ", " + 
+		COLUMN_LAT + ", " + 
+		COLUMN_LON + ", " + 
+		COLUMN_ACC + ")";
+	private static final String TESTHISTORY_TIMESTAMP_INDEX_CREATE =
+		"CREATE INDEX " + TESTHISTORY_TIMESTAMP_INDEX_NAME + " ON " + TESTHISTORY_TABLE_NAME + " (" +
+		COLUMN_TIMESTAMP + ")";
+	private static final String TESTHISTORY_SUBTYPE_INDEX_CREATE =
+		"CREATE INDEX " + TESTHISTORY_SUBTYPE_INDEX_NAME + " ON " + TESTHISTORY_TABLE_NAME + " (" +
+		COLUMN_SUBTYPE + ", " + 
+		COLUMN_TIMESTAMP + ")";
+	
+	/** Columns added to the test results in version 6 */
+	private static final String[] TESTRESULTS_PHASE_COLUMNS = {
+		COLUMN_DNS, COLUMN_CONNECT, COLUMN_TLS, COLUMN_FIRSTBYTE, COLUMN_DOWNLOAD
+	};
+	
+	/** Columns of a Wifi location */
+	private static final String[] LOCATIONLIST_COLUMNS = {
+		COLUMN_ROWID, COLUMN_BSSID, COLUMN_SSID, COLUMN_NAME, COLUMN_LAT, COLUMN_LON, COLUMN_ACC
+	};
+	
+	/** Columns of a test result as of version 10, copied to the test history in version 10 */
+	private static final String[] TESTRESULTS_V10_COLUMNS = {
+		COLUMN_TIMESTAMP, COLUMN_TYPE, COLUMN_SUBTYPE, COLUMN_STATUS, 
+		COLUMN_DNS, COLUMN_CONNECT, COLUMN_TLS, COLUMN_FIRSTBYTE, COLUMN_DOWNLOAD
+	};
+	
+	/** Columns of a test result, in the order they are bound and read */
+	private static final String[] TESTRESULTS_COLUMNS = {
+		COLUMN_TIMESTAMP, COLUMN_TYPE, COLUMN_SUBTYPE, COLUMN_STATUS, 
+		COLUMN_DNS, COLUMN_CONNECT, COLUMN_TLS, COLUMN_FIRSTBYTE, COLUMN_DOWNLOAD, 
+		COLUMN_VERDICT
+	};
+	
+	/** Columns of the test history, the id followed by TESTRESULTS_COLUMNS */
+	private static final String[] TESTHISTORY_COLUMNS = {
+		COLUMN_ROWID, COLUMN_TIMESTAMP, COLUMN_TYPE, COLUMN_SUBTYPE, COLUMN_STATUS, 
+		COLUMN_DNS, COLUMN_CONNECT, COLUMN_TLS, COLUMN_FIRSTBYTE, COLUMN_DOWNLOAD, 
+		COLUMN_VERDICT
+	};
 	
 	/** Extended DatabaseOpenHelper */
 	private final DatabaseOpenHelper helper;
@@ -121,6 +326,12 @@ public class DatabaseAdapterImpl implements DatabaseAdapter {
 	/** The SQLite database */
 	private SQLiteDatabase database;
 	
+	/** Ignored SSID's in memory */
+	private final IgnoredWifis ignoredWifis = IgnoredWifis.getInstance();
+	
+	/** Wifi locations in memory */
+	private final WifiLocations wifiLocations = WifiLocations.getInstance();
+	
 	/**
 	 * Implementation of DatabaseOpenHelper.
 	 * 
@@ -137,6 +348,17 @@ public class DatabaseAdapterImpl implements DatabaseAdapter {
 			database.execSQL(IGNORELIST_TABLE_CREATE);
 			database.execSQL(LOCATIONLIST_TABLE_CREATE);
 			database.execSQL(TESTRESULTS_TABLE_CREATE);
+			database.execSQL(VERDICTS_TABLE_CREATE);
+			database.execSQL(FINGERPRINTS_TABLE_CREATE);
+			database.execSQL(TRAFFIC_TABLE_CREATE);
+			database.execSQL(IGNORELIST_SSID_INDEX_CREATE);
+			database.execSQL(IGNORELIST_SORTED_INDEX_CREATE);
+			database.execSQL(LOCATIONLIST_SORTED_INDEX_CREATE);
+			database.execSQL(TESTHISTORY_TABLE_CREATE);
+			database.execSQL(TESTHISTORY_TIMESTAMP_INDEX_CREATE);
+			database.execSQL(TESTHISTORY_SUBTYPE_INDEX_CREATE);
+			IgnoredWifis.getInstance().invalidate();
+			WifiLocations.getInstance().invalidate();
 		}
 	
 		@Override
@@ -160,6 +382,114 @@ public class DatabaseAdapterImpl implements DatabaseAdapter {
 					database.endTransaction();
 				}
 			}
+			
+			if(oldVersion < 4 && newVersion >= 4) {
+				database.beginTransaction();
+				try {
+					database.execSQL(VERDICTS_TABLE_CREATE);
+					database.setTransactionSuccessful();
+				} finally {
+					database.endTransaction();
+				}
+			}
+			
+			if(oldVersion < 5 && newVersion >= 5) {
+				database.beginTransaction();
+				try {
+					database.execSQL(FINGERPRINTS_TABLE_CREATE);
+					database.setTransactionSuccessful();
+				} finally {
+					database.endTransaction();
+				}
+			}
+			
+			// The test results table created above for versions before 3 already has the columns
+			if(oldVersion >= 3 && oldVersion < 6 && newVersion >= 6) {
+				database.beginTransaction();
+				try {
+					for(String column : TESTRESULTS_PHASE_COLUMNS) {
+						database.execSQL("ALTER TABLE " + TESTRESULTS_TABLE_NAME + " ADD COLUMN " + column + " LONG");
+					}
+					database.setTransactionSuccessful();
+				} finally {
+					database.endTransaction();
+				}
+			}
+			
+			if(oldVersion < 7 && newVersion >= 7) {
+				database.beginTransaction();
+				try {
+					database.execSQL(TRAFFIC_TABLE_CREATE);
+					database.setTransactionSuccessful();
+				} finally {
+					database.endTransaction();
+				}
+			}
+			
+			if(oldVersion < 8 && newVersion >= 8) {
+				database.beginTransaction();
+				try {
+					database.execSQL(IGNORELIST_SSID_INDEX_CREATE);
+					database.execSQL(IGNORELIST_SORTED_INDEX_CREATE);
+					database.execSQL(LOCATIONLIST_SORTED_INDEX_CREATE);
+					database.setTransactionSuccessful();
+				} finally {
+					database.endTransaction();
+				}
+			}
+			
+			// Version 9 added a cell column with an index to the location list, which the Wifi
+			// locations in memory replaced. The column can't be dropped, so the table is rebuilt.
+			if(oldVersion == 9 && newVersion >= 10) {
+				database.beginTransaction();
+				try {
+					String columns = TextUtils.join(", ", LOCATIONLIST_COLUMNS);
+					database.execSQL(String.format("ALTER TABLE %s RENAME TO %s_v9", 
+							LOCATIONLIST_TABLE_NAME, LOCATIONLIST_TABLE_NAME));
+					database.execSQL(LOCATIONLIST_TABLE_CREATE);
+					database.execSQL(String.format("INSERT INTO %s (%s) SELECT %s FROM %s_v9", 
+							LOCATIONLIST_TABLE_NAME, columns, columns, LOCATIONLIST_TABLE_NAME));
+					// Drops the indexes of the old table, including the cell index
+					database.execSQL(String.format("DROP TABLE %s_v9", LOCATIONLIST_TABLE_NAME));
+					database.execSQL(LOCATIONLIST_SORTED_INDEX_CREATE);
+					database.setTransactionSuccessful();
+				} finally {
+					database.endTransaction();
+				}
+			}
+			
+			if(oldVersion < 10 && newVersion >= 10) {
+				database.beginTransaction();
+				try {
+					database.execSQL(TESTHISTORY_TABLE_CREATE);
+					database.execSQL(TESTHISTORY_TIMESTAMP_INDEX_CREATE);
+					database.execSQL(TESTHISTORY_SUBTYPE_INDEX_CREATE);
+					// The latest test result starts the history
+					String columns = TextUtils.join(", ", TESTRESULTS_V10_COLUMNS);
+					database.execSQL(String.format("INSERT INTO %s (%s) SELECT %s FROM %s", 
+							TESTHISTORY_TABLE_NAME, columns, columns, TESTRESULTS_TABLE_NAME));
+					database.setTransactionSuccessful();
+				} finally {
+					database.endTransaction();
+				}
+			}
+			
+			// The tables created above for earlier versions already have the column
+			if(oldVersion >= 3 && oldVersion < 11 && newVersion >= 11) {
+				database.beginTransaction();
+				try {
+					database.execSQL("ALTER TABLE " + TESTRESULTS_TABLE_NAME + " ADD COLUMN " + COLUMN_VERDICT + " INTEGER");
+					if(oldVersion == 10) {
+						database.execSQL("ALTER TABLE " + TESTHISTORY_TABLE_NAME + " ADD COLUMN " + COLUMN_VERDICT + " INTEGER");
+					}
+					database.setTransactionSuccessful();
+				} finally {
+					database.endTransaction();
+				}
+			}
+			
+			IgnoredWifis.getInstance().invalidate();
+			WifiLocations.getInstance().invalidate();
 		}
 	}
 	
@@ -207,11 +537,17 @@ public class DatabaseAdapterImpl implements DatabaseAdapter {
 		values.put(COLUMN_BSSID, bssid);
 		values.put(COLUMN_SSID, ssid);
 		long rowId = database.insert(IGNORELIST_TABLE_NAME, null, values);
+		
+		// Also replaces the SSID of an entry with the same BSSID
+		ignoredWifis.invalidate();
+		loadIgnoredWifis();
+		
 		return rowId == -1 ? false : true;
 	}
 
 	/**
 	 * Returns true if the given SSID is an ignored Wifi network, false otherwise. 
+	 * Only queries the database if the ignored SSID's are not in memory.
 	 * @param ssid
 	 * @return boolean true if ignored, false otherwise
 	 */
@@ -220,20 +556,14 @@ public class DatabaseAdapterImpl implements DatabaseAdapter {
 			return false;
 		}
 
+		// Creating or upgrading the database invalidates the SSID's in memory
 		openIfNeeded();
 		
-		Cursor cursor = null;
-		try {
-			String[] columns = {COLUMN_BSSID};
-			String[] selectionArgs = {ssid};
-			cursor = database.query(IGNORELIST_TABLE_NAME, columns, 
-					COLUMN_SSID + " = ?", selectionArgs, null, null, null);
-			return cursor.getCount() > 0;
-		} finally {
-			if(cursor != null) {
-				cursor.close();
-			}
+		Set<String> ssids = ignoredWifis.getSSIDs();
+		if(ssids == null) {
+			ssids = loadIgnoredWifis();
 		}
+		return ssids.contains(ssid);
 	}
 
 	/**
@@ -251,6 +581,12 @@ public class DatabaseAdapterImpl implements DatabaseAdapter {
 		String[] whereArgs = {ssid};
 		int rows = database.delete(IGNORELIST_TABLE_NAME, 
 				COLUMN_SSID + " = ?", whereArgs);
+		
+		if(rows > 0) {
+			ignoredWifis.invalidate();
+			loadIgnoredWifis();
+		}
+		
 		return rows > 0;
 	}
 	
@@ -301,8 +637,12 @@ public class DatabaseAdapterImpl implements DatabaseAdapter {
 			values.put(COLUMN_SSID, ssid);
 			values.put(COLUMN_NAME, localName);
 			long rowId = database.insert(LOCATIONLIST_TABLE_NAME, null, values);
+			
+			// Loaded again when needed
+			wifiLocations.invalidate();
 			return rowId == -1 ? false : true;
 		} else {
+			wifiLocations.invalidate();
 			return true;
 		}
 	}
@@ -322,6 +662,9 @@ public class DatabaseAdapterImpl implements DatabaseAdapter {
 		String[] whereArgs = {bssid};
 		int rows = database.delete(LOCATIONLIST_TABLE_NAME, 
 				COLUMN_BSSID + " = ?", whereArgs);
+		if(rows > 0) {
+			wifiLocations.invalidate();
+		}
 		return rows > 0;
 	}
 	
@@ -346,6 +689,9 @@ public class DatabaseAdapterImpl implements DatabaseAdapter {
 		values.put(COLUMN_NAME, localName);
 		int rows = database.update(LOCATIONLIST_TABLE_NAME, values, 
 				COLUMN_BSSID + " = ?", whereArgs);
+		if(rows > 0) {
+			wifiLocations.invalidate();
+		}
 		
 		return rows > 0;
 	}
@@ -393,68 +739,103 @@ public class DatabaseAdapterImpl implements DatabaseAdapter {
 	 * @return WifiLocation
 	 */
 	public WifiLocation getNearestLocationTo(final Location location) {
+		return getNearestLocationTo(location, Float.MAX_VALUE);
+	}
+	
+	/**
+	 * Returns the location that is nearest to the given location as a WifiLocation
+	 * including the distance to the given location, or null if there is none within
+	 * the given max. distance. Looks at the locations kept in memory by WifiLocations,
+	 * loading them if needed, and only creates the WifiLocation of the nearest one.
+	 * @param location
+	 * @param maxDistance max. distance in meters
+	 * @return WifiLocation
+	 */
+	public WifiLocation getNearestLocationTo(final Location location, final float maxDistance) {
 		
 		openIfNeeded();
 		
-		Cursor cursor = database.query(LOCATIONLIST_TABLE_NAME, 
-        		new String[] {COLUMN_ROWID, COLUMN_BSSID, COLUMN_SSID, COLUMN_NAME, COLUMN_LAT, COLUMN_LON, COLUMN_ACC}, 
-        		null, null, null, null, null);
+		if(location == null) {
+			return null;
+		}
 		
-		WifiLocation nearestWifiLocation = null;
-		float shortestDistance = Float.MAX_VALUE;
+		WifiLocations.Snapshot snapshot = wifiLocations.getSnapshot();
+		if(snapshot == null) {
+			snapshot = loadWifiLocations();
+		}
 		
-		try {
-			while(cursor.moveToNext()) {
-				WifiLocation currentWifiLocation = new WifiLocation();
-				currentWifiLocation.setBSSID(cursor.getString(1));
-				currentWifiLocation.setSSID(cursor.getString(2));
-				currentWifiLocation.setName(cursor.getString(3));
-				
-				Location currentLocation = new Location(Locater.PROVIDER_DATABASE);
-				currentLocation.setLatitude(cursor.getDouble(4));
-				currentLocation.setLongitude(cursor.getDouble(5));
-				currentLocation.setAccuracy(cursor.getFloat(6));
-				
-				currentWifiLocation.setLocation(currentLocation);
-				
-				float distance = currentLocation.distanceTo(location);
-				if(distance < shortestDistance) {
-					shortestDistance = distance;
-					nearestWifiLocation = currentWifiLocation;
-					nearestWifiLocation.setDistance(distance);
-				}
-			}
-		} finally {
-			cursor.close();
+		double lat = location.getLatitude();
+		double lon = location.getLongitude();
+		int nearest = snapshot.getNearest(lat, lon, maxDistance);
+		if(nearest == -1) {
+			return null;
 		}
 		
+		WifiLocation nearestWifiLocation = new WifiLocation();
+		nearestWifiLocation.setBSSID(snapshot.getBSSID(nearest));
+		nearestWifiLocation.setSSID(snapshot.getSSID(nearest));
+		nearestWifiLocation.setName(snapshot.getName(nearest));
+		
+		Location nearestLocation = new Location(Locater.PROVIDER_DATABASE);
+		nearestLocation.setLatitude(snapshot.getLatitude(nearest));
+		nearestLocation.setLongitude(snapshot.getLongitude(nearest));
+		nearestLocation.setAccuracy(snapshot.getAccuracy(nearest));
+		
+		nearestWifiLocation.setLocation(nearestLocation);
+		nearestWifiLocation.setDistance(snapshot.getDistance(nearest, lat, lon));
+		
 		return nearestWifiLocation;
 	}
 	
 	public boolean updateTestResult(final long timestamp, final int type, final String subtype, final boolean status) {
+		final TestInfo info = new TestInfo();
+		info.setTimestamp(timestamp);
+		info.setType(type);
+		info.setExtra(subtype);
+		info.setIsExpectedTitle(status);
+		
+		return updateTestResult(info);
+	}
+	
+	public boolean updateTestResult(final TestInfo info) {
+		if(info == null) {
+			return false;
+		}
 		
 		openIfNeeded();
 		
-		final String sql = String.format("INSERT OR REPLACE INTO %s " +
-										 "(%s, %s, %s, %s, %s) VALUES (?, ?, ?, ?, ?)", 
-										 TESTRESULTS_TABLE_NAME, COLUMN_ROWID, COLUMN_TIMESTAMP, 
-										 COLUMN_TYPE, COLUMN_SUBTYPE, COLUMN_STATUS);
-		final SQLiteStatement stmt = database.compileStatement(sql);
-		stmt.bindLong(1, 0L);
-		stmt.bindLong(2, timestamp);
-		stmt.bindLong(3, type);
-		if (subtype != null) {
-			stmt.bindString(4, subtype);
-		}
-		stmt.bindLong(5, status ? 1 : 0);
+		String columns = TextUtils.join(", ", TESTRESULTS_COLUMNS);
+		final SQLiteStatement latest = database.compileStatement(String.format(
+				"INSERT OR REPLACE INTO %s (%s, %s) VALUES (0, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", 
+				TESTRESULTS_TABLE_NAME, COLUMN_ROWID, columns));
+		final SQLiteStatement history = database.compileStatement(String.format(
+				"INSERT INTO %s (%s) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", 
+				TESTHISTORY_TABLE_NAME, columns));
+		bindTestResult(latest, info);
+		bindTestResult(history, info);
 		
+		database.beginTransaction();
 		try {
-			final long rowId = stmt.executeInsert();
-			return rowId == -1 ? false : true;
+			if(latest.executeInsert() == -1) {
+				return false;
+			}
+			final long historyId = history.executeInsert();
+			if(historyId == -1) {
+				return false;
+			}
+			// The ids only grow, so the oldest test results are the ones with the lowest ids
+			if(historyId % PRUNE_BATCH == 0) {
+				database.delete(TESTHISTORY_TABLE_NAME, COLUMN_ROWID + " <= ?", 
+						new String[] {String.valueOf(historyId - MAX_HISTORY)});
+			}
+			database.setTransactionSuccessful();
+			return true;
 		} catch(SQLException e) {
 			return false;
 		} finally {
-			stmt.close();
+			database.endTransaction();
+			latest.close();
+			history.close();
 		}
 	}
 
@@ -463,22 +844,232 @@ public class DatabaseAdapterImpl implements DatabaseAdapter {
 		openIfNeeded();
 		
 		final Cursor cursor = database.query(TESTRESULTS_TABLE_NAME, 
-        		new String[] {COLUMN_TIMESTAMP, COLUMN_TYPE, COLUMN_SUBTYPE, COLUMN_STATUS}, 
-        		null, null, null, null, null);
+        		TESTRESULTS_COLUMNS, COLUMN_ROWID + " = 0", null, null, null, null);
+		
+		try {
+			if (! cursor.moveToNext()) {
+				return null;
+			}
+			
+			final TestInfo info = new TestInfo();
+			info.setTimestamp(cursor.getLong(0));
+			info.setType(cursor.getInt(1));
+			info.setExtra(cursor.getString(2));
+			info.setIsExpectedTitle(cursor.getInt(3) > 0 ? true : false);
+			info.setDnsMillis(cursor.getLong(4));
+			info.setConnectMillis(cursor.getLong(5));
+			info.setTlsMillis(cursor.getLong(6));
+			info.setFirstByteMillis(cursor.getLong(7));
+			info.setDownloadMillis(cursor.getLong(8));
+			info.setVerdict(cursor.getInt(9));
+			
+			return info;
+		} finally {
+			cursor.close();
+		}
+	}
+	
+	public Cursor fetchTestResults(final long from, final long to) {
+		
+		openIfNeeded();
 		
-		if (! cursor.moveToNext()) {
+		String[] selectionArgs = {String.valueOf(from), String.valueOf(to)};
+		return database.query(TESTHISTORY_TABLE_NAME, TESTHISTORY_COLUMNS, 
+				COLUMN_TIMESTAMP + " BETWEEN ? AND ?", selectionArgs, 
+				null, null, COLUMN_TIMESTAMP + " DESC");
+	}
+	
+	public Cursor fetchTestResults(final String ssid) {
+		
+		openIfNeeded();
+		
+		String[] selectionArgs = {ssid == null ? "" : ssid};
+		return database.query(TESTHISTORY_TABLE_NAME, TESTHISTORY_COLUMNS, 
+				COLUMN_SUBTYPE + " = ?", selectionArgs, 
+				null, null, COLUMN_TIMESTAMP + " DESC");
+	}
+	
+	public boolean updateVerdict(final TestInfo info) {
+		if(info == null || info.getExtra() == null || info.getExtra2() == null) {
+			return false;
+		}
+		
+		openIfNeeded();
+		
+		ContentValues values = new ContentValues();
+		values.put(COLUMN_BSSID, info.getExtra2());
+		values.put(COLUMN_SSID, info.getExtra());
+		values.put(COLUMN_TIMESTAMP, info.getTimestamp());
+		values.put(COLUMN_SITE, info.getSite());
+		values.put(COLUMN_TITLE, info.getTitle());
+		values.put(COLUMN_PAGETITLE, info.getPageTitle());
+		values.put(COLUMN_STATUS, info.getIsExpectedTitle() ? 1 : 0);
+		long rowId = database.insert(VERDICTS_TABLE_NAME, null, values);
+		return rowId == -1 ? false : true;
+	}
+	
+	public TestInfo fetchVerdict(final String bssid) {
+		if(bssid == null) {
 			return null;
 		}
 		
-		final TestInfo info = new TestInfo();
-		info.setTimestamp(cursor.getLong(0));
-		info.setType(cursor.getInt(1));
-		info.setExtra(cursor.getString(2));
-		info.setIsExpectedTitle(cursor.getInt(3) > 0 ? true : false);
+		openIfNeeded();
 		
-		cursor.close();
+		String[] selectionArgs = {bssid};
+		final Cursor cursor = database.query(VERDICTS_TABLE_NAME, 
+        		new String[] {COLUMN_BSSID, COLUMN_SSID, COLUMN_TIMESTAMP, COLUMN_SITE, 
+				COLUMN_TITLE, COLUMN_PAGETITLE, COLUMN_STATUS}, 
+				COLUMN_BSSID + " = ?", selectionArgs, null, null, null);
 		
-		return info;
+		try {
+			if(! cursor.moveToNext()) {
+				return null;
+			}
+			
+			final TestInfo info = new TestInfo();
+			info.setType(ConnectivityManager.TYPE_WIFI);
+			info.setExtra2(cursor.getString(0));
+			info.setExtra(cursor.getString(1));
+			info.setTimestamp(cursor.getLong(2));
+			info.setSite(cursor.getString(3));
+			info.setTitle(cursor.getString(4));
+			info.setPageTitle(cursor.getString(5));
+			info.setIsExpectedTitle(cursor.getInt(6) > 0 ? true : false);
+			
+			return info;
+		} finally {
+			cursor.close();
+		}
+	}
+	
+	public boolean updateFingerprint(final String ssid, final String bssid, final String site, 
+			final PortalFingerprint fingerprint) {
+		if(ssid == null || bssid == null || site == null || fingerprint == null) {
+			return false;
+		}
+		
+		openIfNeeded();
+		
+		ContentValues values = new ContentValues();
+		values.put(COLUMN_BSSID, bssid);
+		values.put(COLUMN_SSID, ssid);
+		values.put(COLUMN_SITE, site);
+		values.put(COLUMN_ETAG, fingerprint.getEtag());
+		values.put(COLUMN_LASTMODIFIED, fingerprint.getLastModified());
+		values.put(COLUMN_LOCATION, fingerprint.getLocation());
+		values.put(COLUMN_HASH, fingerprint.getHash());
+		values.put(COLUMN_PAGETITLE, fingerprint.getPageTitle());
+		long rowId = database.insert(FINGERPRINTS_TABLE_NAME, null, values);
+		return rowId == -1 ? false : true;
+	}
+	
+	public PortalFingerprint fetchFingerprint(final String bssid, final String site) {
+		if(bssid == null || site == null) {
+			return null;
+		}
+		
+		openIfNeeded();
+		
+		String[] selectionArgs = {bssid, site};
+		final Cursor cursor = database.query(FINGERPRINTS_TABLE_NAME, 
+				new String[] {COLUMN_ETAG, COLUMN_LASTMODIFIED, COLUMN_LOCATION, COLUMN_HASH, COLUMN_PAGETITLE}, 
+				COLUMN_BSSID + " = ? AND " + COLUMN_SITE + " = ?", selectionArgs, null, null, null);
+		
+		try {
+			if(! cursor.moveToNext()) {
+				return null;
+			}
+			
+			final PortalFingerprint fingerprint = new PortalFingerprint();
+			fingerprint.setEtag(cursor.getString(0));
+			fingerprint.setLastModified(cursor.getString(1));
+			fingerprint.setLocation(cursor.getString(2));
+			fingerprint.setHash(cursor.getLong(3));
+			fingerprint.setPageTitle(cursor.getString(4));
+			
+			return fingerprint;
+		} finally {
+			cursor.close();
+		}
+	}
+	
+	public boolean addTraffic(final long timestamp, final long bytes) {
+		if(bytes <= 0) {
+			return false;
+		}
+		
+		openIfNeeded();
+		
+		final int day = getDay(timestamp);
+		
+		database.beginTransaction();
+		try {
+			database.execSQL(String.format("INSERT OR IGNORE INTO %s (%s, %s, %s) VALUES (?, 0, 0)", 
+					TRAFFIC_TABLE_NAME, COLUMN_DAY, COLUMN_BYTES, COLUMN_TESTS), 
+					new Object[] {day});
+			database.execSQL(String.format("UPDATE %s SET %s = %s + ?, %s = %s + 1 WHERE %s = ?", 
+					TRAFFIC_TABLE_NAME, COLUMN_BYTES, COLUMN_BYTES, COLUMN_TESTS, COLUMN_TESTS, COLUMN_DAY), 
+					new Object[] {bytes, day});
+			// Keep a year
+			database.delete(TRAFFIC_TABLE_NAME, COLUMN_DAY + " <= ?", 
+					new String[] {String.valueOf(day - 10000)});
+			database.setTransactionSuccessful();
+			return true;
+		} catch(SQLException e) {
+			return false;
+		} finally {
+			database.endTransaction();
+		}
+	}
+	
+	public long fetchDailyTraffic(final long timestamp) {
+		final int day = getDay(timestamp);
+		
+		return fetchTraffic(day, day);
+	}
+	
+	public long fetchMonthlyTraffic(final long timestamp) {
+		final int month = getDay(timestamp) / 100 * 100;
+		
+		return fetchTraffic(month + 1, month + 31);
+	}
+	
+	/**
+	 * Returns the number of bytes of the tests of the days from the given first
+	 * to the given last one, including both.
+	 * @param first first day
+	 * @param last last day
+	 * @return long number of bytes
+	 */
+	private long fetchTraffic(final int first, final int last) {
+		
+		openIfNeeded();
+		
+		String[] selectionArgs = {String.valueOf(first), String.valueOf(last)};
+		final Cursor cursor = database.rawQuery(String.format("SELECT SUM(%s) FROM %s WHERE %s BETWEEN ? AND ?", 
+				COLUMN_BYTES, TRAFFIC_TABLE_NAME, COLUMN_DAY), selectionArgs);
+		
+		try {
+			if(! cursor.moveToNext()) {
+				return 0;
+			}
+			return cursor.getLong(0);
+		} finally {
+			cursor.close();
+		}
+	}
+	
+	/**
+	 * Returns the local date of the given time as number, i.e. 20111231.
+	 * @param timestamp
+	 * @return int day
+	 */
+	public static int getDay(final long timestamp) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTimeInMillis(timestamp);
+		return calendar.get(Calendar.YEAR) * 10000 + 
+			(calendar.get(Calendar.MONTH) + 1) * 100 + 
+			calendar.get(Calendar.DAY_OF_MONTH);
 	}
     
     /**
@@ -492,6 +1083,96 @@ public class DatabaseAdapterImpl implements DatabaseAdapter {
     	return database.getVersion();
     }
     
+	/**
+	 * Binds the details of the given test results to the given statement, 
+	 * in the order of TESTRESULTS_COLUMNS.
+	 * @param stmt
+	 * @param info
+	 */
+	private static void bindTestResult(final SQLiteStatement stmt, final TestInfo info) {
+		stmt.bindLong(1, info.getTimestamp());
+		stmt.bindLong(2, info.getType());
+		if(info.getExtra() != null) {
+			stmt.bindString(3, info.getExtra());
+		} else {
+			stmt.bindNull(3);
+		}
+		stmt.bindLong(4, info.getIsExpectedTitle() ? 1 : 0);
+		stmt.bindLong(5, info.getDnsMillis());
+		stmt.bindLong(6, info.getConnectMillis());
+		stmt.bindLong(7, info.getTlsMillis());
+		stmt.bindLong(8, info.getFirstByteMillis());
+		stmt.bindLong(9, info.getDownloadMillis());
+		stmt.bindLong(10, info.getVerdict());
+	}
+	
+	/**
+	 * Loads the SSID's of the ignored Wifi networks from the database and keeps them 
+	 * in memory, unless the ignorelist changed while they were loaded.
+	 * @return Set<String> ignored SSID's
+	 */
+	private Set<String> loadIgnoredWifis() {
+		int generation = ignoredWifis.getGeneration();
+		
+		List<String> ssids = new ArrayList<String>();
+		Cursor cursor = null;
+		try {
+			String[] columns = {COLUMN_SSID};
+			cursor = database.query(true, IGNORELIST_TABLE_NAME, columns, 
+					null, null, null, null, null, null);
+			while(cursor.moveToNext()) {
+				ssids.add(cursor.getString(0));
+			}
+		} finally {
+			if(cursor != null) {
+				cursor.close();
+			}
+		}
+		
+		// Log.d(Inetify.LOG_TAG, String.format("Loaded %s ignored SSID's", ssids.size()));
+		return ignoredWifis.set(generation, ssids);
+	}
+	
+	/**
+	 * Loads the Wifi locations from the database sorted by latitude and keeps them
+	 * in memory, unless the location list changed while they were loaded.
+	 * @return WifiLocations.Snapshot Wifi locations
+	 */
+	private WifiLocations.Snapshot loadWifiLocations() {
+		int generation = wifiLocations.getGeneration();
+		
+		WifiLocations.Snapshot snapshot = null;
+		Cursor cursor = null;
+		try {
+			String[] columns = {COLUMN_BSSID, COLUMN_SSID, COLUMN_NAME, COLUMN_LAT, COLUMN_LON, COLUMN_ACC};
+			cursor = database.query(LOCATIONLIST_TABLE_NAME, columns, 
+					null, null, null, null, COLUMN_LAT);
+			int count = cursor.getCount();
+			String[] bssids = new String[count];
+			String[] ssids = new String[count];
+			String[] names = new String[count];
+			double[] lats = new double[count];
+			double[] lons = new double[count];
+			float[] accs = new float[count];
+			for(int i = 0; i < count && cursor.moveToNext(); i++) {
+				bssids[i] = cursor.getString(0);
+				ssids[i] = cursor.getString(1);
+				names[i] = cursor.getString(2);
+				lats[i] = cursor.getDouble(3);
+				lons[i] = cursor.getDouble(4);
+				accs[i] = cursor.getFloat(5);
+			}
+			snapshot = new WifiLocations.Snapshot(bssids, ssids, names, lats, lons, accs);
+		} finally {
+			if(cursor != null) {
+				cursor.close();
+			}
+		}
+		
+		// Log.d(Inetify.LOG_TAG, String.format("Loaded %s Wifi locations", snapshot.size()));
+		return wifiLocations.set(generation, snapshot);
+	}
+	
     /**
      * Opens the database if it is not already open.
      */
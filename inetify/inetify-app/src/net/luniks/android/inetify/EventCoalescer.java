@@ -0,0 +1,239 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Coalesces the connectivity events received by ConnectivityActionReceiver so that
+ * a burst of events only results in one test of the latest state, instead of a test
+ * that is started and cancelled again for each event.
+ * Each event gets a sequence number that is passed to InetifyIntentService. An event
+ * that follows another one within the window is part of a burst, and the service
+ * waits for the window and then only tests if no newer event was received meanwhile.
+ * An event on its own is tested right away.
+ * A disconnect followed by a connect to the same BSSID within the window is dropped
+ * as redundant if the last test was for that BSSID, since nothing changed.
+ * 
+ * @author torsten.roemer@luniks.net
+ */
+public final class EventCoalescer {
+	
+	/** Sequence number of an event that is not coalesced */
+	public static final long NO_SEQUENCE = -1;
+	
+	/** Default time in ms to wait for further events */
+	public static final long DEFAULT_WINDOW = 2000;
+	
+	/** Shared instance */
+	private static final EventCoalescer instance = new EventCoalescer(DEFAULT_WINDOW);
+	
+	/** Time in ms to wait for further events */
+	private volatile long window;
+	
+	/** Sequence number of the latest event */
+	private long sequence = 0;
+	
+	/** Time of the latest event */
+	private long latestAt = 0;
+	
+	/** True if the latest event followed another one within the window */
+	private boolean latestInBurst = false;
+	
+	/** BSSID of the latest connect event */
+	private String connectedBssid = null;
+	
+	/** BSSID that was connected at the latest disconnect event */
+	private String disconnectedBssid = null;
+	
+	/** Sequence number of the latest disconnect event */
+	private long disconnectedSequence = NO_SEQUENCE;
+	
+	/** Time of the latest disconnect event */
+	private long disconnectedAt = 0;
+	
+	/** Sequence number of the event that was tested last */
+	private long testedSequence = NO_SEQUENCE;
+	
+	/** BSSID that was connected when the last test was run */
+	private String testedBssid = null;
+	
+	/** Sequence number of a connect event that is dropped as redundant */
+	private long redundantSequence = NO_SEQUENCE;
+	
+	/** Number of events received */
+	private final AtomicInteger receivedCount = new AtomicInteger(0);
+	
+	/** Number of events superseded by a newer event */
+	private final AtomicInteger coalescedCount = new AtomicInteger(0);
+	
+	/** Number of connect events dropped as redundant */
+	private final AtomicInteger droppedCount = new AtomicInteger(0);
+	
+	/** Number of tests actually run */
+	private final AtomicInteger testedCount = new AtomicInteger(0);
+	
+	/**
+	 * Constructs an instance with the given window.
+	 * @param window time in ms to wait for further events
+	 */
+	public EventCoalescer(final long window) {
+		this.window = window;
+	}
+	
+	/**
+	 * Returns the shared instance.
+	 * @return EventCoalescer
+	 */
+	public static EventCoalescer getInstance() {
+		return instance;
+	}
+	
+	/**
+	 * Returns the time in ms to wait for further events.
+	 * @return long window
+	 */
+	public long getWindow() {
+		return window;
+	}
+	
+	/**
+	 * Sets the time in ms to wait for further events.
+	 * @param window
+	 */
+	public void setWindow(final long window) {
+		this.window = window;
+	}
+	
+	/**
+	 * Records an event and returns its sequence number.
+	 * @param connected true if Wifi connected, false if it disconnected
+	 * @param bssid BSSID of the Wifi network that connected, may be null
+	 * @param now current time in ms
+	 * @return long sequence number of the event
+	 */
+	public synchronized long received(final boolean connected, final String bssid, final long now) {
+		receivedCount.incrementAndGet();
+		latestInBurst = sequence > 0 && now - latestAt < window;
+		latestAt = now;
+		sequence++;
+		
+		if(connected) {
+			if(bssid != null && bssid.equals(disconnectedBssid) && bssid.equals(testedBssid) &&
+					testedSequence < disconnectedSequence && now - disconnectedAt < window) {
+				redundantSequence = sequence;
+			}
+			connectedBssid = bssid;
+		} else {
+			disconnectedBssid = connectedBssid;
+			disconnectedSequence = sequence;
+			disconnectedAt = now;
+			connectedBssid = null;
+		}
+		
+		return sequence;
+	}
+	
+	/**
+	 * Returns true if the event with the given sequence number is the latest one
+	 * and followed another event within the window, so that further events are
+	 * likely and should be waited for.
+	 * @param eventSequence sequence number of the event
+	 * @return boolean true if the event is part of a burst
+	 */
+	public synchronized boolean isBurst(final long eventSequence) {
+		return eventSequence == sequence && latestInBurst;
+	}
+	
+	/**
+	 * Returns true if the event with the given sequence number should be tested,
+	 * false if it was superseded by a newer event or dropped as redundant.
+	 * An event without sequence number is always tested.
+	 * @param eventSequence sequence number of the event
+	 * @return boolean true if the event should be tested
+	 */
+	public synchronized boolean shouldTest(final long eventSequence) {
+		if(eventSequence == NO_SEQUENCE) {
+			testedCount.incrementAndGet();
+			return true;
+		}
+		if(eventSequence < sequence) {
+			coalescedCount.incrementAndGet();
+			return false;
+		}
+		if(eventSequence == redundantSequence) {
+			droppedCount.incrementAndGet();
+			return false;
+		}
+		testedSequence = eventSequence;
+		testedBssid = connectedBssid;
+		testedCount.incrementAndGet();
+		return true;
+	}
+	
+	/**
+	 * Returns the number of events received.
+	 * @return int number of events
+	 */
+	public int getReceivedCount() {
+		return receivedCount.get();
+	}
+	
+	/**
+	 * Returns the number of events superseded by a newer event.
+	 * @return int number of events
+	 */
+	public int getCoalescedCount() {
+		return coalescedCount.get();
+	}
+	
+	/**
+	 * Returns the number of connect events dropped as redundant.
+	 * @return int number of events
+	 */
+	public int getDroppedCount() {
+		return droppedCount.get();
+	}
+	
+	/**
+	 * Returns the number of tests actually run.
+	 * @return int number of tests
+	 */
+	public int getTestedCount() {
+		return testedCount.get();
+	}
+	
+	/**
+	 * Forgets all events and resets the counters.
+	 */
+	public synchronized void reset() {
+		sequence = 0;
+		latestAt = 0;
+		latestInBurst = false;
+		connectedBssid = null;
+		disconnectedBssid = null;
+		disconnectedSequence = NO_SEQUENCE;
+		disconnectedAt = 0;
+		testedSequence = NO_SEQUENCE;
+		testedBssid = null;
+		redundantSequence = NO_SEQUENCE;
+		receivedCount.set(0);
+		coalescedCount.set(0);
+		droppedCount.set(0);
+		testedCount.set(0);
+	}
+
+}
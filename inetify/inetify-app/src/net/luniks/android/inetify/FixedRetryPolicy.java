@@ -0,0 +1,49 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify;
+
+/**
+ * RetryPolicy making a fixed number of attempts with the same delay before each.
+ * 
+ * @author torsten.roemer@luniks.net
+ */
+public final class FixedRetryPolicy implements RetryPolicy {
+	
+	/** Number of attempts */
+	private final int retries;
+	
+	/** Delay before each attempt in ms */
+	private final long delay;
+	
+	/**
+	 * Constructs an instance making the given number of attempts with
+	 * the given delay in seconds before each.
+	 * @param retries number of attempts
+	 * @param delay delay before each attempt in seconds
+	 */
+	public FixedRetryPolicy(final int retries, final int delay) {
+		this.retries = retries;
+		this.delay = delay * 1000L;
+	}
+
+	/**
+	 * Returns the delay if there are attempts left, STOP otherwise.
+	 */
+	public long getDelay(final int attempt, final TestInfo info) {
+		return attempt < retries ? delay : STOP;
+	}
+
+}
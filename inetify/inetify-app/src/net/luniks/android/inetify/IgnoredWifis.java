@@ -0,0 +1,111 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Keeps the SSID's of the ignored Wifi networks in memory for all database adapters
+ * in the process, so that looking up if a Wifi network is ignored does not query
+ * the database each time. The SSID's are an immutable set that is replaced as a whole,
+ * so looking up does not need to lock and does not allocate.
+ * Invalidating increments a generation, and a set loaded from the database is only
+ * kept if the generation did not change while it was loaded, so that a set loaded
+ * before the ignorelist was changed does not replace the one loaded after.
+ * 
+ * @author torsten.roemer@luniks.net
+ */
+public final class IgnoredWifis {
+	
+	/** Shared instance */
+	private static final IgnoredWifis instance = new IgnoredWifis();
+	
+	/** Ignored SSID's, null if not loaded */
+	private volatile Set<String> ssids = null;
+	
+	/** Incremented each time the ignorelist changes, guarded by this */
+	private int generation = 0;
+	
+	/**
+	 * Constructs an instance that does not share the SSID's with the shared instance.
+	 */
+	public IgnoredWifis() {
+	}
+	
+	/**
+	 * Returns the shared instance.
+	 * @return IgnoredWifis
+	 */
+	public static IgnoredWifis getInstance() {
+		return instance;
+	}
+	
+	/**
+	 * Returns the ignored SSID's, or null if they need to be loaded.
+	 * @return Set<String> ignored SSID's or null
+	 */
+	public Set<String> getSSIDs() {
+		return ssids;
+	}
+	
+	/**
+	 * Returns the current generation, to be given to set() with the SSID's loaded after.
+	 * @return int generation
+	 */
+	public synchronized int getGeneration() {
+		return generation;
+	}
+	
+	/**
+	 * Keeps an immutable copy of the given SSID's loaded from the database if the ignorelist 
+	 * did not change since the given generation, and returns the copy.
+	 * @param generation generation before the SSID's were loaded
+	 * @param ssids SSID's loaded from the database
+	 * @return Set<String> immutable copy of the given SSID's
+	 */
+	public Set<String> set(final int generation, final Collection<String> ssids) {
+		Set<String> copy = Collections.unmodifiableSet(new HashSet<String>(ssids));
+		synchronized(this) {
+			if(generation == this.generation) {
+				this.ssids = copy;
+			}
+		}
+		return copy;
+	}
+	
+	/**
+	 * Forgets the SSID's, to be called when the ignorelist changed.
+	 */
+	public synchronized void invalidate() {
+		generation++;
+		ssids = null;
+	}
+	
+	/**
+	 * Returns true if the given SSID is ignored, false if it is not or the 
+	 * SSID's are not loaded.
+	 * @param ssid
+	 * @return boolean true if the given SSID is ignored
+	 */
+	public boolean contains(final String ssid) {
+		Set<String> ssids = this.ssids;
+		return ssids != null && ssid != null && ssids.contains(ssid);
+	}
+
+}
@@ -20,6 +20,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import net.luniks.android.impl.ClockImpl;
 import net.luniks.android.impl.ConnectivityManagerImpl;
 import net.luniks.android.impl.WifiManagerImpl;
 import android.app.Activity;
@@ -243,7 +244,7 @@ public class Inetify extends Activity {
 	}
 	
 	/**
-	 * Sets the alarm after leaving the settings.
+	 * Sets the alarms after leaving the settings.
 	 */
     @Override
     protected void onActivityResult(final int requestCode, final int resultCode, final Intent data) {
@@ -253,6 +254,9 @@ public class Inetify extends Activity {
         		Alarm alarm = new LocationAlarm(this);
         		alarm.reset();
         		
+        		Alarm monitorAlarm = new MonitorAlarm(this);
+        		monitorAlarm.reset();
+        		
         		// Unclean way to re-enable the receiver after it was disabled by Intent.ACTION_BATTERY_LOW.
         		// It seems there is no guarantee that Intent.ACTION_BATTERY_OKAY is sent in every situation
 				// where battery level goes up, i.e. phone shut down because of low battery and started again
@@ -388,7 +392,7 @@ public class Inetify extends Activity {
     		this.tester = new TesterImpl(activity,
 					new ConnectivityManagerImpl((ConnectivityManager)activity.getSystemService(CONNECTIVITY_SERVICE)), 
 					new WifiManagerImpl((WifiManager)activity.getSystemService(WIFI_SERVICE)),
-					new TitleVerifierImpl());
+					new StreamingTitleVerifier(), null, databaseAdapter, new ClockImpl());
     	}
     	
     	private void setActivity(final Inetify activity) {
@@ -409,7 +413,7 @@ public class Inetify extends Activity {
 		@Override
 		protected TestInfo doInBackground(final Void... arg) {
 			final TestInfo info = tester.testSimple();
-			databaseAdapter.updateTestResult(info.getTimestamp(), info.getType(), info.getExtra(), info.getIsExpectedTitle());
+			databaseAdapter.updateTestResult(info);
 			
 			return info;
 		}
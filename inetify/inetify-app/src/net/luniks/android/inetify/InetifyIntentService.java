@@ -15,6 +15,7 @@
  */
 package net.luniks.android.inetify;
 
+import net.luniks.android.impl.ClockImpl;
 import net.luniks.android.impl.ConnectivityManagerImpl;
 import net.luniks.android.impl.NotificationManagerImpl;
 import net.luniks.android.impl.WifiManagerImpl;
@@ -23,30 +24,31 @@ import android.app.IntentService;
 import android.app.NotificationManager;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.net.ConnectivityManager;
 import android.net.wifi.WifiManager;
 import android.os.Handler;
 import android.os.PowerManager;
+import android.preference.PreferenceManager;
 
 /**
  * IntentService that is started by ConnectivityActionReceiver when Wifi connects
  * or disconnects, performs the internet connectivity test and creates or cancels
  * the notifications. If the service receives an intent while is busy testing internet
- * connectivity it cancels the test and starts a new test run. 
+ * connectivity it cancels the test and starts a new test run. It is also started by
+ * MonitorAlarmReceiver to test again while Wifi stays connected, notifying only if
+ * the result changed, which neither cancels a test nor is done while one is running.
  * 
  * @author torsten.roemer@luniks.net
  */
 public class InetifyIntentService extends IntentService {
 	
-	/** Delay before/between each (re)try to test internet connectivity */
-	public static final int TEST_DELAY_SECS = 10;
-	
-	/** Number of retries to test internet connectivity */
-	private static final int TEST_RETRIES = 3;
-	
 	/** Tag of the wake lock */
 	public static final String WAKE_LOCK_TAG = "net.luniks.android.inetify.InetifyIntentService";
 	
+	/** Lookup key for a boolean that is true if the test is one of monitoring */
+	public static final String EXTRA_MONITOR = "monitor";
+	
 	/** Wake lock kept until the test is done */
 	static volatile PowerManager.WakeLock wakeLock;
 	
@@ -62,6 +64,18 @@ public class InetifyIntentService extends IntentService {
 	/** Database adapter */
 	private DatabaseAdapter databaseAdapter;
 	
+	/** Alarm triggering monitoring tests */
+	private MonitorAlarm monitorAlarm;
+	
+	/** Budget of the traffic of the tests */
+	private TrafficBudget trafficBudget;
+	
+	/** Cancellation of the ongoing test, replaced with each new intent */
+	private volatile Cancellation cancellation = new Cancellation();
+	
+	/** True while an intent is handled */
+	private volatile boolean busy = false;
+	
 	/**
 	 * Creates an instance with a name.
 	 */
@@ -77,29 +91,50 @@ public class InetifyIntentService extends IntentService {
 	public void onCreate() {
 		super.onCreate();
 		this.handler = new Handler();
+		if(databaseAdapter == null) {
+			databaseAdapter = new DatabaseAdapterImpl(this);
+		}
 		if(tester == null) {
 			tester = new TesterImpl(this,
 					new ConnectivityManagerImpl((ConnectivityManager)getSystemService(CONNECTIVITY_SERVICE)), 
 					new WifiManagerImpl((WifiManager)getSystemService(WIFI_SERVICE)),
-					new TitleVerifierImpl());
+					new StreamingTitleVerifier(),
+					new StatusVerifierImpl(),
+					databaseAdapter, new ClockImpl());
 		}
 		if(notifier == null) {
 			notifier = new NotifierImpl(this,
 					new NotificationManagerImpl((NotificationManager)getSystemService(NOTIFICATION_SERVICE)));
 		}
-		if(databaseAdapter == null) {
-			databaseAdapter = new DatabaseAdapterImpl(this);
+		if(monitorAlarm == null) {
+			monitorAlarm = new MonitorAlarm(this);
+		}
+		if(trafficBudget == null) {
+			trafficBudget = new TrafficBudget(this, databaseAdapter, new ClockImpl());
 		}
 	}
 
 	/**
 	 * Overridden to cancel a possibly ongoing internet connectivity test so the next
-	 * one can be started instead.
+	 * one can be started instead, aborting any request it is waiting for.
+	 * A monitoring intent does not cancel the test and is dropped if the service is busy.
 	 * NOTE: ServiceTestCase and pre 1.5 API call onStart()!
 	 * @see android.app.IntentService#onStartCommand(android.content.Intent, int, int)
 	 */
 	@Override
 	public int onStartCommand(Intent intent, int flags, int startId) {
+		if(intent != null && intent.getBooleanExtra(EXTRA_MONITOR, false)) {
+			if(busy) {
+				// Log.d(Inetify.LOG_TAG, "Busy testing, dropping monitoring intent");
+				
+				// Handled as null intent so the service still stops itself
+				return super.onStartCommand(null, flags, startId);
+			}
+			return super.onStartCommand(intent, flags, startId);
+		}
+		Cancellation previous = cancellation;
+		cancellation = new Cancellation();
+		previous.cancel();
 		cancelTester();
 		return super.onStartCommand(intent, flags, startId);
 	}
@@ -110,29 +145,36 @@ public class InetifyIntentService extends IntentService {
 	 */
 	@Override
 	public void onDestroy() {
+		cancellation.cancel();
 		cancelTester();
 		databaseAdapter.close();
 	}
 
 	/**
-	 * Acquires a wake lock in case of intent redelivery, does the work and
-	 * releases the wake lock.
+	 * Acquires a wake lock in case of intent redelivery, waits for further events
+	 * to coalesce them, does the work and releases the wake lock.
 	 */
 	@Override
 	protected void onHandleIntent(final Intent intent) {
 				
 		// Log.d(Inetify.LOG_TAG, String.format("InetifyIntentService onHandleIntent called with intent: %s", intent));
 		
+		busy = true;
 		try {
 			acquireWakeLockIfNeeded(this);
 			
-			if(intent != null) {
+			if(intent != null && ! isCoalesced(intent)) {
 				boolean wifiConnected = intent.getBooleanExtra(ConnectivityActionReceiver.EXTRA_IS_WIFI_CONNECTED, false);
-				test(wifiConnected);
+				if(intent.getBooleanExtra(EXTRA_MONITOR, false)) {
+					monitor();
+				} else {
+					test(wifiConnected);
+				}
 			}
 		} catch(Exception e) {
 			// Log.w(Inetify.LOG_TAG, String.format("Test threw exception: %s", e.getMessage()));
 		} finally {
+			busy = false;
 			if(wakeLock != null) {
 				if(wakeLock.isHeld()) {
 					wakeLock.release();
@@ -144,6 +186,24 @@ public class InetifyIntentService extends IntentService {
 		}
 	}
 	
+	/**
+	 * Waits for the coalescing window if the event of the given intent is part of
+	 * a burst, and returns true if it was superseded by a newer one meanwhile, or
+	 * dropped as redundant.
+	 * @param intent
+	 * @return boolean true if the event should not be tested
+	 * @throws InterruptedException
+	 */
+	private boolean isCoalesced(final Intent intent) throws InterruptedException {
+		long sequence = intent.getLongExtra(ConnectivityActionReceiver.EXTRA_SEQUENCE, EventCoalescer.NO_SEQUENCE);
+		EventCoalescer coalescer = EventCoalescer.getInstance();
+		if(sequence != EventCoalescer.NO_SEQUENCE && coalescer.isBurst(sequence)) {
+			// A newer intent cancels the wait
+			cancellation.await(coalescer.getWindow());
+		}
+		return ! coalescer.shouldTest(sequence);
+	}
+	
 	/**
 	 * Creates a new wake lock and acquires it if the current one is null.
 	 * @param context
@@ -162,7 +222,9 @@ public class InetifyIntentService extends IntentService {
 	
 	/**
 	 * Runs an internet connectivity test if wifiConnected is true, clears an
-	 * existing notification otherwise.
+	 * existing notification otherwise. If Wifi is connected and there is a fresh
+	 * verdict for it in the cache, uses that one without testing or updating the
+	 * test results.
 	 */	
 	private void test(final boolean wifiConnected) {
 		/*
@@ -173,22 +235,102 @@ public class InetifyIntentService extends IntentService {
 		 * So we just check the actual state of Wifi connection.
 		 */
 		// Log.d(Inetify.LOG_TAG, "InetifyIntentService.test() called");		
+		if(! wifiConnected) {
+			monitorAlarm.stop();
+		}
 		IWifiInfo wifiInfo = tester.getWifiInfo();
 		if(wifiInfo != null && databaseAdapter.isIgnoredWifi(wifiInfo.getSSID())) {
 			// Log.d(Inetify.LOG_TAG, String.format("Wifi %s is connected but ignored, skipping test", wifiInfo.getSSID()));
+			monitorAlarm.stop();
+			return;
+		} else if(trafficBudget.isPaused()) {
+			// Log.d(Inetify.LOG_TAG, "Traffic budget reached, skipping test");
+			monitorAlarm.stop();
 			return;
 		} else {
-			TestInfo info = tester.testWifi(TEST_RETRIES, TEST_DELAY_SECS);
+			VerdictCache verdictCache = new VerdictCache(databaseAdapter);
 			
-			databaseAdapter.updateTestResult(info.getTimestamp(), info.getType(), info.getExtra(), info.getIsExpectedTitle());
-			this.sendBroadcast(new Intent(Inetify.UPDATE_TESTRESULT_ACTION));
+			TestInfo info = null;
+			boolean cached = false;
+			if(wifiInfo != null && tester.isWifiConnectedOrConnecting()) {
+				info = verdictCache.get(wifiInfo.getSSID(), wifiInfo.getBSSID(), 
+						getSettingsMillis(Settings.INTERNET_CACHE_TTL), 
+						getSettingsMillis(Settings.INTERNET_CACHE_NOK_TTL));
+			}
 			
-			// Log.d(Inetify.LOG_TAG, String.format("Updated test results in database: %s", info));
+			if(info == null) {
+				info = tester.testWifi(new BackoffRetryPolicy(), cancellation);
+				if(info == null) {
+					// Log.d(Inetify.LOG_TAG, "Test was cancelled or Wifi disconnected");
+					return;
+				}
+				verdictCache.put(info);
+				
+				databaseAdapter.updateTestResult(info);
+				this.sendBroadcast(new Intent(Inetify.UPDATE_TESTRESULT_ACTION));
+				
+				// Log.d(Inetify.LOG_TAG, String.format("Updated test results in database: %s", info));
+			} else {
+				// The cached verdict is already in the test results
+				// Log.d(Inetify.LOG_TAG, String.format("Verdict for %s is cached, skipping test", wifiInfo.getBSSID()));
+				cached = true;
+			}
 			
+			// A cached verdict is only notified if it is not the one notified last
+			if(monitorAlarm.tested(info.getIsExpectedTitle()) || ! cached) {
+				handler.post(new InetifyRunner(info));
+			}
+		}
+	}
+	
+	/**
+	 * Tests internet connectivity again with the cheapest probe while Wifi stays
+	 * connected, and notifies if the result changed since the last test. Stops
+	 * monitoring if Wifi is not connected anymore, the Wifi is ignored or testing
+	 * is paused because the traffic budget is reached.
+	 */
+	private void monitor() {
+		IWifiInfo wifiInfo = tester.getWifiInfo();
+		if(wifiInfo == null || databaseAdapter.isIgnoredWifi(wifiInfo.getSSID()) || trafficBudget.isPaused()) {
+			// Log.d(Inetify.LOG_TAG, "Wifi disconnected, ignored or budget reached, stopping monitoring");
+			monitorAlarm.stop();
+			return;
+		}
+		
+		TestInfo info = tester.testMonitor(cancellation);
+		if(info == null) {
+			if(! cancellation.isCancelled()) {
+				// Log.d(Inetify.LOG_TAG, "Wifi disconnected, stopping monitoring");
+				monitorAlarm.stop();
+			}
+			return;
+		}
+		
+		new VerdictCache(databaseAdapter).put(info);
+		databaseAdapter.updateTestResult(info);
+		this.sendBroadcast(new Intent(Inetify.UPDATE_TESTRESULT_ACTION));
+		
+		if(monitorAlarm.tested(info.getIsExpectedTitle())) {
+			// Log.d(Inetify.LOG_TAG, String.format("Result changed while monitoring: %s", info));
 			handler.post(new InetifyRunner(info));
 		}
 	}
 	
+	/**
+	 * Returns the time in ms for the setting with the given key in minutes,
+	 * 0 if it is not set.
+	 * @param key of the setting
+	 * @return long time in ms
+	 */
+	private long getSettingsMillis(final String key) {
+		SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+		try {
+			return Long.valueOf(sharedPreferences.getString(key, "0")) * 60 * 1000;
+		} catch(NumberFormatException e) {
+			return 0;
+		}
+	}
+	
 	/**
 	 * Cancelling the tester, catching any exception it may throw.
 	 */
@@ -20,6 +20,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import net.luniks.android.impl.ClockImpl;
 import android.app.Activity;
 import android.app.Dialog;
 import android.content.Context;
@@ -27,6 +28,7 @@ import android.content.Intent;
 import android.net.ConnectivityManager;
 import android.net.Uri;
 import android.os.Bundle;
+import android.text.format.Formatter;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.AdapterView;
@@ -70,8 +72,20 @@ public class InfoDetail extends Activity {
 	/** Index of the list item showing connection info */
 	private static final int INDEX_CONNECTION = 4;
 	
+	/** Index of the list item showing the time each phase of the test took */
+	private static final int INDEX_TIMING = 5;
+	
+	/** Index of the list item showing the time until the verdict and the time each site took */
+	private static final int INDEX_DURATION = 6;
+	
+	/** Index of the list item showing the connections opened, reused and resumed by the test */
+	private static final int INDEX_CONNECTIONS = 7;
+	
+	/** Index of the list item showing the data used by the test, today and this month */
+	private static final int INDEX_TRAFFIC = 8;
+	
 	/** Index of the list item to ignore the Wifi network */
-	private static final int INDEX_IGNORE = 5;
+	private static final int INDEX_IGNORE = 9;
 	
 	/** Database adapter */
 	private DatabaseAdapter databaseAdapter;
@@ -241,6 +255,13 @@ public class InfoDetail extends Activity {
 		if(info.getException() != null) {
 			mapFoundtitle.put(KEY_VALUE, getString(R.string.infodetail_value_exception, info.getException()));			
 		}
+		if(info.getIsKnownPortal()) {
+			mapFoundtitle.put(KEY_VALUE, getString(R.string.infodetail_value_knownportal, info.getPageTitle()));
+		}
+		if(info.getQuickCheck() != StatusVerifier.RESULT_UNKNOWN) {
+			String result = getString(info.getQuickCheck() == StatusVerifier.RESULT_OK ? R.string.infodetail_ok : R.string.infodetail_nok);
+			mapFoundtitle.put(KEY_VALUE, getString(R.string.infodetail_value_quickcheck, result));
+		}
 		list.add(INDEX_FOUNDTITLE, mapFoundtitle);
 		
 		Map<String, String> mapInternetsite = new HashMap<String, String>();
@@ -257,6 +278,49 @@ public class InfoDetail extends Activity {
 		}
 		list.add(INDEX_CONNECTION, mapConnection);
 		
+		Map<String, String> mapTiming = new HashMap<String, String>();
+		mapTiming.put(KEY_PROP, getString(R.string.infodetail_prop_timing));
+		String timing = getString(R.string.infodetail_value_timing, info.getDnsMillis(), info.getConnectMillis(), 
+				info.getTlsMillis(), info.getFirstByteMillis(), info.getDownloadMillis());
+		ProbeCoordinator probeCoordinator = ProbeCoordinator.getInstance();
+		timing = getString(R.string.infodetail_value_timing_probes, timing, 
+				probeCoordinator.getProbes(), probeCoordinator.getJoined(), probeCoordinator.getCached());
+		timing = getString(R.string.infodetail_value_timing_verdicts, timing, 
+				VerdictCache.getHits(), VerdictCache.getHits() + VerdictCache.getMisses());
+		EventCoalescer coalescer = EventCoalescer.getInstance();
+		timing = getString(R.string.infodetail_value_timing_events, timing, 
+				coalescer.getReceivedCount(), coalescer.getCoalescedCount(), coalescer.getTestedCount());
+		mapTiming.put(KEY_VALUE, timing);
+		list.add(INDEX_TIMING, mapTiming);
+		
+		Map<String, String> mapDuration = new HashMap<String, String>();
+		mapDuration.put(KEY_PROP, getString(R.string.infodetail_prop_duration));
+		mapDuration.put(KEY_VALUE, getDuration(info));
+		list.add(INDEX_DURATION, mapDuration);
+		
+		Map<String, String> mapConnections = new HashMap<String, String>();
+		mapConnections.put(KEY_PROP, getString(R.string.infodetail_prop_connections));
+		TlsSessionCache sessionCache = ProbeSocketFactory.getInstance().getSessionCache();
+		mapConnections.put(KEY_VALUE, getString(R.string.infodetail_value_connections, 
+				info.getHandshakes(), info.getReusedConnections(), info.getResumedSessions(), 
+				sessionCache.getHits(), sessionCache.getMisses(), sessionCache.getHitRate()));
+		list.add(INDEX_CONNECTIONS, mapConnections);
+		
+		long now = System.currentTimeMillis();
+		String test = Formatter.formatFileSize(this, info.getSentBytes() + info.getReceivedBytes());
+		String today = Formatter.formatFileSize(this, databaseAdapter.fetchDailyTraffic(now));
+		String month = Formatter.formatFileSize(this, databaseAdapter.fetchMonthlyTraffic(now));
+		long budget = new TrafficBudget(this, databaseAdapter, new ClockImpl()).getBudget();
+		Map<String, String> mapTraffic = new HashMap<String, String>();
+		mapTraffic.put(KEY_PROP, getString(R.string.infodetail_prop_traffic));
+		if(budget > 0) {
+			mapTraffic.put(KEY_VALUE, getString(R.string.infodetail_value_traffic_budget, test, today, month, 
+					Formatter.formatFileSize(this, budget)));
+		} else {
+			mapTraffic.put(KEY_VALUE, getString(R.string.infodetail_value_traffic, test, today, month));
+		}
+		list.add(INDEX_TRAFFIC, mapTraffic);
+		
 		if(info.getType() == ConnectivityManager.TYPE_WIFI && info.getExtra() != null && info.getExtra2() != null) {
 			Map<String, String> mapIgnore = new HashMap<String, String>();
 			mapIgnore.put(KEY_PROP, getString(R.string.infodetail_prop_ignore));			
@@ -271,6 +335,36 @@ public class InfoDetail extends Activity {
 		return list;
 	}
 	
+	/**
+	 * Returns the time until the verdict and the number of attempts of the given
+	 * TestInfo, followed by the time each probed site took to answer and the
+	 * stage that failed, if any.
+	 * @param info
+	 * @return String duration
+	 */
+	private String getDuration(final TestInfo info) {
+		String duration = getString(R.string.infodetail_value_duration, info.getDuration(), info.getAttempts());
+		
+		String[] sites = info.getProbedSites();
+		long[] latencies = info.getProbeLatencies();
+		for(int i = 0; i < sites.length && i < latencies.length; i++) {
+			if(latencies[i] < 0) {
+				duration = getString(R.string.infodetail_value_duration_site_cancelled, duration, sites[i]);
+			} else {
+				duration = getString(R.string.infodetail_value_duration_site, duration, sites[i], latencies[i]);
+			}
+		}
+		
+		String[] stages = getResources().getStringArray(R.array.infodetail_stage_names);
+		int stage = info.getFailedStage();
+		if(stage != ProbeException.STAGE_NONE && stage < stages.length) {
+			duration = getString(R.string.infodetail_value_duration_failed, duration, stages[stage], 
+					info.getFailedStageMillis());
+		}
+		
+		return duration;
+	}
+	
 	/**
 	 * Subclass of SimpleAdapter disabling some items in the ItemList.
 	 * 
@@ -16,13 +16,14 @@
 package net.luniks.android.inetify;
 
 import net.luniks.android.impl.AlarmManagerImpl;
+import net.luniks.android.impl.ClockImpl;
 import net.luniks.android.interfaces.IAlarmManager;
+import net.luniks.android.interfaces.IClock;
 import android.app.AlarmManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.os.SystemClock;
 import android.preference.PreferenceManager;
 
 /**
@@ -45,6 +46,9 @@ public class LocationAlarm implements Alarm {
 	/** Alarm manager */
 	private final IAlarmManager alarmManager;
 	
+	/** Clock the alarm is set on */
+	private final IClock clock;
+	
 	/** The operation executed by this alarm */
 	private final PendingIntent operation;
 	
@@ -53,9 +57,19 @@ public class LocationAlarm implements Alarm {
 	 * @param context
 	 */
 	public LocationAlarm(final Context context) {
+		this(context, new ClockImpl());
+	}
+	
+	/**
+	 * Creates an instance using the given context and clock.
+	 * @param context
+	 * @param clock
+	 */
+	public LocationAlarm(final Context context, final IClock clock) {
 		this.context = context;
 		this.sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
 		this.alarmManager = new AlarmManagerImpl((AlarmManager)context.getSystemService(Context.ALARM_SERVICE));
+		this.clock = clock;
 		
 		Intent intent = new Intent(context, LocationAlarmReceiver.class);
 		intent.setAction(LocationAlarmReceiver.ACTION_LOCATION_ALARM);
@@ -75,7 +89,7 @@ public class LocationAlarm implements Alarm {
 		if((autoWifi || notification) && ! airplaneModeOn) {
 			
 			alarmManager.setInexactRepeating(AlarmManager.ELAPSED_REALTIME_WAKEUP,
-					SystemClock.elapsedRealtime() + TRIGGER_DELAY, interval, operation);
+					clock.elapsedRealtime() + TRIGGER_DELAY, interval, operation);
 			
 			// Log.d(Inetify.LOG_TAG, String.format("Alarm set"));
 		} else {
@@ -17,14 +17,15 @@ package net.luniks.android.inetify;
 
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import net.luniks.android.impl.ClockImpl;
 import net.luniks.android.impl.ConnectivityManagerImpl;
 import net.luniks.android.impl.LocationManagerImpl;
 import net.luniks.android.impl.NotificationManagerImpl;
 import net.luniks.android.impl.WifiManagerImpl;
 import net.luniks.android.inetify.Locater.LocaterLocationListener;
+import net.luniks.android.interfaces.IClock;
 import net.luniks.android.interfaces.IConnectivityManager;
 import net.luniks.android.interfaces.ILocationManager;
 import net.luniks.android.interfaces.INetworkInfo;
@@ -96,6 +97,9 @@ public class LocationIntentService extends IntentService implements LocaterLocat
 	
 	/** Locater */
 	private Locater locater;
+	
+	/** Clock used to wait for a location */
+	private IClock clock;
 
 	/**
 	 * Creates an instance with a name.
@@ -133,6 +137,9 @@ public class LocationIntentService extends IntentService implements LocaterLocat
 		if(locater == null) {
 			locater = new LocaterImpl(locationManager);
 		}
+		if(clock == null) {
+			clock = new ClockImpl();
+		}
 	}
 	
 	/**
@@ -156,20 +163,17 @@ public class LocationIntentService extends IntentService implements LocaterLocat
 		locater.stop();
 		found.set(true);
 		
-		WifiLocation nearestLocation = databaseAdapter.getNearestLocationTo(location);
-		
-		if(nearestLocation == null) {
-			return;
-		}
-		
 		boolean autoWifi  = sharedPreferences.getBoolean(Settings.LOCATION_AUTO_WIFI, false);
 		boolean notification  = sharedPreferences.getBoolean(Settings.LOCATION_CHECK, false);
 		int maxDistance = Integer.valueOf(sharedPreferences.getString(Settings.LOCATION_MAX_DISTANCE, "1500"));
 		
-		// Log.d(Inetify.LOG_TAG, String.format("Got location from %s with accuracy %s, distance to %s is %s, max. distance is %s", 
-		// 		location.getProvider(), location.getAccuracy(), nearestLocation.getName(), nearestLocation.getDistance(), maxDistance));
+		// Only looks at the locations around, null if none is within the max. distance
+		WifiLocation nearestLocation = databaseAdapter.getNearestLocationTo(location, maxDistance);
+		
+		// Log.d(Inetify.LOG_TAG, String.format("Got location from %s with accuracy %s, nearest location within %s is %s", 
+		// 		location.getProvider(), location.getAccuracy(), maxDistance, nearestLocation));
 		
-		if(nearestLocation.getDistance() <= maxDistance) {
+		if(nearestLocation != null) {
 			locationNear(location, nearestLocation, autoWifi, notification);
 		} else {
 			locationFar(autoWifi, notification);
@@ -261,7 +265,7 @@ public class LocationIntentService extends IntentService implements LocaterLocat
 			});
 			
 			long timeout = useGPS ? GET_LOCATION_TIMEOUT_GPS : GET_LOCATION_TIMEOUT;			
-			latch.await(timeout, TimeUnit.MILLISECONDS);
+			clock.await(latch, timeout);
 		} catch(InterruptedException e) {
 			// Ignore
 		} finally {
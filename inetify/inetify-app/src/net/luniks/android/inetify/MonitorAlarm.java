@@ -0,0 +1,160 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify;
+
+import net.luniks.android.impl.AlarmManagerImpl;
+import net.luniks.android.impl.ClockImpl;
+import net.luniks.android.interfaces.IAlarmManager;
+import net.luniks.android.interfaces.IClock;
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+/**
+ * Class that sets or cancels an alarm that triggers testing internet connectivity
+ * again while Wifi stays connected, if enabled in the settings. The interval starts
+ * at MIN_INTERVAL and doubles with each test that is OK like the one before, up to
+ * MAX_INTERVAL, and goes back to MIN_INTERVAL after a test that is not OK or changed.
+ * The alarm does not wake up the device but goes off the next time something else
+ * does, i.e. the LocationAlarm or the user, so monitoring does not cost wake-ups of
+ * its own. The interval and the last result are kept in the shared preferences, and
+ * are cleared when monitoring stops.
+ * 
+ * @author torsten.roemer@luniks.net
+ */
+public class MonitorAlarm implements Alarm {
+	
+	/** Shortest interval, after a test that was not OK or changed */
+	public static final long MIN_INTERVAL = 2 * 60 * 1000;
+	
+	/** Longest interval, after a few tests that were OK */
+	public static final long MAX_INTERVAL = AlarmManager.INTERVAL_HOUR;
+	
+	/** Key of the current interval in the shared preferences */
+	public static final String MONITOR_INTERVAL = "monitor_interval";
+	
+	/** Key of the result of the last test in the shared preferences */
+	public static final String MONITOR_LAST_OK = "monitor_last_ok";
+	
+	/** Shared preferences */
+	private final SharedPreferences sharedPreferences;
+	
+	/** Alarm manager */
+	private final IAlarmManager alarmManager;
+	
+	/** Clock the alarm is set on */
+	private final IClock clock;
+	
+	/** The operation executed by this alarm */
+	private final PendingIntent operation;
+	
+	/**
+	 * Creates an instance using the given context.
+	 * @param context
+	 */
+	public MonitorAlarm(final Context context) {
+		this(context, new ClockImpl());
+	}
+	
+	/**
+	 * Creates an instance using the given context and clock.
+	 * @param context
+	 * @param clock
+	 */
+	public MonitorAlarm(final Context context, final IClock clock) {
+		this.sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+		this.alarmManager = new AlarmManagerImpl((AlarmManager)context.getSystemService(Context.ALARM_SERVICE));
+		this.clock = clock;
+		
+		Intent intent = new Intent(context, MonitorAlarmReceiver.class);
+		intent.setAction(MonitorAlarmReceiver.ACTION_MONITOR_ALARM);
+		this.operation = PendingIntent.getBroadcast(context, 0, intent, 0);
+	}
+
+	/**
+	 * Sets the alarm with the current interval if monitoring is enabled, stops
+	 * monitoring otherwise.
+	 */
+	public void reset() {
+		if(isEnabled()) {
+			long interval = sharedPreferences.getLong(MONITOR_INTERVAL, MIN_INTERVAL);
+			
+			alarmManager.set(AlarmManager.ELAPSED_REALTIME, clock.elapsedRealtime() + interval, operation);
+			
+			// Log.d(Inetify.LOG_TAG, String.format("Monitor alarm set in %s ms", interval));
+		} else {
+			stop();
+		}
+	}
+	
+	/**
+	 * Adapts the interval to the given result of a test, sets the alarm accordingly
+	 * and returns true if the result changed since the last test.
+	 * @param ok true if internet connectivity is OK
+	 * @return boolean true if the result changed or there is no last result
+	 */
+	public boolean tested(final boolean ok) {
+		boolean known = sharedPreferences.contains(MONITOR_LAST_OK);
+		boolean changed = ! known || sharedPreferences.getBoolean(MONITOR_LAST_OK, false) != ok;
+		long interval = sharedPreferences.getLong(MONITOR_INTERVAL, MIN_INTERVAL);
+		
+		sharedPreferences.edit()
+			.putBoolean(MONITOR_LAST_OK, ok)
+			.putLong(MONITOR_INTERVAL, known ? getNextInterval(interval, ok && ! changed) : MIN_INTERVAL)
+			.commit();
+		
+		reset();
+		
+		return changed;
+	}
+	
+	/**
+	 * Cancels the alarm and forgets the interval and the last result.
+	 */
+	public void stop() {
+		alarmManager.cancel(operation);
+		sharedPreferences.edit().remove(MONITOR_INTERVAL).remove(MONITOR_LAST_OK).commit();
+		
+		// Log.d(Inetify.LOG_TAG, String.format("Monitor alarm cancelled"));
+	}
+	
+	/**
+	 * Returns the interval following the given one, doubled up to MAX_INTERVAL if
+	 * the result is stable, MIN_INTERVAL otherwise.
+	 * @param interval current interval in ms
+	 * @param stable true if the last test was OK like the one before
+	 * @return long next interval in ms
+	 */
+	public static long getNextInterval(final long interval, final boolean stable) {
+		if(! stable) {
+			return MIN_INTERVAL;
+		}
+		return Math.min(Math.max(interval, MIN_INTERVAL) * 2, MAX_INTERVAL);
+	}
+	
+	/**
+	 * Returns true if testing and monitoring is enabled in the settings.
+	 * @return boolean true if enabled
+	 */
+	private boolean isEnabled() {
+		return sharedPreferences.getBoolean(Settings.INTERNET_CHECK, false) &&
+			sharedPreferences.getBoolean(Settings.INTERNET_MONITOR, false);
+	}
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.PowerManager;
+
+/**
+ * BroadcastReceiver that receives the alarm set by MonitorAlarm and starts
+ * InetifyIntentService to test internet connectivity again.
+ * 
+ * @author torsten.roemer@luniks.net
+ */
+public class MonitorAlarmReceiver extends BroadcastReceiver {
+	
+	public static final String ACTION_MONITOR_ALARM = "net.luniks.android.inetify.action.MONITOR_ALARM";
+
+	/**
+	 * Starts InetifyIntentService, passing an intent with EXTRA_IS_WIFI_CONNECTED
+	 * and EXTRA_MONITOR.
+	 */
+	@Override
+	public void onReceive(final Context context, final Intent intent) {
+		
+		if(intent != null && intent.getAction() != null) {
+			String action = intent.getAction();
+			
+			if(action.equals(ACTION_MONITOR_ALARM)) {
+				
+				// Log.d(Inetify.LOG_TAG, String.format("Received monitor alarm"));
+				
+				if(InetifyIntentService.wakeLock == null) {
+					PowerManager powerManager = (PowerManager)context.getSystemService(Context.POWER_SERVICE);
+					InetifyIntentService.wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, 
+							InetifyIntentService.WAKE_LOCK_TAG);
+				}
+				if(! InetifyIntentService.wakeLock.isHeld()) {
+					InetifyIntentService.wakeLock.acquire();
+					
+					// Log.d(Inetify.LOG_TAG, String.format("Acquired wake lock"));
+				}
+				
+				Intent serviceIntent = new Intent(context, InetifyIntentService.class);
+				serviceIntent.putExtra(ConnectivityActionReceiver.EXTRA_IS_WIFI_CONNECTED, true);
+				serviceIntent.putExtra(InetifyIntentService.EXTRA_MONITOR, true);
+				context.startService(serviceIntent);
+			}
+		}
+	}
+
+}
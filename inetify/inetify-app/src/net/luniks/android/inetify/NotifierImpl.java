@@ -60,6 +60,7 @@ public class NotifierImpl implements Notifier {
 
 	/**
 	 * Creates an "internet connectivity test" notification based on the given TestInfo,
+	 * telling a captive portal and blocked sites from other failures by the verdict,
 	 * cancels an existing notification if info is null.
 	 * @param info test info
 	 */
@@ -88,6 +89,17 @@ public class NotifierImpl implements Notifier {
             tickerText = context.getString(R.string.notification_nok_title);
             contentText = context.getString(R.string.notification_nok_text);
             icon = R.drawable.notification_nok;
+            
+            if(info.getVerdict() == TestInfo.VERDICT_PORTAL) {
+                tickerText = context.getString(R.string.notification_portal_title);
+                contentText = context.getString(R.string.notification_portal_text);
+            } else if(info.getVerdict() == TestInfo.VERDICT_BLOCKED) {
+                tickerText = context.getString(R.string.notification_blocked_title);
+                contentText = context.getString(R.string.notification_blocked_text);
+            } else if(info.getVerdict() == TestInfo.VERDICT_INTERCEPTED) {
+                tickerText = context.getString(R.string.notification_intercepted_title);
+                contentText = context.getString(R.string.notification_intercepted_text);
+            }
         }
 
 		Intent intent = new Intent().setClass(context, InfoDetail.class);
@@ -0,0 +1,311 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Classifies a page as captive portal if its title or the URL it was redirected to 
+ * contains one of a dictionary of known portal signatures, or the beginning of its
+ * body contains one of the vendor specific ones, case insensitive. The signatures are compiled once into an 
+ * Aho-Corasick automaton, so the text is scanned in a single pass, with costs
+ * not depending on the number of signatures, and can be fed in chunks as it
+ * is read. Bytes are fed as ISO-8859-1, so only ASCII signatures match them.
+ * 
+ * @author torsten.roemer@luniks.net
+ */
+public final class PortalClassifier {
+	
+	/** Signatures of captive portals: login page titles, vendors and redirect hosts */
+	public static final String[] DEFAULT_SIGNATURES = {
+		"login", "log in", "logon", "hotspot", "captive portal", "guest portal", "splash page",
+		"wifi access", "wi-fi access", "internet access", "network authentication", 
+		"web authentication", "authentication required", "accept the terms", "terms of use",
+		"terms and conditions", "voucher", "access code",
+		"<wispaccessgatewayparam", "chillispot", "coova", "nomadix", "mikrotik", "meraki",
+		"network-auth.com", "arubanetworks.com", "ruckus", "fortinet", "antlabs", "zyxel",
+		"portal.", "captive.", "hotspot.", "login.", "1.1.1.1/login"
+	};
+	
+	/** 
+	 * Signatures specific to captive portal vendors and gateways, generic words like 
+	 * "log in" occur in the body of normal pages too
+	 */
+	public static final String[] BODY_SIGNATURES = {
+		"<wispaccessgatewayparam", "chillispot", "coova", "nomadix", "mikrotik", "meraki",
+		"network-auth.com", "arubanetworks.com", "ruckus", "fortinet", "antlabs", "zyxel",
+		"1.1.1.1/login"
+	};
+	
+	/** No signature matched */
+	public static final int NO_MATCH = -1;
+	
+	/** Classifier with the default signatures */
+	private static final PortalClassifier instance = new PortalClassifier(DEFAULT_SIGNATURES);
+	
+	/** Classifier with the body signatures */
+	private static final PortalClassifier bodyInstance = new PortalClassifier(BODY_SIGNATURES);
+	
+	/** The signatures */
+	private final String[] signatures;
+	
+	/** Sorted case folded characters occurring in the signatures */
+	private final char[] alphabet;
+	
+	/** Index in the alphabet of ASCII characters, -1 if not in the alphabet */
+	private final int[] asciiSymbols = new int[128];
+	
+	/** Next state by state and symbol, states * alphabet.length */
+	private final int[] transitions;
+	
+	/** Signature matched when reaching a state, NO_MATCH if none */
+	private final int[] outputs;
+	
+	/**
+	 * Compiles a classifier for the given signatures.
+	 * @param signatures
+	 */
+	public PortalClassifier(final String[] signatures) {
+		this.signatures = signatures.clone();
+		
+		TreeSet<Character> chars = new TreeSet<Character>();
+		for(String signature : signatures) {
+			for(int i = 0; i < signature.length(); i++) {
+				chars.add(TitleMatcher.fold(signature.charAt(i)));
+			}
+		}
+		alphabet = new char[chars.size()];
+		int symbol = 0;
+		for(char c : chars) {
+			alphabet[symbol++] = c;
+		}
+		for(int c = 0; c < asciiSymbols.length; c++) {
+			int index = Arrays.binarySearch(alphabet, (char)c);
+			asciiSymbols[c] = index < 0 ? -1 : index;
+		}
+		
+		// Build the trie
+		final int width = alphabet.length;
+		List<int[]> trie = new ArrayList<int[]>();
+		List<Integer> terminals = new ArrayList<Integer>();
+		trie.add(newRow(width));
+		terminals.add(NO_MATCH);
+		for(int s = 0; s < signatures.length; s++) {
+			int state = 0;
+			String signature = signatures[s];
+			for(int i = 0; i < signature.length(); i++) {
+				int next = symbol(TitleMatcher.fold(signature.charAt(i)));
+				if(trie.get(state)[next] == -1) {
+					trie.get(state)[next] = trie.size();
+					trie.add(newRow(width));
+					terminals.add(NO_MATCH);
+				}
+				state = trie.get(state)[next];
+			}
+			if(signature.length() > 0 && terminals.get(state) == NO_MATCH) {
+				terminals.set(state, s);
+			}
+		}
+		
+		// Complete it to a deterministic automaton following the failure links breadth first
+		final int states = trie.size();
+		transitions = new int[states * width];
+		outputs = new int[states];
+		int[] failures = new int[states];
+		LinkedList<Integer> queue = new LinkedList<Integer>();
+		outputs[0] = terminals.get(0);
+		for(int a = 0; a < width; a++) {
+			int next = trie.get(0)[a];
+			if(next == -1) {
+				transitions[a] = 0;
+			} else {
+				transitions[a] = next;
+				failures[next] = 0;
+				queue.add(next);
+			}
+		}
+		while(! queue.isEmpty()) {
+			int state = queue.removeFirst();
+			int terminal = terminals.get(state);
+			outputs[state] = terminal != NO_MATCH ? terminal : outputs[failures[state]];
+			for(int a = 0; a < width; a++) {
+				int next = trie.get(state)[a];
+				if(next == -1) {
+					transitions[state * width + a] = transitions[failures[state] * width + a];
+				} else {
+					transitions[state * width + a] = next;
+					failures[next] = transitions[failures[state] * width + a];
+					queue.add(next);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns the classifier with the default signatures.
+	 * @return PortalClassifier
+	 */
+	public static PortalClassifier getInstance() {
+		return instance;
+	}
+	
+	/**
+	 * Returns the classifier with the body signatures.
+	 * @return PortalClassifier
+	 */
+	public static PortalClassifier getBodyInstance() {
+		return bodyInstance;
+	}
+	
+	/**
+	 * Returns the signature with the given index.
+	 * @param index
+	 * @return String signature
+	 */
+	public String getSignature(final int index) {
+		return signatures[index];
+	}
+	
+	/**
+	 * Returns the number of states of the automaton.
+	 * @return int number of states
+	 */
+	public int getStateCount() {
+		return outputs.length;
+	}
+	
+	/**
+	 * Returns a new scan of this classifier.
+	 * @return Scan
+	 */
+	public Scan newScan() {
+		return new Scan();
+	}
+	
+	/**
+	 * Returns the signature contained in the given text, or null if there is none.
+	 * @param text
+	 * @return String signature or null
+	 */
+	public String classify(final CharSequence text) {
+		Scan scan = new Scan();
+		scan.feed(text);
+		return scan.getSignature();
+	}
+	
+	/**
+	 * Returns the next state after the given state and character.
+	 * @param state
+	 * @param c
+	 * @return int next state
+	 */
+	private int next(final int state, final char c) {
+		int symbol = symbol(TitleMatcher.fold(c));
+		return symbol == -1 ? 0 : transitions[state * alphabet.length + symbol];
+	}
+	
+	/**
+	 * Returns the index in the alphabet of the given case folded character,
+	 * -1 if it is not in the alphabet.
+	 * @param c
+	 * @return int symbol
+	 */
+	private int symbol(final char c) {
+		if(c < asciiSymbols.length) {
+			return asciiSymbols[c];
+		}
+		int index = Arrays.binarySearch(alphabet, c);
+		return index < 0 ? -1 : index;
+	}
+	
+	/**
+	 * Returns a new row of the trie without transitions.
+	 * @param width
+	 * @return int[] row
+	 */
+	private static int[] newRow(final int width) {
+		int[] row = new int[width];
+		Arrays.fill(row, -1);
+		return row;
+	}
+	
+	/**
+	 * Scan of a text fed in one or more chunks, stops at the first signature found.
+	 */
+	public final class Scan {
+		
+		private int state = 0;
+		private int match = NO_MATCH;
+		
+		private Scan() {
+		}
+		
+		/**
+		 * Feeds the given characters.
+		 * @param text
+		 */
+		public void feed(final CharSequence text) {
+			if(text == null) {
+				return;
+			}
+			for(int i = 0; i < text.length() && match == NO_MATCH; i++) {
+				state = next(state, text.charAt(i));
+				match = outputs[state];
+			}
+		}
+		
+		/**
+		 * Feeds the given bytes as ISO-8859-1 characters.
+		 * @param bytes
+		 * @param offset
+		 * @param length
+		 */
+		public void feed(final byte[] bytes, final int offset, final int length) {
+			for(int i = offset; i < offset + length && match == NO_MATCH; i++) {
+				state = next(state, (char)(bytes[i] & 0xff));
+				match = outputs[state];
+			}
+		}
+		
+		/**
+		 * Starts over with the next text, keeping a signature already found.
+		 */
+		public void reset() {
+			state = 0;
+		}
+		
+		/**
+		 * Returns true if a signature was found.
+		 * @return boolean true if found
+		 */
+		public boolean isMatched() {
+			return match != NO_MATCH;
+		}
+		
+		/**
+		 * Returns the signature found, or null if there is none.
+		 * @return String signature or null
+		 */
+		public String getSignature() {
+			return match == NO_MATCH ? null : signatures[match];
+		}
+	}
+
+}
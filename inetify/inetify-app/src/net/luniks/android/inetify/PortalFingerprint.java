@@ -0,0 +1,160 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify;
+
+/**
+ * Compact fingerprint of the page an internet site answers with on a Wifi network,
+ * i.e. the login page of a captive portal: its ETag and Last-Modified headers, the
+ * URL it was redirected to and a hash of its first HASH_BYTES, along with its title.
+ * Used to send conditional requests and to recognize a known page without downloading
+ * and parsing it again. TitleVerifier updates an instance with what it found and sets
+ * it matched if the page is the one fingerprinted before, and sets the portal signature
+ * PortalClassifier found in the page, if any.
+ * 
+ * @author torsten.roemer@luniks.net
+ */
+public final class PortalFingerprint {
+	
+	/** Number of bytes at the beginning of the page that are hashed */
+	public static final int HASH_BYTES = 1024;
+	
+	/** Initial value of the hash, FNV-1a offset basis */
+	public static final long INITIAL_HASH = 0xcbf29ce484222325L;
+	
+	/** FNV-1a prime */
+	private static final long PRIME = 0x100000001b3L;
+	
+	/** Value of the ETag header, may be null */
+	private String etag;
+	
+	/** Value of the Last-Modified header, may be null */
+	private String lastModified;
+	
+	/** URL the request was redirected to, null if it was not redirected */
+	private String location;
+	
+	/** Hash of the first HASH_BYTES of the page, 0 if unknown */
+	private long hash;
+	
+	/** Title of the page */
+	private String pageTitle;
+	
+	/** True if the page matched this fingerprint */
+	private boolean matched;
+	
+	/** Portal signature found in the page, null if none, not stored */
+	private String signature;
+	
+	public String getEtag() {
+		return etag;
+	}
+	public void setEtag(final String etag) {
+		this.etag = etag;
+	}
+	public String getLastModified() {
+		return lastModified;
+	}
+	public void setLastModified(final String lastModified) {
+		this.lastModified = lastModified;
+	}
+	public String getLocation() {
+		return location;
+	}
+	public void setLocation(final String location) {
+		this.location = location;
+	}
+	public long getHash() {
+		return hash;
+	}
+	public void setHash(final long hash) {
+		this.hash = hash;
+	}
+	public String getPageTitle() {
+		return pageTitle;
+	}
+	public void setPageTitle(final String pageTitle) {
+		this.pageTitle = pageTitle;
+	}
+	public boolean getIsMatched() {
+		return matched;
+	}
+	public void setIsMatched(final boolean matched) {
+		this.matched = matched;
+	}
+	public String getSignature() {
+		return signature;
+	}
+	public void setSignature(final String signature) {
+		this.signature = signature;
+	}
+	
+	/**
+	 * Returns true if this fingerprint has a page title and something to recognize
+	 * the page by.
+	 * @return boolean true if the fingerprint is usable
+	 */
+	public boolean isKnown() {
+		return pageTitle != null && (hash != 0 || etag != null || lastModified != null);
+	}
+	
+	/**
+	 * Returns true if the given location and hash match this fingerprint.
+	 * @param location URL the request was redirected to, may be null
+	 * @param hash hash of the first HASH_BYTES of the page
+	 * @return boolean true if the page matches
+	 */
+	public boolean matches(final String location, final long hash) {
+		if(! isKnown() || this.hash == 0 || this.hash != hash) {
+			return false;
+		}
+		return this.location == null ? location == null : this.location.equals(location);
+	}
+	
+	/**
+	 * Updates the given FNV-1a hash with the given bytes and returns it.
+	 * @param hash current hash, INITIAL_HASH to start
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @return long updated hash
+	 */
+	public static long hash(final long hash, final byte[] bytes, final int offset, final int length) {
+		long h = hash;
+		for(int i = offset; i < offset + length; i++) {
+			h ^= bytes[i] & 0xff;
+			h *= PRIME;
+		}
+		return h;
+	}
+	
+	/**
+	 * String representation of this PortalFingerprint instance.
+	 * @return string representation
+	 */
+	public String toString() {
+		StringBuffer buffer = new StringBuffer();
+		buffer.append("PortalFingerprint [ etag = ").append(etag);
+		buffer.append(", lastModified = ").append(lastModified);
+		buffer.append(", location = ").append(location);
+		buffer.append(", hash = ").append(Long.toHexString(hash));
+		buffer.append(", pageTitle = ").append(pageTitle);
+		buffer.append(", matched = ").append(matched);
+		buffer.append(", signature = ").append(signature);
+		buffer.append(" ]");
+		return buffer.toString();
+	}
+
+}
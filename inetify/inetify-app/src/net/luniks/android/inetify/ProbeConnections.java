@@ -0,0 +1,240 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.PortUnreachableException;
+import java.net.SocketException;
+import java.net.URL;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Keeps track of the connections of the probes of one test, so that connections
+ * are reused across the attempts of a test instead of turning off keep-alive for
+ * the whole process. A connection whose response was read completely is released
+ * to the keep-alive pool of HttpURLConnection instead of being closed, and a request
+ * failing on a connection that may have been reused and gone stale in the meantime
+ * is retried once on a new connection. Counts the connections that were opened, 
+ * i.e. the TCP and TLS handshakes, the ones that were reused and the TLS handshakes
+ * that resumed a cached session, and the bytes of the requests sent and the responses
+ * received, not counting the overhead of TCP and TLS.
+ * An instance is created for each test and passed to every probe along with its Cancellation.
+ * 
+ * @author torsten.roemer@luniks.net
+ */
+public final class ProbeConnections {
+	
+	/** Max. number of bytes of the rest of a response read to be able to reuse the connection */
+	public static final int MAX_DRAIN_BYTES = 4 * 1024;
+	
+	/** Origins with a connection released by this test */
+	private final Set<String> released = new HashSet<String>();
+	
+	/** Number of connections opened */
+	private int handshakes;
+	
+	/** Number of connections reused */
+	private int reused;
+	
+	/** Number of requests retried because the connection was stale */
+	private int retries;
+	
+	/** Number of TLS handshakes that resumed a cached session */
+	private int resumed;
+	
+	/** Number of bytes of the requests sent */
+	private long sentBytes;
+	
+	/** Number of bytes of the responses received */
+	private long receivedBytes;
+	
+	/**
+	 * Returns true if a connection to the origin of the given URL was released 
+	 * by this test and is not in use, so that it is probably reused.
+	 * @param url
+	 * @return boolean true if there is a released connection
+	 */
+	public synchronized boolean isReleased(final URL url) {
+		return released.contains(getOrigin(url));
+	}
+	
+	/**
+	 * Counts a connection to the given URL that is new if opened is true, reused otherwise.
+	 * @param url
+	 * @param opened true if the connection was opened, false if it was reused
+	 */
+	public synchronized void connected(final URL url, final boolean opened) {
+		if(opened) {
+			handshakes++;
+		} else {
+			reused++;
+		}
+		released.remove(getOrigin(url));
+	}
+	
+	/**
+	 * Notes that a connection to the given URL was released for reuse.
+	 * @param url
+	 */
+	public synchronized void released(final URL url) {
+		released.add(getOrigin(url));
+	}
+	
+	/**
+	 * Counts a request to the given URL retried on a new connection.
+	 * @param url
+	 */
+	public synchronized void retried(final URL url) {
+		retries++;
+		released.remove(getOrigin(url));
+	}
+	
+	/**
+	 * Counts a TLS handshake that resumed a cached session.
+	 */
+	public synchronized void resumed() {
+		resumed++;
+	}
+	
+	/**
+	 * Counts the given number of bytes of a request sent.
+	 * @param bytes
+	 */
+	public synchronized void sent(final long bytes) {
+		sentBytes += bytes;
+	}
+	
+	/**
+	 * Counts the given number of bytes of a response received.
+	 * @param bytes
+	 */
+	public synchronized void received(final long bytes) {
+		receivedBytes += bytes;
+	}
+	
+	/**
+	 * Returns the number of connections opened, each with a TCP and for HTTPS a TLS handshake.
+	 * @return int number of connections opened
+	 */
+	public synchronized int getHandshakes() {
+		return handshakes;
+	}
+	
+	/**
+	 * Returns the number of connections reused.
+	 * @return int number of connections reused
+	 */
+	public synchronized int getReused() {
+		return reused;
+	}
+	
+	/**
+	 * Returns the number of requests retried because the connection was stale.
+	 * @return int number of retries
+	 */
+	public synchronized int getRetries() {
+		return retries;
+	}
+	
+	/**
+	 * Returns the number of TLS handshakes that resumed a cached session.
+	 * @return int number of resumed sessions
+	 */
+	public synchronized int getResumed() {
+		return resumed;
+	}
+	
+	/**
+	 * Returns the number of bytes of the requests sent.
+	 * @return long number of bytes sent
+	 */
+	public synchronized long getSentBytes() {
+		return sentBytes;
+	}
+	
+	/**
+	 * Returns the number of bytes of the responses received.
+	 * @return long number of bytes received
+	 */
+	public synchronized long getReceivedBytes() {
+		return receivedBytes;
+	}
+	
+	/**
+	 * Returns the origin of the given URL, i.e. "http://www.google.de:80".
+	 * @param url
+	 * @return String origin
+	 */
+	public static String getOrigin(final URL url) {
+		int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+		return String.format("%s://%s:%s", url.getProtocol(), url.getHost(), port).toLowerCase();
+	}
+	
+	/**
+	 * Returns true if the given exception could be caused by a stale connection, 
+	 * i.e. "Connection reset by peer" or the end of the stream instead of a response,
+	 * and not by a timeout, cancelling, failing to connect or some other error.
+	 * @param e
+	 * @return boolean true if the connection may have been stale
+	 */
+	public static boolean isStale(final IOException e) {
+		if(e instanceof ConnectException || e instanceof NoRouteToHostException || 
+				e instanceof PortUnreachableException) {
+			return false;
+		}
+		if(e instanceof SocketException || e instanceof EOFException) {
+			return true;
+		}
+		String message = e.getMessage();
+		return message != null && message.toLowerCase().contains("end of stream");
+	}
+	
+	/**
+	 * Reads the rest of the given stream up to MAX_DRAIN_BYTES and returns true if 
+	 * it was read completely, so that the connection can be reused. Waits for more
+	 * of the stream only once, i.e. for the body following the headers, and gives
+	 * up if it would have to wait again, so that a trickling response does not 
+	 * delay the test.
+	 * @param in
+	 * @return boolean true if the stream was read completely
+	 * @throws IOException
+	 */
+	public static boolean drain(final InputStream in) throws IOException {
+		byte[] buffer = new byte[512];
+		int total = 0;
+		int waits = 0;
+		while(total <= MAX_DRAIN_BYTES) {
+			int available = in.available();
+			// Reading one byte returns the end of the stream right away if that is all that's left
+			int read = in.read(buffer, 0, available > 0 ? Math.min(available, buffer.length) : 1);
+			if(read == -1) {
+				return true;
+			}
+			if(available == 0 && ++waits > 1) {
+				// Trickling in
+				return false;
+			}
+			total += read;
+		}
+		return false;
+	}
+
+}
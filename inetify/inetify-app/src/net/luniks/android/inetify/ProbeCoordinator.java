@@ -0,0 +1,328 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.luniks.android.impl.ClockImpl;
+import net.luniks.android.interfaces.IClock;
+
+/**
+ * Coordinates the probes of all testers in the process, so that a manual test and
+ * a test of the service running at the same time don't both probe the same sites 
+ * over the same network. A caller probing while a probe with the same key is in
+ * flight waits for it and gets a copy of its results, and the results of a probe
+ * are served from memory to callers accepting results of that age.
+ * A probe that is cancelled has no results, so the callers waiting for it probe
+ * again, one of them for all others.
+ * 
+ * @author torsten.roemer@luniks.net
+ */
+public final class ProbeCoordinator {
+	
+	/** Max. age in ms of results served from memory */
+	public static final long MAX_AGE = 10 * 1000;
+	
+	/** Max. number of results kept in memory */
+	private static final int MAX_RESULTS = 8;
+	
+	/** Shared instance */
+	private static final ProbeCoordinator instance = new ProbeCoordinator();
+	
+	/**
+	 * A probe of the sites, updating a TestInfo instance with its results.
+	 */
+	public interface Probe {
+		
+		/**
+		 * Probes and updates the given TestInfo instance with the results.
+		 * @param info TestInfo to update with the results
+		 * @param cancellation cancellation of the test
+		 */
+		void probe(TestInfo info, Cancellation cancellation);
+	}
+	
+	/** Clock the age of the results is measured on */
+	private final IClock clock;
+	
+	/** Probes in flight by key, guarded by this */
+	private final Map<String, Flight> flights = new HashMap<String, Flight>();
+	
+	/** Results of the last probes by key, least recently used first, guarded by this */
+	private final Map<String, TestInfo> results = new LinkedHashMap<String, TestInfo>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, TestInfo> eldest) {
+			return size() > MAX_RESULTS;
+		}
+	};
+	
+	/** Number of probes done */
+	private final AtomicInteger probes = new AtomicInteger(0);
+	
+	/** Number of callers that got the results of a probe in flight */
+	private final AtomicInteger joined = new AtomicInteger(0);
+	
+	/** Number of callers that got results from memory */
+	private final AtomicInteger cached = new AtomicInteger(0);
+	
+	/**
+	 * Constructs an instance that does not share the probes with the shared instance.
+	 */
+	public ProbeCoordinator() {
+		this(new ClockImpl());
+	}
+	
+	/**
+	 * Constructs an instance that does not share the probes with the shared instance,
+	 * using the given clock.
+	 * @param clock
+	 */
+	public ProbeCoordinator(final IClock clock) {
+		this.clock = clock;
+	}
+	
+	/**
+	 * Returns the shared instance.
+	 * @return ProbeCoordinator
+	 */
+	public static ProbeCoordinator getInstance() {
+		return instance;
+	}
+	
+	/**
+	 * Updates the given TestInfo instance with the results of a probe with the given key.
+	 * Copies the results of the probe in flight, or the last results if they are not
+	 * older than the given maxAge, or does the given probe. Does nothing if cancelled 
+	 * or interrupted while waiting for the probe in flight. Always probes if the key is null.
+	 * @param key identifies what is probed over which network, may be null
+	 * @param maxAge max. age in ms of the last results, 0 to not use them
+	 * @param info TestInfo to update with the results
+	 * @param cancellation cancellation of the test
+	 * @param probe probe to do if there are no results to share
+	 */
+	public void probe(final String key, final long maxAge, final TestInfo info, 
+			final Cancellation cancellation, final Probe probe) {
+		
+		if(key == null) {
+			probes.incrementAndGet();
+			probe.probe(info, cancellation);
+			return;
+		}
+		
+		while(! cancellation.isCancelled()) {
+			Flight flight;
+			boolean leader = false;
+			synchronized(this) {
+				TestInfo result = results.get(key);
+				if(result != null && isFresh(result, clock.currentTimeMillis(), maxAge)) {
+					copyProbe(result, info);
+					cached.incrementAndGet();
+					// Log.d(Inetify.LOG_TAG, String.format("Probe results of %s from memory", key));
+					return;
+				}
+				flight = flights.get(key);
+				if(flight == null) {
+					flight = new Flight();
+					flights.put(key, flight);
+					leader = true;
+				}
+			}
+			
+			if(leader) {
+				lead(key, flight, info, cancellation, probe);
+				return;
+			}
+			
+			// Log.d(Inetify.LOG_TAG, String.format("Waiting for the probe of %s in flight", key));
+			TestInfo result = flight.await(cancellation);
+			if(result != null) {
+				copyProbe(result, info);
+				joined.incrementAndGet();
+				return;
+			}
+			if(Thread.currentThread().isInterrupted()) {
+				return;
+			}
+			// The probe in flight was cancelled, probe again
+		}
+	}
+	
+	/**
+	 * Does the given probe for all callers with the given key, and shares its
+	 * results with them if it was not cancelled.
+	 * @param key
+	 * @param flight probe in flight
+	 * @param info TestInfo to update with the results
+	 * @param cancellation cancellation of the test
+	 * @param probe probe to do
+	 */
+	private void lead(final String key, final Flight flight, final TestInfo info, 
+			final Cancellation cancellation, final Probe probe) {
+		TestInfo result = null;
+		try {
+			probes.incrementAndGet();
+			probe.probe(info, cancellation);
+			if(! cancellation.isCancelled()) {
+				result = new TestInfo();
+				copyProbe(info, result);
+				result.setTimestamp(clock.currentTimeMillis());
+			}
+		} finally {
+			synchronized(this) {
+				flights.remove(key);
+				if(result != null) {
+					results.put(key, result);
+				}
+			}
+			flight.complete(result);
+		}
+	}
+	
+	/**
+	 * Returns the number of probes done.
+	 * @return int number of probes
+	 */
+	public int getProbes() {
+		return probes.get();
+	}
+	
+	/**
+	 * Returns the number of callers that got the results of a probe in flight
+	 * instead of probing.
+	 * @return int number of callers that joined a probe
+	 */
+	public int getJoined() {
+		return joined.get();
+	}
+	
+	/**
+	 * Returns the number of callers that got results from memory instead of probing.
+	 * @return int number of callers served from memory
+	 */
+	public int getCached() {
+		return cached.get();
+	}
+	
+	/**
+	 * Clears the results in memory and resets the counters.
+	 */
+	public void clear() {
+		synchronized(this) {
+			results.clear();
+		}
+		probes.set(0);
+		joined.set(0);
+		cached.set(0);
+	}
+	
+	/**
+	 * Returns true if the given results are not older than the given maxAge at the given time.
+	 * @param result results of a probe
+	 * @param now current time
+	 * @param maxAge max. age in ms
+	 * @return boolean true if fresh
+	 */
+	public static boolean isFresh(final TestInfo result, final long now, final long maxAge) {
+		long age = now - result.getTimestamp();
+		return age >= 0 && age < maxAge;
+	}
+	
+	/**
+	 * Copies the results of a probe from the given TestInfo instance to the other one,
+	 * leaving the network info, attempts, duration and connections alone.
+	 * @param from TestInfo with the results
+	 * @param to TestInfo to update
+	 */
+	public static void copyProbe(final TestInfo from, final TestInfo to) {
+		to.setSite(from.getSite());
+		to.setTitle(from.getTitle());
+		to.setPageTitle(from.getPageTitle());
+		to.setIsExpectedTitle(from.getIsExpectedTitle());
+		to.setException(from.getException());
+		to.setQuickCheck(from.getQuickCheck());
+		to.setProbedSites(from.getProbedSites().clone());
+		to.setProbeLatencies(from.getProbeLatencies().clone());
+		to.setFailedStage(from.getFailedStage());
+		to.setFailedStageMillis(from.getFailedStageMillis());
+		to.setIsKnownPortal(from.getIsKnownPortal());
+		to.setVerdict(from.getVerdict());
+		to.setSignature(from.getSignature());
+		to.setDnsMillis(from.getDnsMillis());
+		to.setConnectMillis(from.getConnectMillis());
+		to.setTlsMillis(from.getTlsMillis());
+		to.setFirstByteMillis(from.getFirstByteMillis());
+		to.setDownloadMillis(from.getDownloadMillis());
+	}
+	
+	/**
+	 * A probe in flight the callers with the same key wait for.
+	 */
+	private static final class Flight {
+		
+		/** True when the probe is done, guarded by this */
+		private boolean done = false;
+		
+		/** Results of the probe, null if it was cancelled, guarded by this */
+		private TestInfo result;
+		
+		/**
+		 * Sets the results of the probe and wakes up the callers waiting for them.
+		 * @param result results, null if cancelled
+		 */
+		private synchronized void complete(final TestInfo result) {
+			this.result = result;
+			this.done = true;
+			notifyAll();
+		}
+		
+		/**
+		 * Waits until the probe is done or the given cancellation is cancelled, 
+		 * and returns the results, or null if either of them was cancelled.
+		 * @param cancellation cancellation of the waiting caller
+		 * @return TestInfo results or null
+		 */
+		private TestInfo await(final Cancellation cancellation) {
+			Closeable wakeUp = new Closeable() {
+				public void close() {
+					synchronized(Flight.this) {
+						Flight.this.notifyAll();
+					}
+				}
+			};
+			cancellation.register(wakeUp);
+			try {
+				synchronized(this) {
+					while(! done && ! cancellation.isCancelled()) {
+						wait();
+					}
+					return cancellation.isCancelled() ? null : result;
+				}
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			} finally {
+				cancellation.unregister(wakeUp);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify;
+
+import java.io.IOException;
+
+/**
+ * IOException thrown when a stage of testing internet connectivity fails,
+ * carrying the stage and the time in ms it took until it failed.
+ * 
+ * @author torsten.roemer@luniks.net
+ */
+public class ProbeException extends IOException {
+	
+	private static final long serialVersionUID = 1L;
+
+	/** No stage failed */
+	public static final int STAGE_NONE = 0;
+	
+	/** Resolving the host name failed */
+	public static final int STAGE_DNS = 1;
+	
+	/** Connecting to the host failed */
+	public static final int STAGE_CONNECT = 2;
+	
+	/** The HTTP request failed */
+	public static final int STAGE_HTTP = 3;
+	
+	/** The certificate of the host was rejected, i.e. not trusted or not for its host name */
+	public static final int STAGE_CERTIFICATE = 4;
+	
+	/** Names of the stages used in the message */
+	private static final String[] STAGE_NAMES = {"None", "DNS", "Connect", "HTTP", "Certificate"};
+	
+	/** The stage that failed */
+	private final int stage;
+	
+	/** Time in ms until the stage failed */
+	private final long millis;
+	
+	/**
+	 * Constructs an instance for the given stage, time and cause.
+	 * @param stage stage that failed
+	 * @param millis time in ms until the stage failed
+	 * @param message message describing the failure
+	 * @param cause the cause, may be null
+	 */
+	public ProbeException(final int stage, final long millis, final String message, final Throwable cause) {
+		super(String.format("%s failed after %s ms: %s", STAGE_NAMES[stage], millis, message));
+		this.stage = stage;
+		this.millis = millis;
+		if(cause != null) {
+			this.initCause(cause);
+		}
+	}
+	
+	public int getStage() {
+		return stage;
+	}
+	
+	public long getMillis() {
+		return millis;
+	}
+
+}
@@ -0,0 +1,492 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.net.ssl.HttpsURLConnection;
+
+/**
+ * Opens an HTTP connection in explicit stages: resolving the host name, connecting
+ * to the host and then the HTTP request, each with its own timeout. The first stage
+ * that fails throws a ProbeException with the stage and the time it took, so that a
+ * network blocking DNS or dropping connections is detected without waiting for the
+ * timeout of the whole request. A certificate of the host that is rejected when
+ * connecting fails with a stage of its own. The time each phase took is recorded in ProbeTimings,
+ * with the TLS handshake told from connecting by ProbeSocketFactory.
+ * The connection is registered with the cancellation so that cancelling
+ * aborts it immediately. A connection whose response was read completely is
+ * released for reuse by the following attempts of the test, and a request that
+ * fails on a connection that may have been reused is retried once on a new one,
+ * see ProbeConnections. The bytes of the request and of the response read through
+ * getInputStream() are counted with the connections of the test, the request 
+ * estimated since HttpURLConnection does not tell which headers it adds, and
+ * responses to redirects that were followed not counted at all. 
+ * An instance is used for one request only.
+ * 
+ * @author torsten.roemer@luniks.net
+ */
+public final class ProbePipeline {
+	
+	/** Timeout resolving the host name */
+	public static final int DNS_TIMEOUT = 1000;
+	
+	/** Timeout connecting to the host, includes the TLS handshake for HTTPS */
+	public static final int CONNECT_TIMEOUT = 1500;
+	
+	/** Read timeout of the HTTP request */
+	public static final int HTTP_TIMEOUT = 3000;
+	
+	/** Estimated bytes of the request headers added by HttpURLConnection, i.e. User-Agent */
+	private static final int REQUEST_HEADER_BYTES = 160;
+	
+	/** Line break ending a header line */
+	private static final int CRLF = 2;
+	
+	/** Max. number of host names resolved concurrently, one for each concurrent probe */
+	private static final int DNS_THREADS = ProbeRacer.MAX_THREADS;
+	
+	/** Max. number of host names waiting to be resolved */
+	private static final int DNS_QUEUE = 8;
+	
+	/** 
+	 * Executor resolving the host names of all instances, bounded so that lookups 
+	 * hanging past DNS_TIMEOUT on a broken resolver don't pile up threads.
+	 */
+	private static final ThreadPoolExecutor resolver = new ThreadPoolExecutor(DNS_THREADS, DNS_THREADS, 
+			0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(DNS_QUEUE), new ResolverThreadFactory());
+	
+	/** URL to connect to */
+	private final URL url;
+	
+	/** Cancellation of the test */
+	private final Cancellation cancellation;
+	
+	/** Start of the current stage, System.nanoTime() */
+	private long start;
+	
+	/** Time each phase took */
+	private final ProbeTimings timings;
+	
+	/** Disconnects the connection when cancelled */
+	private Closeable closeable;
+	
+	/** Connections of the test */
+	private final ProbeConnections connections;
+	
+	/** True if the connection is known to be new, so it cannot be stale */
+	private boolean opened;
+	
+	/** Request properties set on the connection */
+	private final Map<String, String> requestProperties = new LinkedHashMap<String, String>();
+	
+	/** Response body counting the bytes read */
+	private InputStream in;
+	
+	/**
+	 * Constructs an instance for the given URL, cancellation and connections of the test.
+	 * @param url
+	 * @param cancellation
+	 * @param connections
+	 */
+	public ProbePipeline(final URL url, final Cancellation cancellation, final ProbeConnections connections) {
+		this(url, cancellation, connections, new ProbeTimings());
+	}
+	
+	/**
+	 * Constructs an instance for the given URL, cancellation and connections of the test,
+	 * recording the time each phase took in the given timings.
+	 * @param url
+	 * @param cancellation
+	 * @param connections
+	 * @param timings
+	 */
+	public ProbePipeline(final URL url, final Cancellation cancellation, final ProbeConnections connections,
+			final ProbeTimings timings) {
+		this.url = url;
+		this.cancellation = cancellation;
+		this.connections = connections;
+		this.timings = timings;
+	}
+	
+	/**
+	 * Returns the time each phase took so far.
+	 * @return ProbeTimings
+	 */
+	public ProbeTimings getTimings() {
+		return timings;
+	}
+	
+	/**
+	 * Sets a request property, i.e. a header, to be sent with the request.
+	 * @param key
+	 * @param value
+	 */
+	public void setRequestProperty(final String key, final String value) {
+		requestProperties.put(key, value);
+	}
+	
+	/**
+	 * Connects like connect(String, boolean) and sends the request, and returns the
+	 * connection with the response status received. If the request fails on a connection
+	 * that may have been reused and gone stale, it is retried once on a new connection.
+	 * @param method request method
+	 * @param followRedirects if redirects should be followed
+	 * @return HttpURLConnection connection with the response status received
+	 * @throws ProbeException if a stage fails
+	 */
+	public HttpURLConnection execute(final String method, final boolean followRedirects) throws ProbeException {
+		for(int attempt = 0; ; attempt++) {
+			HttpURLConnection connection = connect(method, followRedirects);
+			try {
+				connection.getResponseCode();
+				responded(connection);
+				return connection;
+			} catch(IOException e) {
+				disconnect();
+				if(attempt > 0 || opened || ! ProbeConnections.isStale(e) || cancellation.isCancelled()) {
+					throw fail(e);
+				}
+				// Log.d(Inetify.LOG_TAG, String.format("Retrying %s on a new connection: %s", url, e.getMessage()));
+				connections.retried(url);
+			}
+		}
+	}
+	
+	/**
+	 * Resolves the host name and connects to the host, and returns the connection 
+	 * ready for the HTTP stage.
+	 * @param method request method
+	 * @param followRedirects if redirects should be followed
+	 * @return HttpURLConnection connected connection
+	 * @throws ProbeException if resolving the host name or connecting fails
+	 */
+	public HttpURLConnection connect(final String method, final boolean followRedirects) throws ProbeException {
+		
+		start = System.nanoTime();
+		try {
+			resolve(url.getHost());
+		} finally {
+			timings.setDnsMillis(getMillis());
+		}
+		
+		start = System.nanoTime();
+		boolean https = false;
+		try {
+			final HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+			closeable = new Closeable() {
+				public void close() {
+					connection.disconnect();
+				}
+			};
+			cancellation.register(closeable);
+			connection.setConnectTimeout(CONNECT_TIMEOUT);
+			connection.setReadTimeout(HTTP_TIMEOUT);
+			connection.setInstanceFollowRedirects(followRedirects);
+			connection.setUseCaches(false);
+			connection.setRequestMethod(method);
+			https = connection instanceof HttpsURLConnection;
+			if(https) {
+				((HttpsURLConnection)connection).setSSLSocketFactory(ProbeSocketFactory.getInstance());
+				((HttpsURLConnection)connection).setHostnameVerifier(ProbeSocketFactory.getHostnameVerifier());
+				ProbeSocketFactory.reset();
+			}
+			for(Map.Entry<String, String> entry : requestProperties.entrySet()) {
+				connection.setRequestProperty(entry.getKey(), entry.getValue());
+			}
+			connection.connect();
+			connections.sent(getRequestBytes(method));
+			
+			long connected = https ? ProbeSocketFactory.getConnected() : 0;
+			
+			// Only HTTPS tells if a new socket was connected, assume HTTP reuses released connections
+			opened = https ? connected != 0 : ! connections.isReleased(url);
+			connections.connected(url, opened);
+			if(https && opened && ProbeSocketFactory.getInstance().handshaken(url)) {
+				connections.resumed();
+			}
+			
+			if(connected == 0) {
+				timings.setConnectMillis(getMillis());
+			} else {
+				timings.setConnectMillis((connected - start) / 1000000);
+				timings.setTlsMillis(ProbeTimings.millisSince(connected));
+			}
+			
+			start = System.nanoTime();
+			return connection;
+		} catch(IOException e) {
+			disconnect();
+			timings.setConnectMillis(getMillis());
+			// A portal intercepting HTTPS can't present a valid certificate for the host
+			int stage = https && ProbeSocketFactory.isCertificateRejected(e) ? ProbeException.STAGE_CERTIFICATE : ProbeException.STAGE_CONNECT;
+			throw new ProbeException(stage, getMillis(), e.getLocalizedMessage(), e);
+		}
+	}
+	
+	/**
+	 * Records the time until the response status was received, and counts the
+	 * bytes of the headers of the response of the given connection.
+	 * @param connection
+	 */
+	private void responded(final HttpURLConnection connection) {
+		timings.setFirstByteMillis(getMillis());
+		start = System.nanoTime();
+		connections.received(getHeaderBytes(connection));
+	}
+	
+	/**
+	 * Returns the body of the response of the given connection, counting
+	 * the bytes read from it with the connections of the test.
+	 * @param connection connection with the response status received
+	 * @return InputStream response body
+	 * @throws IOException
+	 */
+	public InputStream getInputStream(final HttpURLConnection connection) throws IOException {
+		if(in == null) {
+			in = new CountingInputStream(connection.getInputStream(), connections);
+		}
+		return in;
+	}
+	
+	/**
+	 * Records the time reading the page took, to be called when done reading it.
+	 */
+	public void downloaded() {
+		timings.setDownloadMillis(getMillis());
+	}
+	
+	/**
+	 * Releases the given connection for reuse if the rest of the response can be
+	 * read without much effort, disconnects it otherwise. To be called when done
+	 * with a response that was received without error.
+	 * @param connection
+	 */
+	public void release(final HttpURLConnection connection) {
+		if(closeable == null) {
+			return;
+		}
+		try {
+			InputStream in = getInputStream(connection);
+			if(ProbeConnections.drain(in)) {
+				in.close();
+				cancellation.unregister(closeable);
+				closeable = null;
+				connections.released(url);
+				return;
+			}
+		} catch(IOException e) {
+			// Cannot be reused
+		}
+		disconnect();
+	}
+	
+	/**
+	 * Disconnects the connection and unregisters it from the cancellation.
+	 * Does nothing if it was released.
+	 */
+	public void disconnect() {
+		if(closeable != null) {
+			cancellation.unregister(closeable);
+			try {
+				closeable.close();
+			} catch(IOException e) {
+				// Ignore
+			}
+			closeable = null;
+		}
+	}
+	
+	/**
+	 * Returns a ProbeException for the given exception that occurred in the HTTP stage,
+	 * or the given exception if it already is a ProbeException.
+	 * @param e exception that occurred in the HTTP stage
+	 * @return ProbeException
+	 */
+	public ProbeException fail(final IOException e) {
+		if(e instanceof ProbeException) {
+			return (ProbeException)e;
+		}
+		return new ProbeException(ProbeException.STAGE_HTTP, getMillis(), e.getLocalizedMessage(), e);
+	}
+	
+	/**
+	 * Returns the estimated number of bytes of a request with the given method:
+	 * the request line, the Host header, the request properties set and
+	 * REQUEST_HEADER_BYTES for the headers added by HttpURLConnection.
+	 * @param method request method
+	 * @return long number of bytes
+	 */
+	private long getRequestBytes(final String method) {
+		String file = url.getFile().length() == 0 ? "/" : url.getFile();
+		long bytes = String.format("%s %s HTTP/1.1", method, file).length() + CRLF;
+		bytes += String.format("Host: %s", url.getHost()).length() + CRLF;
+		for(Map.Entry<String, String> entry : requestProperties.entrySet()) {
+			bytes += entry.getKey().length() + 2 + entry.getValue().length() + CRLF;
+		}
+		return bytes + REQUEST_HEADER_BYTES + CRLF;
+	}
+	
+	/**
+	 * Returns the number of bytes of the status line and headers of the
+	 * response of the given connection.
+	 * @param connection connection with the response status received
+	 * @return long number of bytes
+	 */
+	public static long getHeaderBytes(final HttpURLConnection connection) {
+		long bytes = CRLF;
+		String value;
+		// The field with index 0 is the status line without a key
+		for(int i = 0; (value = connection.getHeaderField(i)) != null; i++) {
+			String key = connection.getHeaderFieldKey(i);
+			bytes += (key == null ? 0 : key.length() + 2) + value.length() + CRLF;
+		}
+		return bytes;
+	}
+	
+	/**
+	 * Returns the time in ms since the current stage started.
+	 * @return long time in ms
+	 */
+	private long getMillis() {
+		return ProbeTimings.millisSince(start);
+	}
+	
+	/**
+	 * Resolves the given host name, giving up after DNS_TIMEOUT. The resolved address
+	 * is cached so that the following connect does not have to resolve it again.
+	 * The lookup runs on the shared resolver, and fails right away if too many
+	 * lookups are hanging already.
+	 * @param host host name
+	 * @throws ProbeException if resolving the host name fails or times out
+	 */
+	private void resolve(final String host) throws ProbeException {
+		
+		// InetAddress.getByName() cannot be interrupted, so it is left to finish in the background
+		final FutureTask<InetAddress> task = new FutureTask<InetAddress>(new Callable<InetAddress>() {
+			public InetAddress call() throws UnknownHostException {
+				return InetAddress.getByName(host);
+			}
+		});
+		try {
+			resolver.execute(task);
+		} catch(RejectedExecutionException e) {
+			// All threads hang in lookups and the queue is full, the resolver is broken
+			throw new ProbeException(ProbeException.STAGE_DNS, getMillis(), 
+					String.format("Too many pending lookups resolving %s", host), null);
+		}
+		
+		// Stop waiting for the lookup when cancelled
+		Closeable closeable = new Closeable() {
+			public void close() {
+				task.cancel(false);
+			}
+		};
+		cancellation.register(closeable);
+		
+		try {
+			task.get(DNS_TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch(CancellationException e) {
+			throw new ProbeException(ProbeException.STAGE_DNS, getMillis(), 
+					String.format("Cancelled resolving %s", host), null);
+		} catch(TimeoutException e) {
+			throw new ProbeException(ProbeException.STAGE_DNS, getMillis(), 
+					String.format("Resolving %s timed out", host), null);
+		} catch(ExecutionException e) {
+			throw new ProbeException(ProbeException.STAGE_DNS, getMillis(), 
+					String.format("Unable to resolve %s", host), e.getCause());
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ProbeException(ProbeException.STAGE_DNS, getMillis(), 
+					String.format("Interrupted resolving %s", host), e);
+		} finally {
+			cancellation.unregister(closeable);
+			// Does not run a lookup that is still queued
+			task.cancel(false);
+			resolver.remove(task);
+		}
+	}
+	
+	/**
+	 * Stream counting the bytes read from it with the given connections.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+		
+		private final ProbeConnections connections;
+		
+		private CountingInputStream(final InputStream in, final ProbeConnections connections) {
+			super(in);
+			this.connections = connections;
+		}
+		
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if(b != -1) {
+				connections.received(1);
+			}
+			return b;
+		}
+		
+		@Override
+		public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+			int read = super.read(buffer, offset, length);
+			if(read > 0) {
+				connections.received(read);
+			}
+			return read;
+		}
+		
+		@Override
+		public long skip(final long n) throws IOException {
+			long skipped = super.skip(n);
+			connections.received(skipped);
+			return skipped;
+		}
+	}
+	
+	/**
+	 * Creates the daemon threads resolving host names.
+	 */
+	private static final class ResolverThreadFactory implements ThreadFactory {
+		
+		public Thread newThread(final Runnable runnable) {
+			Thread thread = new Thread(runnable, "ProbePipeline");
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+}
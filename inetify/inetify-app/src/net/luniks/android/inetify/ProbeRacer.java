@@ -0,0 +1,374 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import net.luniks.android.impl.ClockImpl;
+import net.luniks.android.interfaces.IClock;
+
+/**
+ * Gets the page title of several internet sites concurrently. The first site
+ * answering with the expected title wins and the requests to the other sites
+ * are cancelled, so a single slow or unavailable site does not delay the test.
+ * The probes run on a pool of MAX_THREADS threads shared by all races.
+ * If no site answers with the expected title, the result of the first site that
+ * answered with a page title is used, or the exception of the last site that failed.
+ * The verdict of the test is derived from the result that is used.
+ * 
+ * @author torsten.roemer@luniks.net
+ */
+public final class ProbeRacer {
+	
+	/** Max. number of probes running concurrently */
+	public static final int MAX_THREADS = 4;
+	
+	/** Max. time in ms waited for the cancelled probes to finish */
+	private static final long CANCEL_TIMEOUT = 1000;
+	
+	/** Executor running the probes of all races */
+	private static final ExecutorService executor = Executors.newFixedThreadPool(MAX_THREADS, new ProbeThreadFactory());
+	
+	/** Title verifier used for each of the sites */
+	private final TitleVerifier titleVerifier;
+	
+	/** Clock the time each site needs to answer is measured on */
+	private final IClock clock;
+	
+	/**
+	 * Constructs an instance using the given TitleVerifier, which must be thread safe.
+	 * @param titleVerifier
+	 */
+	public ProbeRacer(final TitleVerifier titleVerifier) {
+		this(titleVerifier, new ClockImpl());
+	}
+	
+	/**
+	 * Constructs an instance using the given TitleVerifier, which must be thread safe,
+	 * and the given clock.
+	 * @param titleVerifier
+	 * @param clock
+	 */
+	public ProbeRacer(final TitleVerifier titleVerifier, final IClock clock) {
+		this.titleVerifier = titleVerifier;
+		this.clock = clock;
+	}
+	
+	/**
+	 * Gets the page title of the given sites concurrently and updates the given TestInfo
+	 * with the winning site, its page title and exception, and the time each site
+	 * needed to answer. The page title is updated only if a site answered with one.
+	 * Cancelling aborts the requests to all sites.
+	 * @param info TestInfo to update with the results
+	 * @param sites internet sites
+	 * @param title expected title
+	 * @param cancellation cancellation of the test
+	 */
+	public void race(final TestInfo info, final String[] sites, final String title, final Cancellation cancellation) {
+		Map<String, PortalFingerprint> fingerprints = Collections.emptyMap();
+		race(info, sites, title, cancellation, new ProbeConnections(), fingerprints);
+	}
+	
+	/**
+	 * Gets the page title of the given sites concurrently and updates the given TestInfo
+	 * with the winning site, its page title and exception, the time each site
+	 * needed to answer and the time each phase of the winning probe took.
+	 * The page title is updated only if a site answered with one.
+	 * The fingerprint of each site in the given map is passed to the title verifier,
+	 * and the network is a known portal if the page of the winning site matched its
+	 * fingerprint without having the expected title. Sites without a fingerprint in the
+	 * map get a new one that is not kept, to learn about portal signatures in their page.
+	 * Each site is probed with a child of the given cancellation, so the requests to
+	 * the other sites are cancelled when one wins. Cancelling aborts the requests to all sites.
+	 * The requests to all sites are counted with the given connections.
+	 * @param info TestInfo to update with the results
+	 * @param sites internet sites
+	 * @param title expected title
+	 * @param cancellation cancellation of the test
+	 * @param connections connections of the test
+	 * @param fingerprints fingerprints by site
+	 */
+	public void race(final TestInfo info, final String[] sites, final String title, final Cancellation cancellation,
+			final ProbeConnections connections, final Map<String, PortalFingerprint> fingerprints) {
+		
+		long[] latencies = new long[sites.length];
+		for(int i = 0; i < latencies.length; i++) {
+			latencies[i] = -1;
+		}
+		
+		info.setProbedSites(sites);
+		info.setProbeLatencies(latencies);
+		
+		if(sites.length == 0) {
+			return;
+		}
+		
+		// Not worth a thread if there is only one site
+		if(sites.length == 1) {
+			apply(info, new Probe(0, sites[0], title, cancellation, connections, getFingerprint(fingerprints, sites[0])).call());
+			return;
+		}
+		
+		CompletionService<Result> completionService = new ExecutorCompletionService<Result>(executor);
+		Cancellation[] children = new Cancellation[sites.length];
+		List<Future<Result>> futures = new ArrayList<Future<Result>>(sites.length);
+		int pending = 0;
+		
+		try {
+			for(int i = 0; i < sites.length; i++) {
+				children[i] = cancellation.newChild();
+				futures.add(completionService.submit(
+						new Probe(i, sites[i], title, children[i], connections, getFingerprint(fingerprints, sites[i]))));
+				pending++;
+			}
+			
+			Result answered = null;
+			Result failed = null;
+			while(pending > 0) {
+				Result result = completionService.take().get();
+				pending--;
+				latencies[result.index] = result.millis;
+				
+				// Log.d(Inetify.LOG_TAG, String.format("Probe of %s took %s ms", result.site, result.millis));
+				if(result.isExpectedTitle) {
+					apply(info, result);
+					return;
+				}
+				if(result.exception == null) {
+					if(answered == null) {
+						answered = result;
+					}
+				} else {
+					failed = result;
+				}
+			}
+			
+			apply(info, answered != null ? answered : failed);
+			
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			info.setException(e.getLocalizedMessage());
+		} catch(Exception e) {
+			info.setException(e.getLocalizedMessage());
+		} finally {
+			cancelProbes(completionService, children, futures, pending);
+		}
+	}
+	
+	/**
+	 * Cancels the probes with the given cancellations, and waits up to CANCEL_TIMEOUT 
+	 * for the given number of pending ones to finish, so they don't update the
+	 * connections of the test anymore. Probes not started yet are not run at all.
+	 * @param completionService
+	 * @param children cancellations of the probes
+	 * @param futures futures of the probes
+	 * @param pending number of probes not finished
+	 */
+	private static void cancelProbes(final CompletionService<Result> completionService, 
+			final Cancellation[] children, final List<Future<Result>> futures, final int pending) {
+		for(Cancellation child : children) {
+			if(child != null) {
+				child.cancel();
+			}
+		}
+		for(Future<Result> future : futures) {
+			// A probe that did not start yet is not run, but still completes
+			future.cancel(false);
+		}
+		int waiting = pending;
+		// Bounds the time actually blocked in poll(), so it is not measured on the clock
+		long deadline = System.currentTimeMillis() + CANCEL_TIMEOUT;
+		try {
+			while(waiting > 0) {
+				long millis = deadline - System.currentTimeMillis();
+				if(millis <= 0 || completionService.poll(millis, TimeUnit.MILLISECONDS) == null) {
+					// Log.w(Inetify.LOG_TAG, String.format("%s cancelled probes did not finish", waiting));
+					return;
+				}
+				waiting--;
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Updates the given TestInfo with the given result.
+	 * @param info
+	 * @param result
+	 */
+	private static void apply(final TestInfo info, final Result result) {
+		info.setSite(result.site);
+		info.getProbeLatencies()[result.index] = result.millis;
+		if(result.exception == null) {
+			info.setPageTitle(result.pageTitle);
+		}
+		info.setIsExpectedTitle(result.isExpectedTitle);
+		info.setIsKnownPortal(result.isKnownPortal);
+		info.setException(result.exception);
+		info.setFailedStage(result.failedStage);
+		info.setFailedStageMillis(result.failedStageMillis);
+		info.setSignature(result.signature);
+		result.timings.applyTo(info);
+		info.setVerdict(getVerdict(result));
+	}
+	
+	/**
+	 * Returns the verdict for the given result: OK if the page had the expected title,
+	 * PORTAL if it matched the fingerprint of a known portal or has a portal signature,
+	 * INTERCEPTED if the certificate of the site was rejected, BLOCKED if the site could
+	 * not be resolved or connected to, and UNKNOWN otherwise.
+	 * @param result
+	 * @return int verdict, i.e. TestInfo.VERDICT_PORTAL
+	 */
+	private static int getVerdict(final Result result) {
+		if(result.isExpectedTitle) {
+			return TestInfo.VERDICT_OK;
+		}
+		if(result.isKnownPortal || result.signature != null) {
+			return TestInfo.VERDICT_PORTAL;
+		}
+		if(result.failedStage == ProbeException.STAGE_CERTIFICATE) {
+			return TestInfo.VERDICT_INTERCEPTED;
+		}
+		if(result.failedStage == ProbeException.STAGE_DNS || result.failedStage == ProbeException.STAGE_CONNECT) {
+			return TestInfo.VERDICT_BLOCKED;
+		}
+		return TestInfo.VERDICT_UNKNOWN;
+	}
+	
+	/**
+	 * Returns the fingerprint of the given site in the given map, or a new one.
+	 * @param fingerprints
+	 * @param site
+	 * @return PortalFingerprint
+	 */
+	private static PortalFingerprint getFingerprint(final Map<String, PortalFingerprint> fingerprints, final String site) {
+		PortalFingerprint fingerprint = fingerprints.get(site);
+		return fingerprint != null ? fingerprint : new PortalFingerprint();
+	}
+	
+	/**
+	 * Splits the given string of internet sites separated by commas or whitespace.
+	 * @param sites internet sites
+	 * @return String[] internet sites, empty if sites is null
+	 */
+	public static String[] split(final String sites) {
+		List<String> list = new ArrayList<String>();
+		if(sites != null) {
+			for(String site : sites.split("[,\\s]+")) {
+				if(site.length() > 0) {
+					list.add(site);
+				}
+			}
+		}
+		return list.toArray(new String[list.size()]);
+	}
+	
+	/**
+	 * Gets the page title of one site.
+	 */
+	private final class Probe implements Callable<Result> {
+		
+		private final int index;
+		private final String site;
+		private final String title;
+		private final Cancellation cancellation;
+		private final ProbeConnections connections;
+		private final PortalFingerprint fingerprint;
+		
+		private Probe(final int index, final String site, final String title, final Cancellation cancellation,
+				final ProbeConnections connections, final PortalFingerprint fingerprint) {
+			this.index = index;
+			this.site = site;
+			this.title = title;
+			this.cancellation = cancellation;
+			this.connections = connections;
+			this.fingerprint = fingerprint;
+		}
+		
+		public Result call() {
+			Result result = new Result(index, site);
+			long start = clock.currentTimeMillis();
+			try {
+				ProbeRequest request = new ProbeRequest(site, cancellation, connections);
+				request.setFingerprint(fingerprint);
+				result.timings = request.getTimings();
+				result.pageTitle = titleVerifier.getPageTitle(request);
+				result.isExpectedTitle = titleVerifier.isExpectedTitle(title, result.pageTitle);
+				result.isKnownPortal = fingerprint.getIsMatched() && ! result.isExpectedTitle;
+				if(! result.isExpectedTitle && ! fingerprint.getIsMatched()) {
+					result.signature = fingerprint.getSignature();
+				}
+			} catch(ProbeException e) {
+				result.exception = e.getLocalizedMessage();
+				result.failedStage = e.getStage();
+				result.failedStageMillis = e.getMillis();
+			} catch(Exception e) {
+				result.exception = e.getLocalizedMessage();
+			}
+			result.millis = clock.currentTimeMillis() - start;
+			return result;
+		}
+	}
+	
+	/**
+	 * Result of getting the page title of one site.
+	 */
+	private static final class Result {
+		
+		private final int index;
+		private final String site;
+		private String pageTitle = "";
+		private boolean isExpectedTitle;
+		private boolean isKnownPortal;
+		private String signature;
+		private String exception;
+		private int failedStage = ProbeException.STAGE_NONE;
+		private long failedStageMillis;
+		private long millis;
+		private ProbeTimings timings = new ProbeTimings();
+		
+		private Result(final int index, final String site) {
+			this.index = index;
+			this.site = site;
+		}
+	}
+	
+	/**
+	 * Creates daemon threads so that abandoned requests don't keep the process alive.
+	 */
+	private static final class ProbeThreadFactory implements ThreadFactory {
+		
+		public Thread newThread(final Runnable runnable) {
+			Thread thread = new Thread(runnable, "ProbeRacer");
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+}
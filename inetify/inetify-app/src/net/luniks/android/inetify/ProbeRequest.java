@@ -0,0 +1,73 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify;
+
+/**
+ * Request of the page title of the welcome page of an internet server, with the
+ * cancellation and the connections of the test, an optional fingerprint of the page
+ * and the timings the time each phase of getting the page took is recorded in.
+ * 
+ * @author torsten.roemer@luniks.net
+ */
+public final class ProbeRequest {
+	
+	/** Internet server */
+	private final String server;
+	
+	/** Cancellation of the test */
+	private final Cancellation cancellation;
+	
+	/** Connections of the test */
+	private final ProbeConnections connections;
+	
+	/** Fingerprint of the page, may be null */
+	private PortalFingerprint fingerprint;
+	
+	/** Time each phase of getting the page took */
+	private final ProbeTimings timings = new ProbeTimings();
+	
+	/**
+	 * Constructs a request of the page of the given internet server without fingerprint.
+	 * @param server internet server
+	 * @param cancellation cancellation of the test
+	 * @param connections connections of the test
+	 */
+	public ProbeRequest(final String server, final Cancellation cancellation, final ProbeConnections connections) {
+		this.server = server;
+		this.cancellation = cancellation;
+		this.connections = connections;
+	}
+	
+	public String getServer() {
+		return server;
+	}
+	public Cancellation getCancellation() {
+		return cancellation;
+	}
+	public ProbeConnections getConnections() {
+		return connections;
+	}
+	public PortalFingerprint getFingerprint() {
+		return fingerprint;
+	}
+	public void setFingerprint(final PortalFingerprint fingerprint) {
+		this.fingerprint = fingerprint;
+	}
+	public ProbeTimings getTimings() {
+		return timings;
+	}
+
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertificateException;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * SSLSocketFactory of the probes that notes the time when the socket to the host 
+ * is connected, so that ProbePipeline can tell connecting from the TLS handshake
+ * that follows it. The time is noted per thread, since each probe connects on its
+ * own thread, and one shared instance is used so that it doesn't get in the way of
+ * connections being reused. It delegates to the factory of an SSLContext of its own,
+ * whose session cache is bounded by TlsSessionCache and shared by all tests, so that
+ * TLS sessions are resumed across tests and retries. Also tells if connecting failed
+ * because the certificate of the host was rejected, which is what happens when a
+ * captive portal intercepts HTTPS.
+ * 
+ * @author torsten.roemer@luniks.net
+ */
+public final class ProbeSocketFactory extends SSLSocketFactory {
+	
+	/** Shared instance */
+	private static final ProbeSocketFactory instance = new ProbeSocketFactory(new TlsSessionCache());
+	
+	/** System.nanoTime() when the last socket of the current thread was connected, 0 if none */
+	private static final ThreadLocal<Long> connected = new ThreadLocal<Long>();
+	
+	/** Last TLS socket created on the current thread, null if none */
+	private static final ThreadLocal<SSLSocket> layered = new ThreadLocal<SSLSocket>();
+	
+	/** True if verifying the host name failed on the current thread */
+	private static final ThreadLocal<Boolean> mismatched = new ThreadLocal<Boolean>();
+	
+	/** Verifies host names with the default verifier, noting when that fails */
+	private static final HostnameVerifier hostnameVerifier = new HostnameVerifier() {
+		public boolean verify(final String host, final SSLSession session) {
+			boolean verified = HttpsURLConnection.getDefaultHostnameVerifier().verify(host, session);
+			if(! verified) {
+				mismatched.set(Boolean.TRUE);
+			}
+			return verified;
+		}
+	};
+	
+	/** Cache of the TLS sessions */
+	private final TlsSessionCache sessionCache;
+	
+	/** Factory of the SSLContext of the probes */
+	private final SSLSocketFactory delegate;
+	
+	private ProbeSocketFactory(final TlsSessionCache sessionCache) {
+		this.sessionCache = sessionCache;
+		this.delegate = createDelegate(sessionCache);
+	}
+	
+	/**
+	 * Returns the shared instance.
+	 * @return ProbeSocketFactory
+	 */
+	public static ProbeSocketFactory getInstance() {
+		return instance;
+	}
+	
+	/**
+	 * Returns the host name verifier to be used with the shared instance.
+	 * @return HostnameVerifier
+	 */
+	public static HostnameVerifier getHostnameVerifier() {
+		return hostnameVerifier;
+	}
+	
+	/**
+	 * Forgets the time a socket was connected, the TLS socket and a host name
+	 * mismatch on the current thread.
+	 */
+	public static void reset() {
+		connected.set(0L);
+		layered.set(null);
+		mismatched.set(Boolean.FALSE);
+	}
+	
+	/**
+	 * Returns the System.nanoTime() when a socket was last connected on the current
+	 * thread since reset() was called, or 0 if none was.
+	 * @return long time in ns or 0
+	 */
+	public static long getConnected() {
+		Long nanos = connected.get();
+		return nanos == null ? 0 : nanos;
+	}
+	
+	/**
+	 * Returns true if the given exception thrown when connecting on the current thread
+	 * since reset() was called means that the certificate of the host was rejected,
+	 * because it is not trusted, i.e. self-signed, or not issued for the host name.
+	 * @param e
+	 * @return boolean true if the certificate was rejected
+	 */
+	public static boolean isCertificateRejected(final IOException e) {
+		if(Boolean.TRUE.equals(mismatched.get()) || e instanceof SSLPeerUnverifiedException) {
+			return true;
+		}
+		if(e instanceof SSLHandshakeException) {
+			for(Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+				if(cause instanceof CertificateException) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Returns the cache of the TLS sessions.
+	 * @return TlsSessionCache
+	 */
+	public TlsSessionCache getSessionCache() {
+		return sessionCache;
+	}
+	
+	/**
+	 * Notes the session of the TLS socket created on the current thread since reset()
+	 * was called in the session cache, and returns true if it was resumed. Returns false
+	 * if no TLS socket was created.
+	 * @param url URL connected to
+	 * @return boolean true if the TLS session was resumed
+	 */
+	public boolean handshaken(final URL url) {
+		SSLSocket socket = layered.get();
+		if(socket == null) {
+			return false;
+		}
+		int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+		return sessionCache.handshaken(url.getHost(), port, socket.getSession());
+	}
+	
+	public String[] getDefaultCipherSuites() {
+		return delegate.getDefaultCipherSuites();
+	}
+
+	public String[] getSupportedCipherSuites() {
+		return delegate.getSupportedCipherSuites();
+	}
+
+	public Socket createSocket(final Socket socket, final String host, final int port, final boolean autoClose) throws IOException {
+		// The plain socket is connected, the handshake starts with the layered one
+		connected(socket);
+		return layered(delegate.createSocket(socket, host, port, autoClose));
+	}
+
+	public Socket createSocket(final String host, final int port) throws IOException {
+		return layered(connected(delegate.createSocket(host, port)));
+	}
+
+	public Socket createSocket(final String host, final int port, final InetAddress localHost, final int localPort) throws IOException {
+		return layered(connected(delegate.createSocket(host, port, localHost, localPort)));
+	}
+
+	public Socket createSocket(final InetAddress host, final int port) throws IOException {
+		return layered(connected(delegate.createSocket(host, port)));
+	}
+
+	public Socket createSocket(final InetAddress address, final int port, final InetAddress localAddress, final int localPort) throws IOException {
+		return layered(connected(delegate.createSocket(address, port, localAddress, localPort)));
+	}
+	
+	/**
+	 * Returns the factory of a new SSLContext with its session cache configured by
+	 * the given TlsSessionCache, or the default factory if that fails.
+	 * @param sessionCache
+	 * @return SSLSocketFactory
+	 */
+	private static SSLSocketFactory createDelegate(final TlsSessionCache sessionCache) {
+		try {
+			SSLContext context = SSLContext.getInstance("TLS");
+			context.init(null, null, null);
+			sessionCache.configure(context.getClientSessionContext());
+			return context.getSocketFactory();
+		} catch(GeneralSecurityException e) {
+			// Log.d(Inetify.LOG_TAG, String.format("Using the default SSLSocketFactory: %s", e.getMessage()));
+			return HttpsURLConnection.getDefaultSSLSocketFactory();
+		}
+	}
+	
+	/**
+	 * Notes the time if the given socket is connected and returns it.
+	 * @param socket
+	 * @return Socket the given socket
+	 */
+	private static Socket connected(final Socket socket) {
+		// An unconnected socket is connected later by the caller, the time is unknown then
+		if(socket.isConnected()) {
+			connected.set(System.nanoTime());
+		}
+		return socket;
+	}
+	
+	/**
+	 * Notes the given socket if it is a TLS socket and returns it.
+	 * @param socket
+	 * @return Socket the given socket
+	 */
+	private static Socket layered(final Socket socket) {
+		if(socket instanceof SSLSocket) {
+			layered.set((SSLSocket)socket);
+		}
+		return socket;
+	}
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify;
+
+/**
+ * Time in ms each phase of a probe took: resolving the host name, connecting to the
+ * host, the TLS handshake, waiting for the first byte of the response and reading the
+ * page. Measured with System.nanoTime() so that changes of the wall clock don't
+ * distort them. A phase that was not reached or does not apply took 0 ms.
+ * 
+ * @author torsten.roemer@luniks.net
+ */
+public final class ProbeTimings {
+	
+	/** Time in ms resolving the host name */
+	private long dnsMillis;
+	
+	/** Time in ms connecting to the host */
+	private long connectMillis;
+	
+	/** Time in ms of the TLS handshake, 0 for HTTP */
+	private long tlsMillis;
+	
+	/** Time in ms from sending the request until the response status was received */
+	private long firstByteMillis;
+	
+	/** Time in ms reading the page */
+	private long downloadMillis;
+	
+	public long getDnsMillis() {
+		return dnsMillis;
+	}
+	public void setDnsMillis(final long dnsMillis) {
+		this.dnsMillis = dnsMillis;
+	}
+	public long getConnectMillis() {
+		return connectMillis;
+	}
+	public void setConnectMillis(final long connectMillis) {
+		this.connectMillis = connectMillis;
+	}
+	public long getTlsMillis() {
+		return tlsMillis;
+	}
+	public void setTlsMillis(final long tlsMillis) {
+		this.tlsMillis = tlsMillis;
+	}
+	public long getFirstByteMillis() {
+		return firstByteMillis;
+	}
+	public void setFirstByteMillis(final long firstByteMillis) {
+		this.firstByteMillis = firstByteMillis;
+	}
+	public long getDownloadMillis() {
+		return downloadMillis;
+	}
+	public void setDownloadMillis(final long downloadMillis) {
+		this.downloadMillis = downloadMillis;
+	}
+	
+	/**
+	 * Returns the time in ms from the given System.nanoTime() value until now.
+	 * @param nanos
+	 * @return long time in ms
+	 */
+	public static long millisSince(final long nanos) {
+		return (System.nanoTime() - nanos) / 1000000;
+	}
+	
+	/**
+	 * Sets the phases of the given TestInfo to the ones of this instance.
+	 * @param info
+	 */
+	public void applyTo(final TestInfo info) {
+		info.setDnsMillis(dnsMillis);
+		info.setConnectMillis(connectMillis);
+		info.setTlsMillis(tlsMillis);
+		info.setFirstByteMillis(firstByteMillis);
+		info.setDownloadMillis(downloadMillis);
+	}
+	
+	/**
+	 * String representation of this ProbeTimings instance.
+	 * @return string representation
+	 */
+	public String toString() {
+		StringBuffer buffer = new StringBuffer();
+		buffer.append("ProbeTimings [ dnsMillis = ").append(dnsMillis);
+		buffer.append(", connectMillis = ").append(connectMillis);
+		buffer.append(", tlsMillis = ").append(tlsMillis);
+		buffer.append(", firstByteMillis = ").append(firstByteMillis);
+		buffer.append(", downloadMillis = ").append(downloadMillis);
+		buffer.append(" ]");
+		return buffer.toString();
+	}
+
+}
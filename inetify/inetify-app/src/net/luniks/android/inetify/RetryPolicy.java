@@ -0,0 +1,38 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify;
+
+/**
+ * Interface for a policy deciding when and how often to (re)try testing
+ * internet connectivity.
+ * 
+ * @author torsten.roemer@luniks.net
+ */
+public interface RetryPolicy {
+	
+	/** Returned by getDelay() if no further attempt should be made */
+	long STOP = -1;
+	
+	/**
+	 * Returns the delay in ms before the given attempt, or STOP if no further
+	 * attempt should be made.
+	 * @param attempt number of the attempt, starting with 0
+	 * @param info results of the previous attempt, null before the first attempt
+	 * @return long delay in ms or STOP
+	 */
+	long getDelay(final int attempt, final TestInfo info);
+
+}
@@ -29,6 +29,14 @@ public class Settings extends PreferenceActivity {
 	public static final String INTERNET_ONLY_NOK = "settings_only_nok";
 	public static final String INTERNET_SERVER = "settings_server";
 	public static final String INTERNET_TITLE = "settings_title";
+	public static final String INTERNET_QUICK_CHECK = "settings_quick_check";
+	public static final String INTERNET_QUICK_SERVER = "settings_quick_server";
+	public static final String INTERNET_CACHE_TTL = "settings_cache_ttl";
+	public static final String INTERNET_CACHE_NOK_TTL = "settings_cache_nok_ttl";
+	public static final String INTERNET_COALESCE_WINDOW = "settings_coalesce_window";
+	public static final String INTERNET_MONITOR = "settings_monitor";
+	public static final String INTERNET_BUDGET = "settings_budget";
+	public static final String INTERNET_BUDGET_PAUSE = "settings_budget_pause";
 	public static final String LOCATION_CHECK = "settings_wifi_location_enabled";
 	public static final String LOCATION_AUTO_WIFI = "settings_auto_wifi";
 	public static final String LOCATION_USE_GPS = "settings_use_gps";
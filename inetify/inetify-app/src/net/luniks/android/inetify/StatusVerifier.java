@@ -0,0 +1,50 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify;
+
+/**
+ * Interface for a class doing a quick check of internet connectivity based
+ * only on the HTTP status and headers of the response of an internet server
+ * that is expected to answer with an empty page (HTTP 204 No Content).
+ * 
+ * @author torsten.roemer@luniks.net
+ */
+public interface StatusVerifier {
+	
+	/** The result of the check is not clear */
+	int RESULT_UNKNOWN = 0;
+	
+	/** Internet connectivity is OK */
+	int RESULT_OK = 1;
+	
+	/** Internet connectivity is not OK, i.e. the request was redirected to a captive portal */
+	int RESULT_NOK = 2;
+
+	/**
+	 * Checks the response of the given internet server and returns RESULT_OK if
+	 * it is as expected, RESULT_NOK if it clearly is not, and RESULT_UNKNOWN
+	 * if the page title should be checked to be sure.
+	 * Aborts as soon as possible if the given cancellation is cancelled, and counts
+	 * the connection and its bytes with the given connections.
+	 * @param server internet server answering with HTTP 204
+	 * @param cancellation cancellation of the test
+	 * @param connections connections of the test
+	 * @return int one of RESULT_OK, RESULT_NOK or RESULT_UNKNOWN
+	 * @throws Exception if some error occurs
+	 */
+	int verify(final String server, final Cancellation cancellation, final ProbeConnections connections) throws Exception;
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * StatusVerifier implementation sending a HEAD request, so that almost no
+ * data is transferred.
+ * 
+ * @author torsten.roemer@luniks.net
+ */
+public final class StatusVerifierImpl implements StatusVerifier {
+	
+	/** HTTP status code No Content */
+	private static final int HTTP_NO_CONTENT = 204;
+
+	/**
+	 * Sends a HEAD request to the given internet server without following
+	 * redirects and returns RESULT_OK if the status is 204, RESULT_NOK if the 
+	 * status is 200 with content or a redirect to another host, and RESULT_UNKNOWN
+	 * otherwise.
+	 * @param server internet server answering with HTTP 204
+	 * @param cancellation cancellation of the test
+	 * @param connections connections of the test
+	 * @return int one of RESULT_OK, RESULT_NOK or RESULT_UNKNOWN
+	 * @throws Exception if some error occurs
+	 */
+	public int verify(final String server, final Cancellation cancellation, final ProbeConnections connections) throws Exception {
+		URL url = new URL(TitleVerifierImpl.addProtocol(server));
+		
+		ProbePipeline pipeline = new ProbePipeline(url, cancellation, connections);
+		HttpURLConnection connection = pipeline.execute("HEAD", false);
+		
+		try {
+			int status = connection.getResponseCode();
+			int contentLength = connection.getContentLength();
+			String location = connection.getHeaderField("Location");
+			
+			// A response to HEAD has no body, so the connection can be reused
+			pipeline.release(connection);
+			
+			return getResult(url, status, contentLength, location);
+		} catch(IOException e) {
+			throw pipeline.fail(e);
+		} finally {
+			// Does nothing if released
+			pipeline.disconnect();
+		}
+	}
+	
+	/**
+	 * Returns the result for the given response details of a request to the given URL.
+	 * @param url requested URL
+	 * @param status HTTP status code
+	 * @param contentLength value of the Content-Length header or -1
+	 * @param location value of the Location header or null
+	 * @return int one of RESULT_OK, RESULT_NOK or RESULT_UNKNOWN
+	 */
+	public static int getResult(final URL url, final int status, final int contentLength, final String location) {
+		if(status == HTTP_NO_CONTENT) {
+			return RESULT_OK;
+		}
+		if(status == HttpURLConnection.HTTP_OK && contentLength > 0) {
+			// Something answered with a page instead of an empty response
+			return RESULT_NOK;
+		}
+		if(status >= HttpURLConnection.HTTP_MULT_CHOICE && status < HttpURLConnection.HTTP_BAD_REQUEST && location != null) {
+			try {
+				URL redirect = new URL(url, location);
+				if(! redirect.getHost().equalsIgnoreCase(url.getHost())) {
+					return RESULT_NOK;
+				}
+			} catch(Exception e) {
+				// Unclear where the redirect goes
+			}
+		}
+		return RESULT_UNKNOWN;
+	}
+
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Locale;
+
+/**
+ * TitleVerifier implementation that reads the welcome page incrementally and
+ * stops reading as soon as the title is complete, instead of downloading and
+ * parsing the whole page. Reads at most MAX_BYTES of the page. Given a fingerprint
+ * of the page, a page that was seen before is recognized without looking for the title,
+ * and the title and the redirect location of a new page are classified by PortalClassifier,
+ * the first HASH_BYTES only by the vendor specific signatures.
+ *
+ * @author torsten.roemer@luniks.net
+ */
+public final class StreamingTitleVerifier implements TitleVerifier {
+
+	/** Max. number of bytes read from the page */
+	public static final int MAX_BYTES = 32 * 1024;
+
+	/** Size of the read buffer */
+	private static final int BUFFER_SIZE = 2048;
+
+	/** Charset parameter of the Content-Type header */
+	private static final String CHARSET = "charset=";
+	
+	/** Response header with the entity tag */
+	private static final String ETAG = "ETag";
+	
+	/** Response header with the last modification date */
+	private static final String LAST_MODIFIED = "Last-Modified";
+	
+	/** Conditional request header with the entity tag */
+	private static final String IF_NONE_MATCH = "If-None-Match";
+	
+	/** Conditional request header with the last modification date */
+	private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+
+	/**
+	 * Returns true if the given pageTitle contains the given title, case insensitive.
+	 * Uses the cached TitleMatcher for the title, so comparing does not allocate.
+	 * @param title (part of) the expected title
+	 * @param pageTitle page title
+	 * @return boolean true if pageTitle contains title
+	 */
+	public boolean isExpectedTitle(final String title, final String pageTitle) {
+		return TitleMatcher.forTitle(title).matches(pageTitle);
+	}
+
+	/**
+	 * Returns the page title of the welcome page of the given internet server,
+	 * or an empty string if the page has no title within the first MAX_BYTES.
+	 * @param server internet server
+	 * @return String page title
+	 * @throws ProbeException if a stage of getting the page fails
+	 * @throws Exception if some other error occurs
+	 */
+	public String getPageTitle(final String server) throws Exception {
+		return getPageTitle(new ProbeRequest(server, new Cancellation(), new ProbeConnections()));
+	}
+
+	/**
+	 * Returns the page title of the welcome page of the internet server of the given
+	 * request, or an empty string if the page has no title within the first MAX_BYTES,
+	 * recording the time each phase of getting the page took in the timings of the request.
+	 * If the fingerprint of the request is known, the request is conditional and reading
+	 * stops as soon as the page matches it, returning the page title of the fingerprint.
+	 * Otherwise the fingerprint is updated with the page, including the portal signature
+	 * found in its title, its first HASH_BYTES or the URL it was redirected to.
+	 * Cancelling closes the connection, aborting any ongoing I/O.
+	 * @param request request of the page
+	 * @return String page title
+	 * @throws ProbeException if a stage of getting the page fails or it is cancelled
+	 * @throws Exception if some other error occurs
+	 */
+	public String getPageTitle(final ProbeRequest request) throws Exception {
+		PortalFingerprint fingerprint = request.getFingerprint();
+		URL url = new URL(TitleVerifierImpl.addProtocol(request.getServer()));
+		if(! url.getProtocol().startsWith("http")) {
+			throw new IllegalArgumentException(String.format("Only http and https protocols supported: %s", url));
+		}
+
+		boolean known = fingerprint != null && fingerprint.isKnown();
+		
+		ProbePipeline pipeline = new ProbePipeline(url, request.getCancellation(), request.getConnections(), request.getTimings());
+		if(known && fingerprint.getEtag() != null) {
+			pipeline.setRequestProperty(IF_NONE_MATCH, fingerprint.getEtag());
+		}
+		if(known && fingerprint.getLastModified() != null) {
+			pipeline.setRequestProperty(IF_MODIFIED_SINCE, fingerprint.getLastModified());
+		}
+		HttpURLConnection connection = pipeline.execute("GET", true);
+		try {
+			String pageTitle = readPageTitle(url, pipeline, connection, fingerprint);
+			pipeline.downloaded();
+			// Reuse the connection if the rest of the page is short
+			pipeline.release(connection);
+			return pageTitle;
+		} catch(IOException e) {
+			throw pipeline.fail(e);
+		} finally {
+			// Does nothing if released
+			pipeline.disconnect();
+		}
+	}
+	
+	/**
+	 * Reads the page title from the response of the given connection, matching and
+	 * updating the given fingerprint, if any.
+	 * @param url requested URL
+	 * @param pipeline pipeline of the request, counting the bytes read
+	 * @param connection connection with the response status received
+	 * @param fingerprint fingerprint of the page, may be null
+	 * @return String page title
+	 * @throws IOException if reading the page fails or it has an error status
+	 */
+	private String readPageTitle(final URL url, final ProbePipeline pipeline, final HttpURLConnection connection, 
+			final PortalFingerprint fingerprint) throws IOException {
+		boolean known = fingerprint != null && fingerprint.isKnown();
+		int status = connection.getResponseCode();
+		String location = getLocation(url, connection.getURL());
+		
+		if(known && status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+			fingerprint.setIsMatched(true);
+			return fingerprint.getPageTitle();
+		}
+		if(status < HttpURLConnection.HTTP_OK || status >= HttpURLConnection.HTTP_BAD_REQUEST) {
+			throw new IOException(String.format("%s error loading URL %s", status, url));
+		}
+
+		InputStream in = pipeline.getInputStream(connection);
+
+		TitleScanner scanner = new TitleScanner();
+		PortalClassifier.Scan bodySignatures = fingerprint == null ? null : PortalClassifier.getBodyInstance().newScan();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		boolean done = false;
+		long hash = PortalFingerprint.INITIAL_HASH;
+		int hashed = 0;
+		int total = 0;
+		while(total < MAX_BYTES) {
+			int read = in.read(buffer, 0, Math.min(buffer.length, MAX_BYTES - total));
+			if(read == -1) {
+				break;
+			}
+			if(fingerprint != null && hashed < PortalFingerprint.HASH_BYTES) {
+				int length = Math.min(read, PortalFingerprint.HASH_BYTES - hashed);
+				hash = PortalFingerprint.hash(hash, buffer, 0, length);
+				bodySignatures.feed(buffer, 0, length);
+				hashed += length;
+				if(hashed == PortalFingerprint.HASH_BYTES && known && fingerprint.matches(location, hash)) {
+					// Same page as before, no need to look for the title
+					fingerprint.setIsMatched(true);
+					return fingerprint.getPageTitle();
+				}
+			}
+			if(! done) {
+				done = scanner.scan(buffer, 0, read);
+			}
+			total += read;
+			if(done && (fingerprint == null || hashed == PortalFingerprint.HASH_BYTES)) {
+				break;
+			}
+		}
+		
+		// Page shorter than HASH_BYTES
+		if(known && hashed < PortalFingerprint.HASH_BYTES && fingerprint.matches(location, hash)) {
+			fingerprint.setIsMatched(true);
+			return fingerprint.getPageTitle();
+		}
+
+		String pageTitle = scanner.getTitle(getCharset(connection.getContentType()));
+		
+		if(fingerprint != null) {
+			PortalClassifier.Scan signatures = PortalClassifier.getInstance().newScan();
+			signatures.feed(pageTitle);
+			signatures.reset();
+			signatures.feed(location);
+			fingerprint.setEtag(connection.getHeaderField(ETAG));
+			fingerprint.setLastModified(connection.getHeaderField(LAST_MODIFIED));
+			fingerprint.setLocation(location);
+			fingerprint.setHash(hash);
+			fingerprint.setPageTitle(pageTitle);
+			fingerprint.setIsMatched(false);
+			fingerprint.setSignature(signatures.isMatched() ? signatures.getSignature() : bodySignatures.getSignature());
+		}
+		
+		return pageTitle;
+	}
+	
+	/**
+	 * Returns the URL the request to the given URL was redirected to, or null if
+	 * it was not redirected.
+	 * @param url requested URL
+	 * @param finalUrl URL of the response
+	 * @return String URL redirected to or null
+	 */
+	public static String getLocation(final URL url, final URL finalUrl) {
+		if(finalUrl == null) {
+			return null;
+		}
+		// URL.equals() may resolve host names
+		String location = finalUrl.toExternalForm();
+		return location.equals(url.toExternalForm()) ? null : location;
+	}
+
+	/**
+	 * Returns the charset in the given Content-Type header value, or null if there is none.
+	 * @param contentType
+	 * @return String charset or null
+	 */
+	public static String getCharset(final String contentType) {
+		if(contentType == null) {
+			return null;
+		}
+		String lower = contentType.toLowerCase(Locale.ENGLISH);
+		int index = lower.indexOf(CHARSET);
+		if(index == -1) {
+			return null;
+		}
+		String charset = contentType.substring(index + CHARSET.length());
+		int end = charset.indexOf(';');
+		if(end != -1) {
+			charset = charset.substring(0, end);
+		}
+		charset = charset.replace("\"", "").replace("'", "").trim();
+		return charset.length() == 0 ? null : charset;
+	}
+
+}
@@ -15,6 +15,7 @@
  */
 package net.luniks.android.inetify;
 
+import java.util.Arrays;
 import java.util.Date;
 
 import android.net.ConnectivityManager;
@@ -40,6 +41,21 @@ public class TestInfo implements Parcelable {
 	/** "Nice" type name if neither TYPE_MOBILE nor TYPE_WIFI */
 	public static final String NICE_TYPE_NAME_UNKNOWN = "Unknown";
 	
+	/** Verdict if the test was not conclusive */
+	public static final int VERDICT_UNKNOWN = 0;
+	
+	/** Verdict if internet connectivity is OK */
+	public static final int VERDICT_OK = 1;
+	
+	/** Verdict if the network is a captive portal */
+	public static final int VERDICT_PORTAL = 2;
+	
+	/** Verdict if the internet sites could not be resolved or connected to */
+	public static final int VERDICT_BLOCKED = 3;
+	
+	/** Verdict if the certificate of a site was rejected, i.e. because a portal intercepts TLS */
+	public static final int VERDICT_INTERCEPTED = 4;
+	
 	/**
 	 * Default constructor
 	 */
@@ -62,7 +78,29 @@ public class TestInfo implements Parcelable {
 		boolean[] val = new boolean[1];
 		source.readBooleanArray(val);
 		isExpectedTitle = val[0];
-		exception = source.readString();		
+		exception = source.readString();
+		quickCheck = source.readInt();
+		probedSites = source.createStringArray();
+		probeLatencies = source.createLongArray();
+		failedStage = source.readInt();
+		failedStageMillis = source.readLong();
+		attempts = source.readInt();
+		duration = source.readLong();
+		boolean[] knownPortalVal = new boolean[1];
+		source.readBooleanArray(knownPortalVal);
+		isKnownPortal = knownPortalVal[0];
+		verdict = source.readInt();
+		signature = source.readString();
+		dnsMillis = source.readLong();
+		connectMillis = source.readLong();
+		tlsMillis = source.readLong();
+		firstByteMillis = source.readLong();
+		downloadMillis = source.readLong();
+		handshakes = source.readInt();
+		reusedConnections = source.readInt();
+		resumedSessions = source.readInt();
+		sentBytes = source.readLong();
+		receivedBytes = source.readLong();
 	}
 	
 	/** Timestamp when the test was done */
@@ -95,6 +133,66 @@ public class TestInfo implements Parcelable {
 	/** If an exception occurred, null otherwise */
 	private String exception;
 	
+	/** Result of the quick check if it was conclusive, StatusVerifier.RESULT_UNKNOWN otherwise */
+	private int quickCheck = StatusVerifier.RESULT_UNKNOWN;
+	
+	/** The internet sites probed in parallel, site is the one that answered first */
+	private String[] probedSites = new String[0];
+	
+	/** Time in ms until each of the probed sites answered, -1 if it did not answer in time */
+	private long[] probeLatencies = new long[0];
+	
+	/** The stage that failed if an exception occurred, i.e. ProbeException.STAGE_DNS */
+	private int failedStage = ProbeException.STAGE_NONE;
+	
+	/** Time in ms until the stage failed */
+	private long failedStageMillis;
+	
+	/** Number of attempts made until the result was final */
+	private int attempts;
+	
+	/** Time in ms from starting the test until the result was final */
+	private long duration;
+	
+	/** True if the page matched the fingerprint of a captive portal seen before on this network */
+	private boolean isKnownPortal;
+	
+	/** Verdict of the test, i.e. VERDICT_PORTAL */
+	private int verdict = VERDICT_UNKNOWN;
+	
+	/** The captive portal signature found in the page, null if none */
+	private String signature;
+	
+	/** Time in ms resolving the host name of the site */
+	private long dnsMillis;
+	
+	/** Time in ms connecting to the site */
+	private long connectMillis;
+	
+	/** Time in ms of the TLS handshake with the site, 0 for HTTP */
+	private long tlsMillis;
+	
+	/** Time in ms until the site answered with the response status */
+	private long firstByteMillis;
+	
+	/** Time in ms reading the page of the site */
+	private long downloadMillis;
+	
+	/** Number of connections opened by the test, each with a TCP and for HTTPS a TLS handshake */
+	private int handshakes;
+	
+	/** Number of connections reused by the test */
+	private int reusedConnections;
+	
+	/** Number of TLS handshakes of the test that resumed a cached session */
+	private int resumedSessions;
+	
+	/** Number of bytes of the requests of the test */
+	private long sentBytes;
+	
+	/** Number of bytes of the responses of the test */
+	private long receivedBytes;
+	
 	public long getTimestamp() {
 		return timestamp;
 	}
@@ -155,6 +253,126 @@ public class TestInfo implements Parcelable {
 	public void setException(final String exception) {
 		this.exception = exception;
 	}
+	public int getQuickCheck() {
+		return quickCheck;
+	}
+	public void setQuickCheck(final int quickCheck) {
+		this.quickCheck = quickCheck;
+	}
+	public String[] getProbedSites() {
+		return probedSites;
+	}
+	public void setProbedSites(final String[] probedSites) {
+		this.probedSites = probedSites;
+	}
+	public long[] getProbeLatencies() {
+		return probeLatencies;
+	}
+	public void setProbeLatencies(final long[] probeLatencies) {
+		this.probeLatencies = probeLatencies;
+	}
+	public int getFailedStage() {
+		return failedStage;
+	}
+	public void setFailedStage(final int failedStage) {
+		this.failedStage = failedStage;
+	}
+	public long getFailedStageMillis() {
+		return failedStageMillis;
+	}
+	public void setFailedStageMillis(final long failedStageMillis) {
+		this.failedStageMillis = failedStageMillis;
+	}
+	public int getAttempts() {
+		return attempts;
+	}
+	public void setAttempts(final int attempts) {
+		this.attempts = attempts;
+	}
+	public long getDuration() {
+		return duration;
+	}
+	public void setDuration(final long duration) {
+		this.duration = duration;
+	}
+	public boolean getIsKnownPortal() {
+		return isKnownPortal;
+	}
+	public void setIsKnownPortal(final boolean isKnownPortal) {
+		this.isKnownPortal = isKnownPortal;
+	}
+	public int getVerdict() {
+		return verdict;
+	}
+	public void setVerdict(final int verdict) {
+		this.verdict = verdict;
+	}
+	public String getSignature() {
+		return signature;
+	}
+	public void setSignature(final String signature) {
+		this.signature = signature;
+	}
+	public long getDnsMillis() {
+		return dnsMillis;
+	}
+	public void setDnsMillis(final long dnsMillis) {
+		this.dnsMillis = dnsMillis;
+	}
+	public long getConnectMillis() {
+		return connectMillis;
+	}
+	public void setConnectMillis(final long connectMillis) {
+		this.connectMillis = connectMillis;
+	}
+	public long getTlsMillis() {
+		return tlsMillis;
+	}
+	public void setTlsMillis(final long tlsMillis) {
+		this.tlsMillis = tlsMillis;
+	}
+	public long getFirstByteMillis() {
+		return firstByteMillis;
+	}
+	public void setFirstByteMillis(final long firstByteMillis) {
+		this.firstByteMillis = firstByteMillis;
+	}
+	public long getDownloadMillis() {
+		return downloadMillis;
+	}
+	public void setDownloadMillis(final long downloadMillis) {
+		this.downloadMillis = downloadMillis;
+	}
+	public int getHandshakes() {
+		return handshakes;
+	}
+	public void setHandshakes(final int handshakes) {
+		this.handshakes = handshakes;
+	}
+	public int getReusedConnections() {
+		return reusedConnections;
+	}
+	public void setReusedConnections(final int reusedConnections) {
+		this.reusedConnections = reusedConnections;
+	}
+	public int getResumedSessions() {
+		return resumedSessions;
+	}
+	public void setResumedSessions(final int resumedSessions) {
+		this.resumedSessions = resumedSessions;
+	}
+	public long getSentBytes() {
+		return sentBytes;
+	}
+	public void setSentBytes(final long sentBytes) {
+		this.sentBytes = sentBytes;
+	}
+	public long getReceivedBytes() {
+		return receivedBytes;
+	}
+	public void setReceivedBytes(final long receivedBytes) {
+		this.receivedBytes = receivedBytes;
+	}
 	
 	/**
 	 * Returns a "nice" type name: "Wifi" instead of "WIFI",
@@ -186,6 +404,26 @@ public class TestInfo implements Parcelable {
 		buffer.append(", pageTitle = ").append(pageTitle);
 		buffer.append(", exception = ").append(exception);
 		buffer.append(", expectedTitle = ").append(isExpectedTitle);
+		buffer.append(", quickCheck = ").append(quickCheck);
+		buffer.append(", probedSites = ").append(Arrays.toString(probedSites));
+		buffer.append(", probeLatencies = ").append(Arrays.toString(probeLatencies));
+		buffer.append(", failedStage = ").append(failedStage);
+		buffer.append(", failedStageMillis = ").append(failedStageMillis);
+		buffer.append(", attempts = ").append(attempts);
+		buffer.append(", duration = ").append(duration);
+		buffer.append(", knownPortal = ").append(isKnownPortal);
+		buffer.append(", verdict = ").append(verdict);
+		buffer.append(", signature = ").append(signature);
+		buffer.append(", dnsMillis = ").append(dnsMillis);
+		buffer.append(", connectMillis = ").append(connectMillis);
+		buffer.append(", tlsMillis = ").append(tlsMillis);
+		buffer.append(", firstByteMillis = ").append(firstByteMillis);
+		buffer.append(", downloadMillis = ").append(downloadMillis);
+		buffer.append(", handshakes = ").append(handshakes);
+		buffer.append(", reusedConnections = ").append(reusedConnections);
+		buffer.append(", resumedSessions = ").append(resumedSessions);
+		buffer.append(", sentBytes = ").append(sentBytes);
+		buffer.append(", receivedBytes = ").append(receivedBytes);
 		buffer.append(" ]");
 		return buffer.toString();
 	}
@@ -205,6 +443,26 @@ public class TestInfo implements Parcelable {
 		dest.writeString(pageTitle);
 		dest.writeBooleanArray(new boolean[] {isExpectedTitle});
 		dest.writeString(exception);
+		dest.writeInt(quickCheck);
+		dest.writeStringArray(probedSites);
+		dest.writeLongArray(probeLatencies);
+		dest.writeInt(failedStage);
+		dest.writeLong(failedStageMillis);
+		dest.writeInt(attempts);
+		dest.writeLong(duration);
+		dest.writeBooleanArray(new boolean[] {isKnownPortal});
+		dest.writeInt(verdict);
+		dest.writeString(signature);
+		dest.writeLong(dnsMillis);
+		dest.writeLong(connectMillis);
+		dest.writeLong(tlsMillis);
+		dest.writeLong(firstByteMillis);
+		dest.writeLong(downloadMillis);
+		dest.writeInt(handshakes);
+		dest.writeInt(reusedConnections);
+		dest.writeInt(resumedSessions);
+		dest.writeLong(sentBytes);
+		dest.writeLong(receivedBytes);
 	}
 	
 	private static class TestInfoCreator implements Parcelable.Creator<TestInfo> {
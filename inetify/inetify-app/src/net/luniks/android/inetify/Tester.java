@@ -43,6 +43,38 @@ public interface Tester {
 	 */
 	TestInfo testWifi(final int retries, final int delay);
 	
+	/**
+	 * Gets network and Wifi info and tests if the internet site in the settings has
+	 * the expected title and returns and instance of TestInfo, (re)trying as long
+	 * and as often as the given retry policy says. Aborts testing and
+	 * returns null if Wifi disconnects during testing.
+	 * @param retryPolicy policy giving the delay before each attempt
+	 * @return instance of TestInfo containing the test results
+	 */
+	TestInfo testWifi(final RetryPolicy retryPolicy);
+	
+	/**
+	 * Gets network and Wifi info and tests if the internet site in the settings has
+	 * the expected title and returns and instance of TestInfo, (re)trying as long
+	 * and as often as the given retry policy says. Aborts testing and returns null
+	 * if Wifi disconnects during testing, or immediately when the given cancellation
+	 * or this tester is cancelled, even while waiting for a response.
+	 * @param retryPolicy policy giving the delay before each attempt
+	 * @param cancellation cancellation of the test
+	 * @return instance of TestInfo containing the test results
+	 */
+	TestInfo testWifi(final RetryPolicy retryPolicy, final Cancellation cancellation);
+	
+	/**
+	 * Gets network and Wifi info and tests internet connectivity once without delay
+	 * with the cheapest probe, the quick check if possible, and returns an instance
+	 * of TestInfo. Aborts testing and returns null if Wifi is not connected or when 
+	 * the given cancellation or this tester is cancelled.
+	 * @param cancellation cancellation of the test
+	 * @return instance of TestInfo containing the test results
+	 */
+	TestInfo testMonitor(final Cancellation cancellation);
+	
 	/**
 	 * Cancels an ongoing test.
 	 */
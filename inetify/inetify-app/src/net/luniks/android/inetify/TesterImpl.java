@@ -15,10 +15,11 @@
  */
 package net.luniks.android.inetify;
 
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.HashMap;
+import java.util.Map;
 
+import net.luniks.android.impl.ClockImpl;
+import net.luniks.android.interfaces.IClock;
 import net.luniks.android.interfaces.IConnectivityManager;
 import net.luniks.android.interfaces.INetworkInfo;
 import net.luniks.android.interfaces.IWifiInfo;
@@ -44,14 +45,26 @@ public class TesterImpl implements Tester {
 	/** Wifi manager */
 	private final IWifiManager wifiManager;
 	
-	/** Title verifier */
-	private final TitleVerifier titleVerifier;
+	/** Gets the page titles using the title verifier */
+	private final ProbeRacer probeRacer;
 	
-	/** Flag to cancel the test */
-	private final AtomicBoolean cancelled = new AtomicBoolean(false);
+	/** Status verifier used for the quick check, may be null */
+	private final StatusVerifier statusVerifier;
 	
-	/** Thread that runs the test */
-	private CountDownLatch countDownLatch;
+	/** Database adapter used to keep the fingerprints of the pages, may be null */
+	private final DatabaseAdapter databaseAdapter;
+	
+	/** Clock used to time the tests and wait before each attempt */
+	private final IClock clock;
+	
+	/** Budget of the traffic of the tests, null if there is no database adapter */
+	private final TrafficBudget trafficBudget;
+	
+	/** Shares the probes with the other testers */
+	private final ProbeCoordinator probeCoordinator = ProbeCoordinator.getInstance();
+	
+	/** Cancellation of the ongoing test */
+	private volatile Cancellation cancellation = new Cancellation();
 	
 	/**
 	 * Constructs a tester instance using the given Context, IConnectivityManager, IWifiManager and TitleVerifier.
@@ -64,10 +77,37 @@ public class TesterImpl implements Tester {
 			final IConnectivityManager connectivityManager, final IWifiManager wifiManager,
 			final TitleVerifier titleVerifier) {
 		
+		this(context, connectivityManager, wifiManager, titleVerifier, null, null, new ClockImpl());
+	}
+	
+	/**
+	 * Constructs a tester instance using the given Context, IConnectivityManager, IWifiManager,
+	 * TitleVerifier, StatusVerifier, DatabaseAdapter and IClock. The StatusVerifier is used
+	 * for a quick check before the page title is checked, if enabled in the settings. The
+	 * DatabaseAdapter is used to keep the fingerprints of the pages of the internet sites
+	 * per Wifi network and the traffic of the tests. Both may be null. The IClock is used
+	 * to time the tests and to wait before each attempt.
+	 * @param context
+	 * @param connectivityManager
+	 * @param wifiManager
+	 * @param titleVerifier
+	 * @param statusVerifier
+	 * @param databaseAdapter
+	 * @param clock
+	 */
+	public TesterImpl(final Context context,
+			final IConnectivityManager connectivityManager, final IWifiManager wifiManager,
+			final TitleVerifier titleVerifier, final StatusVerifier statusVerifier,
+			final DatabaseAdapter databaseAdapter, final IClock clock) {
+		
 		this.sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
 		this.connectivityManager = connectivityManager;
 		this.wifiManager = wifiManager;
-		this.titleVerifier = titleVerifier;
+		this.probeRacer = new ProbeRacer(titleVerifier, clock);
+		this.statusVerifier = statusVerifier;
+		this.databaseAdapter = databaseAdapter;
+		this.clock = clock;
+		this.trafficBudget = databaseAdapter == null ? null : new TrafficBudget(context, databaseAdapter, clock);
 	}
 
 	/**
@@ -77,25 +117,22 @@ public class TesterImpl implements Tester {
 	 */
 	public TestInfo testSimple() {
 		
-		String server = getSettingsServer();
-		String title = getSettingsTitle();
+		final long start = clock.currentTimeMillis();
 		
-		String pageTitle = "";
-		boolean isExpectedTitle = false;
-		String exception = null;
-				
-		try {
-			// Log.d(Inetify.LOG_TAG, String.format("Manual internet connectivity test"));
-			pageTitle = titleVerifier.getPageTitle(server);
-			isExpectedTitle = titleVerifier.isExpectedTitle(title, pageTitle);
-			
-			// Log.d(Inetify.LOG_TAG, String.format("Internet connectivity is OK: %s", isExpectedTitle));				
-		} catch(Exception e) {
-			// Log.d(Inetify.LOG_TAG, String.format("Internet connectivity test failed with: %s", e.getMessage()));
-			exception = e.getLocalizedMessage();
-		}
+		this.cancellation = new Cancellation();
+		final ProbeConnections connections = new ProbeConnections();
+		
+		TestInfo info = newTestInfo();
+		
+		// Log.d(Inetify.LOG_TAG, String.format("Manual internet connectivity test"));
+		// Waits for a probe in flight, but does not use older results
+		testTitle(info, cancellation, connections, 0);
+		info.setAttempts(1);
+		info.setDuration(clock.currentTimeMillis() - start);
+		setConnections(info, connections);
+		addTraffic(connections);
 		
-		return buildTestInfo(pageTitle, isExpectedTitle, exception);
+		return buildTestInfo(info);
 	}
 	
 	/**
@@ -107,51 +144,295 @@ public class TesterImpl implements Tester {
 	 * @return instance of TestInfo containing the test results
 	 */
 	public TestInfo testWifi(final int retries, final int delay) {
-				
-		cancelled.set(false);
+		return testWifi(new FixedRetryPolicy(retries, delay));
+	}
+	
+	/**
+	 * Gets network and Wifi info and tests if the internet site in the settings has
+	 * the expected title and returns and instance of TestInfo, (re)trying as long
+	 * and as often as the given retry policy says. Aborts testing and
+	 * returns null if Wifi disconnects during testing.
+	 * @param retryPolicy policy giving the delay before each attempt
+	 * @return instance of TestInfo containing the test results
+	 */
+	public TestInfo testWifi(final RetryPolicy retryPolicy) {
+		return testWifi(retryPolicy, new Cancellation());
+	}
+	
+	/**
+	 * Gets network and Wifi info and tests if the internet site in the settings has
+	 * the expected title and returns and instance of TestInfo, (re)trying as long
+	 * and as often as the given retry policy says. Aborts testing and returns null
+	 * if Wifi disconnects during testing, or immediately when the given cancellation
+	 * or this tester is cancelled, even while waiting for a response. Does the quick
+	 * check first if enabled in the settings or if the traffic budget is reached.
+	 * @param retryPolicy policy giving the delay before each attempt
+	 * @param cancellation cancellation of the test
+	 * @return instance of TestInfo containing the test results
+	 */
+	public TestInfo testWifi(final RetryPolicy retryPolicy, final Cancellation cancellation) {
+		boolean budgetReached = trafficBudget != null && trafficBudget.isReached();
 		
-		final String server = getSettingsServer();
-		final String title = getSettingsTitle();
+		// Log.d(Inetify.LOG_TAG, String.format("Traffic budget reached: %s", budgetReached));
+		return testWifi(retryPolicy, cancellation, getSettingsQuickCheck() || budgetReached);
+	}
+	
+	/**
+	 * Gets network and Wifi info and tests internet connectivity once without delay
+	 * with the cheapest probe, the quick check if there is a status verifier, and the
+	 * page title only if its result is not OK, and returns an instance of TestInfo.
+	 * Aborts testing and returns null if Wifi is not connected or when the given 
+	 * cancellation or this tester is cancelled.
+	 * @param cancellation cancellation of the test
+	 * @return instance of TestInfo containing the test results
+	 */
+	public TestInfo testMonitor(final Cancellation cancellation) {
+		return testWifi(new FixedRetryPolicy(1, 0), cancellation, true);
+	}
+	
+	/**
+	 * Tests like testWifi(RetryPolicy, Cancellation), doing the quick check first
+	 * if the given quickCheck is true and there is a status verifier, and adds
+	 * the traffic of the test to the database, even if it was aborted.
+	 * @param retryPolicy policy giving the delay before each attempt
+	 * @param cancellation cancellation of the test
+	 * @param quickCheck if the quick check should be done first
+	 * @return instance of TestInfo containing the test results
+	 */
+	private TestInfo testWifi(final RetryPolicy retryPolicy, final Cancellation cancellation, final boolean quickCheck) {
+		final ProbeConnections connections = new ProbeConnections();
+		try {
+			return testAttempts(retryPolicy, cancellation, connections, quickCheck);
+		} finally {
+			addTraffic(connections);
+		}
+	}
+	
+	/**
+	 * Makes the attempts of testWifi(RetryPolicy, Cancellation, boolean).
+	 * @param retryPolicy policy giving the delay before each attempt
+	 * @param cancellation cancellation of the test
+	 * @param connections connections of the test
+	 * @param quickCheck if the quick check should be done first
+	 * @return instance of TestInfo containing the test results
+	 */
+	private TestInfo testAttempts(final RetryPolicy retryPolicy, final Cancellation cancellation, 
+			final ProbeConnections connections, final boolean quickCheck) {
+		
+		this.cancellation = cancellation;
+		
+		final long start = clock.currentTimeMillis();
+		final boolean quick = statusVerifier != null && quickCheck;
 		
-		String pageTitle = "";
-		boolean isExpectedTitle = false;
-		String exception = null;
+		TestInfo info = newTestInfo();
 		
 		// I know there are more advanced ways than a for loop but they don't really make it simpler
-		for(int i = 0; i < retries && ! isExpectedTitle; i++) {
-			try {
+		for(int i = 0; ! info.getIsExpectedTitle(); i++) {
+			
+			long delay = retryPolicy.getDelay(i, i == 0 ? null : info);
+			if(delay == RetryPolicy.STOP) {
+				break;
+			}
 				
-				// Give the wifi connection time to settle
-				// Log.d(Inetify.LOG_TAG, String.format("Sleeping %s s before testing internet connectivity", delay));
-				try {
-					countDownLatch = new CountDownLatch(1);
-					countDownLatch.await(delay, TimeUnit.SECONDS);
-				} catch (InterruptedException e) {
+			// Give the wifi connection time to settle
+			// Log.d(Inetify.LOG_TAG, String.format("Sleeping %s ms before testing internet connectivity", delay));
+			try {
+				if(cancellation.await(delay, clock)) {
 					// Log.d(Inetify.LOG_TAG, String.format("Cancelled during sleep(), aborting"));
 					return null;
 				}
-				
-				// Abort if cancelled or the wifi connection went away
-				if(cancelledOrNoWifiConnection()) {
-					// Log.d(Inetify.LOG_TAG, "Cancelling internet connectivity test");
-					return null;
-				}
-				
-				// Test internet connectivity
-				// Log.d(Inetify.LOG_TAG, String.format("Testing internet connectivity, try %s of %s", i + 1, retries));
-				pageTitle = titleVerifier.getPageTitle(server);
-				isExpectedTitle = titleVerifier.isExpectedTitle(title, pageTitle);
-				
-				// Log.d(Inetify.LOG_TAG, String.format("Internet connectivity is OK: %s", isExpectedTitle));
-				exception = null;
-				
-			} catch(Exception e) {
-				// Log.d(Inetify.LOG_TAG, String.format("Internet connectivity test failed with: %s", e.getMessage()));
-				exception = e.getLocalizedMessage();
+			} catch (InterruptedException e) {
+				// Log.d(Inetify.LOG_TAG, String.format("Cancelled during sleep(), aborting"));
+				return null;
+			}
+			
+			// Abort if cancelled or the wifi connection went away
+			if(cancelledOrNoWifiConnection(cancellation)) {
+				// Log.d(Inetify.LOG_TAG, "Cancelling internet connectivity test");
+				return null;
+			}
+			
+			// Test internet connectivity
+			// Log.d(Inetify.LOG_TAG, String.format("Testing internet connectivity, try %s", i + 1));
+			if(! (quick && testStatus(info, cancellation, connections))) {
+				// Only the first attempt accepts recent results, retries want new ones
+				testTitle(info, cancellation, connections, i == 0 ? ProbeCoordinator.MAX_AGE : 0);
+			}
+			info.setAttempts(i + 1);
+			
+			// The result of an aborted request is meaningless
+			if(cancellation.isCancelled()) {
+				// Log.d(Inetify.LOG_TAG, "Cancelled during testing, aborting");
+				return null;
 			}
 		}
 		
-		return buildTestInfo(pageTitle, isExpectedTitle, exception);	
+		info.setDuration(clock.currentTimeMillis() - start);
+		setConnections(info, connections);
+		
+		return buildTestInfo(info);	
+	}
+	
+	/**
+	 * Sets the number of connections opened and reused, of resumed TLS sessions
+	 * and of bytes sent and received of all attempts of the test in the given 
+	 * TestInfo instance.
+	 * @param info TestInfo instance
+	 * @param connections connections of the test
+	 */
+	private void setConnections(final TestInfo info, final ProbeConnections connections) {
+		info.setHandshakes(connections.getHandshakes());
+		info.setReusedConnections(connections.getReused());
+		info.setResumedSessions(connections.getResumed());
+		info.setSentBytes(connections.getSentBytes());
+		info.setReceivedBytes(connections.getReceivedBytes());
+		// Log.d(Inetify.LOG_TAG, String.format("Handshakes: %s, reused: %s, retries: %s", 
+		//		connections.getHandshakes(), connections.getReused(), connections.getRetries()));
+	}
+	
+	/**
+	 * Adds the bytes sent and received by all attempts of the test to the traffic 
+	 * of the current day in the database, if there is a database adapter.
+	 * @param connections connections of the test
+	 */
+	private void addTraffic(final ProbeConnections connections) {
+		if(databaseAdapter != null) {
+			databaseAdapter.addTraffic(clock.currentTimeMillis(), 
+					connections.getSentBytes() + connections.getReceivedBytes());
+		}
+	}
+	
+	/**
+	 * Does the quick check with the status verifier and returns true if internet
+	 * connectivity is OK, false if the page title needs to be checked. A response 
+	 * that is not OK can mean a captive portal as well as a quick check site that 
+	 * is blocked or moved, so only the page title tells.
+	 * @param info TestInfo to update with the results
+	 * @param cancellation cancellation of the test
+	 * @param connections connections of the test
+	 * @return boolean true if the result of the quick check is conclusive
+	 */
+	private boolean testStatus(final TestInfo info, final Cancellation cancellation, final ProbeConnections connections) {
+		
+		final String quickServer = getSettingsQuickServer();
+		
+		try {
+			int result = statusVerifier.verify(quickServer, cancellation, connections);
+			
+			// Log.d(Inetify.LOG_TAG, String.format("Quick check result: %s", result));
+			if(result == StatusVerifier.RESULT_OK) {
+				info.setSite(quickServer);
+				info.setPageTitle("");
+				info.setIsExpectedTitle(true);
+				info.setQuickCheck(result);
+				info.setVerdict(TestInfo.VERDICT_OK);
+				info.setSignature(null);
+				info.setException(null);
+				info.setFailedStage(ProbeException.STAGE_NONE);
+				info.setFailedStageMillis(0);
+				info.setProbedSites(new String[0]);
+				info.setProbeLatencies(new long[0]);
+				new ProbeTimings().applyTo(info);
+				return true;
+			}
+		} catch(Exception e) {
+			// Log.d(Inetify.LOG_TAG, String.format("Quick check failed with: %s", e.getMessage()));
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Tests if the internet sites in the settings have the expected title, sharing
+	 * the probe with other testers probing the same sites over the same network at
+	 * the same time, or using their results if they are not older than the given maxAge.
+	 * @param info TestInfo to update with the results
+	 * @param cancellation cancellation of the test
+	 * @param connections connections of the test
+	 * @param maxAge max. age in ms of results of other testers, 0 to not use them
+	 */
+	private void testTitle(final TestInfo info, final Cancellation cancellation, 
+			final ProbeConnections connections, final long maxAge) {
+		
+		probeCoordinator.probe(getProbeKey(), maxAge, info, cancellation, new ProbeCoordinator.Probe() {
+			public void probe(final TestInfo info, final Cancellation cancellation) {
+				testTitle(info, cancellation, connections);
+			}
+		});
+	}
+	
+	/**
+	 * Returns the key of the probe of the internet sites and title in the settings
+	 * over the current network, or null if there is no network.
+	 * @return String key or null
+	 */
+	private String getProbeKey() {
+		INetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+		if(networkInfo == null) {
+			return null;
+		}
+		
+		String network = networkInfo.getSubtypeName();
+		if(networkInfo.getType() == ConnectivityManager.TYPE_WIFI) {
+			IWifiInfo wifiInfo = wifiManager.getConnectionInfo();
+			network = wifiInfo == null ? null : wifiInfo.getBSSID();
+		}
+		
+		return String.format("%s|%s|%s|%s", networkInfo.getType(), network, 
+				getSettingsServer(), getSettingsTitle());
+	}
+	
+	/**
+	 * Tests if the internet sites in the settings have the expected title,
+	 * concurrently if there are several. The page title is updated only if 
+	 * getting it succeeds, the exception is set if it fails and cleared if it succeeds.
+	 * The fingerprint of the page of the site that answered is kept for the Wifi network.
+	 * @param info TestInfo to update with the results
+	 * @param cancellation cancellation of the test
+	 * @param connections connections of the test
+	 */
+	private void testTitle(final TestInfo info, final Cancellation cancellation, final ProbeConnections connections) {
+		
+		final String title = getSettingsTitle();
+		final String[] sites = getSettingsServers();
+		final IWifiInfo wifiInfo = databaseAdapter == null ? null : wifiManager.getConnectionInfo();
+		
+		info.setQuickCheck(StatusVerifier.RESULT_UNKNOWN);
+		
+		Map<String, PortalFingerprint> fingerprints = fetchFingerprints(wifiInfo, sites);
+		
+		probeRacer.race(info, sites, title, cancellation, connections, fingerprints);
+		
+		PortalFingerprint fingerprint = fingerprints.get(info.getSite());
+		if(fingerprint != null && fingerprint.getPageTitle() != null && ! fingerprint.getIsMatched() && 
+				info.getException() == null && ! cancellation.isCancelled()) {
+			databaseAdapter.updateFingerprint(wifiInfo.getSSID(), wifiInfo.getBSSID(), info.getSite(), fingerprint);
+		}
+		
+		// Log.d(Inetify.LOG_TAG, String.format("Internet connectivity is OK: %s", info.getIsExpectedTitle()));
+	}
+	
+	/**
+	 * Returns the fingerprints of the pages of the given sites on the Wifi network
+	 * with the given WifiInfo, empty ones for sites without a fingerprint yet, or an
+	 * empty map if there is no database adapter or Wifi network.
+	 * @param wifiInfo
+	 * @param sites internet sites
+	 * @return Map<String, PortalFingerprint> fingerprints by site
+	 */
+	private Map<String, PortalFingerprint> fetchFingerprints(final IWifiInfo wifiInfo, final String[] sites) {
+		Map<String, PortalFingerprint> fingerprints = new HashMap<String, PortalFingerprint>();
+		if(wifiInfo == null || wifiInfo.getSSID() == null || wifiInfo.getBSSID() == null) {
+			return fingerprints;
+		}
+		for(String site : sites) {
+			if(site == null) {
+				continue;
+			}
+			PortalFingerprint fingerprint = databaseAdapter.fetchFingerprint(wifiInfo.getBSSID(), site);
+			fingerprints.put(site, fingerprint == null ? new PortalFingerprint() : fingerprint);
+		}
+		return fingerprints;
 	}
 	
 	/**
@@ -162,6 +443,19 @@ public class TesterImpl implements Tester {
 		return sharedPreferences.getString(Settings.INTERNET_SERVER, null);
 	}
 	
+	/**
+	 * Returns the servers set in the settings, separated by commas or whitespace.
+	 * @return String[] server setting
+	 */
+	private String[] getSettingsServers() {
+		String server = getSettingsServer();
+		String[] servers = ProbeRacer.split(server);
+		if(servers.length == 0) {
+			return new String[] {server};
+		}
+		return servers;
+	}
+	
 	/**
 	 * Returns the title set in the settings.
 	 * @return String title setting
@@ -171,16 +465,40 @@ public class TesterImpl implements Tester {
 	}
 	
 	/**
-	 * Builds a TestInfo instance from NetworkInfo and WifiInfo, and the given test results. 
-	 * @param pageTitle page title found
-	 * @param isExpectedTitle if pageTitle was the expected title
-	 * @param exception exception message or null if there was no exception 
+	 * Returns true if the quick check is enabled in the settings.
+	 * @return boolean quick check setting
+	 */
+	private boolean getSettingsQuickCheck() {
+		return sharedPreferences.getBoolean(Settings.INTERNET_QUICK_CHECK, false);
+	}
+	
+	/**
+	 * Returns the quick check server set in the settings.
+	 * @return String quick check server setting
+	 */
+	private String getSettingsQuickServer() {
+		return sharedPreferences.getString(Settings.INTERNET_QUICK_SERVER, null);
+	}
+	
+	/**
+	 * Returns a new TestInfo instance with the test results initialized.
 	 * @return TestInfo instance
 	 */
-	private TestInfo buildTestInfo(final String pageTitle, final boolean isExpectedTitle, final String exception) {
-		
-		String server = getSettingsServer();
-		String title = getSettingsTitle();
+	private TestInfo newTestInfo() {
+		TestInfo info = new TestInfo();
+		info.setSite(getSettingsServer());
+		info.setTitle(getSettingsTitle());
+		info.setPageTitle("");
+		info.setIsExpectedTitle(false);
+		return info;
+	}
+	
+	/**
+	 * Completes the given TestInfo instance with the test results with NetworkInfo and WifiInfo. 
+	 * @param info TestInfo instance with the test results
+	 * @return TestInfo instance
+	 */
+	private TestInfo buildTestInfo(final TestInfo info) {
 		
 		INetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
 		IWifiInfo wifiInfo = wifiManager.getConnectionInfo();
@@ -201,28 +519,23 @@ public class TesterImpl implements Tester {
 			}
 		}
 		
-		TestInfo info = new TestInfo();
-		info.setTimestamp(System.currentTimeMillis());
+		info.setTimestamp(clock.currentTimeMillis());
 		info.setType(type);
 		info.setTypeName(typeName);
 		info.setExtra(extra);
 		info.setExtra2(extra2);
-		info.setSite(server);
-		info.setTitle(title);
-		info.setPageTitle(pageTitle);
-		info.setIsExpectedTitle(isExpectedTitle);
-		info.setException(exception);
 		
 		return info;
 	}
 	
 	/**
 	 * Returns true if the test was cancelled or if there was no Wifi connection.
+	 * @param cancellation cancellation of the test
 	 * @return true if the test should be cancelled, false otherwise
 	 */
-	private boolean cancelledOrNoWifiConnection() {
+	private boolean cancelledOrNoWifiConnection(final Cancellation cancellation) {
 		
-		if(cancelled.get()) {
+		if(cancellation.isCancelled()) {
 			// Log.d(Inetify.LOG_TAG, String.format("Cancelled"));
 			return true;
 		}
@@ -239,10 +552,7 @@ public class TesterImpl implements Tester {
 	 * Cancels an ongoing test.
 	 */
 	public void cancel() {
-		this.cancelled.set(true);
-		if(countDownLatch != null) {
-			countDownLatch.countDown();
-		}
+		cancellation.cancel();
 	}
 	
 	/**
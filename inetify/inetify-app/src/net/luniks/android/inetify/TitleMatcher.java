@@ -0,0 +1,158 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify;
+
+/**
+ * Case insensitive matcher of an expected title, compiled once and then used to
+ * search page titles for it without allocating, using Boyer-Moore-Horspool on case
+ * folded characters. Case folding does not depend on the default locale, so i.e.
+ * in Turkish, "I" still matches "i".
+ * The matcher for the current title is cached and only compiled again if the
+ * title changes.
+ * 
+ * @author torsten.roemer@luniks.net
+ */
+public final class TitleMatcher {
+	
+	/** Size of the shift table, characters are hashed into it by their low bits */
+	private static final int TABLE_SIZE = 256;
+	
+	/** Mask for the low bits of a character */
+	private static final int TABLE_MASK = TABLE_SIZE - 1;
+	
+	/** Matcher for the title used last */
+	private static volatile TitleMatcher cached = new TitleMatcher(null);
+	
+	/** The expected title */
+	private final String title;
+	
+	/** Case folded characters of the expected title */
+	private final char[] pattern;
+	
+	/** Number of characters to shift by the last character of the window */
+	private final int[] shift = new int[TABLE_SIZE];
+	
+	/**
+	 * Compiles a matcher for the given title.
+	 * @param title (part of) the expected title, may be null
+	 */
+	public TitleMatcher(final String title) {
+		this.title = title;
+		this.pattern = new char[title == null ? 0 : title.length()];
+		for(int i = 0; i < pattern.length; i++) {
+			pattern[i] = fold(title.charAt(i));
+		}
+		for(int i = 0; i < TABLE_SIZE; i++) {
+			shift[i] = pattern.length;
+		}
+		// Later characters overwrite earlier ones, so each entry is the smallest safe shift
+		for(int i = 0; i < pattern.length - 1; i++) {
+			shift[pattern[i] & TABLE_MASK] = pattern.length - 1 - i;
+		}
+	}
+	
+	/**
+	 * Returns the matcher for the given title, compiling a new one only if the
+	 * title is not the same as the one of the cached matcher.
+	 * @param title (part of) the expected title, may be null
+	 * @return TitleMatcher
+	 */
+	public static TitleMatcher forTitle(final String title) {
+		TitleMatcher matcher = cached;
+		if(title == null ? matcher.title != null : ! title.equals(matcher.title)) {
+			matcher = new TitleMatcher(title);
+			cached = matcher;
+		}
+		return matcher;
+	}
+	
+	/**
+	 * Returns the expected title of this matcher.
+	 * @return String title
+	 */
+	public String getTitle() {
+		return title;
+	}
+	
+	/**
+	 * Returns true if the given text contains the title, case insensitive.
+	 * Always returns false if the title or the text is null or empty.
+	 * @param text i.e. a page title
+	 * @return boolean true if text contains the title
+	 */
+	public boolean matches(final CharSequence text) {
+		if(text == null) {
+			return false;
+		}
+		final int m = pattern.length;
+		final int n = text.length();
+		if(m == 0 || m > n) {
+			return false;
+		}
+		int i = 0;
+		while(i <= n - m) {
+			int j = m - 1;
+			while(j >= 0 && fold(text.charAt(i + j)) == pattern[j]) {
+				j--;
+			}
+			if(j < 0) {
+				return true;
+			}
+			i += shift[fold(text.charAt(i + m - 1)) & TABLE_MASK];
+		}
+		return false;
+	}
+	
+	/**
+	 * Returns true if the given characters contain the title, case insensitive.
+	 * @param chars i.e. characters of a page title read so far
+	 * @param offset
+	 * @param length
+	 * @return boolean true if the characters contain the title
+	 */
+	public boolean matches(final char[] chars, final int offset, final int length) {
+		final int m = pattern.length;
+		if(chars == null || m == 0 || m > length) {
+			return false;
+		}
+		final int end = offset + length - m;
+		int i = offset;
+		while(i <= end) {
+			int j = m - 1;
+			while(j >= 0 && fold(chars[i + j]) == pattern[j]) {
+				j--;
+			}
+			if(j < 0) {
+				return true;
+			}
+			i += shift[fold(chars[i + m - 1]) & TABLE_MASK];
+		}
+		return false;
+	}
+	
+	/**
+	 * Folds the case of the given character independently of the default locale.
+	 * @param c
+	 * @return char case folded character
+	 */
+	public static char fold(final char c) {
+		if(c < 128) {
+			return c >= 'A' && c <= 'Z' ? (char)(c + ('a' - 'A')) : c;
+		}
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+
+}
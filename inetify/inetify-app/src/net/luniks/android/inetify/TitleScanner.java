@@ -0,0 +1,501 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Small state machine that is fed the bytes of an HTML page chunk by chunk
+ * and picks out the content of the first title element, so the page does
+ * not have to be downloaded and parsed completely just to get its title.
+ * Works for charsets that are ASCII compatible in the markup, i.e. UTF-8 and
+ * ISO-8859-*, and recognizes a charset declared with a meta element before
+ * the title. Comments are skipped. Not thread safe, one instance per page.
+ *
+ * @author torsten.roemer@luniks.net
+ */
+public final class TitleScanner {
+
+	/** Default charset if none is given or declared, as used by jsoup */
+	public static final String DEFAULT_CHARSET = "UTF-8";
+
+	/** Max. number of bytes of the title that are kept */
+	private static final int MAX_TITLE_BYTES = 1024;
+
+	/** Max. number of bytes of a meta element that are kept */
+	private static final int MAX_META_BYTES = 256;
+
+	/** Text content outside of any tag */
+	private static final int STATE_TEXT = 0;
+
+	/** After "<" */
+	private static final int STATE_TAG_OPEN = 1;
+
+	/** Reading the name of a start tag */
+	private static final int STATE_TAG_NAME = 2;
+
+	/** Inside a tag after its name */
+	private static final int STATE_TAG = 3;
+
+	/** Inside a quoted attribute value of a tag */
+	private static final int STATE_TAG_QUOTED = 4;
+
+	/** After "<!" */
+	private static final int STATE_DECLARATION = 5;
+
+	/** Inside a comment */
+	private static final int STATE_COMMENT = 6;
+
+	/** Inside the title element */
+	private static final int STATE_TITLE = 7;
+
+	/** Inside the title element, possibly reading its end tag */
+	private static final int STATE_TITLE_END = 8;
+
+	/** End tag of the title element read */
+	private static final int STATE_DONE = 9;
+
+	/** Tag name of the title element */
+	private static final byte[] TITLE = {'t', 'i', 't', 'l', 'e'};
+
+	/** Tag name of the meta element */
+	private static final byte[] META = {'m', 'e', 't', 'a'};
+
+	/** Attribute declaring a charset */
+	private static final byte[] CHARSET = {'c', 'h', 'a', 'r', 's', 'e', 't', '='};
+
+	/** Current state */
+	private int state = STATE_TEXT;
+
+	/** Number of bytes of the current tag name or end tag matched so far */
+	private int matched;
+
+	/** True if the current tag name may still be "title" */
+	private boolean maybeTitle;
+
+	/** True if the current tag name may still be "meta" */
+	private boolean maybeMeta;
+
+	/** True if the current tag is the title start tag */
+	private boolean inTitleTag;
+
+	/** True if the current tag is a meta tag */
+	private boolean inMetaTag;
+
+	/** Quote character of the current attribute value */
+	private byte quote;
+
+	/** Number of consecutive '-' read in a declaration or comment */
+	private int dashes;
+
+	/** Bytes of the title */
+	private final byte[] title = new byte[MAX_TITLE_BYTES];
+
+	/** Number of bytes of the title */
+	private int titleLength;
+
+	/** Bytes of the current meta tag */
+	private final byte[] meta = new byte[MAX_META_BYTES];
+
+	/** Number of bytes of the current meta tag */
+	private int metaLength;
+
+	/** Charset declared in a meta element, null if none */
+	private String declaredCharset;
+
+	/**
+	 * Scans the given bytes and returns true if the complete title was found.
+	 * Bytes given after the title was found are ignored.
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @return boolean true if the title is complete
+	 */
+	public boolean scan(final byte[] bytes, final int offset, final int length) {
+		final int end = offset + length;
+		for(int i = offset; i < end && state != STATE_DONE; i++) {
+			next(bytes[i]);
+		}
+		return state == STATE_DONE;
+	}
+
+	/**
+	 * Returns true if the complete title was found.
+	 * @return boolean true if the title is complete
+	 */
+	public boolean isDone() {
+		return state == STATE_DONE;
+	}
+
+	/**
+	 * Returns true if the title start tag was found, even if the end tag was not (yet) found.
+	 * @return boolean true if there is a title
+	 */
+	public boolean hasTitle() {
+		return state == STATE_TITLE || state == STATE_TITLE_END || state == STATE_DONE;
+	}
+
+	/**
+	 * Returns the charset declared with a meta element before the title, or null if none.
+	 * @return String charset or null
+	 */
+	public String getDeclaredCharset() {
+		return declaredCharset;
+	}
+
+	/**
+	 * Returns the title found so far, decoded using the given charset, or the charset
+	 * declared in the page if the given charset is null, or DEFAULT_CHARSET. Character
+	 * references are decoded and whitespace is normalized like jsoup does.
+	 * Returns an empty string if no title was found.
+	 * @param charset charset from the Content-Type header or null
+	 * @return String title
+	 */
+	public String getTitle(final String charset) {
+		String raw = decode(charset);
+		return normalizeWhitespace(unescape(raw));
+	}
+
+	/**
+	 * Decodes the bytes of the title using the given charset, the declared
+	 * charset or the default charset.
+	 * @param charset
+	 * @return String raw title
+	 */
+	private String decode(final String charset) {
+		String[] charsets = {charset, declaredCharset, DEFAULT_CHARSET};
+		for(String name : charsets) {
+			if(name != null) {
+				try {
+					return new String(title, 0, titleLength, name);
+				} catch(UnsupportedEncodingException e) {
+					// Try the next one
+				}
+			}
+		}
+		return "";
+	}
+
+	/**
+	 * Advances the state machine by one byte.
+	 * @param b
+	 */
+	private void next(final byte b) {
+		switch(state) {
+			case STATE_TEXT:
+				if(b == '<') {
+					state = STATE_TAG_OPEN;
+				}
+				break;
+			case STATE_TAG_OPEN:
+				if(b == '!') {
+					dashes = 0;
+					state = STATE_DECLARATION;
+				} else if(isLetter(b)) {
+					matched = 0;
+					maybeTitle = true;
+					maybeMeta = true;
+					state = STATE_TAG_NAME;
+					tagName(b);
+				} else if(b == '<') {
+					state = STATE_TAG_OPEN;
+				} else {
+					// End tags, processing instructions or a lone "<"
+					state = b == '/' || b == '?' ? STATE_TAG : STATE_TEXT;
+					inTitleTag = false;
+					inMetaTag = false;
+				}
+				break;
+			case STATE_TAG_NAME:
+				if(isWhitespace(b) || b == '/' || b == '>') {
+					inTitleTag = maybeTitle && matched == TITLE.length;
+					inMetaTag = maybeMeta && matched == META.length;
+					metaLength = 0;
+					state = STATE_TAG;
+					next(b);
+				} else {
+					tagName(b);
+				}
+				break;
+			case STATE_TAG:
+				if(b == '>') {
+					if(inMetaTag) {
+						findCharset();
+					}
+					if(inTitleTag) {
+						matched = 0;
+						state = STATE_TITLE;
+					} else {
+						state = STATE_TEXT;
+					}
+					inTitleTag = false;
+					inMetaTag = false;
+				} else {
+					if(b == '"' || b == '\'') {
+						quote = b;
+						state = STATE_TAG_QUOTED;
+					}
+					appendMeta(b);
+				}
+				break;
+			case STATE_TAG_QUOTED:
+				if(b == quote) {
+					state = STATE_TAG;
+				}
+				appendMeta(b);
+				break;
+			case STATE_DECLARATION:
+				if(b == '-' && dashes < 2) {
+					dashes++;
+					if(dashes == 2) {
+						dashes = 0;
+						state = STATE_COMMENT;
+					}
+				} else {
+					// Doctype or some other declaration, ends with ">"
+					inTitleTag = false;
+					inMetaTag = false;
+					state = STATE_TAG;
+					next(b);
+				}
+				break;
+			case STATE_COMMENT:
+				if(b == '-') {
+					dashes++;
+				} else if(b == '>' && dashes >= 2) {
+					state = STATE_TEXT;
+				} else {
+					dashes = 0;
+				}
+				break;
+			case STATE_TITLE:
+				if(b == '<') {
+					matched = 0;
+					state = STATE_TITLE_END;
+				} else {
+					appendTitle(b);
+				}
+				break;
+			case STATE_TITLE_END:
+				titleEnd(b);
+				break;
+			default:
+				break;
+		}
+	}
+
+	/**
+	 * Matches the given byte of a tag name against "title" and "meta".
+	 * @param b
+	 */
+	private void tagName(final byte b) {
+		byte lower = toLower(b);
+		maybeTitle = maybeTitle && matched < TITLE.length && TITLE[matched] == lower;
+		maybeMeta = maybeMeta && matched < META.length && META[matched] == lower;
+		matched++;
+	}
+
+	/**
+	 * Matches the given byte against the end tag "</title" followed by
+	 * whitespace or ">", and appends what turns out to not be the end tag
+	 * to the title.
+	 * @param b
+	 */
+	private void titleEnd(final byte b) {
+		if(matched == 0) {
+			if(b == '/') {
+				matched = 1;
+				return;
+			}
+		} else if(matched <= TITLE.length) {
+			if(toLower(b) == TITLE[matched - 1]) {
+				matched++;
+				return;
+			}
+		} else if(isWhitespace(b) || b == '>') {
+			state = STATE_DONE;
+			return;
+		}
+
+		// Not the end tag, so what was read belongs to the title
+		appendTitle((byte)'<');
+		if(matched > 0) {
+			appendTitle((byte)'/');
+			for(int i = 0; i < matched - 1; i++) {
+				appendTitle(TITLE[i]);
+			}
+		}
+		state = STATE_TITLE;
+		if(b == '<') {
+			matched = 0;
+			state = STATE_TITLE_END;
+		} else {
+			appendTitle(b);
+		}
+	}
+
+	/**
+	 * Appends the given byte to the title if it is not too long yet.
+	 * @param b
+	 */
+	private void appendTitle(final byte b) {
+		if(titleLength < title.length) {
+			title[titleLength++] = b;
+		}
+	}
+
+	/**
+	 * Appends the given byte to the current meta tag if it is one.
+	 * @param b
+	 */
+	private void appendMeta(final byte b) {
+		if(inMetaTag && metaLength < meta.length) {
+			meta[metaLength++] = toLower(b);
+		}
+	}
+
+	/**
+	 * Looks for "charset=" in the current meta tag and sets the declared charset
+	 * if there is one and none was found before.
+	 */
+	private void findCharset() {
+		if(declaredCharset != null) {
+			return;
+		}
+		for(int i = 0; i <= metaLength - CHARSET.length; i++) {
+			int j = 0;
+			while(j < CHARSET.length && meta[i + j] == CHARSET[j]) {
+				j++;
+			}
+			if(j == CHARSET.length) {
+				int start = i + j;
+				while(start < metaLength && (meta[start] == '"' || meta[start] == '\'' || isWhitespace(meta[start]))) {
+					start++;
+				}
+				int stop = start;
+				while(stop < metaLength && isCharsetChar(meta[stop])) {
+					stop++;
+				}
+				if(stop > start) {
+					try {
+						declaredCharset = new String(meta, start, stop - start, "US-ASCII");
+					} catch(UnsupportedEncodingException e) {
+						// US-ASCII is always supported
+					}
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Decodes the most common character references in the given string.
+	 * @param string
+	 * @return String unescaped string
+	 */
+	static String unescape(final String string) {
+		if(string.indexOf('&') == -1) {
+			return string;
+		}
+		StringBuilder builder = new StringBuilder(string.length());
+		int i = 0;
+		while(i < string.length()) {
+			char c = string.charAt(i);
+			int semicolon = c == '&' ? string.indexOf(';', i) : -1;
+			if(semicolon > i + 1 && semicolon - i <= 10) {
+				String reference = string.substring(i + 1, semicolon);
+				int decoded = decodeReference(reference);
+				if(decoded != -1) {
+					builder.append((char)decoded);
+					i = semicolon + 1;
+					continue;
+				}
+			}
+			builder.append(c);
+			i++;
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Returns the character for the given reference without '&' and ';',
+	 * or -1 if it is not known.
+	 * @param reference
+	 * @return int character or -1
+	 */
+	private static int decodeReference(final String reference) {
+		if(reference.charAt(0) == '#') {
+			try {
+				int code;
+				if(reference.length() > 1 && (reference.charAt(1) == 'x' || reference.charAt(1) == 'X')) {
+					code = Integer.parseInt(reference.substring(2), 16);
+				} else {
+					code = Integer.parseInt(reference.substring(1));
+				}
+				return code > 0 && code <= Character.MAX_VALUE ? code : -1;
+			} catch(NumberFormatException e) {
+				return -1;
+			}
+		}
+		if(reference.equals("amp")) return '&';
+		if(reference.equals("lt")) return '<';
+		if(reference.equals("gt")) return '>';
+		if(reference.equals("quot")) return '"';
+		if(reference.equals("apos")) return '\'';
+		if(reference.equals("nbsp")) return '\u00A0';
+		return -1;
+	}
+
+	/**
+	 * Replaces sequences of whitespace with a single space and trims the given string.
+	 * @param string
+	 * @return String normalized string
+	 */
+	static String normalizeWhitespace(final String string) {
+		StringBuilder builder = new StringBuilder(string.length());
+		boolean lastWasWhitespace = false;
+		for(int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			if(Character.isWhitespace(c)) {
+				lastWasWhitespace = true;
+			} else {
+				if(lastWasWhitespace && builder.length() > 0) {
+					builder.append(' ');
+				}
+				builder.append(c);
+				lastWasWhitespace = false;
+			}
+		}
+		return builder.toString();
+	}
+
+	private static boolean isLetter(final byte b) {
+		return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+	}
+
+	private static boolean isWhitespace(final byte b) {
+		return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+	}
+
+	private static boolean isCharsetChar(final byte b) {
+		return isLetter(b) || (b >= '0' && b <= '9') || b == '-' || b == '_' || b == ':' || b == '.';
+	}
+
+	private static byte toLower(final byte b) {
+		return b >= 'A' && b <= 'Z' ? (byte)(b + ('a' - 'A')) : b;
+	}
+
+}
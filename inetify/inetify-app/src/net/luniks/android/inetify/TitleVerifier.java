@@ -32,11 +32,16 @@ public interface TitleVerifier {
 	boolean isExpectedTitle(final String title, final String pageTitle);
 
 	/**
-	 * Returns the page title of the welcome page of the given internet server
-	 * @param server internet server
+	 * Returns the page title of the welcome page of the internet server of the given
+	 * request, aborting as soon as possible if its cancellation is cancelled.
+	 * If the page matches the known fingerprint of the request, if any, the fingerprint 
+	 * is set matched and its page title is returned, otherwise it is updated with the page.
+	 * The time each phase of getting the page took is recorded in the timings of the request.
+	 * An implementation not supporting fingerprints or timings leaves them as they are.
+	 * @param request request of the page
 	 * @return String page title
 	 * @throws Exception if some error occurs
 	 */
-	String getPageTitle(final String server) throws Exception;
+	String getPageTitle(final ProbeRequest request) throws Exception;
 
 }
\ No newline at end of file
@@ -15,7 +15,7 @@
  */
 package net.luniks.android.inetify;
 
-import java.util.Locale;
+import java.io.InterruptedIOException;
 
 import org.jsoup.Connection;
 import org.jsoup.Jsoup;
@@ -39,15 +39,13 @@ public final class TitleVerifierImpl implements TitleVerifier {
 	
 	/**
 	 * Returns true if the given pageTitle contains the given title, case insensitive.
+	 * Uses the cached TitleMatcher for the title, so comparing does not allocate.
 	 * @param title (part of) the expected title
 	 * @param pageTitle page title
 	 * @return boolean true if pageTitle contains title
 	 */
 	public boolean isExpectedTitle(final String title, final String pageTitle) {
-		if(title == null || title.length() == 0 || pageTitle == null || pageTitle.length() == 0) {
-			return false;
-		}
-		return pageTitle.toUpperCase(Locale.getDefault()).contains(title.toUpperCase(Locale.getDefault()));
+		return TitleMatcher.forTitle(title).matches(pageTitle);
 	}
 
 	/**
@@ -58,14 +56,28 @@ public final class TitleVerifierImpl implements TitleVerifier {
 	 */
 	public String getPageTitle(final String server) throws Exception {
 		String url = addProtocol(server);
-		// Sometimes, this fails with "Connection reset by peer". Maybe this helps?
-		System.setProperty("http.keepAlive", "false");
 		Connection connection = Jsoup.connect(url);
 		connection.timeout(TIMEOUT);
 		Document document = connection.get();
 		return document.title();
 	}
 	
+	/**
+	 * Returns the page title of the welcome page of the internet server of the given
+	 * request. A request that already started cannot be aborted, so the cancellation is 
+	 * only checked before starting it. Fingerprints are not supported, and Jsoup gets 
+	 * the page in one go, so the fingerprint and the timings are left as they are.
+	 * @param request request of the page
+	 * @return String page title
+	 * @throws Exception if cancelled or some error occurs
+	 */
+	public String getPageTitle(final ProbeRequest request) throws Exception {
+		if(request.getCancellation().isCancelled()) {
+			throw new InterruptedIOException("Cancelled");
+		}
+		return getPageTitle(request.getServer());
+	}
+	
 	/**
 	 * Adds protocol "http://" to the given url if it doesn't appear to have
 	 * a protocol, and returns it
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+
+/**
+ * Bounds the client session cache of the SSLContext of the probes to the sessions
+ * of MAX_HOSTS hosts, so that TLS handshakes with the sites can resume a session
+ * negotiated by an earlier test or attempt instead of doing a full handshake, and
+ * counts how many handshakes did resume one. A handshake is considered resumed if 
+ * it has the same session id as the last handshake with the same host and port,
+ * which are remembered for the MAX_HOSTS most recently used hosts.
+ * 
+ * @author torsten.roemer@luniks.net
+ */
+public final class TlsSessionCache {
+	
+	/** Max. number of hosts sessions are cached for */
+	public static final int MAX_HOSTS = 16;
+	
+	/** Time in s a cached session can be resumed */
+	public static final int SESSION_TIMEOUT = 24 * 60 * 60;
+	
+	/** Id of the last session per host and port, the least recently used first */
+	private final Map<String, byte[]> sessionIds = new LinkedHashMap<String, byte[]>(MAX_HOSTS, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, byte[]> eldest) {
+			return size() > MAX_HOSTS;
+		}
+	};
+	
+	/** Number of handshakes that resumed a session */
+	private int hits;
+	
+	/** Number of full handshakes */
+	private int misses;
+	
+	/**
+	 * Bounds the size and lifetime of the given client session context.
+	 * @param context client session context, may be null
+	 */
+	public void configure(final SSLSessionContext context) {
+		if(context != null) {
+			context.setSessionCacheSize(MAX_HOSTS);
+			context.setSessionTimeout(SESSION_TIMEOUT);
+		}
+	}
+	
+	/**
+	 * Notes the given session negotiated by a handshake with the given host and port 
+	 * and returns true if it was resumed.
+	 * @param host
+	 * @param port
+	 * @param session
+	 * @return boolean true if the session was resumed
+	 */
+	public synchronized boolean handshaken(final String host, final int port, final SSLSession session) {
+		String key = String.format("%s:%s", host, port).toLowerCase(Locale.ENGLISH);
+		byte[] id = session.getId();
+		boolean resumed = id != null && id.length > 0 && Arrays.equals(id, sessionIds.get(key));
+		sessionIds.put(key, id);
+		if(resumed) {
+			hits++;
+		} else {
+			misses++;
+		}
+		return resumed;
+	}
+	
+	/**
+	 * Returns the number of handshakes that resumed a session.
+	 * @return int number of hits
+	 */
+	public synchronized int getHits() {
+		return hits;
+	}
+	
+	/**
+	 * Returns the number of full handshakes.
+	 * @return int number of misses
+	 */
+	public synchronized int getMisses() {
+		return misses;
+	}
+	
+	/**
+	 * Returns the percentage of handshakes that resumed a session, 0 if there were none.
+	 * @return int hit rate in percent
+	 */
+	public synchronized int getHitRate() {
+		int total = hits + misses;
+		return total == 0 ? 0 : hits * 100 / total;
+	}
+	
+	/**
+	 * Returns the number of hosts a session id is remembered for.
+	 * @return int number of hosts
+	 */
+	public synchronized int getHostCount() {
+		return sessionIds.size();
+	}
+
+}
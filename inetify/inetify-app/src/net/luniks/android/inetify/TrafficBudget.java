@@ -0,0 +1,89 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify;
+
+import net.luniks.android.interfaces.IClock;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+/**
+ * Monthly budget of the data transferred by the tests, set in the settings in MB.
+ * Once the traffic of the tests in the current month reached it, testing in the 
+ * background is either paused until the next month or switched to the cheapest 
+ * probe, the quick check, depending on the settings. Tests started by the user
+ * are always done, but their traffic is counted as well.
+ * 
+ * @author torsten.roemer@luniks.net
+ */
+public class TrafficBudget {
+	
+	/** Bytes of a MB */
+	private static final long MEGABYTE = 1024 * 1024;
+	
+	/** Shared preferences */
+	private final SharedPreferences sharedPreferences;
+	
+	/** Database adapter keeping the traffic of the tests */
+	private final DatabaseAdapter databaseAdapter;
+	
+	/** Clock giving the current month */
+	private final IClock clock;
+	
+	/**
+	 * Creates an instance using the given context, database adapter and clock.
+	 * @param context
+	 * @param databaseAdapter
+	 * @param clock
+	 */
+	public TrafficBudget(final Context context, final DatabaseAdapter databaseAdapter, final IClock clock) {
+		this.sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+		this.databaseAdapter = databaseAdapter;
+		this.clock = clock;
+	}
+	
+	/**
+	 * Returns the budget set in the settings in bytes, 0 if there is none.
+	 * @return long budget in bytes
+	 */
+	public long getBudget() {
+		try {
+			return Math.max(0, Long.valueOf(sharedPreferences.getString(Settings.INTERNET_BUDGET, "0")) * MEGABYTE);
+		} catch(NumberFormatException e) {
+			return 0;
+		}
+	}
+	
+	/**
+	 * Returns true if there is a budget and the traffic of the tests in the 
+	 * current month reached it.
+	 * @return boolean true if the budget is reached
+	 */
+	public boolean isReached() {
+		long budget = getBudget();
+		return budget > 0 && databaseAdapter.fetchMonthlyTraffic(clock.currentTimeMillis()) >= budget;
+	}
+	
+	/**
+	 * Returns true if the budget is reached and testing in the background should
+	 * be paused instead of switched to the quick check.
+	 * @return boolean true if testing in the background should be paused
+	 */
+	public boolean isPaused() {
+		return sharedPreferences.getBoolean(Settings.INTERNET_BUDGET_PAUSE, false) && isReached();
+	}
+
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.luniks.android.impl.ClockImpl;
+import net.luniks.android.interfaces.IClock;
+
+/**
+ * Cache of the verdicts of internet connectivity tests per Wifi network, identified
+ * by its BSSID, so that reconnecting to the same access point, i.e. when roaming,
+ * does not test again as long as the verdict is fresh.
+ * The verdicts are kept in memory for the process and in the database, so they
+ * survive restarts of the service and the process.
+ * 
+ * @author torsten.roemer@luniks.net
+ */
+public final class VerdictCache {
+	
+	/** Max. number of verdicts kept in memory */
+	private static final int MAX_ENTRIES = 32;
+	
+	/** Verdicts in memory by BSSID, least recently used first */
+	private static final Map<String, TestInfo> verdicts = new LinkedHashMap<String, TestInfo>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, TestInfo> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+	
+	/** Number of lookups that found a fresh verdict */
+	private static final AtomicInteger hits = new AtomicInteger(0);
+	
+	/** Number of lookups that did not find a fresh verdict */
+	private static final AtomicInteger misses = new AtomicInteger(0);
+	
+	/** Database adapter */
+	private final DatabaseAdapter databaseAdapter;
+	
+	/** Clock the age of the verdicts is measured on */
+	private final IClock clock;
+	
+	/**
+	 * Constructs an instance using the given database adapter.
+	 * @param databaseAdapter
+	 */
+	public VerdictCache(final DatabaseAdapter databaseAdapter) {
+		this(databaseAdapter, new ClockImpl());
+	}
+	
+	/**
+	 * Constructs an instance using the given database adapter and clock.
+	 * @param databaseAdapter
+	 * @param clock
+	 */
+	public VerdictCache(final DatabaseAdapter databaseAdapter, final IClock clock) {
+		this.databaseAdapter = databaseAdapter;
+		this.clock = clock;
+	}
+	
+	/**
+	 * Returns the verdict for the Wifi network with the given SSID and BSSID if it
+	 * is not older than the given ttl if it is OK, or the given nokTtl if it is not OK, 
+	 * null otherwise.
+	 * @param ssid SSID of the Wifi network
+	 * @param bssid BSSID of the Wifi network
+	 * @param ttl time in ms an OK verdict is fresh
+	 * @param nokTtl time in ms a not OK verdict is fresh
+	 * @return TestInfo with the verdict or null
+	 */
+	public TestInfo get(final String ssid, final String bssid, final long ttl, final long nokTtl) {
+		TestInfo info = null;
+		if(ssid != null && bssid != null) {
+			synchronized(verdicts) {
+				info = verdicts.get(bssid);
+			}
+			if(info == null) {
+				info = databaseAdapter.fetchVerdict(bssid);
+				if(info != null) {
+					synchronized(verdicts) {
+						verdicts.put(bssid, info);
+					}
+				}
+			}
+		}
+		
+		if(info != null && ssid.equals(info.getExtra()) && 
+				isFresh(info, clock.currentTimeMillis(), ttl, nokTtl)) {
+			hits.incrementAndGet();
+			return info;
+		}
+		
+		misses.incrementAndGet();
+		return null;
+	}
+	
+	/**
+	 * Puts the verdict of the given test results for the Wifi network identified
+	 * by its BSSID (extra2) in the cache, if it is a Wifi network.
+	 * @param info test results
+	 */
+	public void put(final TestInfo info) {
+		if(info == null || info.getExtra() == null || info.getExtra2() == null) {
+			return;
+		}
+		synchronized(verdicts) {
+			verdicts.put(info.getExtra2(), info);
+		}
+		databaseAdapter.updateVerdict(info);
+	}
+	
+	/**
+	 * Returns the number of lookups that found a fresh verdict.
+	 * @return int number of hits
+	 */
+	public static int getHits() {
+		return hits.get();
+	}
+	
+	/**
+	 * Returns the number of lookups that did not find a fresh verdict.
+	 * @return int number of misses
+	 */
+	public static int getMisses() {
+		return misses.get();
+	}
+	
+	/**
+	 * Clears the verdicts in memory and resets the counters.
+	 */
+	public static void clear() {
+		synchronized(verdicts) {
+			verdicts.clear();
+		}
+		hits.set(0);
+		misses.set(0);
+	}
+	
+	/**
+	 * Returns true if the given verdict is not older than the given ttl if it is OK,
+	 * or the given nokTtl if it is not OK, at the given time.
+	 * @param info verdict
+	 * @param now current time
+	 * @param ttl time in ms an OK verdict is fresh
+	 * @param nokTtl time in ms a not OK verdict is fresh
+	 * @return boolean true if fresh
+	 */
+	public static boolean isFresh(final TestInfo info, final long now, final long ttl, final long nokTtl) {
+		long age = now - info.getTimestamp();
+		return age >= 0 && age < (info.getIsExpectedTitle() ? ttl : nokTtl);
+	}
+
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify;
+
+/**
+ * Keeps all Wifi locations in memory for all database adapters in the process,
+ * so that finding the nearest location does not query the database and create
+ * objects for each row each time. The locations are a Snapshot of parallel arrays
+ * sorted by latitude that is replaced as a whole, so finding the nearest location
+ * does not need to lock and does not allocate.
+ * Like with IgnoredWifis, a snapshot loaded from the database is only kept if the
+ * location list did not change while it was loaded.
+ * 
+ * @author torsten.roemer@luniks.net
+ */
+public final class WifiLocations {
+	
+	/** Max. distance up to which the equirectangular approximation is used as prefilter */
+	public static final float MAX_PREFILTER_DISTANCE = 100000;
+	
+	/** Max. latitude up to which the equirectangular approximation is used as prefilter */
+	private static final double MAX_PREFILTER_LATITUDE = 80;
+	
+	/** 
+	 * Meters per degree of latitude, a bit less than on the ellipsoid so that 
+	 * the range of latitudes covers at least the distance.
+	 */
+	private static final double METERS_PER_DEGREE = 110000;
+	
+	/** Mean radius of the earth in meters, for the equirectangular approximation */
+	private static final double EARTH_RADIUS = 6371009;
+	
+	/** 
+	 * Approximated distance may be this much more than the exact distance because 
+	 * of the mean radius, the longitude is scaled for the latitude nearest the pole.
+	 */
+	private static final double PREFILTER_MARGIN = 1.05;
+	
+	/** Semi-major axis of the WGS84 ellipsoid in meters */
+	private static final double WGS84_A = 6378137.0;
+	
+	/** Semi-minor axis of the WGS84 ellipsoid in meters */
+	private static final double WGS84_B = 6356752.3142;
+	
+	/** Flattening of the WGS84 ellipsoid */
+	private static final double WGS84_F = (WGS84_A - WGS84_B) / WGS84_A;
+	
+	/** Max. number of iterations of Vincenty's formula */
+	private static final int MAX_ITERATIONS = 20;
+	
+	/** Shared instance */
+	private static final WifiLocations instance = new WifiLocations();
+	
+	/** Locations, null if not loaded */
+	private volatile Snapshot snapshot = null;
+	
+	/** Incremented each time the location list changes, guarded by this */
+	private int generation = 0;
+	
+	/**
+	 * Constructs an instance that does not share the locations with the shared instance.
+	 */
+	public WifiLocations() {
+	}
+	
+	/**
+	 * Returns the shared instance.
+	 * @return WifiLocations
+	 */
+	public static WifiLocations getInstance() {
+		return instance;
+	}
+	
+	/**
+	 * Returns the locations, or null if they need to be loaded.
+	 * @return Snapshot locations or null
+	 */
+	public Snapshot getSnapshot() {
+		return snapshot;
+	}
+	
+	/**
+	 * Returns the current generation, to be given to set() with the locations loaded after.
+	 * @return int generation
+	 */
+	public synchronized int getGeneration() {
+		return generation;
+	}
+	
+	/**
+	 * Keeps the given locations loaded from the database if the location list 
+	 * did not change since the given generation, and returns them.
+	 * @param generation generation before the locations were loaded
+	 * @param snapshot locations loaded from the database
+	 * @return Snapshot the given locations
+	 */
+	public Snapshot set(final int generation, final Snapshot snapshot) {
+		synchronized(this) {
+			if(generation == this.generation) {
+				this.snapshot = snapshot;
+			}
+		}
+		return snapshot;
+	}
+	
+	/**
+	 * Forgets the locations, to be called when the location list changed.
+	 */
+	public synchronized void invalidate() {
+		generation++;
+		snapshot = null;
+	}
+	
+	/**
+	 * Returns the distance in meters between the given latitudes and longitudes on 
+	 * the WGS84 ellipsoid, using Vincenty's inverse formula like Location.distanceBetween(),
+	 * but without allocating.
+	 * @param lat1 latitude of the first location in degrees
+	 * @param lon1 longitude of the first location in degrees
+	 * @param lat2 latitude of the second location in degrees
+	 * @param lon2 longitude of the second location in degrees
+	 * @return float distance in meters
+	 */
+	public static float distanceBetween(final double lat1, final double lon1, final double lat2, final double lon2) {
+		double l = Math.toRadians(lon2 - lon1);
+		double u1 = Math.atan((1.0 - WGS84_F) * Math.tan(Math.toRadians(lat1)));
+		double u2 = Math.atan((1.0 - WGS84_F) * Math.tan(Math.toRadians(lat2)));
+		double sinU1 = Math.sin(u1);
+		double cosU1 = Math.cos(u1);
+		double sinU2 = Math.sin(u2);
+		double cosU2 = Math.cos(u2);
+		
+		double lambda = l;
+		double sinSigma = 0;
+		double cosSigma = 0;
+		double sigma = 0;
+		double cosSqAlpha = 0;
+		double cos2SigmaM = 0;
+		for(int i = 0; i < MAX_ITERATIONS; i++) {
+			double sinLambda = Math.sin(lambda);
+			double cosLambda = Math.cos(lambda);
+			double t1 = cosU2 * sinLambda;
+			double t2 = cosU1 * sinU2 - sinU1 * cosU2 * cosLambda;
+			sinSigma = Math.sqrt(t1 * t1 + t2 * t2);
+			if(sinSigma == 0) {
+				// Same location
+				return 0;
+			}
+			cosSigma = sinU1 * sinU2 + cosU1 * cosU2 * cosLambda;
+			sigma = Math.atan2(sinSigma, cosSigma);
+			double sinAlpha = cosU1 * cosU2 * sinLambda / sinSigma;
+			cosSqAlpha = 1.0 - sinAlpha * sinAlpha;
+			// On the equator cosSqAlpha is 0
+			cos2SigmaM = cosSqAlpha == 0 ? 0 : cosSigma - 2.0 * sinU1 * sinU2 / cosSqAlpha;
+			double c = WGS84_F / 16.0 * cosSqAlpha * (4.0 + WGS84_F * (4.0 - 3.0 * cosSqAlpha));
+			double previous = lambda;
+			lambda = l + (1.0 - c) * WGS84_F * sinAlpha * 
+				(sigma + c * sinSigma * (cos2SigmaM + c * cosSigma * (-1.0 + 2.0 * cos2SigmaM * cos2SigmaM)));
+			if(Math.abs(lambda - previous) < 1.0e-12) {
+				break;
+			}
+		}
+		
+		double uSq = cosSqAlpha * (WGS84_A * WGS84_A - WGS84_B * WGS84_B) / (WGS84_B * WGS84_B);
+		double a = 1 + uSq / 16384.0 * (4096.0 + uSq * (-768.0 + uSq * (320.0 - 175.0 * uSq)));
+		double b = uSq / 1024.0 * (256.0 + uSq * (-128.0 + uSq * (74.0 - 47.0 * uSq)));
+		double deltaSigma = b * sinSigma * (cos2SigmaM + b / 4.0 * (cosSigma * (-1.0 + 2.0 * cos2SigmaM * cos2SigmaM) - 
+				b / 6.0 * cos2SigmaM * (-3.0 + 4.0 * sinSigma * sinSigma) * (-3.0 + 4.0 * cos2SigmaM * cos2SigmaM)));
+		
+		return (float)(WGS84_B * a * (sigma - deltaSigma));
+	}
+	
+	/**
+	 * Immutable locations as parallel arrays sorted by latitude, so that the locations
+	 * within a distance of a latitude are a range of the arrays.
+	 * 
+	 * @author torsten.roemer@luniks.net
+	 */
+	public static final class Snapshot {
+		
+		/** BSSID's of the Wifis */
+		private final String[] bssids;
+		
+		/** SSID's of the Wifis */
+		private final String[] ssids;
+		
+		/** Names of the Wifis given by the user */
+		private final String[] names;
+		
+		/** Latitudes in degrees, sorted */
+		private final double[] lats;
+		
+		/** Longitudes in degrees */
+		private final double[] lons;
+		
+		/** Accuracies in meters */
+		private final float[] accs;
+		
+		/**
+		 * Creates a snapshot of the given locations, that must be sorted by latitude.
+		 * The arrays are not copied and must not be changed afterwards.
+		 * @param bssids BSSID's of the Wifis
+		 * @param ssids SSID's of the Wifis
+		 * @param names names of the Wifis
+		 * @param lats latitudes, sorted
+		 * @param lons longitudes
+		 * @param accs accuracies
+		 */
+		public Snapshot(final String[] bssids, final String[] ssids, final String[] names, 
+				final double[] lats, final double[] lons, final float[] accs) {
+			this.bssids = bssids;
+			this.ssids = ssids;
+			this.names = names;
+			this.lats = lats;
+			this.lons = lons;
+			this.accs = accs;
+		}
+		
+		public int size() {
+			return lats.length;
+		}
+		
+		public String getBSSID(final int index) {
+			return bssids[index];
+		}
+		
+		public String getSSID(final int index) {
+			return ssids[index];
+		}
+		
+		public String getName(final int index) {
+			return names[index];
+		}
+		
+		public double getLatitude(final int index) {
+			return lats[index];
+		}
+		
+		public double getLongitude(final int index) {
+			return lons[index];
+		}
+		
+		public float getAccuracy(final int index) {
+			return accs[index];
+		}
+		
+		/**
+		 * Returns the distance in meters of the location at the given index to
+		 * the given latitude and longitude.
+		 * @param index index of the location
+		 * @param lat latitude in degrees
+		 * @param lon longitude in degrees
+		 * @return float distance in meters
+		 */
+		public float getDistance(final int index, final double lat, final double lon) {
+			return distanceBetween(lats[index], lons[index], lat, lon);
+		}
+		
+		/**
+		 * Returns the index of the location that is nearest to the given latitude and
+		 * longitude, or -1 if there is none within the given max. distance. Only looks at 
+		 * the locations within the range of latitudes of the distance, and up to 
+		 * MAX_PREFILTER_DISTANCE only computes the exact distance of the locations that are 
+		 * near enough by the equirectangular approximation. The approximation scales the 
+		 * longitude for the edge of the range of latitudes nearest the pole, so it does 
+		 * not overestimate the distance of locations nearer the pole. Does not allocate.
+		 * @param lat latitude in degrees
+		 * @param lon longitude in degrees
+		 * @param maxDistance max. distance in meters
+		 * @return int index of the nearest location or -1
+		 */
+		public int getNearest(final double lat, final double lon, final float maxDistance) {
+			double latDegrees = maxDistance / METERS_PER_DEGREE;
+			double maxLat = lat + latDegrees;
+			boolean prefilter = maxDistance <= MAX_PREFILTER_DISTANCE && 
+				Math.abs(lat) + latDegrees < MAX_PREFILTER_LATITUDE;
+			double lonScale = Math.cos(Math.toRadians(Math.min(90, Math.abs(lat) + latDegrees)));
+			double metersPerRadian = EARTH_RADIUS / PREFILTER_MARGIN;
+			
+			int nearest = -1;
+			float shortestDistance = maxDistance;
+			for(int i = getFirst(lat - latDegrees); i < lats.length && lats[i] <= maxLat; i++) {
+				if(prefilter) {
+					double dLon = lons[i] - lon;
+					if(dLon > 180) {
+						dLon -= 360;
+					} else if(dLon < -180) {
+						dLon += 360;
+					}
+					double x = Math.toRadians(dLon) * lonScale * metersPerRadian;
+					double y = Math.toRadians(lats[i] - lat) * metersPerRadian;
+					if(x * x + y * y > (double)shortestDistance * shortestDistance) {
+						continue;
+					}
+				}
+				float distance = distanceBetween(lats[i], lons[i], lat, lon);
+				if(distance <= shortestDistance && (nearest == -1 || distance < shortestDistance)) {
+					shortestDistance = distance;
+					nearest = i;
+				}
+			}
+			return nearest;
+		}
+		
+		/**
+		 * Returns the index of the first location with a latitude not less than the given one.
+		 * @param lat latitude in degrees
+		 * @return int index
+		 */
+		private int getFirst(final double lat) {
+			int low = 0;
+			int high = lats.length;
+			while(low < high) {
+				int middle = (low + high) >>> 1;
+				if(lats[middle] < lat) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+	}
+
+}
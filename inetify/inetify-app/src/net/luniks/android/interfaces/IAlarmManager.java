@@ -23,6 +23,8 @@ public interface IAlarmManager {
 			long triggerAtTime, long interval,
 			PendingIntent operation);
 	
+	void set(int type, long triggerAtTime, PendingIntent operation);
+	
 	void cancel(PendingIntent operation);
 
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Corpus of welcome pages of captive portals and internet sites the benchmarks
+ * get the title of, loaded from the portals resource folder.
+ * 
+ * @author torsten.roemer@luniks.net
+ */
+public final class Fixtures {
+	
+	/** Small login page of a hotspot */
+	public static final String HOTSPOT_LOGIN = "hotspot-login.html";
+	
+	/** Large page of a hotel, with the title after a lot of style and script */
+	public static final String HOTEL_PORTAL = "hotel-portal.html";
+	
+	/** Redirect with a meta refresh and without a title */
+	public static final String META_REFRESH = "meta-refresh.html";
+	
+	/** Login page in ISO-8859-1, declared in a meta tag */
+	public static final String GAESTE_WLAN = "gaeste-wlan.html";
+	
+	/** The expected page, with the title early and a lot of script after it */
+	public static final String GOOGLE = "google.html";
+	
+	/** Page without a title, read up to the end */
+	public static final String NO_TITLE = "no-title.html";
+	
+	/** Folder of the fixtures */
+	private static final String FOLDER = "/portals/";
+	
+	private Fixtures() {
+	}
+	
+	/**
+	 * Returns the bytes of the fixture with the given name.
+	 * @param name name of the fixture
+	 * @return byte[] bytes of the page
+	 * @throws IOException if there is no such fixture or reading it fails
+	 */
+	public static byte[] load(final String name) throws IOException {
+		InputStream in = Fixtures.class.getResourceAsStream(FOLDER + name);
+		if(in == null) {
+			throw new IOException(String.format("No fixture %s", name));
+		}
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int read;
+			while((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+}
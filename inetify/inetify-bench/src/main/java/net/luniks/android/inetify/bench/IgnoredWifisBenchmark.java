@@ -0,0 +1,106 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.luniks.android.inetify.IgnoredWifis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks looking up if a Wifi network is ignored with the SSID's in memory 
+ * against scanning all entries, like the query of the ignorelist without an index 
+ * on the SSID did. SQLite is not available here, so the scan compares the SSID's 
+ * of a list and leaves out the cost of the query and its cursor, which only adds 
+ * to the difference.
+ * 
+ * @author torsten.roemer@luniks.net
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IgnoredWifisBenchmark {
+	
+	@Param({"10", "1000", "5000"})
+	public int entries;
+	
+	private final IgnoredWifis ignoredWifis = new IgnoredWifis();
+	
+	private List<String> ssids;
+	
+	private String ignored;
+	
+	private String notIgnored;
+	
+	@Setup
+	public void setUp() {
+		ssids = new ArrayList<String>(entries);
+		for(int i = 0; i < entries; i++) {
+			ssids.add(String.format("Hotspot %05d", i));
+		}
+		ignoredWifis.set(ignoredWifis.getGeneration(), ssids);
+		
+		// New instances like the SSID of a Wifi info, with the hash code not yet computed
+		ignored = new String(ssids.get(entries / 2));
+		notIgnored = new String("Home");
+	}
+	
+	@Benchmark
+	public boolean cachedIgnored() {
+		return ignoredWifis.contains(ignored);
+	}
+	
+	@Benchmark
+	public boolean cachedNotIgnored() {
+		return ignoredWifis.contains(notIgnored);
+	}
+	
+	@Benchmark
+	public boolean scanIgnored() {
+		return scan(ignored);
+	}
+	
+	@Benchmark
+	public boolean scanNotIgnored() {
+		return scan(notIgnored);
+	}
+	
+	private boolean scan(final String ssid) {
+		for(String entry : ssids) {
+			if(entry.equals(ssid)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
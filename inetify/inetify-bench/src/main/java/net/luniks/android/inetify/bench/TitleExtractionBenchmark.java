@@ -0,0 +1,103 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import net.luniks.android.inetify.TitleScanner;
+
+import org.jsoup.Jsoup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks getting the title from the bytes of a page, parsing the whole page
+ * with jsoup like TitleVerifierImpl, against scanning it in chunks with TitleScanner
+ * until the title is complete, like StreamingTitleVerifier.
+ * The charset is not given, so both look for it in the page.
+ * 
+ * @author torsten.roemer@luniks.net
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TitleExtractionBenchmark {
+	
+	/** Size of the chunks, the size of the read buffer of StreamingTitleVerifier */
+	private static final int CHUNK_SIZE = 2048;
+	
+	/** Max. number of bytes scanned, like StreamingTitleVerifier.MAX_BYTES */
+	private static final int MAX_BYTES = 32 * 1024;
+	
+	@Param({
+		Fixtures.HOTSPOT_LOGIN, 
+		Fixtures.HOTEL_PORTAL, 
+		Fixtures.META_REFRESH, 
+		Fixtures.GAESTE_WLAN, 
+		Fixtures.GOOGLE, 
+		Fixtures.NO_TITLE
+	})
+	public String fixture;
+	
+	private byte[] page;
+	
+	@Setup
+	public void setUp() throws IOException {
+		page = Fixtures.load(fixture);
+		String jsoup = jsoup();
+		String streaming = streaming();
+		// Don't compare apples with oranges
+		if(page.length <= MAX_BYTES && ! jsoup.equals(streaming)) {
+			throw new IllegalStateException(String.format("%s: jsoup got '%s', streaming got '%s'", 
+					fixture, jsoup, streaming));
+		}
+	}
+
+	@Benchmark
+	public String jsoup() throws IOException {
+		return Jsoup.parse(new ByteArrayInputStream(page), null, "").title();
+	}
+	
+	@Benchmark
+	public String streaming() {
+		TitleScanner scanner = new TitleScanner();
+		int total = 0;
+		while(total < page.length && total < MAX_BYTES) {
+			int length = Math.min(CHUNK_SIZE, Math.min(page.length, MAX_BYTES) - total);
+			boolean done = scanner.scan(page, total, length);
+			total += length;
+			if(done) {
+				break;
+			}
+		}
+		return scanner.getTitle(null);
+	}
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.bench;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import net.luniks.android.inetify.TitleVerifier;
+import net.luniks.android.inetify.TitleVerifierImpl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks TitleVerifierImpl.isExpectedTitle() against comparing upper cased
+ * strings, like it did before it used TitleMatcher.
+ * 
+ * @author torsten.roemer@luniks.net
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TitleMatchBenchmark {
+	
+	@Param({"Google", "Grand Hotel Guest Wi-Fi \u2013 Terms & Conditions", "Hotspot Login"})
+	public String pageTitle;
+	
+	@Param({"google"})
+	public String title;
+	
+	private final TitleVerifier titleVerifier = new TitleVerifierImpl();
+	
+	@Benchmark
+	public boolean isExpectedTitle() {
+		return titleVerifier.isExpectedTitle(title, pageTitle);
+	}
+	
+	@Benchmark
+	public boolean upperCase() {
+		return pageTitle.toUpperCase(Locale.getDefault()).contains(title.toUpperCase(Locale.getDefault()));
+	}
+
+}
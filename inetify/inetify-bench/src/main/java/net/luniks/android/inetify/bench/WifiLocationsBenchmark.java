@@ -0,0 +1,152 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import net.luniks.android.inetify.WifiLocations;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks finding the nearest Wifi location within the default max. distance 
+ * with the locations in memory against looping over all rows like the cursor loop
+ * of the location list did, creating the strings and an object per row and computing 
+ * the exact distance of each. SQLite and android.location are not available here, 
+ * so the rows are arrays that the loop reads like a cursor, which leaves out the 
+ * cost of the query and only adds to the difference.
+ * 
+ * @author torsten.roemer@luniks.net
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WifiLocationsBenchmark {
+	
+	/** Default max. distance of the settings */
+	private static final float MAX_DISTANCE = 1500;
+	
+	@Param({"10", "1000", "100000"})
+	public int locations;
+	
+	private WifiLocations.Snapshot snapshot;
+	
+	private char[][] bssids;
+	private char[][] ssids;
+	private char[][] names;
+	private double[] lats;
+	private double[] lons;
+	private float[] accs;
+	
+	@Setup
+	public void setUp() {
+		bssids = new char[locations][];
+		ssids = new char[locations][];
+		names = new char[locations][];
+		lats = new double[locations];
+		lons = new double[locations];
+		accs = new float[locations];
+		
+		String[] bssidStrings = new String[locations];
+		String[] ssidStrings = new String[locations];
+		String[] nameStrings = new String[locations];
+		
+		// Spread over about 110 x 70 km, sorted by latitude
+		for(int i = 0; i < locations; i++) {
+			bssidStrings[i] = String.format("00:00:00:%02x:%02x:%02x", i >> 16 & 0xff, i >> 8 & 0xff, i & 0xff);
+			ssidStrings[i] = String.format("Hotspot %06d", i);
+			nameStrings[i] = String.format("Location %06d", i);
+			bssids[i] = bssidStrings[i].toCharArray();
+			ssids[i] = ssidStrings[i].toCharArray();
+			names[i] = nameStrings[i].toCharArray();
+			lats[i] = 50.0 + (double)i / locations;
+			lons[i] = 3.0 + (double)(i * 7919L % locations) / locations;
+			accs[i] = 50;
+		}
+		
+		snapshot = new WifiLocations.Snapshot(bssidStrings, ssidStrings, nameStrings, lats, lons, accs);
+	}
+	
+	@Benchmark
+	public int snapshotNear() {
+		return snapshot.getNearest(50.5, 3.5, MAX_DISTANCE);
+	}
+	
+	@Benchmark
+	public int snapshotFar() {
+		return snapshot.getNearest(10.0, 3.5, MAX_DISTANCE);
+	}
+	
+	@Benchmark
+	public Row cursorNear() {
+		return cursorLoop(50.5, 3.5);
+	}
+	
+	@Benchmark
+	public Row cursorFar() {
+		return cursorLoop(10.0, 3.5);
+	}
+	
+	private Row cursorLoop(final double lat, final double lon) {
+		Row nearest = null;
+		float shortestDistance = Float.MAX_VALUE;
+		for(int i = 0; i < locations; i++) {
+			// Like cursor.getString() that creates a new string each time
+			Row row = new Row();
+			row.bssid = new String(bssids[i]);
+			row.ssid = new String(ssids[i]);
+			row.name = new String(names[i]);
+			row.lat = lats[i];
+			row.lon = lons[i];
+			row.acc = accs[i];
+			
+			float distance = WifiLocations.distanceBetween(row.lat, row.lon, lat, lon);
+			if(distance < shortestDistance) {
+				shortestDistance = distance;
+				nearest = row;
+				nearest.distance = distance;
+			}
+		}
+		return nearest != null && shortestDistance <= MAX_DISTANCE ? nearest : null;
+	}
+	
+	/**
+	 * Stands in for a WifiLocation with its Location.
+	 */
+	public static final class Row {
+		private String bssid;
+		private String ssid;
+		private String name;
+		private double lat;
+		private double lon;
+		private float acc;
+		private float distance;
+	}
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.test;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.luniks.android.inetify.Cancellation;
+import android.test.AndroidTestCase;
+
+public class CancellationTest extends AndroidTestCase {
+	
+	public void testCancel() {
+		
+		Cancellation cancellation = new Cancellation();
+		
+		assertFalse(cancellation.isCancelled());
+		
+		cancellation.cancel();
+		
+		assertTrue(cancellation.isCancelled());
+		
+		cancellation.cancel();
+		
+		assertTrue(cancellation.isCancelled());
+	}
+	
+	public void testCancelClosesRegistered() {
+		
+		Cancellation cancellation = new Cancellation();
+		CloseableMock closeable1 = new CloseableMock(false);
+		CloseableMock closeable2 = new CloseableMock(true);
+		CloseableMock closeable3 = new CloseableMock(false);
+		
+		cancellation.register(closeable1);
+		cancellation.register(closeable2);
+		cancellation.register(closeable3);
+		cancellation.unregister(closeable3);
+		
+		cancellation.cancel();
+		cancellation.cancel();
+		
+		assertEquals(1, closeable1.getCloseCount());
+		assertEquals(1, closeable2.getCloseCount());
+		assertEquals(0, closeable3.getCloseCount());
+	}
+	
+	public void testRegisterWhenCancelled() {
+		
+		Cancellation cancellation = new Cancellation();
+		cancellation.cancel();
+		
+		CloseableMock closeable = new CloseableMock(false);
+		cancellation.register(closeable);
+		
+		assertEquals(1, closeable.getCloseCount());
+	}
+	
+	public void testChild() {
+		
+		Cancellation parent = new Cancellation();
+		Cancellation child1 = parent.newChild();
+		Cancellation child2 = parent.newChild();
+		
+		// Cancelling a child does not cancel the parent or the other children
+		child1.cancel();
+		
+		assertTrue(child1.isCancelled());
+		assertFalse(child2.isCancelled());
+		assertFalse(parent.isCancelled());
+		
+		CloseableMock closeable = new CloseableMock(false);
+		child2.register(closeable);
+		
+		// Cancelling the parent cancels its children
+		parent.cancel();
+		
+		assertTrue(child2.isCancelled());
+		assertEquals(1, closeable.getCloseCount());
+		
+		// A child of a cancelled parent is cancelled right away
+		assertTrue(parent.newChild().isCancelled());
+	}
+	
+	public void testAwait() throws InterruptedException {
+		
+		Cancellation cancellation = new Cancellation();
+		
+		long start = System.currentTimeMillis();
+		assertFalse(cancellation.await(100));
+		assertTrue(System.currentTimeMillis() - start >= 100);
+		
+		cancellation.cancel();
+		
+		start = System.currentTimeMillis();
+		assertTrue(cancellation.await(10000));
+		assertTrue(System.currentTimeMillis() - start < 1000);
+	}
+	
+	public void testAwaitCancelledByOtherThread() throws InterruptedException {
+		
+		final Cancellation cancellation = new Cancellation();
+		
+		Thread cancelThread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+					cancellation.cancel();
+				} catch (InterruptedException e) {
+					fail("Cancel thread should have not been interrupted");
+				}
+			}
+		};
+		cancelThread.start();
+		
+		long start = System.currentTimeMillis();
+		assertTrue(cancellation.await(10000));
+		assertTrue(System.currentTimeMillis() - start < 1000);
+	}
+	
+	private class CloseableMock implements Closeable {
+		
+		private final boolean throwException;
+		private final AtomicInteger closeCount = new AtomicInteger(0);
+		
+		public CloseableMock(final boolean throwException) {
+			this.throwException = throwException;
+		}
+		
+		public void close() throws IOException {
+			closeCount.incrementAndGet();
+			if(throwException) {
+				throw new IOException("Close Exception");
+			}
+		}
+		
+		public int getCloseCount() {
+			return closeCount.get();
+		}
+	}
+
+}
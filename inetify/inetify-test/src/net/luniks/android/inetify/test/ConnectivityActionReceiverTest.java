@@ -16,6 +16,7 @@
 package net.luniks.android.inetify.test;
 
 import net.luniks.android.inetify.ConnectivityActionReceiver;
+import net.luniks.android.inetify.EventCoalescer;
 import net.luniks.android.inetify.InetifyIntentService;
 import android.content.Intent;
 import android.net.ConnectivityManager;
@@ -34,6 +35,8 @@ public class ConnectivityActionReceiverTest extends AndroidTestCase {
 		super.setUp();
 		
 		receiver = new ConnectivityActionReceiver();
+		
+		EventCoalescer.getInstance().reset();
 	}
 	
 	public void testNullIntent() throws Exception {
@@ -113,6 +116,10 @@ public class ConnectivityActionReceiverTest extends AndroidTestCase {
 		boolean connected = startServiceIntent.getBooleanExtra(ConnectivityActionReceiver.EXTRA_IS_WIFI_CONNECTED, false);
 		assertTrue(connected);
 		
+		long sequence = startServiceIntent.getLongExtra(ConnectivityActionReceiver.EXTRA_SEQUENCE, EventCoalescer.NO_SEQUENCE);
+		assertEquals(1, sequence);
+		assertEquals(1, EventCoalescer.getInstance().getReceivedCount());
+		
 		WakeLock wakeLock = (WakeLock)TestUtils.getStaticFieldValue(InetifyIntentService.class, "wakeLock");
 		
 		assertNotNull(wakeLock);
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.test;
+
+import net.luniks.android.inetify.DatabaseAdapterImpl;
+import net.luniks.android.inetify.PortalFingerprint;
+import android.test.AndroidTestCase;
+
+public class DatabaseAdapterImplFingerprintTest extends AndroidTestCase {
+
+	public void setUp() throws Exception {
+		super.setUp();
+		this.getContext().deleteDatabase("inetifydb");
+		this.getContext().deleteDatabase("inetifydb-journal");
+	}
+	
+	public void testFetchNoFingerprint() {
+		
+		final DatabaseAdapterImpl adapter = new DatabaseAdapterImpl(this.getContext());
+		
+		assertNull(adapter.fetchFingerprint("00:21:29:A2:48:80", "www.google.de"));
+		assertNull(adapter.fetchFingerprint(null, "www.google.de"));
+		assertNull(adapter.fetchFingerprint("00:21:29:A2:48:80", null));
+		
+		adapter.close();
+	}
+	
+	public void testUpdateFingerprint() {
+		
+		final DatabaseAdapterImpl adapter = new DatabaseAdapterImpl(this.getContext());
+		
+		assertTrue(adapter.updateFingerprint("Celsten", "00:21:29:A2:48:80", "www.google.de", 
+				getFingerprint("\"abc\"", "http://portal.net/login", 0x1234567890abcdefL, "Portal Login")));
+		
+		PortalFingerprint fingerprint = adapter.fetchFingerprint("00:21:29:A2:48:80", "www.google.de");
+		
+		assertNotNull(fingerprint);
+		assertEquals("\"abc\"", fingerprint.getEtag());
+		assertEquals("Sat, 29 Oct 1994 19:43:31 GMT", fingerprint.getLastModified());
+		assertEquals("http://portal.net/login", fingerprint.getLocation());
+		assertEquals(0x1234567890abcdefL, fingerprint.getHash());
+		assertEquals("Portal Login", fingerprint.getPageTitle());
+		assertFalse(fingerprint.getIsMatched());
+		
+		// Same BSSID and site, replaces the fingerprint
+		assertTrue(adapter.updateFingerprint("Celsten", "00:21:29:A2:48:80", "www.google.de", 
+				getFingerprint(null, null, 42, "Other Login")));
+		
+		fingerprint = adapter.fetchFingerprint("00:21:29:A2:48:80", "www.google.de");
+		
+		assertNull(fingerprint.getEtag());
+		assertNull(fingerprint.getLocation());
+		assertEquals(42, fingerprint.getHash());
+		assertEquals("Other Login", fingerprint.getPageTitle());
+		
+		// Other site
+		assertNull(adapter.fetchFingerprint("00:21:29:A2:48:80", "www.google.com"));
+		
+		assertTrue(adapter.updateFingerprint("Celsten", "00:21:29:A2:48:80", "www.google.com", 
+				getFingerprint(null, null, 43, "Portal Login")));
+		
+		assertEquals(42, adapter.fetchFingerprint("00:21:29:A2:48:80", "www.google.de").getHash());
+		assertEquals(43, adapter.fetchFingerprint("00:21:29:A2:48:80", "www.google.com").getHash());
+		
+		adapter.close();
+	}
+	
+	public void testUpdateFingerprintNull() {
+		
+		final DatabaseAdapterImpl adapter = new DatabaseAdapterImpl(this.getContext());
+		
+		PortalFingerprint fingerprint = getFingerprint(null, null, 42, "Portal Login");
+		
+		assertFalse(adapter.updateFingerprint(null, "00:21:29:A2:48:80", "www.google.de", fingerprint));
+		assertFalse(adapter.updateFingerprint("Celsten", null, "www.google.de", fingerprint));
+		assertFalse(adapter.updateFingerprint("Celsten", "00:21:29:A2:48:80", null, fingerprint));
+		assertFalse(adapter.updateFingerprint("Celsten", "00:21:29:A2:48:80", "www.google.de", null));
+		
+		assertNull(adapter.fetchFingerprint("00:21:29:A2:48:80", "www.google.de"));
+		
+		adapter.close();
+	}
+	
+	private PortalFingerprint getFingerprint(final String etag, final String location, final long hash, final String pageTitle) {
+		PortalFingerprint fingerprint = new PortalFingerprint();
+		fingerprint.setEtag(etag);
+		fingerprint.setLastModified(etag == null ? null : "Sat, 29 Oct 1994 19:43:31 GMT");
+		fingerprint.setLocation(location);
+		fingerprint.setHash(hash);
+		fingerprint.setPageTitle(pageTitle);
+		return fingerprint;
+	}
+	
+}
@@ -195,6 +195,60 @@ public class DatabaseAdapterImplIgnoreListTest extends AndroidTestCase {
 		adapter.close();
 	}
 	
+	public void testIsIgnoredWifiSharedByAdapters() {
+		
+		DatabaseAdapterImpl service = new DatabaseAdapterImpl(this.getContext());
+		DatabaseAdapterImpl activity = new DatabaseAdapterImpl(this.getContext());
+		
+		assertFalse(service.isIgnoredWifi("Celsten"));
+		
+		activity.addIgnoredWifi("00:21:29:A2:48:80", "Celsten");
+		
+		assertTrue(service.isIgnoredWifi("Celsten"));
+		
+		activity.deleteIgnoredWifi("Celsten");
+		
+		assertFalse(service.isIgnoredWifi("Celsten"));
+		
+		service.close();
+		activity.close();
+	}
+	
+	public void testIsIgnoredWifiSameBSSIDOtherSSID() {
+		
+		DatabaseAdapterImpl adapter = new DatabaseAdapterImpl(this.getContext());
+		
+		adapter.addIgnoredWifi("00:66:77:88:99:00", "TestSSID2");
+		
+		assertTrue(adapter.isIgnoredWifi("TestSSID2"));
+		
+		adapter.addIgnoredWifi("00:66:77:88:99:00", "TestSSID2New");
+		
+		assertFalse(adapter.isIgnoredWifi("TestSSID2"));
+		assertTrue(adapter.isIgnoredWifi("TestSSID2New"));
+		
+		adapter.close();
+	}
+	
+	public void testIsIgnoredWifiDatabaseDeleted() {
+		
+		DatabaseAdapterImpl adapter = new DatabaseAdapterImpl(this.getContext());
+		
+		insertTestWifis(adapter);
+		
+		assertTrue(adapter.isIgnoredWifi("Celsten"));
+		
+		adapter.close();
+		this.getContext().deleteDatabase("inetifydb");
+		
+		// Creating the database again invalidates the SSID's in memory
+		adapter = new DatabaseAdapterImpl(this.getContext());
+		
+		assertFalse(adapter.isIgnoredWifi("Celsten"));
+		
+		adapter.close();
+	}
+	
 	public void testFetchIgnoredWifis() {
 		
 		DatabaseAdapterImpl adapter = new DatabaseAdapterImpl(this.getContext());
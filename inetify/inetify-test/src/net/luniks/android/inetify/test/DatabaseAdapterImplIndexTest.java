@@ -0,0 +1,128 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.test;
+
+import net.luniks.android.inetify.DatabaseAdapterImpl;
+import net.luniks.android.inetify.WifiLocation;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.location.Location;
+import android.test.AndroidTestCase;
+
+public class DatabaseAdapterImplIndexTest extends AndroidTestCase {
+	
+	private static final int ROWS = 100000;
+	
+	private static final long MAX_MILLIS = 500;
+	
+	public void setUp() throws Exception {
+		super.setUp();
+		this.getContext().deleteDatabase("inetifydb");
+		this.getContext().deleteDatabase("inetifydb-journal");
+	}
+	
+	public void testQueriesTiming() {
+		
+		DatabaseAdapterImpl adapter = new DatabaseAdapterImpl(this.getContext());
+		
+		// Creates the database
+		assertEquals(11, adapter.getDatabaseVersion());
+		
+		SQLiteDatabase database = this.getContext().openOrCreateDatabase(DatabaseAdapterImpl.DATABASE_NAME, Context.MODE_PRIVATE, null);
+		seed(database);
+		database.close();
+		
+		long start = System.currentTimeMillis();
+		assertFalse(adapter.deleteIgnoredWifi("XXX"));
+		long millis = System.currentTimeMillis() - start;
+		assertTrue(String.format("Deleting took %s ms", millis), millis < MAX_MILLIS);
+		
+		start = System.currentTimeMillis();
+		Cursor cursor = adapter.fetchIgnoredWifis();
+		assertTrue(cursor.moveToFirst());
+		millis = System.currentTimeMillis() - start;
+		assertEquals("Hotspot 000000", cursor.getString(2));
+		cursor.close();
+		assertTrue(String.format("Fetching ignored Wifi networks took %s ms", millis), millis < MAX_MILLIS);
+		
+		start = System.currentTimeMillis();
+		cursor = adapter.fetchLocations();
+		assertTrue(cursor.moveToFirst());
+		millis = System.currentTimeMillis() - start;
+		assertEquals("Location 000000", cursor.getString(3));
+		cursor.close();
+		assertTrue(String.format("Fetching Wifi locations took %s ms", millis), millis < MAX_MILLIS);
+		
+		Location here = new Location("test");
+		here.setLatitude(50.5);
+		here.setLongitude(3.5);
+		
+		// Loads the locations into memory
+		assertNotNull(adapter.getNearestLocationTo(here, 10000));
+		
+		start = System.currentTimeMillis();
+		WifiLocation nearest = adapter.getNearestLocationTo(here, 10000);
+		millis = System.currentTimeMillis() - start;
+		assertNotNull(nearest);
+		assertTrue(nearest.getDistance() < 1000);
+		assertTrue(String.format("Getting the nearest location took %s ms", millis), millis < MAX_MILLIS);
+		
+		here.setLatitude(10);
+		
+		start = System.currentTimeMillis();
+		assertNull(adapter.getNearestLocationTo(here, 10000));
+		millis = System.currentTimeMillis() - start;
+		assertTrue(String.format("Getting no nearest location took %s ms", millis), millis < MAX_MILLIS);
+		
+		adapter.close();
+	}
+	
+	private void seed(final SQLiteDatabase database) {
+		SQLiteStatement ignored = database.compileStatement(String.format("INSERT INTO %s (%s, %s) VALUES (?, ?)", 
+				DatabaseAdapterImpl.IGNORELIST_TABLE_NAME, DatabaseAdapterImpl.COLUMN_BSSID, DatabaseAdapterImpl.COLUMN_SSID));
+		SQLiteStatement location = database.compileStatement(String.format("INSERT INTO %s (%s, %s, %s, %s, %s, %s) VALUES (?, ?, ?, ?, ?, ?)", 
+				DatabaseAdapterImpl.LOCATIONLIST_TABLE_NAME, DatabaseAdapterImpl.COLUMN_BSSID, DatabaseAdapterImpl.COLUMN_SSID, 
+				DatabaseAdapterImpl.COLUMN_NAME, DatabaseAdapterImpl.COLUMN_LAT, DatabaseAdapterImpl.COLUMN_LON, DatabaseAdapterImpl.COLUMN_ACC));
+		database.beginTransaction();
+		try {
+			// Inserted in reverse order so that the lists are not sorted already
+			for(int i = ROWS - 1; i >= 0; i--) {
+				String bssid = String.format("00:00:00:%02x:%02x:%02x", i >> 16 & 0xff, i >> 8 & 0xff, i & 0xff);
+				ignored.bindString(1, bssid);
+				ignored.bindString(2, String.format("Hotspot %06d", i));
+				ignored.executeInsert();
+				location.bindString(1, bssid);
+				location.bindString(2, String.format("Hotspot %06d", i));
+				location.bindString(3, String.format("Location %06d", i));
+				// Spread over about 110 x 70 km
+				double lat = 50.0 + i / 100000.0;
+				double lon = 3.0 + i % 1000 / 1000.0;
+				location.bindDouble(4, lat);
+				location.bindDouble(5, lon);
+				location.bindDouble(6, 50.0);
+				location.executeInsert();
+			}
+			database.setTransactionSuccessful();
+		} finally {
+			database.endTransaction();
+			ignored.close();
+			location.close();
+		}
+	}
+
+}
@@ -405,6 +405,112 @@ public class DatabaseAdapterImplLocationListTest extends AndroidTestCase {
 		adapter.close();
 	}
 	
+	public void testGetNearestLocationToMaxDistance() {
+		
+		DatabaseAdapterImpl adapter = new DatabaseAdapterImpl(this.getContext());
+		
+		adapter.addLocation("BSSID1", "SSID1", "Name1", TestUtils.createLocation(50, 3, 10));
+		adapter.addLocation("BSSID2", "SSID2", "Name2", TestUtils.createLocation(50.5, 3.5, 10));
+		adapter.addLocation("BSSID3", "SSID3", "Name3", TestUtils.createLocation(50.64, 3.54, 10));
+		
+		Location location = new Location("test");
+		location.setLatitude(50.628707);
+		location.setLongitude(3.538688);
+		location.setAccuracy(0);
+		
+		WifiLocation wifiLocation = adapter.getNearestLocationTo(location, 1500);
+		
+		assertNotNull(wifiLocation);
+		assertEquals("BSSID3", wifiLocation.getBSSID());
+		assertEquals("SSID3", wifiLocation.getSSID());
+		assertEquals("Name3", wifiLocation.getName());
+		assertEquals(10.0f, wifiLocation.getLocation().getAccuracy());
+		assertEquals(13, Math.round(wifiLocation.getDistance() / 100));
+		
+		assertNull(adapter.getNearestLocationTo(location, 1000));
+		
+		// Moved out of reach
+		adapter.addLocation("BSSID3", "SSID3", "Name3", TestUtils.createLocation(51, 4, 10));
+		
+		assertNull(adapter.getNearestLocationTo(location, 10000));
+		assertEquals("Name2", adapter.getNearestLocationTo(location, 20000).getName());
+		
+		adapter.close();
+	}
+	
+	public void testGetNearestLocationToAntimeridian() {
+		
+		DatabaseAdapterImpl adapter = new DatabaseAdapterImpl(this.getContext());
+		
+		adapter.addLocation("BSSID1", "SSID1", "Name1", TestUtils.createLocation(-17.7, -179.995, 10));
+		
+		Location location = new Location("test");
+		location.setLatitude(-17.7);
+		location.setLongitude(179.995);
+		
+		WifiLocation wifiLocation = adapter.getNearestLocationTo(location, 1500);
+		
+		assertNotNull(wifiLocation);
+		assertEquals("Name1", wifiLocation.getName());
+		assertEquals(1, Math.round(wifiLocation.getDistance() / 1000));
+		
+		adapter.close();
+	}
+	
+	public void testGetNearestLocationToChanged() {
+		
+		DatabaseAdapterImpl adapter = new DatabaseAdapterImpl(this.getContext());
+		
+		adapter.addLocation("BSSID1", "SSID1", "Name1", TestUtils.createLocation(50.5, 3.5, 10));
+		
+		Location location = new Location("test");
+		location.setLatitude(50.5);
+		location.setLongitude(3.5);
+		
+		assertEquals("Name1", adapter.getNearestLocationTo(location, 1500).getName());
+		
+		adapter.renameLocation("BSSID1", "Renamed1");
+		
+		assertEquals("Renamed1", adapter.getNearestLocationTo(location, 1500).getName());
+		
+		// Another adapter sees the changes too
+		DatabaseAdapterImpl otherAdapter = new DatabaseAdapterImpl(this.getContext());
+		otherAdapter.addLocation("BSSID2", "SSID2", "Name2", TestUtils.createLocation(50.5001, 3.5, 10));
+		otherAdapter.deleteLocation("BSSID1");
+		
+		assertEquals("Name2", adapter.getNearestLocationTo(location, 1500).getName());
+		
+		otherAdapter.deleteLocation("BSSID2");
+		
+		assertNull(adapter.getNearestLocationTo(location, 1500));
+		
+		otherAdapter.close();
+		adapter.close();
+	}
+	
+	public void testGetNearestLocationToDatabaseDeleted() {
+		
+		DatabaseAdapterImpl adapter = new DatabaseAdapterImpl(this.getContext());
+		
+		adapter.addLocation("BSSID1", "SSID1", "Name1", TestUtils.createLocation(50.5, 3.5, 10));
+		
+		Location location = new Location("test");
+		location.setLatitude(50.5);
+		location.setLongitude(3.5);
+		
+		assertNotNull(adapter.getNearestLocationTo(location, 1500));
+		
+		adapter.close();
+		this.getContext().deleteDatabase("inetifydb");
+		
+		// Creating the database forgets the locations in memory
+		adapter = new DatabaseAdapterImpl(this.getContext());
+		
+		assertNull(adapter.getNearestLocationTo(location, 1500));
+		
+		adapter.close();
+	}
+	
 	private void insertTestLocations(final DatabaseAdapterImpl adapter) {
 		adapter.addLocation("00:21:29:A2:48:80", "Celsten", "Celsten", TestUtils.createLocation(0.1, 0.1, 10));
 		adapter.addLocation("00:11:22:33:44:55", "TestSSID1", "Test1", TestUtils.createLocation(0.2, 0.2, 20));
@@ -17,6 +17,9 @@ package net.luniks.android.inetify.test;
 
 import net.luniks.android.inetify.DatabaseAdapterImpl;
 import net.luniks.android.inetify.TestInfo;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 import android.net.ConnectivityManager;
 import android.test.AndroidTestCase;
 
@@ -63,6 +66,158 @@ public class DatabaseAdapterImplTestResultTest extends AndroidTestCase {
 		assertEquals(ConnectivityManager.TYPE_MOBILE, info.getType());
 		assertEquals("UMTS", info.getExtra());
 		assertFalse(info.getIsExpectedTitle());
+		assertEquals(0, info.getDnsMillis());
+		
+		adapter.close();
+	}
+	
+	public void testUpdateTestResultTestInfo() {
+		
+		final DatabaseAdapterImpl adapter = new DatabaseAdapterImpl(this.getContext());
+		
+		assertFalse(adapter.updateTestResult(null));
+		
+		TestInfo info = new TestInfo();
+		info.setTimestamp(1234567890L);
+		info.setType(ConnectivityManager.TYPE_WIFI);
+		info.setExtra("Sputnik");
+		info.setIsExpectedTitle(true);
+		info.setDnsMillis(11);
+		info.setConnectMillis(22);
+		info.setTlsMillis(33);
+		info.setFirstByteMillis(44);
+		info.setDownloadMillis(55);
+		info.setVerdict(TestInfo.VERDICT_PORTAL);
+		
+		assertTrue(adapter.updateTestResult(info));
+		
+		TestInfo fetched = adapter.fetchTestResult();
+		
+		assertNotNull(fetched);
+		assertEquals(1234567890L, fetched.getTimestamp());
+		assertEquals(ConnectivityManager.TYPE_WIFI, fetched.getType());
+		assertEquals("Sputnik", fetched.getExtra());
+		assertTrue(fetched.getIsExpectedTitle());
+		assertEquals(11, fetched.getDnsMillis());
+		assertEquals(22, fetched.getConnectMillis());
+		assertEquals(33, fetched.getTlsMillis());
+		assertEquals(44, fetched.getFirstByteMillis());
+		assertEquals(55, fetched.getDownloadMillis());
+		assertEquals(TestInfo.VERDICT_PORTAL, fetched.getVerdict());
+		
+		adapter.close();
+	}
+	
+	public void testFetchTestResultsNone() {
+		
+		final DatabaseAdapterImpl adapter = new DatabaseAdapterImpl(this.getContext());
+		
+		Cursor cursor = adapter.fetchTestResults(0, Long.MAX_VALUE);
+		assertEquals(0, cursor.getCount());
+		cursor.close();
+		
+		cursor = adapter.fetchTestResults(null);
+		assertEquals(0, cursor.getCount());
+		cursor.close();
+		
+		adapter.close();
+	}
+	
+	public void testFetchTestResults() {
+		
+		final DatabaseAdapterImpl adapter = new DatabaseAdapterImpl(this.getContext());
+		
+		assertTrue(adapter.updateTestResult(1000L, ConnectivityManager.TYPE_WIFI, "Sputnik", true));
+		assertTrue(adapter.updateTestResult(2000L, ConnectivityManager.TYPE_MOBILE, "UMTS", false));
+		assertTrue(adapter.updateTestResult(3000L, ConnectivityManager.TYPE_WIFI, "Sputnik", false));
+		assertTrue(adapter.updateTestResult(4000L, ConnectivityManager.TYPE_WIFI, "Celsten", true));
+		
+		// The latest one is still kept apart
+		assertEquals("Celsten", adapter.fetchTestResult().getExtra());
+		
+		Cursor cursor = adapter.fetchTestResults(2000L, 3000L);
+		assertEquals(2, cursor.getCount());
+		assertTrue(cursor.moveToNext());
+		assertEquals(3000L, cursor.getLong(cursor.getColumnIndex(DatabaseAdapterImpl.COLUMN_TIMESTAMP)));
+		assertEquals("Sputnik", cursor.getString(cursor.getColumnIndex(DatabaseAdapterImpl.COLUMN_SUBTYPE)));
+		assertEquals(0, cursor.getInt(cursor.getColumnIndex(DatabaseAdapterImpl.COLUMN_STATUS)));
+		assertTrue(cursor.moveToNext());
+		assertEquals(2000L, cursor.getLong(cursor.getColumnIndex(DatabaseAdapterImpl.COLUMN_TIMESTAMP)));
+		assertEquals(ConnectivityManager.TYPE_MOBILE, cursor.getInt(cursor.getColumnIndex(DatabaseAdapterImpl.COLUMN_TYPE)));
+		cursor.close();
+		
+		cursor = adapter.fetchTestResults("Sputnik");
+		assertEquals(2, cursor.getCount());
+		assertTrue(cursor.moveToNext());
+		assertEquals(3000L, cursor.getLong(cursor.getColumnIndex(DatabaseAdapterImpl.COLUMN_TIMESTAMP)));
+		assertTrue(cursor.moveToNext());
+		assertEquals(1000L, cursor.getLong(cursor.getColumnIndex(DatabaseAdapterImpl.COLUMN_TIMESTAMP)));
+		assertEquals(1, cursor.getInt(cursor.getColumnIndex(DatabaseAdapterImpl.COLUMN_STATUS)));
+		cursor.close();
+		
+		cursor = adapter.fetchTestResults("XXX");
+		assertEquals(0, cursor.getCount());
+		cursor.close();
+		
+		adapter.close();
+	}
+	
+	public void testFetchTestResultsTestInfo() {
+		
+		final DatabaseAdapterImpl adapter = new DatabaseAdapterImpl(this.getContext());
+		
+		TestInfo info = new TestInfo();
+		info.setTimestamp(1234567890L);
+		info.setType(ConnectivityManager.TYPE_WIFI);
+		info.setExtra("Sputnik");
+		info.setDnsMillis(11);
+		info.setDownloadMillis(55);
+		info.setVerdict(TestInfo.VERDICT_BLOCKED);
+		
+		assertTrue(adapter.updateTestResult(info));
+		
+		Cursor cursor = adapter.fetchTestResults("Sputnik");
+		assertTrue(cursor.moveToNext());
+		assertEquals(11, cursor.getLong(cursor.getColumnIndex(DatabaseAdapterImpl.COLUMN_DNS)));
+		assertEquals(55, cursor.getLong(cursor.getColumnIndex(DatabaseAdapterImpl.COLUMN_DOWNLOAD)));
+		assertEquals(TestInfo.VERDICT_BLOCKED, cursor.getInt(cursor.getColumnIndex(DatabaseAdapterImpl.COLUMN_VERDICT)));
+		cursor.close();
+		
+		adapter.close();
+	}
+	
+	public void testHistoryPrunedInBatches() {
+		
+		final DatabaseAdapterImpl adapter = new DatabaseAdapterImpl(this.getContext());
+		
+		assertTrue(adapter.updateTestResult(1000L, ConnectivityManager.TYPE_WIFI, "Sputnik", true));
+		
+		// Skips ahead to just before the end of a batch, where the oldest test result is due for pruning
+		final long last = DatabaseAdapterImpl.MAX_HISTORY + DatabaseAdapterImpl.PRUNE_BATCH - 2;
+		SQLiteDatabase database = this.getContext().openOrCreateDatabase(DatabaseAdapterImpl.DATABASE_NAME, Context.MODE_PRIVATE, null);
+		database.execSQL(String.format("INSERT INTO %s (%s, %s, %s, %s, %s) VALUES (%s, 2000, 1, 'Sputnik', 1)", 
+				DatabaseAdapterImpl.TESTHISTORY_TABLE_NAME, DatabaseAdapterImpl.COLUMN_ROWID, DatabaseAdapterImpl.COLUMN_TIMESTAMP, 
+				DatabaseAdapterImpl.COLUMN_TYPE, DatabaseAdapterImpl.COLUMN_SUBTYPE, DatabaseAdapterImpl.COLUMN_STATUS, last));
+		database.close();
+		
+		// Not pruned until the batch is complete
+		assertTrue(adapter.updateTestResult(3000L, ConnectivityManager.TYPE_WIFI, "Sputnik", true));
+		
+		Cursor cursor = adapter.fetchTestResults(0, Long.MAX_VALUE);
+		assertEquals(3, cursor.getCount());
+		cursor.close();
+		
+		assertTrue(adapter.updateTestResult(4000L, ConnectivityManager.TYPE_WIFI, "Sputnik", true));
+		
+		cursor = adapter.fetchTestResults(0, Long.MAX_VALUE);
+		assertEquals(3, cursor.getCount());
+		assertTrue(cursor.moveToFirst());
+		assertEquals(4000L, cursor.getLong(cursor.getColumnIndex(DatabaseAdapterImpl.COLUMN_TIMESTAMP)));
+		assertTrue(cursor.moveToLast());
+		assertEquals(2000L, cursor.getLong(cursor.getColumnIndex(DatabaseAdapterImpl.COLUMN_TIMESTAMP)));
+		cursor.close();
+		
+		assertEquals(4000L, adapter.fetchTestResult().getTimestamp());
 		
 		adapter.close();
 	}
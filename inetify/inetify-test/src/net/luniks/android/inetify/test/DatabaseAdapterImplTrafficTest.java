@@ -0,0 +1,98 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.test;
+
+import java.util.Calendar;
+
+import net.luniks.android.inetify.DatabaseAdapterImpl;
+import android.test.AndroidTestCase;
+
+public class DatabaseAdapterImplTrafficTest extends AndroidTestCase {
+
+	public void setUp() throws Exception {
+		super.setUp();
+		this.getContext().deleteDatabase("inetifydb");
+		this.getContext().deleteDatabase("inetifydb-journal");
+	}
+	
+	public void testGetDay() {
+		
+		assertEquals(20111231, DatabaseAdapterImpl.getDay(getTime(2011, Calendar.DECEMBER, 31)));
+		assertEquals(20120101, DatabaseAdapterImpl.getDay(getTime(2012, Calendar.JANUARY, 1)));
+		
+	}
+	
+	public void testNoTraffic() {
+		
+		final DatabaseAdapterImpl adapter = new DatabaseAdapterImpl(this.getContext());
+		
+		assertEquals(0, adapter.fetchDailyTraffic(System.currentTimeMillis()));
+		assertEquals(0, adapter.fetchMonthlyTraffic(System.currentTimeMillis()));
+		
+		assertFalse(adapter.addTraffic(System.currentTimeMillis(), 0));
+		
+		adapter.close();
+	}
+	
+	public void testAddTraffic() {
+		
+		final DatabaseAdapterImpl adapter = new DatabaseAdapterImpl(this.getContext());
+		
+		long first = getTime(2011, Calendar.DECEMBER, 1);
+		long second = getTime(2011, Calendar.DECEMBER, 2);
+		long nextMonth = getTime(2012, Calendar.JANUARY, 1);
+		
+		assertTrue(adapter.addTraffic(first, 1000));
+		assertTrue(adapter.addTraffic(first, 234));
+		assertTrue(adapter.addTraffic(second, 2000));
+		assertTrue(adapter.addTraffic(nextMonth, 4000));
+		
+		assertEquals(1234, adapter.fetchDailyTraffic(first));
+		assertEquals(2000, adapter.fetchDailyTraffic(second));
+		assertEquals(4000, adapter.fetchDailyTraffic(nextMonth));
+		
+		assertEquals(3234, adapter.fetchMonthlyTraffic(first));
+		assertEquals(3234, adapter.fetchMonthlyTraffic(second));
+		assertEquals(4000, adapter.fetchMonthlyTraffic(nextMonth));
+		
+		adapter.close();
+	}
+	
+	public void testAddTrafficDeletesOld() {
+		
+		final DatabaseAdapterImpl adapter = new DatabaseAdapterImpl(this.getContext());
+		
+		long yearAgo = getTime(2010, Calendar.DECEMBER, 2);
+		long lessThanYearAgo = getTime(2010, Calendar.DECEMBER, 3);
+		
+		assertTrue(adapter.addTraffic(yearAgo, 1000));
+		assertTrue(adapter.addTraffic(lessThanYearAgo, 2000));
+		assertTrue(adapter.addTraffic(getTime(2011, Calendar.DECEMBER, 2), 3000));
+		
+		assertEquals(0, adapter.fetchDailyTraffic(yearAgo));
+		assertEquals(2000, adapter.fetchDailyTraffic(lessThanYearAgo));
+		
+		adapter.close();
+	}
+	
+	private long getTime(final int year, final int month, final int day) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.clear();
+		calendar.set(year, month, day, 12, 0);
+		return calendar.getTimeInMillis();
+	}
+	
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.test;
+
+import net.luniks.android.inetify.DatabaseAdapterImpl;
+import net.luniks.android.inetify.TestInfo;
+import android.net.ConnectivityManager;
+import android.test.AndroidTestCase;
+
+public class DatabaseAdapterImplVerdictTest extends AndroidTestCase {
+
+	public void setUp() throws Exception {
+		super.setUp();
+		this.getContext().deleteDatabase("inetifydb");
+		this.getContext().deleteDatabase("inetifydb-journal");
+	}
+	
+	public void testFetchNoVerdict() {
+		
+		final DatabaseAdapterImpl adapter = new DatabaseAdapterImpl(this.getContext());
+		
+		assertNull(adapter.fetchVerdict("00:21:29:A2:48:80"));
+		assertNull(adapter.fetchVerdict(null));
+		
+		adapter.close();
+	}
+	
+	public void testUpdateVerdict() {
+		
+		final DatabaseAdapterImpl adapter = new DatabaseAdapterImpl(this.getContext());
+		
+		assertTrue(adapter.updateVerdict(getVerdict(1234567890L, "Celsten", "00:21:29:A2:48:80", true)));
+		
+		TestInfo info = adapter.fetchVerdict("00:21:29:A2:48:80");
+		
+		assertNotNull(info);
+		assertEquals(1234567890L, info.getTimestamp());
+		assertEquals(ConnectivityManager.TYPE_WIFI, info.getType());
+		assertEquals("Celsten", info.getExtra());
+		assertEquals("00:21:29:A2:48:80", info.getExtra2());
+		assertEquals("www.google.com", info.getSite());
+		assertEquals("Google", info.getTitle());
+		assertEquals("Google", info.getPageTitle());
+		assertTrue(info.getIsExpectedTitle());
+		
+		// Same BSSID, replaces the verdict
+		assertTrue(adapter.updateVerdict(getVerdict(1234567891L, "Celsten", "00:21:29:A2:48:80", false)));
+		
+		info = adapter.fetchVerdict("00:21:29:A2:48:80");
+		
+		assertNotNull(info);
+		assertEquals(1234567891L, info.getTimestamp());
+		assertFalse(info.getIsExpectedTitle());
+		
+		// Other BSSID, same SSID
+		assertTrue(adapter.updateVerdict(getVerdict(1234567892L, "Celsten", "00:21:29:A2:48:81", true)));
+		
+		assertEquals(1234567891L, adapter.fetchVerdict("00:21:29:A2:48:80").getTimestamp());
+		assertEquals(1234567892L, adapter.fetchVerdict("00:21:29:A2:48:81").getTimestamp());
+		
+		adapter.close();
+	}
+	
+	public void testUpdateVerdictNull() {
+		
+		final DatabaseAdapterImpl adapter = new DatabaseAdapterImpl(this.getContext());
+		
+		assertFalse(adapter.updateVerdict(null));
+		assertFalse(adapter.updateVerdict(getVerdict(1234567890L, null, "00:21:29:A2:48:80", true)));
+		assertFalse(adapter.updateVerdict(getVerdict(1234567890L, "Celsten", null, true)));
+		
+		assertNull(adapter.fetchVerdict("00:21:29:A2:48:80"));
+		
+		adapter.close();
+	}
+	
+	private TestInfo getVerdict(final long timestamp, final String ssid, final String bssid, final boolean isExpectedTitle) {
+		TestInfo info = new TestInfo();
+		info.setTimestamp(timestamp);
+		info.setType(ConnectivityManager.TYPE_WIFI);
+		info.setExtra(ssid);
+		info.setExtra2(bssid);
+		info.setSite("www.google.com");
+		info.setTitle("Google");
+		info.setPageTitle("Google");
+		info.setIsExpectedTitle(isExpectedTitle);
+		return info;
+	}
+	
+}
@@ -16,9 +16,12 @@
 package net.luniks.android.inetify.test;
 
 import net.luniks.android.inetify.DatabaseAdapterImpl;
+import net.luniks.android.inetify.TestInfo;
+import net.luniks.android.inetify.WifiLocation;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.location.Location;
 import android.test.AndroidTestCase;
 
 public class DatabaseUpgradeTest extends AndroidTestCase {
@@ -26,20 +29,80 @@ public class DatabaseUpgradeTest extends AndroidTestCase {
 	/** SQL to create the inital database */
 	private static final String IGNORELIST_TABLE_CREATE =
 		"CREATE TABLE " + DatabaseAdapterImpl.IGNORELIST_TABLE_NAME + " (" +
-		DatabaseAdapterImpl.COLUMN_ROWID + " INTEGER PRIMARY KEY AUTOINCREMENT)";
+		DatabaseAdapterImpl.COLUMN_ROWID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+		DatabaseAdapterImpl.COLUMN_BSSID + " TEXT NOT NULL, " +
+		DatabaseAdapterImpl.COLUMN_SSID + " TEXT NOT NULL)";
 	
 	/** SQL to create the inital database */
 	private static final String LOCATIONLIST_TABLE_NAME =
 		"CREATE TABLE " + DatabaseAdapterImpl.LOCATIONLIST_TABLE_NAME + " (" +
+		DatabaseAdapterImpl.COLUMN_ROWID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+		DatabaseAdapterImpl.COLUMN_BSSID + " TEXT NOT NULL, " +
+		DatabaseAdapterImpl.COLUMN_SSID + " TEXT NOT NULL, " +
+		DatabaseAdapterImpl.COLUMN_NAME + " TEXT NOT NULL, " +
+		DatabaseAdapterImpl.COLUMN_LAT + " NUMBER NOT NULL, " +
+		DatabaseAdapterImpl.COLUMN_LON + " NUMBER NOT NULL, " +
+		DatabaseAdapterImpl.COLUMN_ACC + " NUMBER NOT NULL)";
+	
+	/** SQL to create the inital database */
+	private static final String TESTRESULTS_TABLE_CREATE =
+		"CREATE TABLE " + DatabaseAdapterImpl.TESTRESULTS_TABLE_NAME + " (" +
+		DatabaseAdapterImpl.COLUMN_ROWID + " INTEGER PRIMARY KEY, " +
+		DatabaseAdapterImpl.COLUMN_TIMESTAMP + " LONG, " +
+		DatabaseAdapterImpl.COLUMN_TYPE + " INTEGER, " +
+		DatabaseAdapterImpl.COLUMN_SUBTYPE + " TEXT, " +
+		DatabaseAdapterImpl.COLUMN_STATUS + " INTEGER)";
+	
+	/** SQL to create the test results as of version 6 */
+	private static final String TESTRESULTS_V6_TABLE_CREATE =
+		"CREATE TABLE " + DatabaseAdapterImpl.TESTRESULTS_TABLE_NAME + " (" +
+		DatabaseAdapterImpl.COLUMN_ROWID + " INTEGER PRIMARY KEY, " +
+		DatabaseAdapterImpl.COLUMN_TIMESTAMP + " LONG, " +
+		DatabaseAdapterImpl.COLUMN_TYPE + " INTEGER, " +
+		DatabaseAdapterImpl.COLUMN_SUBTYPE + " TEXT, " +
+		DatabaseAdapterImpl.COLUMN_STATUS + " INTEGER, " +
+		DatabaseAdapterImpl.COLUMN_DNS + " LONG, " +
+		DatabaseAdapterImpl.COLUMN_CONNECT + " LONG, " +
+		DatabaseAdapterImpl.COLUMN_TLS + " LONG, " +
+		DatabaseAdapterImpl.COLUMN_FIRSTBYTE + " LONG, " +
+		DatabaseAdapterImpl.COLUMN_DOWNLOAD + " LONG)";
+	
+	/** SQL to create the test history as of version 10 */
+	private static final String TESTHISTORY_V10_TABLE_CREATE =
+		"CREATE TABLE " + DatabaseAdapterImpl.TESTHISTORY_TABLE_NAME + " (" +
+		DatabaseAdapterImpl.COLUMN_ROWID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+		DatabaseAdapterImpl.COLUMN_TIMESTAMP + " LONG, " +
+		DatabaseAdapterImpl.COLUMN_TYPE + " INTEGER, " +
+		DatabaseAdapterImpl.COLUMN_SUBTYPE + " TEXT, " +
+		DatabaseAdapterImpl.COLUMN_STATUS + " INTEGER, " +
+		DatabaseAdapterImpl.COLUMN_DNS + " LONG, " +
+		DatabaseAdapterImpl.COLUMN_CONNECT + " LONG, " +
+		DatabaseAdapterImpl.COLUMN_TLS + " LONG, " +
+		DatabaseAdapterImpl.COLUMN_FIRSTBYTE + " LONG, " +
+		DatabaseAdapterImpl.COLUMN_DOWNLOAD + " LONG)";
+	
+	/** SQL to create the inital database */
+	private static final String VERDICTS_TABLE_CREATE =
+		"CREATE TABLE " + DatabaseAdapterImpl.VERDICTS_TABLE_NAME + " (" +
 		DatabaseAdapterImpl.COLUMN_ROWID + " INTEGER PRIMARY KEY AUTOINCREMENT)";
 	
+	/** SQL to create the inital database */
+	private static final String FINGERPRINTS_TABLE_CREATE =
+		"CREATE TABLE " + DatabaseAdapterImpl.FINGERPRINTS_TABLE_NAME + " (" +
+		DatabaseAdapterImpl.COLUMN_ROWID + " INTEGER PRIMARY KEY AUTOINCREMENT)";
+	
+	/** SQL to create the inital database */
+	private static final String TRAFFIC_TABLE_CREATE =
+		"CREATE TABLE " + DatabaseAdapterImpl.TRAFFIC_TABLE_NAME + " (" +
+		DatabaseAdapterImpl.COLUMN_DAY + " INTEGER PRIMARY KEY)";
+	
 	public void setUp() throws Exception {
 		super.setUp();
 		this.getContext().deleteDatabase("inetifydb");
 		this.getContext().deleteDatabase("inetifydb-journal");
 	}
 	
-	public void testUpdateV1ToV3() {
+	public void testUpdateV1ToV11() {
 		
 		SQLiteDatabase database = this.getContext().openOrCreateDatabase(DatabaseAdapterImpl.DATABASE_NAME, Context.MODE_PRIVATE, null);
 		database.setVersion(1);
@@ -47,11 +110,20 @@ public class DatabaseUpgradeTest extends AndroidTestCase {
 		
 		DatabaseAdapterImpl adapter = new DatabaseAdapterImpl(this.getContext());
 		
-		assertEquals(3, adapter.getDatabaseVersion());
+		assertEquals(11, adapter.getDatabaseVersion());
 		
 		assertTrue(tableExists(database, DatabaseAdapterImpl.IGNORELIST_TABLE_NAME));
 		assertTrue(tableExists(database, DatabaseAdapterImpl.LOCATIONLIST_TABLE_NAME));
 		assertTrue(tableExists(database, DatabaseAdapterImpl.TESTRESULTS_TABLE_NAME));
+		assertTrue(tableExists(database, DatabaseAdapterImpl.VERDICTS_TABLE_NAME));
+		assertTrue(tableExists(database, DatabaseAdapterImpl.FINGERPRINTS_TABLE_NAME));
+		assertTrue(tableExists(database, DatabaseAdapterImpl.TRAFFIC_TABLE_NAME));
+		assertTrue(tableExists(database, DatabaseAdapterImpl.TESTHISTORY_TABLE_NAME));
+		assertTrue(columnExists(database, DatabaseAdapterImpl.TESTRESULTS_TABLE_NAME, DatabaseAdapterImpl.COLUMN_DOWNLOAD));
+		assertTrue(columnExists(database, DatabaseAdapterImpl.TESTRESULTS_TABLE_NAME, DatabaseAdapterImpl.COLUMN_VERDICT));
+		assertTrue(columnExists(database, DatabaseAdapterImpl.TESTHISTORY_TABLE_NAME, DatabaseAdapterImpl.COLUMN_VERDICT));
+		assertTrue(indexExists(database, DatabaseAdapterImpl.IGNORELIST_SSID_INDEX_NAME));
+		assertTrue(indexExists(database, DatabaseAdapterImpl.LOCATIONLIST_SORTED_INDEX_NAME));
 		
 		database.close();
 		
@@ -59,7 +131,7 @@ public class DatabaseUpgradeTest extends AndroidTestCase {
 		
 	}
 	
-	public void testUpdateV2ToV3() {
+	public void testUpdateV2ToV11() {
 		
 		SQLiteDatabase database = this.getContext().openOrCreateDatabase(DatabaseAdapterImpl.DATABASE_NAME, Context.MODE_PRIVATE, null);
 		database.setVersion(2);
@@ -68,11 +140,18 @@ public class DatabaseUpgradeTest extends AndroidTestCase {
 		
 		DatabaseAdapterImpl adapter = new DatabaseAdapterImpl(this.getContext());
 		
-		assertEquals(3, adapter.getDatabaseVersion());
+		assertEquals(11, adapter.getDatabaseVersion());
 		
 		assertTrue(tableExists(database, DatabaseAdapterImpl.IGNORELIST_TABLE_NAME));
 		assertTrue(tableExists(database, DatabaseAdapterImpl.LOCATIONLIST_TABLE_NAME));
 		assertTrue(tableExists(database, DatabaseAdapterImpl.TESTRESULTS_TABLE_NAME));
+		assertTrue(tableExists(database, DatabaseAdapterImpl.VERDICTS_TABLE_NAME));
+		assertTrue(tableExists(database, DatabaseAdapterImpl.FINGERPRINTS_TABLE_NAME));
+		assertTrue(tableExists(database, DatabaseAdapterImpl.TRAFFIC_TABLE_NAME));
+		assertTrue(tableExists(database, DatabaseAdapterImpl.TESTHISTORY_TABLE_NAME));
+		assertTrue(columnExists(database, DatabaseAdapterImpl.TESTRESULTS_TABLE_NAME, DatabaseAdapterImpl.COLUMN_DOWNLOAD));
+		assertTrue(indexExists(database, DatabaseAdapterImpl.IGNORELIST_SSID_INDEX_NAME));
+		assertTrue(indexExists(database, DatabaseAdapterImpl.LOCATIONLIST_SORTED_INDEX_NAME));
 		
 		database.close();
 		
@@ -80,6 +159,322 @@ public class DatabaseUpgradeTest extends AndroidTestCase {
 		
 	}
 	
+	public void testUpdateV3ToV11() {
+		
+		SQLiteDatabase database = this.getContext().openOrCreateDatabase(DatabaseAdapterImpl.DATABASE_NAME, Context.MODE_PRIVATE, null);
+		database.setVersion(3);
+		database.execSQL(IGNORELIST_TABLE_CREATE);
+		database.execSQL(LOCATIONLIST_TABLE_NAME);
+		database.execSQL(TESTRESULTS_TABLE_CREATE);
+		
+		DatabaseAdapterImpl adapter = new DatabaseAdapterImpl(this.getContext());
+		
+		assertEquals(11, adapter.getDatabaseVersion());
+		
+		assertTrue(tableExists(database, DatabaseAdapterImpl.IGNORELIST_TABLE_NAME));
+		assertTrue(tableExists(database, DatabaseAdapterImpl.LOCATIONLIST_TABLE_NAME));
+		assertTrue(tableExists(database, DatabaseAdapterImpl.TESTRESULTS_TABLE_NAME));
+		assertTrue(tableExists(database, DatabaseAdapterImpl.VERDICTS_TABLE_NAME));
+		assertTrue(tableExists(database, DatabaseAdapterImpl.FINGERPRINTS_TABLE_NAME));
+		assertTrue(tableExists(database, DatabaseAdapterImpl.TRAFFIC_TABLE_NAME));
+		assertTrue(tableExists(database, DatabaseAdapterImpl.TESTHISTORY_TABLE_NAME));
+		assertTrue(columnExists(database, DatabaseAdapterImpl.TESTRESULTS_TABLE_NAME, DatabaseAdapterImpl.COLUMN_DOWNLOAD));
+		assertTrue(indexExists(database, DatabaseAdapterImpl.IGNORELIST_SSID_INDEX_NAME));
+		assertTrue(indexExists(database, DatabaseAdapterImpl.LOCATIONLIST_SORTED_INDEX_NAME));
+		
+		database.close();
+		
+		adapter.close();
+		
+	}
+	
+	public void testUpdateV4ToV11() {
+		
+		SQLiteDatabase database = this.getContext().openOrCreateDatabase(DatabaseAdapterImpl.DATABASE_NAME, Context.MODE_PRIVATE, null);
+		database.setVersion(4);
+		database.execSQL(IGNORELIST_TABLE_CREATE);
+		database.execSQL(LOCATIONLIST_TABLE_NAME);
+		database.execSQL(TESTRESULTS_TABLE_CREATE);
+		database.execSQL(VERDICTS_TABLE_CREATE);
+		
+		DatabaseAdapterImpl adapter = new DatabaseAdapterImpl(this.getContext());
+		
+		assertEquals(11, adapter.getDatabaseVersion());
+		
+		assertTrue(tableExists(database, DatabaseAdapterImpl.IGNORELIST_TABLE_NAME));
+		assertTrue(tableExists(database, DatabaseAdapterImpl.LOCATIONLIST_TABLE_NAME));
+		assertTrue(tableExists(database, DatabaseAdapterImpl.TESTRESULTS_TABLE_NAME));
+		assertTrue(tableExists(database, DatabaseAdapterImpl.VERDICTS_TABLE_NAME));
+		assertTrue(tableExists(database, DatabaseAdapterImpl.FINGERPRINTS_TABLE_NAME));
+		assertTrue(tableExists(database, DatabaseAdapterImpl.TRAFFIC_TABLE_NAME));
+		assertTrue(tableExists(database, DatabaseAdapterImpl.TESTHISTORY_TABLE_NAME));
+		assertTrue(columnExists(database, DatabaseAdapterImpl.TESTRESULTS_TABLE_NAME, DatabaseAdapterImpl.COLUMN_DOWNLOAD));
+		assertTrue(indexExists(database, DatabaseAdapterImpl.IGNORELIST_SSID_INDEX_NAME));
+		assertTrue(indexExists(database, DatabaseAdapterImpl.LOCATIONLIST_SORTED_INDEX_NAME));
+		
+		database.close();
+		
+		adapter.close();
+		
+	}
+	
+	public void testUpdateV5ToV11() {
+		
+		SQLiteDatabase database = this.getContext().openOrCreateDatabase(DatabaseAdapterImpl.DATABASE_NAME, Context.MODE_PRIVATE, null);
+		database.setVersion(5);
+		database.execSQL(IGNORELIST_TABLE_CREATE);
+		database.execSQL(LOCATIONLIST_TABLE_NAME);
+		database.execSQL(TESTRESULTS_TABLE_CREATE);
+		database.execSQL(VERDICTS_TABLE_CREATE);
+		database.execSQL(FINGERPRINTS_TABLE_CREATE);
+		
+		DatabaseAdapterImpl adapter = new DatabaseAdapterImpl(this.getContext());
+		
+		assertEquals(11, adapter.getDatabaseVersion());
+		
+		assertTrue(columnExists(database, DatabaseAdapterImpl.TESTRESULTS_TABLE_NAME, DatabaseAdapterImpl.COLUMN_DNS));
+		assertTrue(columnExists(database, DatabaseAdapterImpl.TESTRESULTS_TABLE_NAME, DatabaseAdapterImpl.COLUMN_CONNECT));
+		assertTrue(columnExists(database, DatabaseAdapterImpl.TESTRESULTS_TABLE_NAME, DatabaseAdapterImpl.COLUMN_TLS));
+		assertTrue(columnExists(database, DatabaseAdapterImpl.TESTRESULTS_TABLE_NAME, DatabaseAdapterImpl.COLUMN_FIRSTBYTE));
+		assertTrue(columnExists(database, DatabaseAdapterImpl.TESTRESULTS_TABLE_NAME, DatabaseAdapterImpl.COLUMN_DOWNLOAD));
+		assertTrue(tableExists(database, DatabaseAdapterImpl.TRAFFIC_TABLE_NAME));
+		
+		database.close();
+		
+		adapter.close();
+		
+	}
+	
+	public void testUpdateV6ToV11() {
+		
+		SQLiteDatabase database = this.getContext().openOrCreateDatabase(DatabaseAdapterImpl.DATABASE_NAME, Context.MODE_PRIVATE, null);
+		database.setVersion(6);
+		database.execSQL(IGNORELIST_TABLE_CREATE);
+		database.execSQL(LOCATIONLIST_TABLE_NAME);
+		database.execSQL(TESTRESULTS_V6_TABLE_CREATE);
+		database.execSQL(VERDICTS_TABLE_CREATE);
+		database.execSQL(FINGERPRINTS_TABLE_CREATE);
+		
+		DatabaseAdapterImpl adapter = new DatabaseAdapterImpl(this.getContext());
+		
+		assertEquals(11, adapter.getDatabaseVersion());
+		
+		assertTrue(tableExists(database, DatabaseAdapterImpl.TRAFFIC_TABLE_NAME));
+		assertTrue(columnExists(database, DatabaseAdapterImpl.TRAFFIC_TABLE_NAME, DatabaseAdapterImpl.COLUMN_DAY));
+		assertTrue(columnExists(database, DatabaseAdapterImpl.TRAFFIC_TABLE_NAME, DatabaseAdapterImpl.COLUMN_BYTES));
+		assertTrue(columnExists(database, DatabaseAdapterImpl.TRAFFIC_TABLE_NAME, DatabaseAdapterImpl.COLUMN_TESTS));
+		assertTrue(indexExists(database, DatabaseAdapterImpl.IGNORELIST_SSID_INDEX_NAME));
+		
+		database.close();
+		
+		adapter.close();
+		
+	}
+	
+	public void testUpdateV7ToV11() {
+		
+		SQLiteDatabase database = this.getContext().openOrCreateDatabase(DatabaseAdapterImpl.DATABASE_NAME, Context.MODE_PRIVATE, null);
+		database.setVersion(7);
+		database.execSQL(IGNORELIST_TABLE_CREATE);
+		database.execSQL(LOCATIONLIST_TABLE_NAME);
+		database.execSQL(TESTRESULTS_V6_TABLE_CREATE);
+		database.execSQL(VERDICTS_TABLE_CREATE);
+		database.execSQL(FINGERPRINTS_TABLE_CREATE);
+		database.execSQL(TRAFFIC_TABLE_CREATE);
+		
+		DatabaseAdapterImpl adapter = new DatabaseAdapterImpl(this.getContext());
+		
+		assertEquals(11, adapter.getDatabaseVersion());
+		
+		assertTrue(indexExists(database, DatabaseAdapterImpl.IGNORELIST_SSID_INDEX_NAME));
+		assertTrue(indexExists(database, DatabaseAdapterImpl.IGNORELIST_SORTED_INDEX_NAME));
+		assertTrue(indexExists(database, DatabaseAdapterImpl.LOCATIONLIST_SORTED_INDEX_NAME));
+		
+		// Deleting an ignored Wifi network
+		String plan = explain(database, String.format("SELECT %s FROM %s WHERE %s = ?", 
+				DatabaseAdapterImpl.COLUMN_ROWID, DatabaseAdapterImpl.IGNORELIST_TABLE_NAME, 
+				DatabaseAdapterImpl.COLUMN_SSID), "Celsten");
+		assertTrue(plan, plan.contains(DatabaseAdapterImpl.IGNORELIST_SSID_INDEX_NAME));
+		
+		// The list of ignored Wifi networks
+		plan = explain(database, String.format("SELECT %s, %s, %s FROM %s ORDER BY %s COLLATE UNICODE", 
+				DatabaseAdapterImpl.COLUMN_ROWID, DatabaseAdapterImpl.COLUMN_BSSID, DatabaseAdapterImpl.COLUMN_SSID, 
+				DatabaseAdapterImpl.IGNORELIST_TABLE_NAME, DatabaseAdapterImpl.COLUMN_SSID));
+		assertTrue(plan, plan.contains(DatabaseAdapterImpl.IGNORELIST_SORTED_INDEX_NAME));
+		assertFalse(plan, plan.contains("TEMP B-TREE"));
+		
+		// The list of Wifi locations
+		plan = explain(database, String.format("SELECT %s, %s, %s, %s, %s, %s, %s FROM %s ORDER BY %s COLLATE UNICODE", 
+				DatabaseAdapterImpl.COLUMN_ROWID, DatabaseAdapterImpl.COLUMN_BSSID, DatabaseAdapterImpl.COLUMN_SSID, 
+				DatabaseAdapterImpl.COLUMN_NAME, DatabaseAdapterImpl.COLUMN_LAT, DatabaseAdapterImpl.COLUMN_LON, 
+				DatabaseAdapterImpl.COLUMN_ACC, DatabaseAdapterImpl.LOCATIONLIST_TABLE_NAME, DatabaseAdapterImpl.COLUMN_NAME));
+		assertTrue(plan, plan.contains(DatabaseAdapterImpl.LOCATIONLIST_SORTED_INDEX_NAME));
+		assertFalse(plan, plan.contains("TEMP B-TREE"));
+		
+		database.close();
+		
+		adapter.close();
+		
+	}
+	
+	public void testUpdateV8ToV11() {
+		
+		SQLiteDatabase database = this.getContext().openOrCreateDatabase(DatabaseAdapterImpl.DATABASE_NAME, Context.MODE_PRIVATE, null);
+		database.setVersion(8);
+		database.execSQL(IGNORELIST_TABLE_CREATE);
+		database.execSQL(LOCATIONLIST_TABLE_NAME);
+		database.execSQL(TESTRESULTS_V6_TABLE_CREATE);
+		database.execSQL(VERDICTS_TABLE_CREATE);
+		database.execSQL(FINGERPRINTS_TABLE_CREATE);
+		database.execSQL(TRAFFIC_TABLE_CREATE);
+		database.execSQL(String.format("INSERT INTO %s (%s, %s, %s, %s, %s, %s) VALUES ('BSSID1', 'SSID1', 'Name1', 50.628707, 3.538688, 10)", 
+				DatabaseAdapterImpl.LOCATIONLIST_TABLE_NAME, DatabaseAdapterImpl.COLUMN_BSSID, DatabaseAdapterImpl.COLUMN_SSID, 
+				DatabaseAdapterImpl.COLUMN_NAME, DatabaseAdapterImpl.COLUMN_LAT, DatabaseAdapterImpl.COLUMN_LON, DatabaseAdapterImpl.COLUMN_ACC));
+		
+		DatabaseAdapterImpl adapter = new DatabaseAdapterImpl(this.getContext());
+		
+		assertEquals(11, adapter.getDatabaseVersion());
+		
+		assertTrue(tableExists(database, DatabaseAdapterImpl.TESTHISTORY_TABLE_NAME));
+		
+		// The existing locations are found
+		Location location = new Location("test");
+		location.setLatitude(50.628707);
+		location.setLongitude(3.538688);
+		WifiLocation nearest = adapter.getNearestLocationTo(location, 1500);
+		assertNotNull(nearest);
+		assertEquals("BSSID1", nearest.getBSSID());
+		
+		database.close();
+		
+		adapter.close();
+		
+	}
+	
+	public void testUpdateV9ToV11() {
+		
+		SQLiteDatabase database = this.getContext().openOrCreateDatabase(DatabaseAdapterImpl.DATABASE_NAME, Context.MODE_PRIVATE, null);
+		database.setVersion(9);
+		database.execSQL(IGNORELIST_TABLE_CREATE);
+		database.execSQL(LOCATIONLIST_TABLE_NAME);
+		database.execSQL(TESTRESULTS_V6_TABLE_CREATE);
+		database.execSQL(VERDICTS_TABLE_CREATE);
+		database.execSQL(FINGERPRINTS_TABLE_CREATE);
+		database.execSQL(TRAFFIC_TABLE_CREATE);
+		// Version 9 indexed a cell column of the location list
+		database.execSQL(String.format("ALTER TABLE %s ADD COLUMN cell INTEGER", DatabaseAdapterImpl.LOCATIONLIST_TABLE_NAME));
+		database.execSQL(String.format("CREATE INDEX locationlist_cell ON %s (cell)", DatabaseAdapterImpl.LOCATIONLIST_TABLE_NAME));
+		database.execSQL(String.format("INSERT INTO %s (%s, %s, %s, %s, %s, %s) VALUES (0, 1234567890, 1, 'Celsten', 1, 11)", 
+				DatabaseAdapterImpl.TESTRESULTS_TABLE_NAME, DatabaseAdapterImpl.COLUMN_ROWID, DatabaseAdapterImpl.COLUMN_TIMESTAMP, 
+				DatabaseAdapterImpl.COLUMN_TYPE, DatabaseAdapterImpl.COLUMN_SUBTYPE, DatabaseAdapterImpl.COLUMN_STATUS, 
+				DatabaseAdapterImpl.COLUMN_DNS));
+		
+		DatabaseAdapterImpl adapter = new DatabaseAdapterImpl(this.getContext());
+		
+		assertEquals(11, adapter.getDatabaseVersion());
+		
+		assertTrue(tableExists(database, DatabaseAdapterImpl.TESTHISTORY_TABLE_NAME));
+		assertTrue(indexExists(database, DatabaseAdapterImpl.TESTHISTORY_TIMESTAMP_INDEX_NAME));
+		assertTrue(indexExists(database, DatabaseAdapterImpl.TESTHISTORY_SUBTYPE_INDEX_NAME));
+		assertFalse(indexExists(database, "locationlist_cell"));
+		assertTrue(columnExists(database, DatabaseAdapterImpl.TESTRESULTS_TABLE_NAME, DatabaseAdapterImpl.COLUMN_VERDICT));
+		assertTrue(columnExists(database, DatabaseAdapterImpl.TESTHISTORY_TABLE_NAME, DatabaseAdapterImpl.COLUMN_VERDICT));
+		
+		// The latest test result starts the history
+		Cursor cursor = adapter.fetchTestResults("Celsten");
+		assertEquals(1, cursor.getCount());
+		assertTrue(cursor.moveToNext());
+		assertEquals(1234567890L, cursor.getLong(cursor.getColumnIndex(DatabaseAdapterImpl.COLUMN_TIMESTAMP)));
+		assertEquals(11L, cursor.getLong(cursor.getColumnIndex(DatabaseAdapterImpl.COLUMN_DNS)));
+		cursor.close();
+		
+		// Test results in a time window
+		String plan = explain(database, String.format("SELECT %s FROM %s WHERE %s BETWEEN ? AND ? ORDER BY %s DESC", 
+				DatabaseAdapterImpl.COLUMN_STATUS, DatabaseAdapterImpl.TESTHISTORY_TABLE_NAME, 
+				DatabaseAdapterImpl.COLUMN_TIMESTAMP, DatabaseAdapterImpl.COLUMN_TIMESTAMP), "0", "1");
+		assertTrue(plan, plan.contains(DatabaseAdapterImpl.TESTHISTORY_TIMESTAMP_INDEX_NAME));
+		assertFalse(plan, plan.contains("TEMP B-TREE"));
+		
+		// Test results of a Wifi network
+		plan = explain(database, String.format("SELECT %s FROM %s WHERE %s = ? ORDER BY %s DESC", 
+				DatabaseAdapterImpl.COLUMN_STATUS, DatabaseAdapterImpl.TESTHISTORY_TABLE_NAME, 
+				DatabaseAdapterImpl.COLUMN_SUBTYPE, DatabaseAdapterImpl.COLUMN_TIMESTAMP), "Celsten");
+		assertTrue(plan, plan.contains(DatabaseAdapterImpl.TESTHISTORY_SUBTYPE_INDEX_NAME));
+		assertFalse(plan, plan.contains("TEMP B-TREE"));
+		
+		database.close();
+		
+		adapter.close();
+		
+	}
+	
+	public void testUpdateV10ToV11() {
+		
+		SQLiteDatabase database = this.getContext().openOrCreateDatabase(DatabaseAdapterImpl.DATABASE_NAME, Context.MODE_PRIVATE, null);
+		database.setVersion(10);
+		database.execSQL(IGNORELIST_TABLE_CREATE);
+		database.execSQL(LOCATIONLIST_TABLE_NAME);
+		database.execSQL(TESTRESULTS_V6_TABLE_CREATE);
+		database.execSQL(VERDICTS_TABLE_CREATE);
+		database.execSQL(FINGERPRINTS_TABLE_CREATE);
+		database.execSQL(TRAFFIC_TABLE_CREATE);
+		database.execSQL(TESTHISTORY_V10_TABLE_CREATE);
+		database.execSQL(String.format("INSERT INTO %s (%s, %s, %s, %s) VALUES (1234567890, 1, 'Celsten', 1)", 
+				DatabaseAdapterImpl.TESTHISTORY_TABLE_NAME, DatabaseAdapterImpl.COLUMN_TIMESTAMP, 
+				DatabaseAdapterImpl.COLUMN_TYPE, DatabaseAdapterImpl.COLUMN_SUBTYPE, DatabaseAdapterImpl.COLUMN_STATUS));
+		
+		DatabaseAdapterImpl adapter = new DatabaseAdapterImpl(this.getContext());
+		
+		assertEquals(11, adapter.getDatabaseVersion());
+		
+		assertTrue(columnExists(database, DatabaseAdapterImpl.TESTRESULTS_TABLE_NAME, DatabaseAdapterImpl.COLUMN_VERDICT));
+		assertTrue(columnExists(database, DatabaseAdapterImpl.TESTHISTORY_TABLE_NAME, DatabaseAdapterImpl.COLUMN_VERDICT));
+		
+		// Test results from before have an unknown verdict
+		Cursor cursor = adapter.fetchTestResults("Celsten");
+		assertEquals(1, cursor.getCount());
+		assertTrue(cursor.moveToNext());
+		assertEquals(TestInfo.VERDICT_UNKNOWN, cursor.getInt(cursor.getColumnIndex(DatabaseAdapterImpl.COLUMN_VERDICT)));
+		cursor.close();
+		
+		database.close();
+		
+		adapter.close();
+		
+	}
+	
+	private String explain(final SQLiteDatabase database, final String sql, final String... args) {
+		Cursor cursor = database.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+		StringBuilder plan = new StringBuilder();
+		while(cursor.moveToNext()) {
+			// The last column has the detail
+			plan.append(cursor.getString(cursor.getColumnCount() - 1)).append('\n');
+		}
+		cursor.close();
+		return plan.toString();
+	}
+	
+	private boolean indexExists(final SQLiteDatabase database, final String index) {
+		String[] args = new String[] {index};
+		Cursor cursor = database.rawQuery("SELECT COUNT(*) FROM sqlite_master WHERE type = 'index' AND name = ?", args);
+		cursor.moveToNext();
+		boolean exists = cursor.getInt(0) == 1;
+		cursor.close();
+		return exists;
+	}
+	
+	private boolean columnExists(final SQLiteDatabase database, final String table, final String column) {
+		Cursor cursor = database.rawQuery("PRAGMA table_info(" + table + ")", null);
+		boolean exists = false;
+		while(cursor.moveToNext()) {
+			if(column.equals(cursor.getString(cursor.getColumnIndex("name")))) {
+				exists = true;
+			}
+		}
+		cursor.close();
+		return exists;
+	}
+	
 	private boolean tableExists(final SQLiteDatabase database, final String table) {
 		String[] args = new String[] {table};
 		Cursor cursor = database.rawQuery("SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = ?", args);
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.test;
+
+import net.luniks.android.inetify.EventCoalescer;
+import android.test.AndroidTestCase;
+
+public class EventCoalescerTest extends AndroidTestCase {
+	
+	public void testNoSequence() {
+		
+		EventCoalescer coalescer = new EventCoalescer(1000);
+		
+		assertTrue(coalescer.shouldTest(EventCoalescer.NO_SEQUENCE));
+		assertTrue(coalescer.shouldTest(EventCoalescer.NO_SEQUENCE));
+		
+		assertEquals(0, coalescer.getReceivedCount());
+		assertEquals(2, coalescer.getTestedCount());
+	}
+	
+	public void testSingleEvent() {
+		
+		EventCoalescer coalescer = new EventCoalescer(1000);
+		
+		long sequence = coalescer.received(true, "00:21:29:A2:48:80", 0);
+		
+		// Nothing to wait for
+		assertFalse(coalescer.isBurst(sequence));
+		assertTrue(coalescer.shouldTest(sequence));
+		
+		assertEquals(1, coalescer.getReceivedCount());
+		assertEquals(1, coalescer.getTestedCount());
+	}
+	
+	public void testBurst() {
+		
+		EventCoalescer coalescer = new EventCoalescer(1000);
+		
+		long[] sequences = new long[5];
+		for(int i = 0; i < sequences.length; i++) {
+			sequences[i] = coalescer.received(i % 2 == 0, "00:21:29:A2:48:80", i * 100);
+		}
+		
+		assertTrue(coalescer.isBurst(sequences[sequences.length - 1]));
+		
+		// Only the latest event is tested
+		for(int i = 0; i < sequences.length - 1; i++) {
+			assertFalse(coalescer.isBurst(sequences[i]));
+			assertFalse(coalescer.shouldTest(sequences[i]));
+		}
+		assertTrue(coalescer.shouldTest(sequences[sequences.length - 1]));
+		
+		assertEquals(5, coalescer.getReceivedCount());
+		assertEquals(4, coalescer.getCoalescedCount());
+		assertEquals(1, coalescer.getTestedCount());
+	}
+	
+	public void testIsBurst() {
+		
+		EventCoalescer coalescer = new EventCoalescer(1000);
+		
+		long first = coalescer.received(false, null, 10000);
+		assertFalse(coalescer.isBurst(first));
+		
+		long alone = coalescer.received(true, "00:21:29:A2:48:80", 12000);
+		assertFalse(coalescer.isBurst(alone));
+		
+		long following = coalescer.received(false, null, 12500);
+		assertTrue(coalescer.isBurst(following));
+		assertFalse(coalescer.isBurst(alone));
+		
+		coalescer.setWindow(0);
+		
+		assertFalse(coalescer.isBurst(coalescer.received(true, "00:21:29:A2:48:80", 12500)));
+	}
+	
+	public void testDisconnectConnectSameBSSID() {
+		
+		EventCoalescer coalescer = new EventCoalescer(1000);
+		
+		assertTrue(coalescer.shouldTest(coalescer.received(true, "00:21:29:A2:48:80", 0)));
+		
+		long disconnect = coalescer.received(false, null, 10000);
+		long connect = coalescer.received(true, "00:21:29:A2:48:80", 10500);
+		
+		// Nothing changed since the last test
+		assertFalse(coalescer.shouldTest(disconnect));
+		assertFalse(coalescer.shouldTest(connect));
+		
+		assertEquals(3, coalescer.getReceivedCount());
+		assertEquals(1, coalescer.getCoalescedCount());
+		assertEquals(1, coalescer.getDroppedCount());
+		assertEquals(1, coalescer.getTestedCount());
+	}
+	
+	public void testDisconnectConnectOtherBSSID() {
+		
+		EventCoalescer coalescer = new EventCoalescer(1000);
+		
+		assertTrue(coalescer.shouldTest(coalescer.received(true, "00:21:29:A2:48:80", 0)));
+		
+		long disconnect = coalescer.received(false, null, 10000);
+		long connect = coalescer.received(true, "00:21:29:A2:48:81", 10500);
+		
+		assertFalse(coalescer.shouldTest(disconnect));
+		assertTrue(coalescer.shouldTest(connect));
+		
+		assertEquals(0, coalescer.getDroppedCount());
+		assertEquals(2, coalescer.getTestedCount());
+	}
+	
+	public void testDisconnectConnectOutsideWindow() {
+		
+		EventCoalescer coalescer = new EventCoalescer(1000);
+		
+		assertTrue(coalescer.shouldTest(coalescer.received(true, "00:21:29:A2:48:80", 0)));
+		
+		long disconnect = coalescer.received(false, null, 10000);
+		long connect = coalescer.received(true, "00:21:29:A2:48:80", 11000);
+		
+		assertFalse(coalescer.shouldTest(disconnect));
+		assertTrue(coalescer.shouldTest(connect));
+		
+		assertEquals(0, coalescer.getDroppedCount());
+	}
+	
+	public void testDisconnectTestedConnectSameBSSID() {
+		
+		EventCoalescer coalescer = new EventCoalescer(1000);
+		
+		assertTrue(coalescer.shouldTest(coalescer.received(true, "00:21:29:A2:48:80", 0)));
+		
+		// The disconnect was tested so the connect must be tested as well
+		assertTrue(coalescer.shouldTest(coalescer.received(false, null, 10000)));
+		assertTrue(coalescer.shouldTest(coalescer.received(true, "00:21:29:A2:48:80", 10500)));
+		
+		assertEquals(0, coalescer.getDroppedCount());
+		assertEquals(3, coalescer.getTestedCount());
+	}
+	
+	public void testReset() {
+		
+		EventCoalescer coalescer = new EventCoalescer(1000);
+		
+		coalescer.received(true, "00:21:29:A2:48:80", 0);
+		coalescer.shouldTest(coalescer.received(false, null, 100));
+		
+		coalescer.reset();
+		
+		assertEquals(0, coalescer.getReceivedCount());
+		assertEquals(0, coalescer.getCoalescedCount());
+		assertEquals(0, coalescer.getDroppedCount());
+		assertEquals(0, coalescer.getTestedCount());
+		assertEquals(1, coalescer.received(true, "00:21:29:A2:48:80", 0));
+	}
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.test;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import net.luniks.android.inetify.IgnoredWifis;
+import android.test.AndroidTestCase;
+
+public class IgnoredWifisTest extends AndroidTestCase {
+	
+	public void testNotLoaded() {
+		
+		IgnoredWifis ignoredWifis = new IgnoredWifis();
+		
+		assertNull(ignoredWifis.getSSIDs());
+		assertFalse(ignoredWifis.contains("Celsten"));
+		assertFalse(ignoredWifis.contains(null));
+	}
+	
+	public void testSet() {
+		
+		IgnoredWifis ignoredWifis = new IgnoredWifis();
+		
+		Set<String> ssids = ignoredWifis.set(ignoredWifis.getGeneration(), Arrays.asList("Celsten", "TestSSID1"));
+		
+		assertSame(ssids, ignoredWifis.getSSIDs());
+		assertTrue(ignoredWifis.contains("Celsten"));
+		assertTrue(ignoredWifis.contains("TestSSID1"));
+		assertFalse(ignoredWifis.contains("XXX"));
+		assertFalse(ignoredWifis.contains(null));
+		
+		try {
+			ssids.add("XXX");
+			fail("Expected UnsupportedOperationException");
+		} catch(UnsupportedOperationException e) {
+			// Expected
+		}
+	}
+	
+	public void testInvalidate() {
+		
+		IgnoredWifis ignoredWifis = new IgnoredWifis();
+		
+		ignoredWifis.set(ignoredWifis.getGeneration(), Arrays.asList("Celsten"));
+		ignoredWifis.invalidate();
+		
+		assertNull(ignoredWifis.getSSIDs());
+		assertFalse(ignoredWifis.contains("Celsten"));
+	}
+	
+	public void testSetChangedWhileLoading() {
+		
+		IgnoredWifis ignoredWifis = new IgnoredWifis();
+		
+		int generation = ignoredWifis.getGeneration();
+		
+		// The ignorelist changes and is loaded again while the first load is ongoing
+		ignoredWifis.invalidate();
+		ignoredWifis.set(ignoredWifis.getGeneration(), Arrays.asList("TestSSID2"));
+		
+		Set<String> ssids = ignoredWifis.set(generation, Arrays.asList("Celsten"));
+		
+		// The caller still gets what it loaded
+		assertTrue(ssids.contains("Celsten"));
+		
+		assertTrue(ignoredWifis.contains("TestSSID2"));
+		assertFalse(ignoredWifis.contains("Celsten"));
+	}
+
+}
@@ -18,12 +18,18 @@ package net.luniks.android.inetify.test;
 
 import net.luniks.android.inetify.ConnectivityActionReceiver;
 import net.luniks.android.inetify.DatabaseAdapter;
+import net.luniks.android.inetify.EventCoalescer;
 import net.luniks.android.inetify.InetifyIntentService;
+import net.luniks.android.inetify.Settings;
 import net.luniks.android.inetify.TestInfo;
+import net.luniks.android.inetify.VerdictCache;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences.Editor;
+import android.net.ConnectivityManager;
 import android.os.PowerManager;
 import android.os.PowerManager.WakeLock;
+import android.preference.PreferenceManager;
 import android.test.ServiceTestCase;
 
 public class InetifyIntentServiceTest extends ServiceTestCase<InetifyIntentService> {
@@ -32,6 +38,20 @@ public class InetifyIntentServiceTest extends ServiceTestCase<InetifyIntentServi
 		super(InetifyIntentService.class);
 	}
 	
+	public void setUp() throws Exception {
+		super.setUp();
+		setCacheTtl("0", "0");
+		setBudget("0", false);
+		VerdictCache.clear();
+	}
+	
+	public void tearDown() throws Exception {
+		setCacheTtl("0", "0");
+		setBudget("0", false);
+		VerdictCache.clear();
+		super.tearDown();
+	}
+	
 	public void testNullIntent() throws Exception {
 		
 		Intent serviceIntent = new Intent(this.getContext(), InetifyIntentService.class);
@@ -194,6 +214,72 @@ public class InetifyIntentServiceTest extends ServiceTestCase<InetifyIntentServi
 		assertFalse(this.getService().stopService(serviceIntent));
 	}
 	
+	public void testMonitor() throws Exception {
+		
+		Intent serviceIntent = new Intent(this.getContext(), InetifyIntentService.class);
+		serviceIntent.putExtra(ConnectivityActionReceiver.EXTRA_IS_WIFI_CONNECTED, true);
+		serviceIntent.putExtra(InetifyIntentService.EXTRA_MONITOR, true);
+		
+		this.setupService();
+		InetifyIntentService serviceToTest = getService();
+		
+		TestTester tester = new TestTester();
+		TestInfo info = new TestInfo();
+		info.setExtra("testMonitor()");
+		tester.setInfo(info);
+		TestUtils.setFieldValue(serviceToTest, "tester", tester);
+		
+		DatabaseAdapter databaseAdapter = new TestDatabaseAdapter();
+		TestUtils.setFieldValue(serviceToTest, "databaseAdapter", databaseAdapter);
+		
+		acquireWakeLock();
+		
+		this.startService(serviceIntent);
+		
+		TestUtils.waitForTestCount(tester, 1, 1000);
+		
+		// The service should test with the cheapest probe
+		assertEquals(1, tester.monitorCount());
+		
+		tester.done();
+		
+		assertEquals("testMonitor()", databaseAdapter.fetchTestResult().getExtra());
+		
+		TestUtils.waitForStaticFieldNull(InetifyIntentService.class, "wakeLock", 1000);
+		
+		assertFalse(this.getService().stopService(serviceIntent));
+	}
+	
+	public void testMonitorWifiIgnored() throws Exception {
+		
+		Intent serviceIntent = new Intent(this.getContext(), InetifyIntentService.class);
+		serviceIntent.putExtra(ConnectivityActionReceiver.EXTRA_IS_WIFI_CONNECTED, true);
+		serviceIntent.putExtra(InetifyIntentService.EXTRA_MONITOR, true);
+		
+		this.setupService();
+		InetifyIntentService serviceToTest = getService();
+		
+		TestTester tester = new TestTester();
+		TestUtils.setFieldValue(serviceToTest, "tester", tester);
+		
+		DatabaseAdapter databaseAdapter = new TestDatabaseAdapter();
+		databaseAdapter.addIgnoredWifi(tester.getWifiInfo().getBSSID(), tester.getWifiInfo().getSSID());
+		TestUtils.setFieldValue(serviceToTest, "databaseAdapter", databaseAdapter);
+		
+		acquireWakeLock();
+		
+		this.startService(serviceIntent);
+		
+		Thread.sleep(1000);
+		
+		// When Wifi is ignored, the service should stop monitoring without testing
+		assertEquals(0, tester.monitorCount());
+		
+		TestUtils.waitForStaticFieldNull(InetifyIntentService.class, "wakeLock", 1000);
+		
+		assertFalse(this.getService().stopService(serviceIntent));
+	}
+	
 	public void testTestThrowsException() throws Exception {
 		
 		Intent serviceIntent = new Intent("net.luniks.android.inetify.InetifyTestService");
@@ -319,6 +405,300 @@ public class InetifyIntentServiceTest extends ServiceTestCase<InetifyIntentServi
 		assertFalse(this.getService().stopService(serviceIntent));
 	}
 	
+	public void testMonitorWhileBusy() throws Exception {
+		
+		Intent serviceIntent = new Intent(this.getContext(), InetifyIntentService.class);
+		serviceIntent.putExtra(ConnectivityActionReceiver.EXTRA_IS_WIFI_CONNECTED, true);
+		
+		Intent monitorIntent = new Intent(this.getContext(), InetifyIntentService.class);
+		monitorIntent.putExtra(ConnectivityActionReceiver.EXTRA_IS_WIFI_CONNECTED, true);
+		monitorIntent.putExtra(InetifyIntentService.EXTRA_MONITOR, true);
+		
+		this.setupService();
+		InetifyIntentService serviceToTest = getService();
+		
+		TestTester tester = new TestTester();
+		TestUtils.setFieldValue(serviceToTest, "tester", tester);
+		
+		DatabaseAdapter databaseAdapter = new TestDatabaseAdapter();
+		TestUtils.setFieldValue(serviceToTest, "databaseAdapter", databaseAdapter);
+		
+		acquireWakeLock();
+		
+		this.startService(serviceIntent);
+		
+		TestUtils.waitForTestCount(tester, 1, 1000);
+		
+		serviceToTest.onStartCommand(monitorIntent, 0, 0);
+		
+		Thread.sleep(100);
+		
+		// The monitoring intent should not cancel the test
+		assertFalse(tester.cancelled());
+		assertEquals(0, tester.cancelCount());
+		
+		tester.done();
+		
+		TestUtils.waitForStaticFieldNull(InetifyIntentService.class, "wakeLock", 1000);
+		
+		// And should be dropped since the service was busy
+		assertEquals(1, tester.testCount());
+		assertEquals(0, tester.monitorCount());
+		
+		assertFalse(this.getService().stopService(serviceIntent));
+	}
+	
+	public void testVerdictCached() throws Exception {
+		
+		setCacheTtl("15", "1");
+		
+		Intent serviceIntent = new Intent(this.getContext(), InetifyIntentService.class);
+		serviceIntent.putExtra(ConnectivityActionReceiver.EXTRA_IS_WIFI_CONNECTED, true);
+		
+		this.setupService();
+		InetifyIntentService serviceToTest = getService();
+		
+		TestTester tester = new TestTester();
+		TestUtils.setFieldValue(serviceToTest, "tester", tester);
+		
+		DatabaseAdapter databaseAdapter = new TestDatabaseAdapter();
+		TestUtils.setFieldValue(serviceToTest, "databaseAdapter", databaseAdapter);
+		
+		TestInfo info = new TestInfo();
+		info.setTimestamp(System.currentTimeMillis());
+		info.setType(ConnectivityManager.TYPE_WIFI);
+		info.setExtra("TesterSSID");
+		info.setExtra2("TesterBSSID");
+		info.setIsExpectedTitle(true);
+		databaseAdapter.updateVerdict(info);
+		
+		acquireWakeLock();
+		
+		this.startService(serviceIntent);
+		
+		// FIXME How to wait for tester.test() to never get called?
+		Thread.sleep(1000);
+		
+		// The verdict for the BSSID is fresh, so the service should not test again
+		assertEquals(0, tester.testCount());
+		assertEquals(1, VerdictCache.getHits());
+		
+		// Nor add the cached verdict to the test results again
+		assertNull(databaseAdapter.fetchTestResult());
+		
+		TestUtils.waitForStaticFieldNull(InetifyIntentService.class, "wakeLock", 1000);
+		
+		assertFalse(this.getService().stopService(serviceIntent));
+	}
+	
+	public void testVerdictCachedWifiNotConnected() throws Exception {
+		
+		setCacheTtl("15", "1");
+		
+		Intent serviceIntent = new Intent(this.getContext(), InetifyIntentService.class);
+		serviceIntent.putExtra(ConnectivityActionReceiver.EXTRA_IS_WIFI_CONNECTED, false);
+		
+		this.setupService();
+		InetifyIntentService serviceToTest = getService();
+		
+		TestTester tester = new TestTester();
+		tester.setWifiConnected(false);
+		TestUtils.setFieldValue(serviceToTest, "tester", tester);
+		
+		DatabaseAdapter databaseAdapter = new TestDatabaseAdapter();
+		TestUtils.setFieldValue(serviceToTest, "databaseAdapter", databaseAdapter);
+		
+		TestInfo info = new TestInfo();
+		info.setTimestamp(System.currentTimeMillis());
+		info.setType(ConnectivityManager.TYPE_WIFI);
+		info.setExtra("TesterSSID");
+		info.setExtra2("TesterBSSID");
+		info.setIsExpectedTitle(true);
+		databaseAdapter.updateVerdict(info);
+		
+		acquireWakeLock();
+		
+		this.startService(serviceIntent);
+		
+		TestUtils.waitForTestCount(tester, 1, 1000);
+		
+		// Wifi is not connected, so the service should not use the cached verdict
+		assertEquals(0, VerdictCache.getHits());
+		assertEquals(0, VerdictCache.getMisses());
+		
+		tester.done();
+		
+		TestUtils.waitForStaticFieldNull(InetifyIntentService.class, "wakeLock", 1000);
+		
+		assertFalse(this.getService().stopService(serviceIntent));
+	}
+	
+	public void testCoalesceEvents() throws Exception {
+		
+		EventCoalescer coalescer = EventCoalescer.getInstance();
+		coalescer.reset();
+		coalescer.setWindow(500);
+		
+		Intent serviceIntent1 = new Intent(this.getContext(), InetifyIntentService.class);
+		serviceIntent1.putExtra(ConnectivityActionReceiver.EXTRA_IS_WIFI_CONNECTED, false);
+		serviceIntent1.putExtra(ConnectivityActionReceiver.EXTRA_SEQUENCE, coalescer.received(false, null, System.currentTimeMillis()));
+		
+		Intent serviceIntent2 = new Intent(this.getContext(), InetifyIntentService.class);
+		serviceIntent2.putExtra(ConnectivityActionReceiver.EXTRA_IS_WIFI_CONNECTED, true);
+		serviceIntent2.putExtra(ConnectivityActionReceiver.EXTRA_SEQUENCE, coalescer.received(true, "TesterBSSID", System.currentTimeMillis()));
+		
+		this.setupService();
+		InetifyIntentService serviceToTest = getService();
+		
+		TestTester tester = new TestTester();
+		TestUtils.setFieldValue(serviceToTest, "tester", tester);
+		
+		DatabaseAdapter databaseAdapter = new TestDatabaseAdapter();
+		TestUtils.setFieldValue(serviceToTest, "databaseAdapter", databaseAdapter);
+		
+		acquireWakeLock();
+		
+		try {
+			this.startService(serviceIntent1);
+			serviceToTest.onStartCommand(serviceIntent2, 0, 0);
+			
+			TestUtils.waitForTestCount(tester, 1, 2000);
+			
+			// Only the second event should have been tested
+			Thread.sleep(500);
+			assertEquals(1, tester.testCount());
+			assertEquals(2, coalescer.getReceivedCount());
+			assertEquals(1, coalescer.getCoalescedCount());
+			assertEquals(1, coalescer.getTestedCount());
+			
+			tester.done();
+			
+			TestUtils.waitForStaticFieldNull(InetifyIntentService.class, "wakeLock", 1000);
+		} finally {
+			coalescer.setWindow(EventCoalescer.DEFAULT_WINDOW);
+			coalescer.reset();
+		}
+		
+		assertFalse(this.getService().stopService(serviceIntent2));
+	}
+	
+	public void testSingleEventNotDelayed() throws Exception {
+		
+		EventCoalescer coalescer = EventCoalescer.getInstance();
+		coalescer.reset();
+		coalescer.setWindow(5000);
+		
+		Intent serviceIntent = new Intent(this.getContext(), InetifyIntentService.class);
+		serviceIntent.putExtra(ConnectivityActionReceiver.EXTRA_IS_WIFI_CONNECTED, true);
+		serviceIntent.putExtra(ConnectivityActionReceiver.EXTRA_SEQUENCE, coalescer.received(true, "TesterBSSID", System.currentTimeMillis()));
+		
+		this.setupService();
+		InetifyIntentService serviceToTest = getService();
+		
+		TestTester tester = new TestTester();
+		TestUtils.setFieldValue(serviceToTest, "tester", tester);
+		
+		DatabaseAdapter databaseAdapter = new TestDatabaseAdapter();
+		TestUtils.setFieldValue(serviceToTest, "databaseAdapter", databaseAdapter);
+		
+		acquireWakeLock();
+		
+		try {
+			this.startService(serviceIntent);
+			
+			// Tested well before the window is over
+			TestUtils.waitForTestCount(tester, 1, 2000);
+			assertEquals(1, coalescer.getTestedCount());
+			
+			tester.done();
+			
+			TestUtils.waitForStaticFieldNull(InetifyIntentService.class, "wakeLock", 1000);
+		} finally {
+			coalescer.setWindow(EventCoalescer.DEFAULT_WINDOW);
+			coalescer.reset();
+		}
+		
+		assertFalse(this.getService().stopService(serviceIntent));
+	}
+	
+	public void testBudgetReachedPaused() throws Exception {
+		
+		setBudget("1", true);
+		
+		Intent serviceIntent = new Intent(this.getContext(), InetifyIntentService.class);
+		serviceIntent.putExtra(ConnectivityActionReceiver.EXTRA_IS_WIFI_CONNECTED, true);
+		
+		this.setupService();
+		InetifyIntentService serviceToTest = getService();
+		
+		TestTester tester = new TestTester();
+		TestUtils.setFieldValue(serviceToTest, "tester", tester);
+		
+		DatabaseAdapter databaseAdapter = new TestDatabaseAdapter();
+		databaseAdapter.addTraffic(System.currentTimeMillis(), 1024 * 1024);
+		TestUtils.setFieldValue(serviceToTest, "databaseAdapter", databaseAdapter);
+		
+		acquireWakeLock();
+		
+		this.startService(serviceIntent);
+		
+		Thread.sleep(1000);
+		
+		// Testing in the background is paused until the next month
+		assertEquals(0, tester.testCount());
+		
+		TestUtils.waitForStaticFieldNull(InetifyIntentService.class, "wakeLock", 1000);
+		
+		assertFalse(this.getService().stopService(serviceIntent));
+	}
+	
+	public void testBudgetReachedNotPaused() throws Exception {
+		
+		setBudget("1", false);
+		
+		Intent serviceIntent = new Intent(this.getContext(), InetifyIntentService.class);
+		serviceIntent.putExtra(ConnectivityActionReceiver.EXTRA_IS_WIFI_CONNECTED, true);
+		
+		this.setupService();
+		InetifyIntentService serviceToTest = getService();
+		
+		TestTester tester = new TestTester();
+		TestUtils.setFieldValue(serviceToTest, "tester", tester);
+		
+		DatabaseAdapter databaseAdapter = new TestDatabaseAdapter();
+		databaseAdapter.addTraffic(System.currentTimeMillis(), 1024 * 1024);
+		TestUtils.setFieldValue(serviceToTest, "databaseAdapter", databaseAdapter);
+		
+		acquireWakeLock();
+		
+		this.startService(serviceIntent);
+		
+		// The tester switches to the quick check itself
+		TestUtils.waitForTestCount(tester, 1, 1000);
+		
+		assertEquals(1, tester.testCount());
+		
+		tester.done();
+		
+		TestUtils.waitForStaticFieldNull(InetifyIntentService.class, "wakeLock", 1000);
+		
+		assertFalse(this.getService().stopService(serviceIntent));
+	}
+	
+	private void setCacheTtl(final String ttl, final String nokTtl) {
+		Editor editor = PreferenceManager.getDefaultSharedPreferences(this.getContext()).edit();
+		editor.putString(Settings.INTERNET_CACHE_TTL, ttl);
+		editor.putString(Settings.INTERNET_CACHE_NOK_TTL, nokTtl);
+		editor.commit();
+	}
+	
+	private void setBudget(final String budget, final boolean pause) {
+		Editor editor = PreferenceManager.getDefaultSharedPreferences(this.getContext()).edit();
+		editor.putString(Settings.INTERNET_BUDGET, budget);
+		editor.putBoolean(Settings.INTERNET_BUDGET_PAUSE, pause);
+		editor.commit();
+	}
+	
 	private void acquireWakeLock() throws Exception {
 		PowerManager powerManager = (PowerManager)this.getContext().getSystemService(Context.POWER_SERVICE);
 		WakeLock wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, 
@@ -17,14 +17,21 @@ package net.luniks.android.inetify.test;
 
 import net.luniks.android.inetify.DatabaseAdapter;
 import net.luniks.android.inetify.DatabaseAdapterImpl;
+import net.luniks.android.inetify.EventCoalescer;
 import net.luniks.android.inetify.InfoDetail;
+import net.luniks.android.inetify.ProbeCoordinator;
+import net.luniks.android.inetify.ProbeException;
+import net.luniks.android.inetify.ProbeSocketFactory;
 import net.luniks.android.inetify.R;
 import net.luniks.android.inetify.TestInfo;
+import net.luniks.android.inetify.TlsSessionCache;
 import net.luniks.android.inetify.Utils;
+import net.luniks.android.inetify.VerdictCache;
 import android.content.Intent;
 import android.graphics.drawable.Drawable;
 import android.net.ConnectivityManager;
 import android.test.ActivityInstrumentationTestCase2;
+import android.text.format.Formatter;
 import android.widget.ListView;
 import android.widget.TextView;
 import android.widget.TwoLineListItem;
@@ -86,7 +93,7 @@ public class InfoDetailTest extends ActivityInstrumentationTestCase2<InfoDetail>
 		
 		ListView listView = (ListView)activity.findViewById(R.id.listview_infodetail);
 		
-		TestUtils.waitForItemCount(listView, 6, 10000);
+		TestUtils.waitForItemCount(listView, 9, 10000);
 		
 		assertListItems(activity, listView, info, false);
 		
@@ -118,7 +125,7 @@ public class InfoDetailTest extends ActivityInstrumentationTestCase2<InfoDetail>
 		
 		ListView listView = (ListView)activity.findViewById(R.id.listview_infodetail);
 		
-		TestUtils.waitForItemCount(listView, 5, 10000);
+		TestUtils.waitForItemCount(listView, 8, 10000);
 		
 		assertListItems(activity, listView, info, false);
 		
@@ -150,7 +157,7 @@ public class InfoDetailTest extends ActivityInstrumentationTestCase2<InfoDetail>
 		
 		ListView listView = (ListView)activity.findViewById(R.id.listview_infodetail);
 		
-		TestUtils.waitForItemCount(listView, 5, 10000);
+		TestUtils.waitForItemCount(listView, 8, 10000);
 		
 		assertListItems(activity, listView, info, false);
 		
@@ -166,7 +173,7 @@ public class InfoDetailTest extends ActivityInstrumentationTestCase2<InfoDetail>
 		
 		ListView listView = (ListView)activity.findViewById(R.id.listview_infodetail);
 		
-		TestUtils.waitForItemCount(listView, 6, 10000);
+		TestUtils.waitForItemCount(listView, 9, 10000);
 		
 		assertListItems(activity, listView, info, false);
 		
@@ -186,7 +193,7 @@ public class InfoDetailTest extends ActivityInstrumentationTestCase2<InfoDetail>
 		
 		ListView listView = (ListView)activity.findViewById(R.id.listview_infodetail);
 		
-		TestUtils.waitForItemCount(listView, 5, 10000);
+		TestUtils.waitForItemCount(listView, 8, 10000);
 		
 		assertListItems(activity, listView, info, false);
 		
@@ -208,7 +215,7 @@ public class InfoDetailTest extends ActivityInstrumentationTestCase2<InfoDetail>
 		
 		ListView listView = (ListView)activity.findViewById(R.id.listview_infodetail);
 		
-		TestUtils.waitForItemCount(listView, 6, 10000);
+		TestUtils.waitForItemCount(listView, 9, 10000);
 		
 		assertListItems(activity, listView, info, true);
 		
@@ -226,7 +233,7 @@ public class InfoDetailTest extends ActivityInstrumentationTestCase2<InfoDetail>
 		
 		ListView listView = (ListView)activity.findViewById(R.id.listview_infodetail);
 		
-		TestUtils.waitForItemCount(listView, 5, 10000);
+		TestUtils.waitForItemCount(listView, 8, 10000);
 		
 		assertListItems(activity, listView, info, false);
 		
@@ -255,7 +262,7 @@ public class InfoDetailTest extends ActivityInstrumentationTestCase2<InfoDetail>
 		
 		ListView listView = (ListView)activity.findViewById(R.id.listview_infodetail);
 		
-		TestUtils.waitForItemCount(listView, 6, 10000);
+		TestUtils.waitForItemCount(listView, 9, 10000);
 		
 		assertListItems(activity, listView, info, false);
 		
@@ -301,11 +308,11 @@ public class InfoDetailTest extends ActivityInstrumentationTestCase2<InfoDetail>
 		
 		assertListItems(activity, listView, info, false);
 		
-		final TwoLineListItem listItemIgnore = (TwoLineListItem)TestUtils.selectAndFindListViewChildAt(activity, listView, 5, 3000);
+		final TwoLineListItem listItemIgnore = (TwoLineListItem)TestUtils.selectAndFindListViewChildAt(activity, listView, 9, 3000);
 		
 		Runnable click = new Runnable() {
 			public void run() {
-				listView.performItemClick(listItemIgnore, 5, 5);
+				listView.performItemClick(listItemIgnore, 9, 9);
 			}
 		};
 		activity.runOnUiThread(click);
@@ -342,6 +349,20 @@ public class InfoDetailTest extends ActivityInstrumentationTestCase2<InfoDetail>
 		info.setTitle("TestTitle");
 		info.setPageTitle("TestPageTitle");
 		info.setTimestamp(1234567890L);
+		info.setDnsMillis(11);
+		info.setConnectMillis(22);
+		info.setFirstByteMillis(44);
+		info.setDownloadMillis(55);
+		info.setSentBytes(321);
+		info.setReceivedBytes(4321);
+		info.setProbedSites(new String[] {"TestSite", "TestSite2"});
+		info.setProbeLatencies(new long[] {66, -1});
+		info.setFailedStage(ProbeException.STAGE_NONE);
+		info.setAttempts(1);
+		info.setDuration(77);
+		info.setHandshakes(1);
+		info.setReusedConnections(2);
+		info.setResumedSessions(1);
 		
 		return info;
 	}
@@ -391,16 +412,61 @@ public class InfoDetailTest extends ActivityInstrumentationTestCase2<InfoDetail>
 			assertEquals(activity.getString(R.string.infodetail_value_noconnection), listItem4.getText2().getText());
 		}
 		
+		TwoLineListItem listItem5 = (TwoLineListItem)TestUtils.selectAndFindListViewChildAt(activity, listView, 5, 5000);
+		assertFalse(listItem5.isEnabled());
+		assertFalse(listItem5.getText1().isEnabled());
+		assertTrue(listItem5.getText2().isEnabled());
+		assertEquals(activity.getString(R.string.infodetail_prop_timing), listItem5.getText1().getText());
+		String timing = activity.getString(R.string.infodetail_value_timing, info.getDnsMillis(), info.getConnectMillis(), 
+				info.getTlsMillis(), info.getFirstByteMillis(), info.getDownloadMillis());
+		ProbeCoordinator probeCoordinator = ProbeCoordinator.getInstance();
+		timing = activity.getString(R.string.infodetail_value_timing_probes, timing, probeCoordinator.getProbes(), 
+				probeCoordinator.getJoined(), probeCoordinator.getCached());
+		timing = activity.getString(R.string.infodetail_value_timing_verdicts, timing, 
+				VerdictCache.getHits(), VerdictCache.getHits() + VerdictCache.getMisses());
+		EventCoalescer coalescer = EventCoalescer.getInstance();
+		timing = activity.getString(R.string.infodetail_value_timing_events, timing, 
+				coalescer.getReceivedCount(), coalescer.getCoalescedCount(), coalescer.getTestedCount());
+		assertEquals(timing, listItem5.getText2().getText());
+		
+		TwoLineListItem listItem6 = (TwoLineListItem)TestUtils.selectAndFindListViewChildAt(activity, listView, 6, 5000);
+		assertFalse(listItem6.isEnabled());
+		assertFalse(listItem6.getText1().isEnabled());
+		assertTrue(listItem6.getText2().isEnabled());
+		assertEquals(activity.getString(R.string.infodetail_prop_duration), listItem6.getText1().getText());
+		String duration = activity.getString(R.string.infodetail_value_duration, info.getDuration(), info.getAttempts());
+		duration = activity.getString(R.string.infodetail_value_duration_site, duration, "TestSite", 66);
+		duration = activity.getString(R.string.infodetail_value_duration_site_cancelled, duration, "TestSite2");
+		assertEquals(duration, listItem6.getText2().getText());
+		
+		TwoLineListItem listItem7 = (TwoLineListItem)TestUtils.selectAndFindListViewChildAt(activity, listView, 7, 5000);
+		assertFalse(listItem7.isEnabled());
+		assertFalse(listItem7.getText1().isEnabled());
+		assertTrue(listItem7.getText2().isEnabled());
+		assertEquals(activity.getString(R.string.infodetail_prop_connections), listItem7.getText1().getText());
+		TlsSessionCache sessionCache = ProbeSocketFactory.getInstance().getSessionCache();
+		assertEquals(activity.getString(R.string.infodetail_value_connections, 
+				info.getHandshakes(), info.getReusedConnections(), info.getResumedSessions(), 
+				sessionCache.getHits(), sessionCache.getMisses(), sessionCache.getHitRate()), listItem7.getText2().getText());
+		
+		TwoLineListItem listItem8 = (TwoLineListItem)TestUtils.selectAndFindListViewChildAt(activity, listView, 8, 5000);
+		assertFalse(listItem8.isEnabled());
+		assertFalse(listItem8.getText1().isEnabled());
+		assertTrue(listItem8.getText2().isEnabled());
+		assertEquals(activity.getString(R.string.infodetail_prop_traffic), listItem8.getText1().getText());
+		assertTrue(listItem8.getText2().getText().toString().contains(
+				Formatter.formatFileSize(activity, info.getSentBytes() + info.getReceivedBytes())));
+		
 		if(info.getType() == ConnectivityManager.TYPE_WIFI && info.getExtra() != null && info.getExtra2() != null) {
-			TwoLineListItem listItem5 = (TwoLineListItem)TestUtils.selectAndFindListViewChildAt(activity, listView, 5, 5000);
-			assertTrue(listItem5.isEnabled());
-			assertTrue(listItem5.getText1().isEnabled());
-			assertTrue(listItem5.getText2().isEnabled());
-			assertEquals(activity.getString(R.string.infodetail_prop_ignore), listItem5.getText1().getText());
+			TwoLineListItem listItem9 = (TwoLineListItem)TestUtils.selectAndFindListViewChildAt(activity, listView, 9, 5000);
+			assertTrue(listItem9.isEnabled());
+			assertTrue(listItem9.getText1().isEnabled());
+			assertTrue(listItem9.getText2().isEnabled());
+			assertEquals(activity.getString(R.string.infodetail_prop_ignore), listItem9.getText1().getText());
 			if(ignored) {
-				assertEquals(activity.getString(R.string.infodetail_value_ignored, info.getExtra()), listItem5.getText2().getText());
+				assertEquals(activity.getString(R.string.infodetail_value_ignored, info.getExtra()), listItem9.getText2().getText());
 			} else {
-				assertEquals(activity.getString(R.string.infodetail_value_ignore, info.getExtra()), listItem5.getText2().getText());
+				assertEquals(activity.getString(R.string.infodetail_value_ignore, info.getExtra()), listItem9.getText2().getText());
 			}
 		}
 	}
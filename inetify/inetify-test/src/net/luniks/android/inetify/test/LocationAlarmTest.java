@@ -19,6 +19,7 @@ import net.luniks.android.inetify.LocationAlarm;
 import net.luniks.android.inetify.LocationAlarmReceiver;
 import net.luniks.android.inetify.Settings;
 import net.luniks.android.test.mock.AlarmManagerMock;
+import net.luniks.android.test.mock.VirtualClock;
 import android.app.AlarmManager;
 import android.app.PendingIntent;
 import android.content.Intent;
@@ -59,6 +60,26 @@ public class LocationAlarmTest extends AndroidTestCase {
 		assertAlarmSet(alarmManager, AlarmManager.INTERVAL_FIFTEEN_MINUTES);
 	}
 	
+	// Auto Wifi enabled, notification disabled, airplane mode off
+	public void testTriggerOnClock() throws Exception {
+		
+		VirtualClock clock = new VirtualClock(1000000000000L);
+		clock.advance(60 * 60 * 1000);
+		LocationAlarm alarm = new LocationAlarm(this.getContext(), clock);
+		
+		AlarmManagerMock alarmManager = new AlarmManagerMock();
+		TestUtils.setFieldValue(alarm, "alarmManager", alarmManager);
+		
+		setSettings(true, false, "15");
+		
+		// How to set airplane mode?
+		assertFalse("Test assumes that airplane mode is off", isAirplaneModeOn());
+		
+		alarm.reset();
+		
+		assertEquals(60 * 60 * 1000 + LocationAlarm.TRIGGER_DELAY, alarmManager.getTriggerAtTime());
+	}
+	
 	// Auto Wifi enabled, notification disabled, airplane mode off
 	public void testAutoWifi() throws Exception {
 		
@@ -23,6 +23,7 @@ import net.luniks.android.interfaces.IConnectivityManager;
 import net.luniks.android.interfaces.ILocationManager;
 import net.luniks.android.test.mock.ConnectivityManagerMock;
 import net.luniks.android.test.mock.NetworkInfoMock;
+import net.luniks.android.test.mock.VirtualClock;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
@@ -418,6 +419,50 @@ public class LocationIntentServiceTest extends ServiceTestCase<LocationIntentSer
 		assertFalse(this.getService().stopService(serviceIntent));
 	}
 	
+	public void testNoLocationUseGPSVirtualClock() throws Exception {
+		
+		sharedPreferences.edit().putBoolean(Settings.LOCATION_USE_GPS, true).commit();
+		
+		Intent serviceIntent = new Intent(this.getContext(), LocationIntentService.class);
+		
+		this.setupService();
+		LocationIntentService serviceToTest = getService();
+		
+		TestLocationManager locationManager = new TestLocationManager();
+		locationManager.setAllProvidersEnabled(true);
+		
+		IConnectivityManager connectivityManager = getConnectivityManager(false);
+		
+		TestDatabaseAdapter databaseAdapter = new TestDatabaseAdapter();
+		databaseAdapter.addLocation("TestBSSID", "TestSSID", "TestName", new Location(Locater.PROVIDER_DATABASE));
+		
+		final TestLocater locater = new TestLocater();
+		VirtualClock clock = new VirtualClock(0);
+		
+		setDependencies(serviceToTest, locationManager, connectivityManager, databaseAdapter, locater);
+		TestUtils.setFieldValue(serviceToTest, "clock", clock);
+		TestUtils.setStaticFieldValue(LocationIntentService.class, "GET_LOCATION_TIMEOUT", 60 * 1000L);
+		TestUtils.setStaticFieldValue(LocationIntentService.class, "GET_LOCATION_TIMEOUT_GPS", 30 * 1000L);
+		
+		acquireWakeLock();
+		
+		long start = System.currentTimeMillis();
+		
+		new ServiceStarter(serviceIntent).start();
+		
+		// The real timeouts elapse in virtual time only
+		TestUtils.waitForStaticFieldNull(LocationIntentService.class, "wakeLock", 1000);
+		
+		assertTrue(System.currentTimeMillis() - start < 1000);
+		assertEquals(60 * 1000 + 30 * 1000, clock.elapsedRealtime());
+		assertEquals(2, clock.getAwaitCount());
+		
+		assertFalse(locater.isRunning());
+		assertEquals(2, locater.getCallsToStart().size());
+		
+		assertFalse(this.getService().stopService(serviceIntent));
+	}
+	
 	private void acquireWakeLock() throws Exception {
 		PowerManager powerManager = (PowerManager)this.getContext().getSystemService(Context.POWER_SERVICE);
 		WakeLock wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, 
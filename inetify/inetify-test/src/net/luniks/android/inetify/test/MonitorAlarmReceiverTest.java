@@ -0,0 +1,77 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.test;
+
+import net.luniks.android.inetify.InetifyIntentService;
+import net.luniks.android.inetify.MonitorAlarmReceiver;
+import android.content.Intent;
+import android.os.PowerManager.WakeLock;
+import android.test.AndroidTestCase;
+
+public class MonitorAlarmReceiverTest extends AndroidTestCase {
+	
+	public void testNullIntent() throws Exception {
+		
+		MonitorAlarmReceiver receiver = new MonitorAlarmReceiver();
+		
+		TestContext testContext = new TestContext(this.getContext());
+		
+		receiver.onReceive(testContext, null);
+		
+		assertEquals(0, testContext.getStartServiceCount());
+		
+		WakeLock wakeLock = (WakeLock)TestUtils.getStaticFieldValue(InetifyIntentService.class, "wakeLock");
+		
+		assertNull(wakeLock);
+	}
+	
+	public void testOtherAction() throws Exception {
+		
+		MonitorAlarmReceiver receiver = new MonitorAlarmReceiver();
+		
+		TestContext testContext = new TestContext(this.getContext());
+		
+		receiver.onReceive(testContext, new Intent("OTHER_ACTION"));
+		
+		assertEquals(0, testContext.getStartServiceCount());
+		
+		WakeLock wakeLock = (WakeLock)TestUtils.getStaticFieldValue(InetifyIntentService.class, "wakeLock");
+		
+		assertNull(wakeLock);
+	}
+	
+	public void testMonitorAlarm() throws Exception {
+		
+		MonitorAlarmReceiver receiver = new MonitorAlarmReceiver();
+		
+		TestContext testContext = new TestContext(this.getContext());
+		
+		Intent intent = new Intent(testContext, MonitorAlarmReceiver.class);
+		intent.setAction(MonitorAlarmReceiver.ACTION_MONITOR_ALARM);
+		receiver.onReceive(testContext, intent);
+		
+		assertEquals(1, testContext.getStartServiceCount());
+		
+		WakeLock wakeLock = (WakeLock)TestUtils.getStaticFieldValue(InetifyIntentService.class, "wakeLock");
+		
+		assertNotNull(wakeLock);
+		assertTrue(wakeLock.isHeld());
+		
+		wakeLock.release();
+		TestUtils.setStaticFieldValue(InetifyIntentService.class, "wakeLock", null);
+	}
+
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.test;
+
+import net.luniks.android.inetify.MonitorAlarm;
+import net.luniks.android.inetify.MonitorAlarmReceiver;
+import net.luniks.android.inetify.Settings;
+import net.luniks.android.test.mock.AlarmManagerMock;
+import net.luniks.android.test.mock.VirtualClock;
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+public class MonitorAlarmTest extends AndroidTestCase {
+	
+	private SharedPreferences sharedPreferences;
+	private PendingIntent operation;
+	
+	public void setUp() throws Exception {
+		super.setUp();
+		sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this.getContext());
+		sharedPreferences.edit().remove(MonitorAlarm.MONITOR_INTERVAL).remove(MonitorAlarm.MONITOR_LAST_OK).commit();
+		
+		Intent intent = new Intent(this.getContext(), MonitorAlarmReceiver.class);
+		intent.setAction(MonitorAlarmReceiver.ACTION_MONITOR_ALARM);
+		this.operation = PendingIntent.getBroadcast(this.getContext(), 0, intent, 0);
+	}
+	
+	public void tearDown() throws Exception {
+		setSettings(false, false);
+		sharedPreferences.edit().remove(MonitorAlarm.MONITOR_INTERVAL).remove(MonitorAlarm.MONITOR_LAST_OK).commit();
+		super.tearDown();
+	}
+	
+	public void testGetNextInterval() {
+		
+		assertEquals(MonitorAlarm.MIN_INTERVAL, MonitorAlarm.getNextInterval(MonitorAlarm.MAX_INTERVAL, false));
+		assertEquals(MonitorAlarm.MIN_INTERVAL * 2, MonitorAlarm.getNextInterval(MonitorAlarm.MIN_INTERVAL, true));
+		assertEquals(MonitorAlarm.MIN_INTERVAL * 2, MonitorAlarm.getNextInterval(0, true));
+		assertEquals(MonitorAlarm.MAX_INTERVAL, MonitorAlarm.getNextInterval(MonitorAlarm.MAX_INTERVAL - 1, true));
+		assertEquals(MonitorAlarm.MAX_INTERVAL, MonitorAlarm.getNextInterval(MonitorAlarm.MAX_INTERVAL, true));
+	}
+	
+	public void testTestedBacksOffWhileOK() throws Exception {
+		
+		MonitorAlarm alarm = new MonitorAlarm(this.getContext());
+		
+		AlarmManagerMock alarmManager = new AlarmManagerMock();
+		TestUtils.setFieldValue(alarm, "alarmManager", alarmManager);
+		
+		setSettings(true, true);
+		
+		assertTrue(alarm.tested(true));
+		assertAlarmSet(alarmManager, MonitorAlarm.MIN_INTERVAL);
+		
+		assertFalse(alarm.tested(true));
+		assertAlarmSet(alarmManager, MonitorAlarm.MIN_INTERVAL * 2);
+		
+		assertFalse(alarm.tested(true));
+		assertAlarmSet(alarmManager, MonitorAlarm.MIN_INTERVAL * 4);
+	}
+	
+	public void testTestedBacksOffOnClock() throws Exception {
+		
+		VirtualClock clock = new VirtualClock(1000000000000L);
+		MonitorAlarm alarm = new MonitorAlarm(this.getContext(), clock);
+		
+		AlarmManagerMock alarmManager = new AlarmManagerMock();
+		TestUtils.setFieldValue(alarm, "alarmManager", alarmManager);
+		
+		setSettings(true, true);
+		
+		long interval = MonitorAlarm.MIN_INTERVAL;
+		alarm.tested(true);
+		while(interval < MonitorAlarm.MAX_INTERVAL) {
+			assertEquals(clock.elapsedRealtime() + interval, alarmManager.getTriggerAtTime());
+			
+			// The alarm goes off
+			clock.advance(interval);
+			alarm.tested(true);
+			interval = Math.min(interval * 2, MonitorAlarm.MAX_INTERVAL);
+		}
+		assertEquals(clock.elapsedRealtime() + MonitorAlarm.MAX_INTERVAL, alarmManager.getTriggerAtTime());
+	}
+	
+	public void testTestedTightensAfterFailure() throws Exception {
+		
+		MonitorAlarm alarm = new MonitorAlarm(this.getContext());
+		
+		AlarmManagerMock alarmManager = new AlarmManagerMock();
+		TestUtils.setFieldValue(alarm, "alarmManager", alarmManager);
+		
+		setSettings(true, true);
+		
+		alarm.tested(true);
+		alarm.tested(true);
+		alarm.tested(true);
+		
+		assertTrue(alarm.tested(false));
+		assertAlarmSet(alarmManager, MonitorAlarm.MIN_INTERVAL);
+		
+		// Still not OK
+		assertFalse(alarm.tested(false));
+		assertAlarmSet(alarmManager, MonitorAlarm.MIN_INTERVAL);
+		
+		assertTrue(alarm.tested(true));
+		assertAlarmSet(alarmManager, MonitorAlarm.MIN_INTERVAL);
+	}
+	
+	public void testDisabled() throws Exception {
+		
+		MonitorAlarm alarm = new MonitorAlarm(this.getContext());
+		
+		AlarmManagerMock alarmManager = new AlarmManagerMock();
+		TestUtils.setFieldValue(alarm, "alarmManager", alarmManager);
+		
+		setSettings(true, false);
+		
+		alarm.tested(true);
+		
+		assertAlarmCancelled(alarmManager);
+		assertFalse(sharedPreferences.contains(MonitorAlarm.MONITOR_LAST_OK));
+	}
+	
+	public void testTestingDisabled() throws Exception {
+		
+		MonitorAlarm alarm = new MonitorAlarm(this.getContext());
+		
+		AlarmManagerMock alarmManager = new AlarmManagerMock();
+		TestUtils.setFieldValue(alarm, "alarmManager", alarmManager);
+		
+		setSettings(false, true);
+		
+		alarm.reset();
+		
+		assertAlarmCancelled(alarmManager);
+	}
+	
+	public void testStop() throws Exception {
+		
+		MonitorAlarm alarm = new MonitorAlarm(this.getContext());
+		
+		AlarmManagerMock alarmManager = new AlarmManagerMock();
+		TestUtils.setFieldValue(alarm, "alarmManager", alarmManager);
+		
+		setSettings(true, true);
+		
+		alarm.tested(true);
+		alarm.tested(true);
+		alarm.stop();
+		
+		assertAlarmCancelled(alarmManager);
+		assertFalse(sharedPreferences.contains(MonitorAlarm.MONITOR_INTERVAL));
+		assertFalse(sharedPreferences.contains(MonitorAlarm.MONITOR_LAST_OK));
+		
+		// Starts over
+		assertTrue(alarm.tested(true));
+		assertAlarmSet(alarmManager, MonitorAlarm.MIN_INTERVAL);
+	}
+	
+	private void setSettings(final boolean enabled, final boolean monitor) {
+		sharedPreferences.edit().putBoolean(Settings.INTERNET_CHECK, enabled).commit();
+		sharedPreferences.edit().putBoolean(Settings.INTERNET_MONITOR, monitor).commit();
+	}
+	
+	private void assertAlarmSet(final AlarmManagerMock alarmManager, final long interval) {
+		// Does not wake up the device
+		assertEquals(AlarmManager.ELAPSED_REALTIME, alarmManager.getType());
+		assertTrue(SystemClock.elapsedRealtime() + interval >= alarmManager.getTriggerAtTime());
+		assertTrue(SystemClock.elapsedRealtime() + interval - 1000 < alarmManager.getTriggerAtTime());
+		assertEquals(operation, alarmManager.getOperation());
+	}
+	
+	private void assertAlarmCancelled(final AlarmManagerMock alarmManager) {
+		assertTrue(alarmManager.isCancelled());
+		assertEquals(operation, alarmManager.getCancelledOperation());
+	}
+
+}
@@ -226,4 +226,61 @@ public class NotifierImplInetifyTest extends AndroidTestCase {
 		
 	}
 
+	public void testInfoVerdictPortal() {
+		
+		NotificationManagerMock notificationManager = new NotificationManagerMock();
+		
+		NotifierImpl notifier = new NotifierImpl(getContext(), notificationManager);
+		
+		TestInfo info = new TestInfo();
+		info.setIsExpectedTitle(false);
+		info.setVerdict(TestInfo.VERDICT_PORTAL);
+		
+		notifier.inetify(info);
+		
+		Notification notification = notificationManager.getNotifications().get(NotifierImpl.INETIFY_NOTIFICATION_ID);
+		
+		assertEquals(R.drawable.notification_nok, notification.icon);
+		assertEquals(getContext().getString(R.string.notification_portal_title), notification.tickerText.toString());
+		
+	}
+	
+	public void testInfoVerdictBlocked() {
+		
+		NotificationManagerMock notificationManager = new NotificationManagerMock();
+		
+		NotifierImpl notifier = new NotifierImpl(getContext(), notificationManager);
+		
+		TestInfo info = new TestInfo();
+		info.setIsExpectedTitle(false);
+		info.setVerdict(TestInfo.VERDICT_BLOCKED);
+		
+		notifier.inetify(info);
+		
+		Notification notification = notificationManager.getNotifications().get(NotifierImpl.INETIFY_NOTIFICATION_ID);
+		
+		assertEquals(R.drawable.notification_nok, notification.icon);
+		assertEquals(getContext().getString(R.string.notification_blocked_title), notification.tickerText.toString());
+		
+	}
+	
+	public void testInfoVerdictIntercepted() {
+		
+		NotificationManagerMock notificationManager = new NotificationManagerMock();
+		
+		NotifierImpl notifier = new NotifierImpl(getContext(), notificationManager);
+		
+		TestInfo info = new TestInfo();
+		info.setIsExpectedTitle(false);
+		info.setVerdict(TestInfo.VERDICT_INTERCEPTED);
+		
+		notifier.inetify(info);
+		
+		Notification notification = notificationManager.getNotifications().get(NotifierImpl.INETIFY_NOTIFICATION_ID);
+		
+		assertEquals(R.drawable.notification_nok, notification.icon);
+		assertEquals(getContext().getString(R.string.notification_intercepted_title), notification.tickerText.toString());
+		
+	}
+
 }
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.test;
+
+import net.luniks.android.inetify.PortalClassifier;
+import android.test.AndroidTestCase;
+
+public class PortalClassifierTest extends AndroidTestCase {
+	
+	public void testClassifyDefault() {
+		
+		PortalClassifier classifier = PortalClassifier.getInstance();
+		
+		assertNull(classifier.classify(null));
+		assertNull(classifier.classify(""));
+		assertNull(classifier.classify("Google"));
+		assertNull(classifier.classify("http://www.google.de/"));
+		
+		assertEquals("login", classifier.classify("Hotel WLAN - LOGIN"));
+		assertEquals("hotspot", classifier.classify("Telekom HotSpot"));
+		assertEquals("network-auth.com", classifier.classify("https://n123.network-auth.com/splash/?mac=00"));
+		assertEquals("1.1.1.1/login", classifier.classify("http://1.1.1.1/login.html"));
+	}
+	
+	public void testClassifyBody() {
+		
+		PortalClassifier classifier = PortalClassifier.getBodyInstance();
+		
+		assertNull(classifier.classify("<body>Log in to accept the terms of use</body>"));
+		assertEquals("<wispaccessgatewayparam", classifier.classify("<!--<WISPAccessGatewayParam xmlns=\"\">"));
+		assertEquals("network-auth.com", classifier.classify("<a href=\"https://n123.network-auth.com/\">"));
+	}
+	
+	public void testOverlappingSignatures() {
+		
+		PortalClassifier classifier = new PortalClassifier(new String[] {"he", "she", "his", "hers"});
+		
+		assertEquals("she", classifier.classify("ushers"));
+		assertEquals("his", classifier.classify("ahishe"));
+		assertEquals("he", classifier.classify("hhhers"));
+		assertNull(classifier.classify("shh ehs"));
+	}
+	
+	public void testSignatureWithinFailedPrefix() {
+		
+		PortalClassifier classifier = new PortalClassifier(new String[] {"abcd", "bce"});
+		
+		assertEquals("bce", classifier.classify("abce"));
+		assertEquals("abcd", classifier.classify("ababcd"));
+	}
+	
+	public void testCaseInsensitive() {
+		
+		PortalClassifier classifier = new PortalClassifier(new String[] {"Gr\u00FC\u00DFe", "wifi"});
+		
+		assertEquals("Gr\u00FC\u00DFe", classifier.classify("GR\u00DC\u00DFE"));
+		assertEquals("wifi", classifier.classify("Free WiFi"));
+	}
+	
+	public void testScanInChunks() throws Exception {
+		
+		byte[] page = "<html><head><title>Welcome</title></head><body>Please log in</body></html>".getBytes("ISO-8859-1");
+		
+		for(int chunk = 1; chunk < page.length; chunk++) {
+			PortalClassifier.Scan scan = PortalClassifier.getInstance().newScan();
+			for(int offset = 0; offset < page.length; offset += chunk) {
+				scan.feed(page, offset, Math.min(chunk, page.length - offset));
+			}
+			
+			assertTrue(scan.isMatched());
+			assertEquals("log in", scan.getSignature());
+		}
+	}
+	
+	public void testScanReset() {
+		
+		PortalClassifier.Scan scan = new PortalClassifier(new String[] {"login"}).newScan();
+		
+		scan.feed("log");
+		scan.reset();
+		scan.feed("in");
+		
+		assertFalse(scan.isMatched());
+		
+		scan.feed(" login");
+		scan.reset();
+		
+		assertTrue(scan.isMatched());
+		assertEquals("login", scan.getSignature());
+	}
+	
+	public void testStateCount() {
+		
+		// Root and one state per distinct prefix
+		assertEquals(10, new PortalClassifier(new String[] {"he", "she", "his", "hers"}).getStateCount());
+	}
+
+}
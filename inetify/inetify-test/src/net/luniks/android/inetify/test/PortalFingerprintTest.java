@@ -0,0 +1,86 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.test;
+
+import net.luniks.android.inetify.PortalFingerprint;
+import android.test.AndroidTestCase;
+
+public class PortalFingerprintTest extends AndroidTestCase {
+	
+	public void testIsKnown() {
+		
+		PortalFingerprint fingerprint = new PortalFingerprint();
+		
+		assertFalse(fingerprint.isKnown());
+		
+		fingerprint.setHash(123);
+		assertFalse(fingerprint.isKnown());
+		
+		fingerprint.setPageTitle("Portal Login");
+		assertTrue(fingerprint.isKnown());
+		
+		fingerprint.setHash(0);
+		assertFalse(fingerprint.isKnown());
+		
+		fingerprint.setEtag("\"abc\"");
+		assertTrue(fingerprint.isKnown());
+		
+		fingerprint.setEtag(null);
+		fingerprint.setLastModified("Sat, 29 Oct 1994 19:43:31 GMT");
+		assertTrue(fingerprint.isKnown());
+	}
+	
+	public void testMatches() {
+		
+		PortalFingerprint fingerprint = new PortalFingerprint();
+		
+		assertFalse(fingerprint.matches(null, 0));
+		
+		fingerprint.setPageTitle("Portal Login");
+		fingerprint.setHash(123);
+		
+		assertTrue(fingerprint.matches(null, 123));
+		assertFalse(fingerprint.matches(null, 124));
+		assertFalse(fingerprint.matches("http://portal.net/login", 123));
+		
+		fingerprint.setLocation("http://portal.net/login");
+		
+		assertTrue(fingerprint.matches("http://portal.net/login", 123));
+		assertFalse(fingerprint.matches("http://portal.net/other", 123));
+		assertFalse(fingerprint.matches(null, 123));
+	}
+	
+	public void testHash() throws Exception {
+		
+		byte[] bytes = "<html><title>Portal Login</title></html>".getBytes("UTF-8");
+		
+		long hash = PortalFingerprint.hash(PortalFingerprint.INITIAL_HASH, bytes, 0, bytes.length);
+		
+		// Same hash if hashed in chunks
+		long chunked = PortalFingerprint.INITIAL_HASH;
+		for(int offset = 0; offset < bytes.length; offset += 7) {
+			chunked = PortalFingerprint.hash(chunked, bytes, offset, Math.min(7, bytes.length - offset));
+		}
+		assertEquals(hash, chunked);
+		
+		bytes[bytes.length - 1] = 'X';
+		assertTrue(hash != PortalFingerprint.hash(PortalFingerprint.INITIAL_HASH, bytes, 0, bytes.length));
+		
+		// FNV-1a of no bytes is the offset basis
+		assertEquals(PortalFingerprint.INITIAL_HASH, PortalFingerprint.hash(PortalFingerprint.INITIAL_HASH, bytes, 0, 0));
+	}
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+
+import javax.net.ssl.SSLHandshakeException;
+
+import net.luniks.android.inetify.ProbeConnections;
+import android.test.AndroidTestCase;
+
+public class ProbeConnectionsTest extends AndroidTestCase {
+	
+	public void testGetOrigin() throws Exception {
+		
+		assertEquals("http://www.google.de:80", ProbeConnections.getOrigin(new URL("http://www.google.de")));
+		assertEquals("http://www.google.de:80", ProbeConnections.getOrigin(new URL("HTTP://WWW.Google.de:80/search")));
+		assertEquals("https://www.google.de:443", ProbeConnections.getOrigin(new URL("https://www.google.de/")));
+		assertEquals("https://www.google.de:8443", ProbeConnections.getOrigin(new URL("https://www.google.de:8443")));
+		
+	}
+	
+	public void testCounting() throws Exception {
+		
+		ProbeConnections connections = new ProbeConnections();
+		URL url = new URL("http://www.google.de");
+		URL otherUrl = new URL("https://www.google.de");
+		
+		assertFalse(connections.isReleased(url));
+		
+		connections.connected(url, true);
+		connections.released(url);
+		
+		assertTrue(connections.isReleased(url));
+		assertTrue(connections.isReleased(new URL("http://www.google.de/other")));
+		assertFalse(connections.isReleased(otherUrl));
+		
+		connections.connected(url, false);
+		
+		// In use again
+		assertFalse(connections.isReleased(url));
+		
+		connections.released(url);
+		connections.retried(url);
+		
+		assertFalse(connections.isReleased(url));
+		
+		connections.connected(otherUrl, true);
+		connections.resumed();
+		
+		assertEquals(2, connections.getHandshakes());
+		assertEquals(1, connections.getReused());
+		assertEquals(1, connections.getRetries());
+		assertEquals(1, connections.getResumed());
+		
+	}
+	
+	public void testIsStale() {
+		
+		assertTrue(ProbeConnections.isStale(new SocketException("Connection reset by peer")));
+		assertTrue(ProbeConnections.isStale(new IOException("Unexpected end of stream")));
+		assertFalse(ProbeConnections.isStale(new SocketTimeoutException("Read timed out")));
+		assertFalse(ProbeConnections.isStale(new InterruptedIOException()));
+		assertTrue(ProbeConnections.isStale(new EOFException()));
+		assertFalse(ProbeConnections.isStale(new ConnectException("Connection refused")));
+		assertFalse(ProbeConnections.isStale(new SSLHandshakeException("Certificate rejected")));
+		assertFalse(ProbeConnections.isStale(new IOException("Some error")));
+		assertFalse(ProbeConnections.isStale(new IOException()));
+		
+	}
+	
+	public void testDrain() throws Exception {
+		
+		assertTrue(ProbeConnections.drain(new ByteArrayInputStream(new byte[0])));
+		assertTrue(ProbeConnections.drain(new ByteArrayInputStream(new byte[ProbeConnections.MAX_DRAIN_BYTES])));
+		assertFalse(ProbeConnections.drain(new ByteArrayInputStream(new byte[ProbeConnections.MAX_DRAIN_BYTES + 1024])));
+		
+	}
+	
+	public void testDrainNotAvailable() throws Exception {
+		
+		TrickleInputStream in = new TrickleInputStream(new byte[100]);
+		
+		assertFalse(ProbeConnections.drain(in));
+		
+		// Waited once more, but not for the rest
+		assertEquals(2, in.getRead());
+		
+	}
+	
+	/**
+	 * Stream with the rest of a response still trickling in, nothing is available
+	 * without waiting.
+	 */
+	private static class TrickleInputStream extends ByteArrayInputStream {
+		
+		private TrickleInputStream(final byte[] bytes) {
+			super(bytes);
+		}
+		
+		@Override
+		public synchronized int available() {
+			return 0;
+		}
+		
+		private synchronized int getRead() {
+			return pos;
+		}
+	}
+
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.luniks.android.inetify.Cancellation;
+import net.luniks.android.inetify.ProbeCoordinator;
+import net.luniks.android.inetify.ProbeException;
+import net.luniks.android.inetify.TestInfo;
+import net.luniks.android.test.mock.VirtualClock;
+import android.test.AndroidTestCase;
+
+public class ProbeCoordinatorTest extends AndroidTestCase {
+	
+	private static final String KEY = "1|MockBSSID|www.google.de|Google";
+	
+	public void testProbeNullKey() {
+		
+		ProbeCoordinator coordinator = new ProbeCoordinator();
+		TestProbe probe = new TestProbe("Google", null);
+		
+		TestInfo info = new TestInfo();
+		coordinator.probe(null, ProbeCoordinator.MAX_AGE, info, new Cancellation(), probe);
+		coordinator.probe(null, ProbeCoordinator.MAX_AGE, info, new Cancellation(), probe);
+		
+		assertEquals(2, probe.getCount());
+		assertEquals(2, coordinator.getProbes());
+		assertEquals(0, coordinator.getCached());
+	}
+	
+	public void testProbeFromMemory() {
+		
+		ProbeCoordinator coordinator = new ProbeCoordinator();
+		TestProbe probe = new TestProbe("Google", null);
+		
+		TestInfo info1 = new TestInfo();
+		coordinator.probe(KEY, ProbeCoordinator.MAX_AGE, info1, new Cancellation(), probe);
+		
+		TestInfo info2 = new TestInfo();
+		coordinator.probe(KEY, ProbeCoordinator.MAX_AGE, info2, new Cancellation(), probe);
+		
+		assertEquals(1, probe.getCount());
+		assertEquals("Google", info2.getPageTitle());
+		assertTrue(info2.getIsExpectedTitle());
+		assertEquals(1, coordinator.getProbes());
+		assertEquals(1, coordinator.getCached());
+		
+		// Wants new results
+		TestInfo info3 = new TestInfo();
+		coordinator.probe(KEY, 0, info3, new Cancellation(), probe);
+		
+		assertEquals(2, probe.getCount());
+		assertEquals(2, coordinator.getProbes());
+		
+		// Other network
+		TestInfo info4 = new TestInfo();
+		coordinator.probe("1|OtherBSSID|www.google.de|Google", ProbeCoordinator.MAX_AGE, info4, new Cancellation(), probe);
+		
+		assertEquals(3, probe.getCount());
+	}
+	
+	public void testProbeFromMemoryExpires() {
+		
+		VirtualClock clock = new VirtualClock(1000000000000L);
+		ProbeCoordinator coordinator = new ProbeCoordinator(clock);
+		TestProbe probe = new TestProbe("Google", null);
+		
+		coordinator.probe(KEY, ProbeCoordinator.MAX_AGE, new TestInfo(), new Cancellation(), probe);
+		
+		clock.advance(ProbeCoordinator.MAX_AGE - 1);
+		coordinator.probe(KEY, ProbeCoordinator.MAX_AGE, new TestInfo(), new Cancellation(), probe);
+		
+		assertEquals(1, probe.getCount());
+		assertEquals(1, coordinator.getCached());
+		
+		// Too old now
+		clock.advance(1);
+		coordinator.probe(KEY, ProbeCoordinator.MAX_AGE, new TestInfo(), new Cancellation(), probe);
+		
+		assertEquals(2, probe.getCount());
+		assertEquals(1, coordinator.getCached());
+	}
+	
+	public void testProbeCancelledNotKept() {
+		
+		ProbeCoordinator coordinator = new ProbeCoordinator();
+		TestProbe probe = new TestProbe("Google", null);
+		
+		Cancellation cancellation = new Cancellation();
+		cancellation.cancel();
+		
+		coordinator.probe(KEY, ProbeCoordinator.MAX_AGE, new TestInfo(), cancellation, probe);
+		coordinator.probe(KEY, ProbeCoordinator.MAX_AGE, new TestInfo(), new Cancellation(), probe);
+		
+		// Cancelled before probing
+		assertEquals(1, probe.getCount());
+		assertEquals(0, coordinator.getCached());
+	}
+	
+	public void testProbeJoinsInFlight() throws Exception {
+		
+		ProbeCoordinator coordinator = new ProbeCoordinator();
+		TestProbe probe = new TestProbe("Google", new CountDownLatch(1));
+		
+		TestInfo leaderInfo = new TestInfo();
+		ProbeThread leader = new ProbeThread(coordinator, leaderInfo, new Cancellation(), probe);
+		leader.start();
+		assertTrue(probe.awaitStarted());
+		
+		TestInfo followerInfo = new TestInfo();
+		ProbeThread follower = new ProbeThread(coordinator, followerInfo, new Cancellation(), probe);
+		follower.start();
+		
+		// Give the follower time to attach
+		Thread.sleep(200);
+		probe.release();
+		
+		leader.join(5000);
+		follower.join(5000);
+		
+		assertEquals(1, probe.getCount());
+		assertEquals(1, coordinator.getProbes());
+		assertEquals(1, coordinator.getJoined());
+		assertEquals("Google", followerInfo.getPageTitle());
+		assertTrue(followerInfo.getIsExpectedTitle());
+		assertEquals(TestInfo.VERDICT_OK, followerInfo.getVerdict());
+		assertEquals(leaderInfo.getProbedSites().length, followerInfo.getProbedSites().length);
+		assertNotSame(leaderInfo.getProbedSites(), followerInfo.getProbedSites());
+	}
+	
+	public void testProbeLeaderCancelled() throws Exception {
+		
+		ProbeCoordinator coordinator = new ProbeCoordinator();
+		TestProbe probe = new TestProbe("Google", new CountDownLatch(1));
+		
+		Cancellation leaderCancellation = new Cancellation();
+		ProbeThread leader = new ProbeThread(coordinator, new TestInfo(), leaderCancellation, probe);
+		leader.start();
+		assertTrue(probe.awaitStarted());
+		
+		TestInfo followerInfo = new TestInfo();
+		ProbeThread follower = new ProbeThread(coordinator, followerInfo, new Cancellation(), probe);
+		follower.start();
+		
+		Thread.sleep(200);
+		leaderCancellation.cancel();
+		probe.release();
+		
+		leader.join(5000);
+		follower.join(5000);
+		
+		// The follower probed itself
+		assertEquals(2, probe.getCount());
+		assertEquals(2, coordinator.getProbes());
+		assertEquals(0, coordinator.getJoined());
+		assertEquals("Google", followerInfo.getPageTitle());
+	}
+	
+	public void testProbeFollowerCancelled() throws Exception {
+		
+		ProbeCoordinator coordinator = new ProbeCoordinator();
+		TestProbe probe = new TestProbe("Google", new CountDownLatch(1));
+		
+		ProbeThread leader = new ProbeThread(coordinator, new TestInfo(), new Cancellation(), probe);
+		leader.start();
+		assertTrue(probe.awaitStarted());
+		
+		TestInfo followerInfo = new TestInfo();
+		Cancellation followerCancellation = new Cancellation();
+		ProbeThread follower = new ProbeThread(coordinator, followerInfo, followerCancellation, probe);
+		follower.start();
+		
+		Thread.sleep(200);
+		followerCancellation.cancel();
+		
+		// Returns without waiting for the leader
+		follower.join(5000);
+		assertFalse(follower.isAlive());
+		assertNull(followerInfo.getPageTitle());
+		
+		probe.release();
+		leader.join(5000);
+		
+		assertEquals(1, probe.getCount());
+		assertEquals(0, coordinator.getJoined());
+	}
+	
+	public void testIsFresh() {
+		
+		TestInfo info = new TestInfo();
+		info.setTimestamp(1000);
+		
+		assertTrue(ProbeCoordinator.isFresh(info, 1000, ProbeCoordinator.MAX_AGE));
+		assertTrue(ProbeCoordinator.isFresh(info, 1000 + ProbeCoordinator.MAX_AGE - 1, ProbeCoordinator.MAX_AGE));
+		assertFalse(ProbeCoordinator.isFresh(info, 1000 + ProbeCoordinator.MAX_AGE, ProbeCoordinator.MAX_AGE));
+		assertFalse(ProbeCoordinator.isFresh(info, 1000, 0));
+		
+		// Clock went back
+		assertFalse(ProbeCoordinator.isFresh(info, 999, ProbeCoordinator.MAX_AGE));
+	}
+	
+	public void testCopyProbe() {
+		
+		TestInfo from = new TestInfo();
+		from.setSite("www.google.de");
+		from.setTitle("Google");
+		from.setPageTitle("Portal");
+		from.setIsExpectedTitle(false);
+		from.setException("Exception");
+		from.setProbedSites(new String[] {"www.google.de"});
+		from.setProbeLatencies(new long[] {123});
+		from.setFailedStage(ProbeException.STAGE_HTTP);
+		from.setFailedStageMillis(12);
+		from.setIsKnownPortal(true);
+		from.setVerdict(TestInfo.VERDICT_PORTAL);
+		from.setSignature("login");
+		from.setDnsMillis(1);
+		from.setConnectMillis(2);
+		from.setTlsMillis(3);
+		from.setFirstByteMillis(4);
+		from.setDownloadMillis(5);
+		from.setAttempts(3);
+		from.setExtra("MockSSID");
+		
+		TestInfo to = new TestInfo();
+		ProbeCoordinator.copyProbe(from, to);
+		
+		assertEquals("www.google.de", to.getSite());
+		assertEquals("Google", to.getTitle());
+		assertEquals("Portal", to.getPageTitle());
+		assertFalse(to.getIsExpectedTitle());
+		assertEquals("Exception", to.getException());
+		assertEquals("www.google.de", to.getProbedSites()[0]);
+		assertEquals(123, to.getProbeLatencies()[0]);
+		assertEquals(ProbeException.STAGE_HTTP, to.getFailedStage());
+		assertEquals(12, to.getFailedStageMillis());
+		assertTrue(to.getIsKnownPortal());
+		assertEquals(TestInfo.VERDICT_PORTAL, to.getVerdict());
+		assertEquals("login", to.getSignature());
+		assertEquals(1, to.getDnsMillis());
+		assertEquals(2, to.getConnectMillis());
+		assertEquals(3, to.getTlsMillis());
+		assertEquals(4, to.getFirstByteMillis());
+		assertEquals(5, to.getDownloadMillis());
+		
+		// Not results of the probe
+		assertEquals(0, to.getAttempts());
+		assertNull(to.getExtra());
+	}
+	
+	/**
+	 * Probe that sets the given page title as the expected one, waiting until released
+	 * if it has a latch.
+	 */
+	private static class TestProbe implements ProbeCoordinator.Probe {
+		
+		private final String pageTitle;
+		private final CountDownLatch release;
+		private final CountDownLatch started = new CountDownLatch(1);
+		private volatile int count = 0;
+		
+		private TestProbe(final String pageTitle, final CountDownLatch release) {
+			this.pageTitle = pageTitle;
+			this.release = release;
+		}
+
+		public void probe(final TestInfo info, final Cancellation cancellation) {
+			count++;
+			started.countDown();
+			if(release != null) {
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch(InterruptedException e) {
+					return;
+				}
+			}
+			info.setSite("www.google.de");
+			info.setPageTitle(pageTitle);
+			info.setIsExpectedTitle(true);
+			info.setVerdict(TestInfo.VERDICT_OK);
+			info.setProbedSites(new String[] {"www.google.de"});
+			info.setProbeLatencies(new long[] {100});
+		}
+		
+		private boolean awaitStarted() throws InterruptedException {
+			return started.await(5, TimeUnit.SECONDS);
+		}
+		
+		private void release() {
+			release.countDown();
+		}
+		
+		private int getCount() {
+			return count;
+		}
+	}
+	
+	private static class ProbeThread extends Thread {
+		
+		private final ProbeCoordinator coordinator;
+		private final TestInfo info;
+		private final Cancellation cancellation;
+		private final ProbeCoordinator.Probe probe;
+		
+		private ProbeThread(final ProbeCoordinator coordinator, final TestInfo info, 
+				final Cancellation cancellation, final ProbeCoordinator.Probe probe) {
+			this.coordinator = coordinator;
+			this.info = info;
+			this.cancellation = cancellation;
+			this.probe = probe;
+		}
+		
+		@Override
+		public void run() {
+			coordinator.probe(KEY, ProbeCoordinator.MAX_AGE, info, cancellation, probe);
+		}
+	}
+
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+
+import net.luniks.android.inetify.Cancellation;
+import net.luniks.android.inetify.ProbeConnections;
+import net.luniks.android.inetify.ProbeException;
+import net.luniks.android.inetify.ProbePipeline;
+import net.luniks.android.inetify.ProbeRacer;
+import net.luniks.android.inetify.ProbeTimings;
+import android.test.AndroidTestCase;
+
+public class ProbePipelineTest extends AndroidTestCase {
+	
+	public void testConnect() throws Exception {
+		
+		ProbePipeline pipeline = new ProbePipeline(new URL("http://www.google.com"), new Cancellation(), new ProbeConnections());
+		
+		pipeline.connect("GET", true).disconnect();
+		
+	}
+	
+	public void testConnectUnknownHost() throws Exception {
+		
+		ProbePipeline pipeline = new ProbePipeline(new URL("http://no-such-host.invalid"), new Cancellation(), new ProbeConnections());
+		
+		try {
+			pipeline.connect("GET", true);
+			fail("Expected ProbeException");
+		} catch(ProbeException e) {
+			assertEquals(ProbeException.STAGE_DNS, e.getStage());
+			assertTrue(e.getMillis() <= ProbePipeline.DNS_TIMEOUT + 500);
+		}
+		
+	}
+	
+	public void testResolverBounded() throws Exception {
+		
+		for(int i = 0; i < 20; i++) {
+			ProbePipeline pipeline = new ProbePipeline(new URL(String.format("http://no-such-host-%s.invalid", i)), 
+					new Cancellation(), new ProbeConnections());
+			try {
+				pipeline.connect("GET", true);
+				fail("Expected ProbeException");
+			} catch(ProbeException e) {
+				assertEquals(ProbeException.STAGE_DNS, e.getStage());
+			}
+		}
+		
+		// The lookups share a bounded pool of threads
+		int threads = 0;
+		for(Thread thread : Thread.getAllStackTraces().keySet()) {
+			if(thread.getName().equals("ProbePipeline")) {
+				threads++;
+			}
+		}
+		assertTrue(threads <= ProbeRacer.MAX_THREADS);
+		
+	}
+	
+	public void testConnectRefused() throws Exception {
+		
+		// Assuming nothing listens on this port
+		ProbePipeline pipeline = new ProbePipeline(new URL("http://127.0.0.1:1"), new Cancellation(), new ProbeConnections());
+		
+		try {
+			pipeline.connect("GET", true);
+			fail("Expected ProbeException");
+		} catch(ProbeException e) {
+			assertEquals(ProbeException.STAGE_CONNECT, e.getStage());
+			assertTrue(e.getMillis() <= ProbePipeline.CONNECT_TIMEOUT + 500);
+		}
+		
+	}
+	
+	public void testTimings() throws Exception {
+		
+		ProbeTimings timings = new ProbeTimings();
+		ProbePipeline pipeline = new ProbePipeline(new URL("http://127.0.0.1:1"), new Cancellation(), new ProbeConnections(), timings);
+		
+		assertSame(timings, pipeline.getTimings());
+		
+		try {
+			pipeline.connect("GET", true);
+			fail("Expected ProbeException");
+		} catch(ProbeException e) {
+			assertEquals(e.getMillis(), timings.getConnectMillis());
+			assertEquals(0, timings.getTlsMillis());
+			assertEquals(0, timings.getFirstByteMillis());
+		}
+		
+	}
+	
+	public void testExecuteReusesReleased() throws Exception {
+		
+		KeepAliveServer server = new KeepAliveServer(false);
+		Cancellation cancellation = new Cancellation();
+		ProbeConnections connections = new ProbeConnections();
+		
+		try {
+			for(int i = 0; i < 3; i++) {
+				ProbePipeline pipeline = new ProbePipeline(server.getUrl(), cancellation, connections);
+				HttpURLConnection connection = pipeline.execute("GET", true);
+				assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+				pipeline.release(connection);
+				pipeline.disconnect();
+			}
+			
+			assertEquals(1, server.getAcceptCount());
+			assertEquals(1, connections.getHandshakes());
+			assertEquals(2, connections.getReused());
+			assertEquals(0, connections.getRetries());
+		} finally {
+			server.close();
+		}
+		
+	}
+	
+	public void testExecuteDisconnectedNotReused() throws Exception {
+		
+		KeepAliveServer server = new KeepAliveServer(false);
+		Cancellation cancellation = new Cancellation();
+		ProbeConnections connections = new ProbeConnections();
+		
+		try {
+			for(int i = 0; i < 2; i++) {
+				ProbePipeline pipeline = new ProbePipeline(server.getUrl(), cancellation, connections);
+				pipeline.execute("GET", true);
+				pipeline.disconnect();
+			}
+			
+			assertEquals(2, server.getAcceptCount());
+			assertEquals(2, connections.getHandshakes());
+			assertEquals(0, connections.getReused());
+		} finally {
+			server.close();
+		}
+		
+	}
+	
+	public void testExecuteStaleConnection() throws Exception {
+		
+		// Closes each connection after the response without announcing it
+		KeepAliveServer server = new KeepAliveServer(true);
+		Cancellation cancellation = new Cancellation();
+		ProbeConnections connections = new ProbeConnections();
+		
+		try {
+			for(int i = 0; i < 2; i++) {
+				ProbePipeline pipeline = new ProbePipeline(server.getUrl(), cancellation, connections);
+				HttpURLConnection connection = pipeline.execute("GET", true);
+				assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+				pipeline.release(connection);
+				Thread.sleep(100);
+			}
+			
+			// The second request succeeds on a new connection
+			assertEquals(2, server.getAcceptCount());
+			assertEquals(2, server.getRequestCount());
+		} finally {
+			server.close();
+		}
+		
+	}
+	
+	public void testCountsBytes() throws Exception {
+		
+		KeepAliveServer server = new KeepAliveServer(false);
+		Cancellation cancellation = new Cancellation();
+		ProbeConnections connections = new ProbeConnections();
+		
+		try {
+			ProbePipeline pipeline = new ProbePipeline(server.getUrl(), cancellation, connections);
+			HttpURLConnection connection = pipeline.execute("GET", true);
+			assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+			
+			long sent = connections.getSentBytes();
+			long headers = connections.getReceivedBytes();
+			
+			assertTrue(sent > 0);
+			assertEquals(ProbePipeline.getHeaderBytes(connection), headers);
+			
+			pipeline.release(connection);
+			
+			// Releasing reads the rest of the body
+			assertEquals(sent, connections.getSentBytes());
+			assertEquals(headers + KeepAliveServer.BODY.length, connections.getReceivedBytes());
+		} finally {
+			server.close();
+		}
+		
+	}
+	
+	public void testFail() throws Exception {
+		
+		ProbePipeline pipeline = new ProbePipeline(new URL("http://www.google.com"), new Cancellation(), new ProbeConnections());
+		
+		IOException cause = new IOException("Some Exception");
+		ProbeException e = pipeline.fail(cause);
+		
+		assertEquals(ProbeException.STAGE_HTTP, e.getStage());
+		assertSame(cause, e.getCause());
+		assertTrue(e.getMessage().contains("Some Exception"));
+		
+		ProbeException probeException = new ProbeException(ProbeException.STAGE_DNS, 123, "Some Exception", null);
+		
+		assertSame(probeException, pipeline.fail(probeException));
+		
+	}
+	
+	public void testProbeExceptionMessage() {
+		
+		ProbeException e = new ProbeException(ProbeException.STAGE_CONNECT, 123, "Connection refused", null);
+		
+		assertEquals(ProbeException.STAGE_CONNECT, e.getStage());
+		assertEquals(123, e.getMillis());
+		assertEquals("Connect failed after 123 ms: Connection refused", e.getMessage());
+		assertNull(e.getCause());
+		
+		e = new ProbeException(ProbeException.STAGE_CERTIFICATE, 456, "Hostname not verified", null);
+		
+		assertEquals("Certificate failed after 456 ms: Hostname not verified", e.getMessage());
+		
+	}
+	
+	/**
+	 * Serves a small page on a local port, keeping connections alive unless 
+	 * told to close them after the response without saying so.
+	 */
+	private static class KeepAliveServer extends Thread {
+		
+		private static final byte[] BODY = "<html><head><title>Kept Alive</title></head></html>".getBytes();
+		
+		private final ServerSocket serverSocket;
+		private final boolean closeSilently;
+		private volatile int acceptCount = 0;
+		private volatile int requestCount = 0;
+		
+		private KeepAliveServer(final boolean closeSilently) throws IOException {
+			this.serverSocket = new ServerSocket(0);
+			this.closeSilently = closeSilently;
+			this.setDaemon(true);
+			this.start();
+		}
+		
+		private URL getUrl() throws IOException {
+			return new URL(String.format("http://127.0.0.1:%s/", serverSocket.getLocalPort()));
+		}
+		
+		private int getAcceptCount() {
+			return acceptCount;
+		}
+		
+		private int getRequestCount() {
+			return requestCount;
+		}
+		
+		private void close() throws IOException {
+			serverSocket.close();
+		}
+		
+		@Override
+		public void run() {
+			try {
+				while(true) {
+					final Socket socket = serverSocket.accept();
+					acceptCount++;
+					new Thread() {
+						@Override
+						public void run() {
+							serve(socket);
+						}
+					}.start();
+				}
+			} catch(IOException e) {
+				// Closed
+			}
+		}
+		
+		private void serve(final Socket socket) {
+			try {
+				BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
+				OutputStream out = socket.getOutputStream();
+				String line;
+				while((line = reader.readLine()) != null) {
+					if(line.length() > 0) {
+						continue;
+					}
+					requestCount++;
+					StringBuilder header = new StringBuilder("HTTP/1.1 200 OK\r\n");
+					header.append("Content-Type: text/html; charset=UTF-8\r\n");
+					header.append("Content-Length: ").append(BODY.length).append("\r\n\r\n");
+					out.write(header.toString().getBytes("ISO-8859-1"));
+					out.write(BODY);
+					out.flush();
+					if(closeSilently) {
+						break;
+					}
+				}
+			} catch(IOException e) {
+				// Closed by the client
+			} finally {
+				try {
+					socket.close();
+				} catch(IOException e) {
+					// Ignore
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import net.luniks.android.inetify.Cancellation;
+import net.luniks.android.inetify.PortalClassifier;
+import net.luniks.android.inetify.PortalFingerprint;
+import net.luniks.android.inetify.ProbeConnections;
+import net.luniks.android.inetify.ProbeException;
+import net.luniks.android.inetify.ProbeRacer;
+import net.luniks.android.inetify.ProbeRequest;
+import net.luniks.android.inetify.TestInfo;
+import net.luniks.android.inetify.TitleVerifier;
+import android.test.AndroidTestCase;
+
+public class ProbeRacerTest extends AndroidTestCase {
+	
+	public void testSplit() {
+		
+		assertEquals(0, ProbeRacer.split(null).length);
+		assertEquals(0, ProbeRacer.split("").length);
+		assertEquals(0, ProbeRacer.split(" , ").length);
+		
+		String[] sites = ProbeRacer.split(" www.google.de,www.google.com \n  http://www.google.fr ,");
+		assertEquals(3, sites.length);
+		assertEquals("www.google.de", sites[0]);
+		assertEquals("www.google.com", sites[1]);
+		assertEquals("http://www.google.fr", sites[2]);
+	}
+	
+	public void testRaceSingleSite() {
+		
+		TitleVerifierMock titleVerifier = new TitleVerifierMock();
+		titleVerifier.addSite("fast", "Expected", 0, false);
+		
+		TestInfo info = newTestInfo();
+		new ProbeRacer(titleVerifier).race(info, new String[] {"fast"}, "Expected", new Cancellation());
+		
+		assertTrue(info.getIsExpectedTitle());
+		assertEquals(TestInfo.VERDICT_OK, info.getVerdict());
+		assertEquals("fast", info.getSite());
+		assertEquals("Expected", info.getPageTitle());
+		assertNull(info.getException());
+		assertEquals(1, info.getProbeLatencies().length);
+		assertTrue(info.getProbeLatencies()[0] >= 0);
+	}
+	
+	public void testRaceFirstExpectedWins() {
+		
+		TitleVerifierMock titleVerifier = new TitleVerifierMock();
+		titleVerifier.addSite("slow", "Expected", 5000, false);
+		titleVerifier.addSite("fast", "Expected", 100, false);
+		
+		TestInfo info = newTestInfo();
+		long start = System.currentTimeMillis();
+		new ProbeRacer(titleVerifier).race(info, new String[] {"slow", "fast"}, "Expected", new Cancellation());
+		long millis = System.currentTimeMillis() - start;
+		
+		assertTrue(info.getIsExpectedTitle());
+		assertEquals("fast", info.getSite());
+		assertEquals("Expected", info.getPageTitle());
+		assertNull(info.getException());
+		assertEquals(-1, info.getProbeLatencies()[0]);
+		assertTrue(info.getProbeLatencies()[1] >= 100);
+		assertTrue(millis < 5000);
+		
+		// Phases of the winning probe
+		assertEquals(1, info.getDnsMillis());
+		assertEquals(100, info.getFirstByteMillis());
+	}
+	
+	public void testRaceLosersCancelled() {
+		
+		TitleVerifierMock titleVerifier = new TitleVerifierMock();
+		titleVerifier.addSite("slow", "Expected", 5000, false);
+		titleVerifier.addSite("fast", "Expected", 100, false);
+		
+		Cancellation cancellation = new Cancellation();
+		TestInfo info = newTestInfo();
+		long start = System.currentTimeMillis();
+		new ProbeRacer(titleVerifier).race(info, new String[] {"slow", "fast"}, "Expected", cancellation);
+		long millis = System.currentTimeMillis() - start;
+		
+		assertEquals("fast", info.getSite());
+		
+		// The request to the slow site should be cancelled, but not the test
+		assertTrue(titleVerifier.getCancellation("slow").isCancelled());
+		assertNotSame(cancellation, titleVerifier.getCancellation("slow"));
+		assertFalse(cancellation.isCancelled());
+		assertTrue(millis < 1000);
+	}
+	
+	public void testRaceFailedSiteIgnored() {
+		
+		TitleVerifierMock titleVerifier = new TitleVerifierMock();
+		titleVerifier.addSite("down", null, 0, true);
+		titleVerifier.addSite("up", "Expected", 200, false);
+		
+		TestInfo info = newTestInfo();
+		new ProbeRacer(titleVerifier).race(info, new String[] {"down", "up"}, "Expected", new Cancellation());
+		
+		assertTrue(info.getIsExpectedTitle());
+		assertEquals("up", info.getSite());
+		assertNull(info.getException());
+		assertEquals(ProbeException.STAGE_NONE, info.getFailedStage());
+		assertTrue(info.getProbeLatencies()[0] >= 0);
+		assertTrue(info.getProbeLatencies()[1] >= 200);
+	}
+	
+	public void testRaceNoExpectedTitle() {
+		
+		TitleVerifierMock titleVerifier = new TitleVerifierMock();
+		titleVerifier.addSite("down", null, 200, true);
+		titleVerifier.addSite("portal", "Login", 0, false);
+		
+		TestInfo info = newTestInfo();
+		new ProbeRacer(titleVerifier).race(info, new String[] {"down", "portal"}, "Expected", new Cancellation());
+		
+		assertFalse(info.getIsExpectedTitle());
+		assertEquals(TestInfo.VERDICT_PORTAL, info.getVerdict());
+		assertEquals("login", info.getSignature());
+		assertEquals("portal", info.getSite());
+		assertEquals("Login", info.getPageTitle());
+		assertNull(info.getException());
+		assertTrue(info.getProbeLatencies()[0] >= 200);
+	}
+	
+	public void testRaceAllFailed() {
+		
+		TitleVerifierMock titleVerifier = new TitleVerifierMock();
+		titleVerifier.addSite("down", null, 0, true);
+		titleVerifier.addSite("down2", null, 0, true);
+		
+		TestInfo info = newTestInfo();
+		new ProbeRacer(titleVerifier).race(info, new String[] {"down", "down2"}, "Expected", new Cancellation());
+		
+		assertFalse(info.getIsExpectedTitle());
+		assertEquals("", info.getPageTitle());
+		assertNotNull(info.getException());
+		assertEquals(ProbeException.STAGE_CONNECT, info.getFailedStage());
+		assertEquals(123, info.getFailedStageMillis());
+		assertEquals(TestInfo.VERDICT_BLOCKED, info.getVerdict());
+	}
+	
+	public void testRaceConnections() {
+		
+		TitleVerifierMock titleVerifier = new TitleVerifierMock();
+		titleVerifier.addSite("down", null, 0, true);
+		titleVerifier.addSite("down2", null, 0, true);
+		
+		ProbeConnections connections = new ProbeConnections();
+		Map<String, PortalFingerprint> fingerprints = new HashMap<String, PortalFingerprint>();
+		
+		TestInfo info = newTestInfo();
+		new ProbeRacer(titleVerifier).race(info, new String[] {"down", "down2"}, "Expected", new Cancellation(), 
+				connections, fingerprints);
+		
+		// Both probes are counted with the connections of the test
+		assertEquals(2, connections.getReceivedBytes());
+	}
+	
+	public void testRaceCertificateRejected() {
+		
+		TitleVerifierMock titleVerifier = new TitleVerifierMock();
+		titleVerifier.addSite("intercepted", null, 0, true);
+		titleVerifier.setFailedStage("intercepted", ProbeException.STAGE_CERTIFICATE);
+		
+		TestInfo info = newTestInfo();
+		new ProbeRacer(titleVerifier).race(info, new String[] {"intercepted"}, "Expected", new Cancellation());
+		
+		assertFalse(info.getIsExpectedTitle());
+		assertEquals(ProbeException.STAGE_CERTIFICATE, info.getFailedStage());
+		assertEquals(TestInfo.VERDICT_INTERCEPTED, info.getVerdict());
+	}
+	
+	public void testRaceUnknownPage() {
+		
+		TitleVerifierMock titleVerifier = new TitleVerifierMock();
+		titleVerifier.addSite("other", "Some Page", 0, false);
+		
+		TestInfo info = newTestInfo();
+		new ProbeRacer(titleVerifier).race(info, new String[] {"other"}, "Expected", new Cancellation());
+		
+		assertFalse(info.getIsExpectedTitle());
+		assertNull(info.getSignature());
+		assertEquals(TestInfo.VERDICT_UNKNOWN, info.getVerdict());
+	}
+	
+	public void testRaceKnownPortal() {
+		
+		TitleVerifierMock titleVerifier = new TitleVerifierMock();
+		titleVerifier.addSite("portal", "Login", 0, false);
+		
+		Map<String, PortalFingerprint> fingerprints = new HashMap<String, PortalFingerprint>();
+		fingerprints.put("portal", new PortalFingerprint());
+		
+		TestInfo info = newTestInfo();
+		new ProbeRacer(titleVerifier).race(info, new String[] {"portal"}, "Expected", new Cancellation(), new ProbeConnections(), fingerprints);
+		
+		assertFalse(info.getIsKnownPortal());
+		assertEquals("Login", fingerprints.get("portal").getPageTitle());
+		
+		info = newTestInfo();
+		new ProbeRacer(titleVerifier).race(info, new String[] {"portal"}, "Expected", new Cancellation(), new ProbeConnections(), fingerprints);
+		
+		assertFalse(info.getIsExpectedTitle());
+		assertTrue(info.getIsKnownPortal());
+		assertEquals(TestInfo.VERDICT_PORTAL, info.getVerdict());
+		assertEquals("Login", info.getPageTitle());
+	}
+	
+	public void testRaceKnownPageWithExpectedTitle() {
+		
+		TitleVerifierMock titleVerifier = new TitleVerifierMock();
+		titleVerifier.addSite("fast", "Expected", 0, false);
+		
+		PortalFingerprint fingerprint = new PortalFingerprint();
+		fingerprint.setPageTitle("Expected");
+		fingerprint.setHash("Expected".hashCode());
+		
+		Map<String, PortalFingerprint> fingerprints = new HashMap<String, PortalFingerprint>();
+		fingerprints.put("fast", fingerprint);
+		
+		TestInfo info = newTestInfo();
+		new ProbeRacer(titleVerifier).race(info, new String[] {"fast"}, "Expected", new Cancellation(), new ProbeConnections(), fingerprints);
+		
+		assertTrue(fingerprint.getIsMatched());
+		assertTrue(info.getIsExpectedTitle());
+		assertFalse(info.getIsKnownPortal());
+	}
+	
+	private TestInfo newTestInfo() {
+		TestInfo info = new TestInfo();
+		info.setPageTitle("");
+		return info;
+	}
+	
+	private class TitleVerifierMock implements TitleVerifier {
+		
+		private final Map<String, String> pageTitles = new HashMap<String, String>();
+		private final Map<String, Long> delays = new HashMap<String, Long>();
+		private final Map<String, Boolean> exceptions = new HashMap<String, Boolean>();
+		private final Map<String, Integer> failedStages = new HashMap<String, Integer>();
+		private final Map<String, Cancellation> cancellations = new HashMap<String, Cancellation>();
+		
+		public void addSite(final String site, final String pageTitle, final long delay, final boolean exception) {
+			pageTitles.put(site, pageTitle);
+			delays.put(site, delay);
+			exceptions.put(site, exception);
+			failedStages.put(site, ProbeException.STAGE_CONNECT);
+		}
+		
+		public void setFailedStage(final String site, final int stage) {
+			failedStages.put(site, stage);
+		}
+
+		public boolean isExpectedTitle(final String title, final String pageTitle) {
+			return title.equals(pageTitle);
+		}
+
+		public Cancellation getCancellation(final String site) {
+			synchronized(cancellations) {
+				return cancellations.get(site);
+			}
+		}
+
+		public String getPageTitle(final ProbeRequest request) throws Exception {
+			String server = request.getServer();
+			Cancellation cancellation = request.getCancellation();
+			PortalFingerprint fingerprint = request.getFingerprint();
+			request.getConnections().received(1);
+			request.getTimings().setDnsMillis(1);
+			request.getTimings().setFirstByteMillis(delays.get(server));
+			synchronized(cancellations) {
+				cancellations.put(server, cancellation);
+			}
+			if(cancellation.await(delays.get(server))) {
+				throw new ProbeException(ProbeException.STAGE_CONNECT, 0, String.format("%s cancelled", server), null);
+			}
+			if(exceptions.get(server)) {
+				throw new ProbeException(failedStages.get(server), 123, String.format("%s is down", server), null);
+			}
+			String pageTitle = pageTitles.get(server);
+			if(fingerprint.isKnown() && pageTitle.equals(fingerprint.getPageTitle())) {
+				fingerprint.setIsMatched(true);
+			} else {
+				fingerprint.setPageTitle(pageTitle);
+				fingerprint.setHash(pageTitle.hashCode());
+				fingerprint.setSignature(PortalClassifier.getInstance().classify(pageTitle));
+			}
+			return pageTitle;
+		}
+		
+	}
+
+}
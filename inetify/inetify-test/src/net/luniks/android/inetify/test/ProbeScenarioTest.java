@@ -0,0 +1,240 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.test;
+
+import net.luniks.android.inetify.PortalFingerprint;
+import net.luniks.android.inetify.ProbeCoordinator;
+import net.luniks.android.inetify.ProbeException;
+import net.luniks.android.inetify.ProbePipeline;
+import net.luniks.android.inetify.Settings;
+import net.luniks.android.inetify.StreamingTitleVerifier;
+import net.luniks.android.inetify.TestInfo;
+import net.luniks.android.inetify.Tester;
+import net.luniks.android.inetify.TesterImpl;
+import net.luniks.android.test.mock.ConnectivityManagerMock;
+import net.luniks.android.test.mock.NetworkInfoMock;
+import net.luniks.android.test.mock.WifiInfoMock;
+import net.luniks.android.test.mock.WifiManagerMock;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+/**
+ * Tests TesterImpl with StreamingTitleVerifier against TestHttpServer for each of its
+ * scenarios, checking the verdict, the time it took to get it and the bytes the
+ * server could send, so that the probes getting slower or reading more is noticed
+ * without network access.
+ */
+public class ProbeScenarioTest extends AndroidTestCase {
+	
+	private static final String TITLE = "Google";
+	
+	/** Some markup to make a page longer */
+	private static final String FILLER;
+	static {
+		StringBuilder filler = new StringBuilder();
+		for(int i = 0; i < 64; i++) {
+			filler.append("<p>Lorem ipsum dolor sit amet</p>\n");
+		}
+		FILLER = filler.toString();
+	}
+	
+	private SharedPreferences sharedPreferences;
+	
+	private String server;
+	
+	private String title;
+	
+	private TestHttpServer httpServer;
+	
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this.getContext());
+		server = sharedPreferences.getString(Settings.INTERNET_SERVER, null);
+		title = sharedPreferences.getString(Settings.INTERNET_TITLE, null);
+		ProbeCoordinator.getInstance().clear();
+	}
+	
+	@Override
+	public void tearDown() throws Exception {
+		if(httpServer != null) {
+			httpServer.close();
+		}
+		sharedPreferences.edit().putString(Settings.INTERNET_SERVER, server).commit();
+		sharedPreferences.edit().putString(Settings.INTERNET_TITLE, title).commit();
+		ProbeCoordinator.getInstance().clear();
+		super.tearDown();
+	}
+	
+	public void testOK() throws Exception {
+		
+		TestInfo info = probe(TestHttpServer.SCENARIO_OK, 0, null, false);
+		
+		assertTrue(info.getIsExpectedTitle());
+		assertEquals(TestInfo.VERDICT_OK, info.getVerdict());
+		assertEquals(TITLE, info.getPageTitle());
+		assertDuration(info, ProbePipeline.CONNECT_TIMEOUT);
+		assertEquals(1, httpServer.getRequestCount());
+	}
+	
+	public void testSlowHeaders() throws Exception {
+		
+		TestInfo info = probe(TestHttpServer.SCENARIO_SLOW_HEADERS, 1000, null, false);
+		
+		assertTrue(info.getIsExpectedTitle());
+		assertTrue(info.getFirstByteMillis() >= 1000);
+		assertDuration(info, ProbePipeline.HTTP_TIMEOUT);
+	}
+	
+	public void testSlowHeadersTimeout() throws Exception {
+		
+		TestInfo info = probe(TestHttpServer.SCENARIO_SLOW_HEADERS, ProbePipeline.HTTP_TIMEOUT + 2000, null, false);
+		
+		assertFalse(info.getIsExpectedTitle());
+		assertEquals(ProbeException.STAGE_HTTP, info.getFailedStage());
+		assertNotNull(info.getException());
+		
+		// Gives up at the read timeout instead of waiting for the server
+		assertDuration(info, ProbePipeline.HTTP_TIMEOUT + 1000);
+	}
+	
+	public void testTrickle() throws Exception {
+		
+		String page = String.format("<html><head><title>%s</title></head><body>%s</body></html>", TITLE, FILLER);
+		long delay = 20;
+		
+		TestInfo info = probe(TestHttpServer.SCENARIO_TRICKLE, delay, page, false);
+		
+		assertTrue(info.getIsExpectedTitle());
+		
+		// Reads the first HASH_BYTES for the fingerprint and waits for the rest at most once
+		assertDuration(info, (PortalFingerprint.HASH_BYTES / TestHttpServer.TRICKLE_BYTES + 25) * delay);
+		assertTrue(httpServer.getBytesWritten() < page.length());
+	}
+	
+	public void testResetMidBody() throws Exception {
+		
+		String page = String.format("<html><head>%s<title>%s</title></head></html>", FILLER, TITLE);
+		
+		TestInfo info = probe(TestHttpServer.SCENARIO_RESET, 0, page, false);
+		
+		assertFalse(info.getIsExpectedTitle());
+		assertEquals(ProbeException.STAGE_HTTP, info.getFailedStage());
+		assertNotNull(info.getException());
+		assertDuration(info, ProbePipeline.CONNECT_TIMEOUT);
+	}
+	
+	public void testRedirectToPortal() throws Exception {
+		
+		TestInfo info = probe(TestHttpServer.SCENARIO_REDIRECT, 0, null, false);
+		
+		assertFalse(info.getIsExpectedTitle());
+		assertEquals("Hotspot Login", info.getPageTitle());
+		assertEquals(TestInfo.VERDICT_PORTAL, info.getVerdict());
+		assertNotNull(info.getSignature());
+		assertEquals(2, httpServer.getRequestCount());
+		assertDuration(info, ProbePipeline.CONNECT_TIMEOUT);
+	}
+	
+	public void testHugePage() throws Exception {
+		
+		TestInfo info = probe(TestHttpServer.SCENARIO_HUGE, 0, null, false);
+		
+		assertFalse(info.getIsExpectedTitle());
+		assertEquals("", info.getPageTitle());
+		assertNull(info.getException());
+		assertDuration(info, ProbePipeline.HTTP_TIMEOUT);
+		
+		// Stops after MAX_BYTES, the rest is at most what fits in the socket buffers
+		Thread.sleep(100);
+		assertTrue(httpServer.getBytesWritten() > StreamingTitleVerifier.MAX_BYTES);
+		assertTrue(httpServer.getBytesWritten() < TestHttpServer.HUGE_BYTES / 8);
+	}
+	
+	public void testWrongCharset() throws Exception {
+		
+		String page = String.format("<html><head><title>%s \u2013 Gr\u00FC\u00DFe</title></head></html>", TITLE);
+		
+		TestInfo info = probe(TestHttpServer.SCENARIO_WRONG_CHARSET, 0, page, false);
+		
+		// The charset in the header wins, but the expected title is still found
+		assertTrue(info.getIsExpectedTitle());
+		assertTrue(info.getPageTitle().startsWith(TITLE));
+		assertFalse(info.getPageTitle().endsWith("Gr\u00FC\u00DFe"));
+		assertDuration(info, ProbePipeline.CONNECT_TIMEOUT);
+	}
+	
+	public void testTlsPlaintext() throws Exception {
+		
+		TestInfo info = probe(TestHttpServer.SCENARIO_TLS_PLAINTEXT, 0, null, true);
+		
+		assertFalse(info.getIsExpectedTitle());
+		assertEquals(ProbeException.STAGE_CONNECT, info.getFailedStage());
+		assertEquals(TestInfo.VERDICT_BLOCKED, info.getVerdict());
+		assertDuration(info, ProbePipeline.CONNECT_TIMEOUT + ProbePipeline.HTTP_TIMEOUT);
+		assertEquals(0, httpServer.getRequestCount());
+	}
+	
+	public void testTlsClosedDuringHandshake() throws Exception {
+		
+		TestInfo info = probe(TestHttpServer.SCENARIO_TLS_CLOSE, 0, null, true);
+		
+		assertFalse(info.getIsExpectedTitle());
+		assertEquals(ProbeException.STAGE_CONNECT, info.getFailedStage());
+		assertEquals(TestInfo.VERDICT_BLOCKED, info.getVerdict());
+		assertDuration(info, ProbePipeline.CONNECT_TIMEOUT);
+	}
+	
+	/**
+	 * Starts the server with the given scenario, delay and page, if not null, and
+	 * tests if it has the expected title over a mock Wifi connection.
+	 */
+	private TestInfo probe(final int scenario, final long delay, final String page, final boolean https) throws Exception {
+		httpServer = new TestHttpServer(scenario);
+		httpServer.setDelay(delay);
+		if(page != null) {
+			httpServer.setPage(page);
+		}
+		
+		String url = https ? httpServer.getHttpsUrl() : httpServer.getUrl();
+		sharedPreferences.edit().putString(Settings.INTERNET_SERVER, url).commit();
+		sharedPreferences.edit().putString(Settings.INTERNET_TITLE, TITLE).commit();
+		
+		NetworkInfoMock networkInfo = new NetworkInfoMock();
+		networkInfo.setType(ConnectivityManager.TYPE_WIFI);
+		networkInfo.setTypeName("MockWifi");
+		networkInfo.setConnected(true);
+		
+		WifiInfoMock wifiInfo = new WifiInfoMock();
+		wifiInfo.setSSID("MockSSID");
+		wifiInfo.setBSSID("MockBSSID");
+		
+		Tester tester = new TesterImpl(getContext(),
+				new ConnectivityManagerMock(networkInfo), 
+				new WifiManagerMock(wifiInfo), 
+				new StreamingTitleVerifier());
+		
+		return tester.testSimple();
+	}
+	
+	private void assertDuration(final TestInfo info, final long max) {
+		assertTrue(String.format("Took %s ms, expected less than %s ms", info.getDuration(), max), 
+				info.getDuration() < max);
+	}
+
+}
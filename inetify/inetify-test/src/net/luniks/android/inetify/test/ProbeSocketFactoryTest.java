@@ -0,0 +1,75 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.test;
+
+import java.io.IOException;
+import java.security.cert.CertificateException;
+
+import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLPeerUnverifiedException;
+
+import net.luniks.android.inetify.ProbeSocketFactory;
+import android.test.AndroidTestCase;
+
+public class ProbeSocketFactoryTest extends AndroidTestCase {
+	
+	public void testGetInstance() {
+		
+		assertSame(ProbeSocketFactory.getInstance(), ProbeSocketFactory.getInstance());
+		assertNotNull(ProbeSocketFactory.getInstance().getSessionCache());
+		assertTrue(ProbeSocketFactory.getInstance().getSupportedCipherSuites().length > 0);
+		
+	}
+	
+	public void testReset() {
+		
+		ProbeSocketFactory.reset();
+		
+		assertEquals(0, ProbeSocketFactory.getConnected());
+		
+	}
+	
+	public void testIsCertificateRejected() {
+		
+		ProbeSocketFactory.reset();
+		
+		assertFalse(ProbeSocketFactory.isCertificateRejected(new IOException("Connection refused")));
+		assertFalse(ProbeSocketFactory.isCertificateRejected(new SSLHandshakeException("Handshake failed")));
+		assertTrue(ProbeSocketFactory.isCertificateRejected(new SSLPeerUnverifiedException("No peer certificate")));
+		
+		IOException cause = new IOException("Certificate path not validated");
+		cause.initCause(new CertificateException("Trust anchor not found"));
+		SSLHandshakeException untrusted = new SSLHandshakeException("Handshake failed");
+		untrusted.initCause(cause);
+		
+		assertTrue(ProbeSocketFactory.isCertificateRejected(untrusted));
+		
+	}
+	
+	public void testIsCertificateRejectedHostnameMismatch() {
+		
+		ProbeSocketFactory.reset();
+		
+		assertFalse(ProbeSocketFactory.getHostnameVerifier().verify("www.google.de", new TestSSLSession(new byte[0])));
+		assertTrue(ProbeSocketFactory.isCertificateRejected(new IOException("Hostname www.google.de not verified")));
+		
+		ProbeSocketFactory.reset();
+		
+		assertFalse(ProbeSocketFactory.isCertificateRejected(new IOException("Hostname www.google.de not verified")));
+		
+	}
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.test;
+
+import net.luniks.android.inetify.ProbeTimings;
+import net.luniks.android.inetify.TestInfo;
+import android.test.AndroidTestCase;
+
+public class ProbeTimingsTest extends AndroidTestCase {
+	
+	public void testApplyTo() {
+		
+		ProbeTimings timings = new ProbeTimings();
+		timings.setDnsMillis(11);
+		timings.setConnectMillis(22);
+		timings.setTlsMillis(33);
+		timings.setFirstByteMillis(44);
+		timings.setDownloadMillis(55);
+		
+		TestInfo info = new TestInfo();
+		timings.applyTo(info);
+		
+		assertEquals(11, info.getDnsMillis());
+		assertEquals(22, info.getConnectMillis());
+		assertEquals(33, info.getTlsMillis());
+		assertEquals(44, info.getFirstByteMillis());
+		assertEquals(55, info.getDownloadMillis());
+		
+		new ProbeTimings().applyTo(info);
+		
+		assertEquals(0, info.getDnsMillis());
+		assertEquals(0, info.getDownloadMillis());
+	}
+	
+	public void testMillisSince() throws InterruptedException {
+		
+		long start = System.nanoTime();
+		
+		assertTrue(ProbeTimings.millisSince(start) < 100);
+		
+		Thread.sleep(100);
+		
+		assertTrue(ProbeTimings.millisSince(start) >= 100);
+	}
+	
+	public void testToString() {
+		
+		ProbeTimings timings = new ProbeTimings();
+		timings.setTlsMillis(33);
+		
+		assertTrue(String.valueOf(timings).contains("tlsMillis = 33"));
+	}
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.test;
+
+import java.util.Random;
+
+import net.luniks.android.inetify.BackoffRetryPolicy;
+import net.luniks.android.inetify.FixedRetryPolicy;
+import net.luniks.android.inetify.ProbeException;
+import net.luniks.android.inetify.RetryPolicy;
+import net.luniks.android.inetify.TestInfo;
+import android.test.AndroidTestCase;
+
+public class RetryPolicyTest extends AndroidTestCase {
+	
+	public void testFixed() {
+		
+		RetryPolicy policy = new FixedRetryPolicy(3, 10);
+		
+		assertEquals(10000, policy.getDelay(0, null));
+		assertEquals(10000, policy.getDelay(1, new TestInfo()));
+		assertEquals(10000, policy.getDelay(2, new TestInfo()));
+		assertEquals(RetryPolicy.STOP, policy.getDelay(3, new TestInfo()));
+	}
+	
+	public void testBackoffFirstAttempt() {
+		
+		RetryPolicy policy = new BackoffRetryPolicy();
+		
+		assertEquals(BackoffRetryPolicy.FIRST_DELAY, policy.getDelay(0, null));
+	}
+	
+	public void testBackoffStops() {
+		
+		RetryPolicy policy = new BackoffRetryPolicy();
+		
+		assertEquals(RetryPolicy.STOP, policy.getDelay(BackoffRetryPolicy.MAX_ATTEMPTS, getFailed(ProbeException.STAGE_DNS)));
+	}
+	
+	public void testBackoffByFailure() {
+		
+		// Without jitter, the delay is the full base delay
+		RetryPolicy policy = new BackoffRetryPolicy(new RandomMock(1.0));
+		
+		assertEquals(BackoffRetryPolicy.DNS_DELAY, policy.getDelay(1, getFailed(ProbeException.STAGE_DNS)));
+		assertEquals(BackoffRetryPolicy.CONNECT_DELAY, policy.getDelay(1, getFailed(ProbeException.STAGE_CONNECT)));
+		assertEquals(BackoffRetryPolicy.HTTP_DELAY, policy.getDelay(1, getFailed(ProbeException.STAGE_HTTP)));
+		assertEquals(BackoffRetryPolicy.TITLE_DELAY, policy.getDelay(1, getFailed(ProbeException.STAGE_CERTIFICATE)));
+		assertEquals(BackoffRetryPolicy.HTTP_DELAY, policy.getDelay(1, getFailed(ProbeException.STAGE_NONE)));
+		assertEquals(BackoffRetryPolicy.TITLE_DELAY, policy.getDelay(1, new TestInfo()));
+	}
+	
+	public void testBackoffExponential() {
+		
+		RetryPolicy policy = new BackoffRetryPolicy(new RandomMock(1.0));
+		
+		TestInfo info = getFailed(ProbeException.STAGE_HTTP);
+		
+		assertEquals(BackoffRetryPolicy.HTTP_DELAY, policy.getDelay(1, info));
+		assertEquals(BackoffRetryPolicy.HTTP_DELAY * 2, policy.getDelay(2, info));
+		assertEquals(BackoffRetryPolicy.HTTP_DELAY * 4, policy.getDelay(3, info));
+	}
+	
+	public void testBackoffJitter() {
+		
+		RetryPolicy policy = new BackoffRetryPolicy(new RandomMock(0.0));
+		
+		assertEquals(BackoffRetryPolicy.TITLE_DELAY / 2, policy.getDelay(1, new TestInfo()));
+		
+		policy = new BackoffRetryPolicy();
+		
+		for(int i = 0; i < 100; i++) {
+			long delay = policy.getDelay(2, new TestInfo());
+			assertTrue(delay >= BackoffRetryPolicy.TITLE_DELAY);
+			assertTrue(delay <= BackoffRetryPolicy.TITLE_DELAY * 2);
+		}
+	}
+	
+	private TestInfo getFailed(final int stage) {
+		TestInfo info = new TestInfo();
+		info.setException("Some Exception");
+		info.setFailedStage(stage);
+		return info;
+	}
+	
+	private class RandomMock extends Random {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final double value;
+		
+		public RandomMock(final double value) {
+			this.value = value;
+		}
+		
+		@Override
+		public double nextDouble() {
+			return value;
+		}
+	}
+
+}
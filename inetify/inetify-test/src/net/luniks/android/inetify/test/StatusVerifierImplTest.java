@@ -0,0 +1,88 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.test;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import net.luniks.android.inetify.Cancellation;
+import net.luniks.android.inetify.ProbeConnections;
+import net.luniks.android.inetify.StatusVerifier;
+import net.luniks.android.inetify.StatusVerifierImpl;
+import android.test.AndroidTestCase;
+
+public class StatusVerifierImplTest extends AndroidTestCase {
+	
+	public void testVerify() throws Exception {
+		
+		StatusVerifier statusVerifier = new StatusVerifierImpl();
+		
+		assertEquals(StatusVerifier.RESULT_OK, statusVerifier.verify("clients3.google.com/generate_204", new Cancellation(), new ProbeConnections()));
+		
+	}
+	
+	public void testVerifyInvalidProtocol() throws Exception {
+		
+		StatusVerifier statusVerifier = new StatusVerifierImpl();
+		
+		try {
+			statusVerifier.verify("invalid://clients3.google.com/generate_204", new Cancellation(), new ProbeConnections());
+			fail("Expected MalformedURLException");
+		} catch(MalformedURLException e) {
+			// Expected
+		}
+		
+	}
+	
+	public void testGetResultNoContent() throws Exception {
+		
+		URL url = new URL("http://clients3.google.com/generate_204");
+		
+		assertEquals(StatusVerifier.RESULT_OK, StatusVerifierImpl.getResult(url, 204, -1, null));
+		
+	}
+	
+	public void testGetResultContent() throws Exception {
+		
+		URL url = new URL("http://clients3.google.com/generate_204");
+		
+		assertEquals(StatusVerifier.RESULT_NOK, StatusVerifierImpl.getResult(url, 200, 1234, null));
+		assertEquals(StatusVerifier.RESULT_UNKNOWN, StatusVerifierImpl.getResult(url, 200, 0, null));
+		assertEquals(StatusVerifier.RESULT_UNKNOWN, StatusVerifierImpl.getResult(url, 200, -1, null));
+		
+	}
+	
+	public void testGetResultRedirect() throws Exception {
+		
+		URL url = new URL("http://clients3.google.com/generate_204");
+		
+		assertEquals(StatusVerifier.RESULT_NOK, StatusVerifierImpl.getResult(url, 302, -1, "http://hotspot.login/"));
+		assertEquals(StatusVerifier.RESULT_UNKNOWN, StatusVerifierImpl.getResult(url, 302, -1, "/generate_204?x"));
+		assertEquals(StatusVerifier.RESULT_UNKNOWN, StatusVerifierImpl.getResult(url, 302, -1, "https://clients3.google.com/generate_204"));
+		assertEquals(StatusVerifier.RESULT_UNKNOWN, StatusVerifierImpl.getResult(url, 302, -1, null));
+		
+	}
+	
+	public void testGetResultError() throws Exception {
+		
+		URL url = new URL("http://clients3.google.com/generate_204");
+		
+		assertEquals(StatusVerifier.RESULT_UNKNOWN, StatusVerifierImpl.getResult(url, 404, 1234, null));
+		assertEquals(StatusVerifier.RESULT_UNKNOWN, StatusVerifierImpl.getResult(url, 500, -1, null));
+		
+	}
+
+}
@@ -0,0 +1,378 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+
+import net.luniks.android.inetify.Cancellation;
+import net.luniks.android.inetify.PortalFingerprint;
+import net.luniks.android.inetify.ProbeConnections;
+import net.luniks.android.inetify.ProbeException;
+import net.luniks.android.inetify.ProbePipeline;
+import net.luniks.android.inetify.ProbeRequest;
+import net.luniks.android.inetify.ProbeTimings;
+import net.luniks.android.inetify.StreamingTitleVerifier;
+import android.test.AndroidTestCase;
+
+public class StreamingTitleVerifierTest extends AndroidTestCase {
+
+	public void testGetPageTitle() throws Exception {
+
+		StreamingTitleVerifier titleVerifier = new StreamingTitleVerifier();
+
+		String pageTitle = titleVerifier.getPageTitle("www.google.de");
+		assertEquals("google".toUpperCase(), pageTitle.toUpperCase());
+
+		String pageTitleHTTP = titleVerifier.getPageTitle("http://www.google.de");
+		assertEquals("google".toUpperCase(), pageTitleHTTP.toUpperCase());
+
+		String pageTitleHTTPS = titleVerifier.getPageTitle("https://www.google.com");
+		assertEquals("google".toUpperCase(), pageTitleHTTPS.toUpperCase());
+
+	}
+
+	public void testGetPageTitleInvalidProtocol() throws Exception {
+
+		StreamingTitleVerifier titleVerifier = new StreamingTitleVerifier();
+
+		try {
+			titleVerifier.getPageTitle("invalid://www.google.de");
+			fail("Expected MalformedURLException");
+		} catch(MalformedURLException e) {
+			// Expected
+		}
+
+	}
+
+	public void testGetPageTitleCancelled() throws Exception {
+		
+		// Accepts connections but never answers
+		final ServerSocket serverSocket = new ServerSocket(0);
+		Thread serverThread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					while(true) {
+						serverSocket.accept();
+					}
+				} catch(IOException e) {
+					// Closed
+				}
+			}
+		};
+		serverThread.start();
+		
+		final Cancellation cancellation = new Cancellation();
+		Thread cancelThread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(500);
+					cancellation.cancel();
+				} catch (InterruptedException e) {
+					fail("Cancel thread should have not been interrupted");
+				}
+			}
+		};
+		cancelThread.start();
+		
+		StreamingTitleVerifier titleVerifier = new StreamingTitleVerifier();
+		
+		long start = System.currentTimeMillis();
+		try {
+			titleVerifier.getPageTitle(new ProbeRequest(String.format("http://127.0.0.1:%s", serverSocket.getLocalPort()), cancellation, new ProbeConnections()));
+			fail("Expected ProbeException");
+		} catch(ProbeException e) {
+			// Expected
+		} finally {
+			serverSocket.close();
+		}
+		
+		// Cancelling should abort the request well before it times out
+		long millis = System.currentTimeMillis() - start;
+		assertTrue(millis < ProbePipeline.HTTP_TIMEOUT);
+		
+	}
+	
+	public void testGetPageTitleAlreadyCancelled() throws Exception {
+		
+		Cancellation cancellation = new Cancellation();
+		cancellation.cancel();
+		
+		StreamingTitleVerifier titleVerifier = new StreamingTitleVerifier();
+		
+		try {
+			titleVerifier.getPageTitle(new ProbeRequest("www.google.de", cancellation, new ProbeConnections()));
+			fail("Expected ProbeException");
+		} catch(ProbeException e) {
+			assertEquals(ProbeException.STAGE_DNS, e.getStage());
+		}
+		
+	}
+
+	public void testGetPageTitleFingerprint() throws Exception {
+		
+		PageServer server = new PageServer("<html><head><title>Portal Login</title></head></html>", null);
+		
+		StreamingTitleVerifier titleVerifier = new StreamingTitleVerifier();
+		PortalFingerprint fingerprint = new PortalFingerprint();
+		
+		try {
+			assertEquals("Portal Login", titleVerifier.getPageTitle(newRequest(server.getUrl(), fingerprint)));
+			
+			assertFalse(fingerprint.getIsMatched());
+			assertTrue(fingerprint.isKnown());
+			assertEquals("Portal Login", fingerprint.getPageTitle());
+			assertEquals("login", fingerprint.getSignature());
+			assertNull(fingerprint.getEtag());
+			assertNull(fingerprint.getLocation());
+			
+			assertEquals("Portal Login", titleVerifier.getPageTitle(newRequest(server.getUrl(), fingerprint)));
+			
+			assertTrue(fingerprint.getIsMatched());
+			
+			// Different page
+			server.setPage("<html><head><title>Other Login</title></head></html>");
+			
+			assertEquals("Other Login", titleVerifier.getPageTitle(newRequest(server.getUrl(), fingerprint)));
+			
+			assertFalse(fingerprint.getIsMatched());
+			assertEquals("Other Login", fingerprint.getPageTitle());
+			
+			// No portal signature
+			server.setPage("<html><head><title>Google</title></head></html>");
+			
+			assertEquals("Google", titleVerifier.getPageTitle(newRequest(server.getUrl(), fingerprint)));
+			
+			assertNull(fingerprint.getSignature());
+		} finally {
+			server.close();
+		}
+	}
+	
+	public void testGetPageTitleBodySignature() throws Exception {
+		
+		// Normal page asking to log in
+		PageServer server = new PageServer("<html><head><title>Example</title></head>" + 
+				"<body><a href=\"/login\">Log in</a> to read the terms of use</body></html>", null);
+		
+		StreamingTitleVerifier titleVerifier = new StreamingTitleVerifier();
+		PortalFingerprint fingerprint = new PortalFingerprint();
+		
+		try {
+			assertEquals("Example", titleVerifier.getPageTitle(newRequest(server.getUrl(), fingerprint)));
+			
+			assertNull(fingerprint.getSignature());
+			
+			// Vendor specific marker in the body
+			server.setPage("<html><head><title>Welcome</title></head>" + 
+					"<body><form action=\"http://10.5.50.1/login\">MikroTik</form></body></html>");
+			
+			assertEquals("Welcome", titleVerifier.getPageTitle(newRequest(server.getUrl(), fingerprint)));
+			
+			assertEquals("mikrotik", fingerprint.getSignature());
+		} finally {
+			server.close();
+		}
+	}
+	
+	public void testGetPageTitleNotModified() throws Exception {
+		
+		PageServer server = new PageServer("<html><head><title>Portal Login</title></head></html>", "\"abc\"");
+		
+		StreamingTitleVerifier titleVerifier = new StreamingTitleVerifier();
+		PortalFingerprint fingerprint = new PortalFingerprint();
+		
+		try {
+			assertEquals("Portal Login", titleVerifier.getPageTitle(newRequest(server.getUrl(), fingerprint)));
+			
+			assertFalse(fingerprint.getIsMatched());
+			assertEquals("\"abc\"", fingerprint.getEtag());
+			assertEquals(0, server.getNotModifiedCount());
+			
+			assertEquals("Portal Login", titleVerifier.getPageTitle(newRequest(server.getUrl(), fingerprint)));
+			
+			assertTrue(fingerprint.getIsMatched());
+			assertEquals(1, server.getNotModifiedCount());
+		} finally {
+			server.close();
+		}
+	}
+	
+	public void testGetPageTitleTimings() throws Exception {
+		
+		PageServer server = new PageServer("<html><head><title>Timed</title></head></html>", null);
+		server.setDelay(200);
+		
+		StreamingTitleVerifier titleVerifier = new StreamingTitleVerifier();
+		ProbeRequest request = new ProbeRequest(server.getUrl(), new Cancellation(), new ProbeConnections());
+		ProbeTimings timings = request.getTimings();
+		
+		try {
+			assertEquals("Timed", titleVerifier.getPageTitle(request));
+			
+			// The server waits before answering
+			assertTrue(timings.getFirstByteMillis() >= 200);
+			assertTrue(timings.getFirstByteMillis() < ProbePipeline.HTTP_TIMEOUT);
+			assertTrue(timings.getConnectMillis() < ProbePipeline.CONNECT_TIMEOUT);
+			assertEquals(0, timings.getTlsMillis());
+		} finally {
+			server.close();
+		}
+	}
+	
+	public void testGetLocation() throws Exception {
+		
+		URL url = new URL("http://www.google.de");
+		
+		assertNull(StreamingTitleVerifier.getLocation(url, null));
+		assertNull(StreamingTitleVerifier.getLocation(url, new URL("http://www.google.de")));
+		assertEquals("http://portal.net/login", StreamingTitleVerifier.getLocation(url, new URL("http://portal.net/login")));
+		
+	}
+
+	public void testIsExpectedTitle() {
+
+		StreamingTitleVerifier titleVerifier = new StreamingTitleVerifier();
+
+		String pageTitle = "Google";
+
+		assertFalse(titleVerifier.isExpectedTitle(null, pageTitle));
+		assertFalse(titleVerifier.isExpectedTitle("", pageTitle));
+		assertFalse(titleVerifier.isExpectedTitle(" ", pageTitle));
+		assertFalse(titleVerifier.isExpectedTitle("Some Title", pageTitle));
+		assertTrue(titleVerifier.isExpectedTitle("oog", pageTitle));
+		assertTrue(titleVerifier.isExpectedTitle("Google", pageTitle));
+		assertTrue(titleVerifier.isExpectedTitle("gOOGLE", pageTitle));
+
+	}
+
+	public void testGetCharset() {
+
+		assertNull(StreamingTitleVerifier.getCharset(null));
+		assertNull(StreamingTitleVerifier.getCharset("text/html"));
+		assertNull(StreamingTitleVerifier.getCharset("text/html; charset="));
+		assertEquals("UTF-8", StreamingTitleVerifier.getCharset("text/html; charset=UTF-8"));
+		assertEquals("ISO-8859-1", StreamingTitleVerifier.getCharset("text/html;CHARSET=\"ISO-8859-1\"; foo=bar"));
+
+	}
+
+	/**
+	 * Serves the same page on a local port, answering with 304 Not Modified
+	 * to a request with the ETag of the page, if it has one.
+	 */
+	private ProbeRequest newRequest(final String server, final PortalFingerprint fingerprint) {
+		ProbeRequest request = new ProbeRequest(server, new Cancellation(), new ProbeConnections());
+		request.setFingerprint(fingerprint);
+		return request;
+	}
+	
+	private static class PageServer extends Thread {
+		
+		private final ServerSocket serverSocket;
+		private final String etag;
+		private volatile String page;
+		private volatile int notModifiedCount = 0;
+		private volatile long delay = 0;
+		
+		private PageServer(final String page, final String etag) throws IOException {
+			this.serverSocket = new ServerSocket(0);
+			this.page = page;
+			this.etag = etag;
+			this.setDaemon(true);
+			this.start();
+		}
+		
+		private String getUrl() {
+			return String.format("http://127.0.0.1:%s", serverSocket.getLocalPort());
+		}
+		
+		private void setPage(final String page) {
+			this.page = page;
+		}
+		
+		private void setDelay(final long delay) {
+			this.delay = delay;
+		}
+		
+		private int getNotModifiedCount() {
+			return notModifiedCount;
+		}
+		
+		private void close() throws IOException {
+			serverSocket.close();
+		}
+		
+		@Override
+		public void run() {
+			try {
+				while(true) {
+					Socket socket = serverSocket.accept();
+					try {
+						serve(socket);
+					} finally {
+						socket.close();
+					}
+				}
+			} catch(IOException e) {
+				// Closed
+			}
+		}
+		
+		private void serve(final Socket socket) throws IOException {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
+			boolean notModified = false;
+			String line;
+			while((line = reader.readLine()) != null && line.length() > 0) {
+				if(etag != null && line.equalsIgnoreCase("If-None-Match: " + etag)) {
+					notModified = true;
+				}
+			}
+			
+			try {
+				Thread.sleep(delay);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			
+			OutputStream out = socket.getOutputStream();
+			if(notModified) {
+				notModifiedCount++;
+				out.write("HTTP/1.1 304 Not Modified\r\nConnection: close\r\n\r\n".getBytes("ISO-8859-1"));
+			} else {
+				byte[] body = page.getBytes("UTF-8");
+				StringBuilder header = new StringBuilder("HTTP/1.1 200 OK\r\n");
+				header.append("Content-Type: text/html; charset=UTF-8\r\n");
+				header.append("Content-Length: ").append(body.length).append("\r\n");
+				if(etag != null) {
+					header.append("ETag: ").append(etag).append("\r\n");
+				}
+				header.append("Connection: close\r\n\r\n");
+				out.write(header.toString().getBytes("ISO-8859-1"));
+				out.write(body);
+			}
+			out.flush();
+		}
+	}
+
+}
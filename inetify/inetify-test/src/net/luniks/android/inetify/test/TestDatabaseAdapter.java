@@ -22,6 +22,8 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import net.luniks.android.inetify.DatabaseAdapter;
+import net.luniks.android.inetify.DatabaseAdapterImpl;
+import net.luniks.android.inetify.PortalFingerprint;
 import net.luniks.android.inetify.TestInfo;
 import net.luniks.android.inetify.WifiLocation;
 import android.database.Cursor;
@@ -31,6 +33,9 @@ public class TestDatabaseAdapter implements DatabaseAdapter {
 	
 	private final Map<String, String> ignoredWifis = new ConcurrentHashMap<String, String>();
 	private final Map<String, String> wifiLocations = new ConcurrentHashMap<String, String>();
+	private final Map<String, TestInfo> verdicts = new ConcurrentHashMap<String, TestInfo>();
+	private final Map<String, PortalFingerprint> fingerprints = new ConcurrentHashMap<String, PortalFingerprint>();
+	private final Map<Integer, Long> traffic = new ConcurrentHashMap<Integer, Long>();
 	private final AtomicBoolean isOpen = new AtomicBoolean(false);
 	
 	private WifiLocation nearestLocation;
@@ -104,6 +109,14 @@ public class TestDatabaseAdapter implements DatabaseAdapter {
 		isOpen.set(true);
 		return nearestLocation;
 	}
+
+	public WifiLocation getNearestLocationTo(Location location, float maxDistance) {
+		isOpen.set(true);
+		if(nearestLocation == null || nearestLocation.getDistance() > maxDistance) {
+			return null;
+		}
+		return nearestLocation;
+	}
 	
 	public boolean updateTestResult(long timestamp, int type, String subtype, boolean status) {
 		isOpen.set(true);
@@ -116,10 +129,92 @@ public class TestDatabaseAdapter implements DatabaseAdapter {
 		return true;
 	}
 
+	public boolean updateTestResult(TestInfo info) {
+		isOpen.set(true);
+		lastTestResult = info;
+		return true;
+	}
+
 	public TestInfo fetchTestResult() {
 		isOpen.set(true);
 		return lastTestResult;
 	}
+	
+	public Cursor fetchTestResults(long from, long to) {
+		isOpen.set(true);
+		return null;
+	}
+	
+	public Cursor fetchTestResults(String ssid) {
+		isOpen.set(true);
+		return null;
+	}
+
+	public boolean updateVerdict(TestInfo info) {
+		isOpen.set(true);
+		if(info == null || info.getExtra() == null || info.getExtra2() == null) {
+			return false;
+		}
+		verdicts.put(info.getExtra2(), info);
+		return true;
+	}
+
+	public TestInfo fetchVerdict(String bssid) {
+		isOpen.set(true);
+		if(bssid == null) {
+			return null;
+		}
+		return verdicts.get(bssid);
+	}
+
+	public boolean updateFingerprint(String ssid, String bssid, String site, PortalFingerprint fingerprint) {
+		isOpen.set(true);
+		if(ssid == null || bssid == null || site == null || fingerprint == null) {
+			return false;
+		}
+		fingerprints.put(bssid + " " + site, fingerprint);
+		return true;
+	}
+
+	public PortalFingerprint fetchFingerprint(String bssid, String site) {
+		isOpen.set(true);
+		if(bssid == null || site == null) {
+			return null;
+		}
+		return fingerprints.get(bssid + " " + site);
+	}
+
+	public boolean addTraffic(long timestamp, long bytes) {
+		isOpen.set(true);
+		if(bytes <= 0) {
+			return false;
+		}
+		int day = DatabaseAdapterImpl.getDay(timestamp);
+		traffic.put(day, fetchTraffic(day, day) + bytes);
+		return true;
+	}
+
+	public long fetchDailyTraffic(long timestamp) {
+		isOpen.set(true);
+		int day = DatabaseAdapterImpl.getDay(timestamp);
+		return fetchTraffic(day, day);
+	}
+
+	public long fetchMonthlyTraffic(long timestamp) {
+		isOpen.set(true);
+		int month = DatabaseAdapterImpl.getDay(timestamp) / 100 * 100;
+		return fetchTraffic(month + 1, month + 31);
+	}
+	
+	private long fetchTraffic(int first, int last) {
+		long bytes = 0;
+		for(Entry<Integer, Long> entry : traffic.entrySet()) {
+			if(entry.getKey() >= first && entry.getKey() <= last) {
+				bytes += entry.getValue();
+			}
+		}
+		return bytes;
+	}
 
 	public int getDatabaseVersion() {
 		// TODO Auto-generated method stub
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTP server on a local port standing in for an internet site, answering every
+ * request according to a scripted scenario, so that probes can be tested offline,
+ * including when things go wrong on the way. Counts the bytes of the responses
+ * that could be written, which is about what the client read plus what fits in
+ * the socket buffers.
+ * Serves one request per connection, one connection after the other.
+ */
+public class TestHttpServer extends Thread {
+	
+	/** Answers with the page right away */
+	public static final int SCENARIO_OK = 0;
+	
+	/** Answers with the page after the delay */
+	public static final int SCENARIO_SLOW_HEADERS = 1;
+	
+	/** Sends the headers right away and the page in chunks of TRICKLE_BYTES, waiting the delay before each */
+	public static final int SCENARIO_TRICKLE = 2;
+	
+	/** Sends the headers and the first half of the page, then resets the connection */
+	public static final int SCENARIO_RESET = 3;
+	
+	/** Redirects to PORTAL_PATH and answers with PORTAL_PAGE there */
+	public static final int SCENARIO_REDIRECT = 4;
+	
+	/** Sends a page of HUGE_BYTES without a title */
+	public static final int SCENARIO_HUGE = 5;
+	
+	/** Sends the page encoded in UTF-8 but declares it as ISO-8859-1 */
+	public static final int SCENARIO_WRONG_CHARSET = 6;
+	
+	/** Answers a TLS client in plain text */
+	public static final int SCENARIO_TLS_PLAINTEXT = 7;
+	
+	/** Closes the connection of a TLS client during the handshake */
+	public static final int SCENARIO_TLS_CLOSE = 8;
+	
+	/** Page served by default */
+	public static final String PAGE = "<html><head><title>Google</title></head><body><p>Welcome</p></body></html>";
+	
+	/** Path redirected to */
+	public static final String PORTAL_PATH = "/portal";
+	
+	/** Page served at PORTAL_PATH */
+	public static final String PORTAL_PAGE = "<html><head><title>Hotspot Login</title></head><body><form></form></body></html>";
+	
+	/** Size of a huge page */
+	public static final int HUGE_BYTES = 8 * 1024 * 1024;
+	
+	/** Size of the chunks when trickling */
+	public static final int TRICKLE_BYTES = 16;
+	
+	/** Size of the chunks of a huge page */
+	private static final int CHUNK_BYTES = 8192;
+	
+	/** Size of the send buffer of the connections, so that not too much is buffered */
+	private static final int SEND_BUFFER_BYTES = 16 * 1024;
+	
+	private final ServerSocket serverSocket;
+	private final int scenario;
+	private volatile String page = PAGE;
+	private volatile long delay = 0;
+	private final AtomicInteger requestCount = new AtomicInteger(0);
+	private final AtomicLong bytesWritten = new AtomicLong(0);
+	
+	public TestHttpServer(final int scenario) throws IOException {
+		this.serverSocket = new ServerSocket(0);
+		this.scenario = scenario;
+		this.setDaemon(true);
+		this.start();
+	}
+	
+	public String getUrl() {
+		return String.format("http://127.0.0.1:%s/", serverSocket.getLocalPort());
+	}
+	
+	public String getHttpsUrl() {
+		return String.format("https://127.0.0.1:%s/", serverSocket.getLocalPort());
+	}
+	
+	public void setPage(final String page) {
+		this.page = page;
+	}
+	
+	public void setDelay(final long delay) {
+		this.delay = delay;
+	}
+	
+	public int getRequestCount() {
+		return requestCount.get();
+	}
+	
+	public long getBytesWritten() {
+		return bytesWritten.get();
+	}
+	
+	public void close() throws IOException {
+		serverSocket.close();
+	}
+	
+	@Override
+	public void run() {
+		try {
+			while(true) {
+				Socket socket = serverSocket.accept();
+				try {
+					socket.setSendBufferSize(SEND_BUFFER_BYTES);
+					serve(socket);
+				} catch(IOException e) {
+					// Client went away
+				} finally {
+					socket.close();
+				}
+			}
+		} catch(IOException e) {
+			// Closed
+		}
+	}
+	
+	private void serve(final Socket socket) throws IOException {
+		OutputStream out = socket.getOutputStream();
+		
+		if(scenario == SCENARIO_TLS_CLOSE) {
+			return;
+		}
+		if(scenario == SCENARIO_TLS_PLAINTEXT) {
+			// Does not wait for a request that would never be complete
+			writeHeader(out, "200 OK", "text/html; charset=UTF-8", page.getBytes("UTF-8").length);
+			write(out, page.getBytes("UTF-8"));
+			return;
+		}
+		
+		String path = readRequest(socket);
+		if(path == null) {
+			return;
+		}
+		requestCount.incrementAndGet();
+		
+		byte[] body = page.getBytes("UTF-8");
+		switch(scenario) {
+		case SCENARIO_SLOW_HEADERS:
+			sleep();
+			writeHeader(out, "200 OK", "text/html; charset=UTF-8", body.length);
+			write(out, body);
+			break;
+		case SCENARIO_TRICKLE:
+			writeHeader(out, "200 OK", "text/html; charset=UTF-8", body.length);
+			for(int offset = 0; offset < body.length; offset += TRICKLE_BYTES) {
+				sleep();
+				write(out, body, offset, Math.min(TRICKLE_BYTES, body.length - offset));
+			}
+			break;
+		case SCENARIO_RESET:
+			writeHeader(out, "200 OK", "text/html; charset=UTF-8", body.length);
+			write(out, body, 0, body.length / 2);
+			// Sends RST instead of FIN
+			socket.setSoLinger(true, 0);
+			break;
+		case SCENARIO_REDIRECT:
+			if(path.startsWith(PORTAL_PATH)) {
+				body = PORTAL_PAGE.getBytes("UTF-8");
+				writeHeader(out, "200 OK", "text/html; charset=UTF-8", body.length);
+				write(out, body);
+			} else {
+				String location = String.format("Location: http://127.0.0.1:%s%s?redirect=%s\r\n", 
+						serverSocket.getLocalPort(), PORTAL_PATH, path);
+				write(out, ("HTTP/1.1 302 Found\r\n" + location + 
+						"Content-Length: 0\r\nConnection: close\r\n\r\n").getBytes("ISO-8859-1"));
+			}
+			break;
+		case SCENARIO_HUGE:
+			writeHeader(out, "200 OK", "text/html; charset=UTF-8", HUGE_BYTES);
+			byte[] start = "<html><head></head><body>".getBytes("UTF-8");
+			write(out, start);
+			byte[] chunk = new byte[CHUNK_BYTES];
+			for(int i = 0; i < chunk.length; i++) {
+				chunk[i] = (byte)(i % 80 == 79 ? '\n' : 'x');
+			}
+			for(long total = start.length; total < HUGE_BYTES; total += CHUNK_BYTES) {
+				write(out, chunk, 0, (int)Math.min(CHUNK_BYTES, HUGE_BYTES - total));
+			}
+			break;
+		case SCENARIO_WRONG_CHARSET:
+			writeHeader(out, "200 OK", "text/html; charset=ISO-8859-1", body.length);
+			write(out, body);
+			break;
+		default:
+			writeHeader(out, "200 OK", "text/html; charset=UTF-8", body.length);
+			write(out, body);
+		}
+	}
+	
+	/**
+	 * Reads the request headers and returns the requested path, or null if the
+	 * client went away before the request was complete.
+	 */
+	private String readRequest(final Socket socket) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
+		String requestLine = reader.readLine();
+		if(requestLine == null) {
+			return null;
+		}
+		String line;
+		while((line = reader.readLine()) != null) {
+			if(line.length() == 0) {
+				String[] parts = requestLine.split(" ");
+				return parts.length > 1 ? parts[1] : "/";
+			}
+		}
+		return null;
+	}
+	
+	private void writeHeader(final OutputStream out, final String status, 
+			final String contentType, final long contentLength) throws IOException {
+		StringBuilder header = new StringBuilder("HTTP/1.1 ").append(status).append("\r\n");
+		header.append("Content-Type: ").append(contentType).append("\r\n");
+		header.append("Content-Length: ").append(contentLength).append("\r\n");
+		header.append("Connection: close\r\n\r\n");
+		write(out, header.toString().getBytes("ISO-8859-1"));
+	}
+	
+	private void write(final OutputStream out, final byte[] bytes) throws IOException {
+		write(out, bytes, 0, bytes.length);
+	}
+	
+	private void write(final OutputStream out, final byte[] bytes, final int offset, final int length) throws IOException {
+		out.write(bytes, offset, length);
+		out.flush();
+		bytesWritten.addAndGet(length);
+	}
+	
+	private void sleep() {
+		try {
+			Thread.sleep(delay);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -15,8 +15,11 @@
  */
 package net.luniks.android.inetify.test;
 
+import java.util.Arrays;
 import java.util.Date;
 
+import net.luniks.android.inetify.ProbeException;
+import net.luniks.android.inetify.StatusVerifier;
 import net.luniks.android.inetify.TestInfo;
 import android.net.ConnectivityManager;
 import android.os.Parcel;
@@ -46,6 +49,26 @@ public class TestInfoTest extends AndroidTestCase {
 		assertTrue(string.contains("title = TestTitle"));
 		assertTrue(string.contains("type = 0"));
 		assertTrue(string.contains("typeName = TestTypeName"));
+		assertTrue(string.contains("quickCheck = " + StatusVerifier.RESULT_OK));
+		assertTrue(string.contains("probedSites = [TestSite, TestSite2]"));
+		assertTrue(string.contains("probeLatencies = [123, -1]"));
+		assertTrue(string.contains("failedStage = " + ProbeException.STAGE_DNS));
+		assertTrue(string.contains("failedStageMillis = 456"));
+		assertTrue(string.contains("attempts = 2"));
+		assertTrue(string.contains("duration = 789"));
+		assertTrue(string.contains("knownPortal = true"));
+		assertTrue(string.contains("verdict = " + TestInfo.VERDICT_PORTAL));
+		assertTrue(string.contains("signature = TestSignature"));
+		assertTrue(string.contains("dnsMillis = 11"));
+		assertTrue(string.contains("connectMillis = 22"));
+		assertTrue(string.contains("tlsMillis = 33"));
+		assertTrue(string.contains("firstByteMillis = 44"));
+		assertTrue(string.contains("downloadMillis = 55"));
+		assertTrue(string.contains("handshakes = 3"));
+		assertTrue(string.contains("reusedConnections = 4"));
+		assertTrue(string.contains("resumedSessions = 5"));
+		assertTrue(string.contains("sentBytes = 321"));
+		assertTrue(string.contains("receivedBytes = 4321"));
 		
 	}
 	
@@ -106,6 +129,26 @@ public class TestInfoTest extends AndroidTestCase {
 		assertEquals("TestTitle", info.getTitle());
 		assertEquals(0, info.getType());
 		assertEquals("TestTypeName", info.getTypeName());
+		assertEquals(StatusVerifier.RESULT_OK, info.getQuickCheck());
+		assertTrue(Arrays.equals(new String[] {"TestSite", "TestSite2"}, info.getProbedSites()));
+		assertTrue(Arrays.equals(new long[] {123, -1}, info.getProbeLatencies()));
+		assertEquals(ProbeException.STAGE_DNS, info.getFailedStage());
+		assertEquals(456, info.getFailedStageMillis());
+		assertEquals(2, info.getAttempts());
+		assertEquals(789, info.getDuration());
+		assertTrue(info.getIsKnownPortal());
+		assertEquals(TestInfo.VERDICT_PORTAL, info.getVerdict());
+		assertEquals("TestSignature", info.getSignature());
+		assertEquals(11, info.getDnsMillis());
+		assertEquals(22, info.getConnectMillis());
+		assertEquals(33, info.getTlsMillis());
+		assertEquals(44, info.getFirstByteMillis());
+		assertEquals(55, info.getDownloadMillis());
+		assertEquals(3, info.getHandshakes());
+		assertEquals(4, info.getReusedConnections());
+		assertEquals(5, info.getResumedSessions());
+		assertEquals(321, info.getSentBytes());
+		assertEquals(4321, info.getReceivedBytes());
 	}
 	
 	private TestInfo getTestInfoAllSet() {
@@ -122,6 +165,26 @@ public class TestInfoTest extends AndroidTestCase {
 		info.setTitle("TestTitle");
 		info.setType(0);
 		info.setTypeName("TestTypeName");
+		info.setQuickCheck(StatusVerifier.RESULT_OK);
+		info.setProbedSites(new String[] {"TestSite", "TestSite2"});
+		info.setProbeLatencies(new long[] {123, -1});
+		info.setFailedStage(ProbeException.STAGE_DNS);
+		info.setFailedStageMillis(456);
+		info.setAttempts(2);
+		info.setDuration(789);
+		info.setIsKnownPortal(true);
+		info.setVerdict(TestInfo.VERDICT_PORTAL);
+		info.setSignature("TestSignature");
+		info.setDnsMillis(11);
+		info.setConnectMillis(22);
+		info.setTlsMillis(33);
+		info.setFirstByteMillis(44);
+		info.setDownloadMillis(55);
+		info.setHandshakes(3);
+		info.setReusedConnections(4);
+		info.setResumedSessions(5);
+		info.setSentBytes(321);
+		info.setReceivedBytes(4321);
 		
 		return info;
 	}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.test;
+
+import java.security.Principal;
+import java.security.cert.Certificate;
+
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+
+public class TestSSLSession implements SSLSession {
+	
+	private final byte[] id;
+	
+	public TestSSLSession(final byte[] id) {
+		this.id = id;
+	}
+
+	public byte[] getId() {
+		return id;
+	}
+
+	public SSLSessionContext getSessionContext() {
+		return null;
+	}
+
+	public long getCreationTime() {
+		return 0;
+	}
+
+	public long getLastAccessedTime() {
+		return 0;
+	}
+
+	public void invalidate() {
+	}
+
+	public boolean isValid() {
+		return true;
+	}
+
+	public void putValue(final String name, final Object value) {
+	}
+
+	public Object getValue(final String name) {
+		return null;
+	}
+
+	public void removeValue(final String name) {
+	}
+
+	public String[] getValueNames() {
+		return new String[0];
+	}
+
+	public Certificate[] getPeerCertificates() throws SSLPeerUnverifiedException {
+		throw new SSLPeerUnverifiedException("No peer certificates");
+	}
+
+	public Certificate[] getLocalCertificates() {
+		return null;
+	}
+
+	// Required by SSLSession, but the javax.security.cert API it returns is deprecated for removal
+	@SuppressWarnings({"deprecation", "removal"})
+	public javax.security.cert.X509Certificate[] getPeerCertificateChain() throws SSLPeerUnverifiedException {
+		throw new SSLPeerUnverifiedException("No peer certificates");
+	}
+
+	public Principal getPeerPrincipal() throws SSLPeerUnverifiedException {
+		throw new SSLPeerUnverifiedException("No peer certificates");
+	}
+
+	public Principal getLocalPrincipal() {
+		return null;
+	}
+
+	public String getCipherSuite() {
+		return "SSL_NULL_WITH_NULL_NULL";
+	}
+
+	public String getProtocol() {
+		return "TLSv1";
+	}
+
+	public String getPeerHost() {
+		return null;
+	}
+
+	public int getPeerPort() {
+		return -1;
+	}
+
+	public int getPacketBufferSize() {
+		return 0;
+	}
+
+	public int getApplicationBufferSize() {
+		return 0;
+	}
+
+}
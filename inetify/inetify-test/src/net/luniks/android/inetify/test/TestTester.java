@@ -18,6 +18,8 @@ package net.luniks.android.inetify.test;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import net.luniks.android.inetify.Cancellation;
+import net.luniks.android.inetify.RetryPolicy;
 import net.luniks.android.inetify.TestInfo;
 import net.luniks.android.inetify.Tester;
 import net.luniks.android.interfaces.IWifiInfo;
@@ -28,6 +30,7 @@ public class TestTester implements Tester {
 	private TestInfo info = null;
 	private AtomicBoolean done = new AtomicBoolean(false);
 	private AtomicInteger testCount = new AtomicInteger(0);
+	private AtomicInteger monitorCount = new AtomicInteger(0);
 	private AtomicBoolean cancelled = new AtomicBoolean(false);
 	private AtomicInteger cancelCount = new AtomicInteger(0);
 	private AtomicBoolean throwException = new AtomicBoolean(false);
@@ -51,10 +54,18 @@ public class TestTester implements Tester {
 	}
 
 	public TestInfo testWifi(int retries, int delay) {
+		return testWifi(null);
+	}
+
+	public TestInfo testWifi(RetryPolicy retryPolicy) {
+		return testWifi(retryPolicy, new Cancellation());
+	}
+
+	public TestInfo testWifi(RetryPolicy retryPolicy, Cancellation cancellation) {
 		done.set(false);
 		testCount.incrementAndGet();
 		cancelled.set(false);
-		while(! done.get() && ! cancelled.get()) {
+		while(! done.get() && ! cancelled.get() && ! cancellation.isCancelled()) {
 			if(throwException.get()) {
 				try {
 					throw(new RuntimeException("Tester Exception"));
@@ -72,6 +83,11 @@ public class TestTester implements Tester {
 		return info;
 	}
 	
+	public TestInfo testMonitor(Cancellation cancellation) {
+		monitorCount.incrementAndGet();
+		return testWifi(null, cancellation);
+	}
+	
 	public boolean isWifiConnectedOrConnecting() {
 		return wifiConnected.get();
 	}
@@ -119,6 +135,10 @@ public class TestTester implements Tester {
 		return testCount.get();
 	}
 	
+	public int monitorCount() {
+		return monitorCount.get();
+	}
+	
 	public boolean cancelled() {
 		return cancelled.get();
 	}
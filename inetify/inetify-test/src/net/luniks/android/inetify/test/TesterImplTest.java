@@ -15,6 +15,24 @@
  */
 package net.luniks.android.inetify.test;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.luniks.android.impl.ClockImpl;
+import net.luniks.android.inetify.BackoffRetryPolicy;
+import net.luniks.android.inetify.Cancellation;
+import net.luniks.android.inetify.FixedRetryPolicy;
+import net.luniks.android.inetify.PortalFingerprint;
+import net.luniks.android.inetify.ProbeConnections;
+import net.luniks.android.inetify.ProbeCoordinator;
+import net.luniks.android.inetify.ProbeRequest;
+import net.luniks.android.inetify.RetryPolicy;
+import net.luniks.android.inetify.Settings;
+import net.luniks.android.inetify.StatusVerifier;
 import net.luniks.android.inetify.TestInfo;
 import net.luniks.android.inetify.Tester;
 import net.luniks.android.inetify.TesterImpl;
@@ -23,13 +41,39 @@ import net.luniks.android.inetify.TitleVerifierImpl;
 import net.luniks.android.interfaces.IWifiInfo;
 import net.luniks.android.test.mock.ConnectivityManagerMock;
 import net.luniks.android.test.mock.NetworkInfoMock;
+import net.luniks.android.test.mock.VirtualClock;
 import net.luniks.android.test.mock.WifiInfoMock;
 import net.luniks.android.test.mock.WifiManagerMock;
+import android.content.SharedPreferences;
 import android.net.ConnectivityManager;
+import android.preference.PreferenceManager;
 import android.test.AndroidTestCase;
 
 public class TesterImplTest extends AndroidTestCase {
 	
+	private SharedPreferences sharedPreferences;
+	
+	private String server;
+	
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this.getContext());
+		server = sharedPreferences.getString(Settings.INTERNET_SERVER, null);
+		setQuickCheck(false);
+		setBudget("0");
+		ProbeCoordinator.getInstance().clear();
+	}
+	
+	@Override
+	public void tearDown() throws Exception {
+		setQuickCheck(false);
+		setBudget("0");
+		ProbeCoordinator.getInstance().clear();
+		sharedPreferences.edit().putString(Settings.INTERNET_SERVER, server).commit();
+		super.tearDown();
+	}
+	
 	public void testIsWifiConnectedTrue() {
 		
 		NetworkInfoMock networkInfo = new NetworkInfoMock();
@@ -500,12 +544,598 @@ public class TesterImplTest extends AndroidTestCase {
 		
 	}
 	
+	public void testTestWifiQuickCheckOK() {
+		
+		setQuickCheck(true);
+		
+		TitleVerifierMock titleVerifier = new TitleVerifierMock(false, "MockTitle", null);
+		StatusVerifierMock statusVerifier = new StatusVerifierMock(StatusVerifier.RESULT_OK, null);
+		
+		Tester tester = new TesterImpl(getContext(),
+				new ConnectivityManagerMock(getWifiNetworkInfo()), 
+				new WifiManagerMock(getWifiInfo()), 
+				titleVerifier, statusVerifier, null, new ClockImpl());
+		
+		TestInfo info = tester.testWifi(3, 0);
+		
+		assertTrue(info.getIsExpectedTitle());
+		assertEquals(StatusVerifier.RESULT_OK, info.getQuickCheck());
+		assertEquals("http://quick.server", info.getSite());
+		assertEquals("", info.getPageTitle());
+		assertEquals("MockSSID", info.getExtra());
+		assertNull(info.getException());
+		
+		assertEquals(1, statusVerifier.getTestCount());
+		assertEquals(0, titleVerifier.getTestCount());
+	}
+	
+	public void testTestWifiQuickCheckNOK() {
+		
+		setQuickCheck(true);
+		
+		TitleVerifierMock titleVerifier = new TitleVerifierMock(true, "MockTitle", null);
+		StatusVerifierMock statusVerifier = new StatusVerifierMock(StatusVerifier.RESULT_NOK, null);
+		
+		Tester tester = new TesterImpl(getContext(),
+				new ConnectivityManagerMock(getWifiNetworkInfo()), 
+				new WifiManagerMock(getWifiInfo()), 
+				titleVerifier, statusVerifier, null, new ClockImpl());
+		
+		TestInfo info = tester.testWifi(3, 0);
+		
+		// Not OK is not conclusive, only the page title tells
+		assertTrue(info.getIsExpectedTitle());
+		assertEquals(StatusVerifier.RESULT_UNKNOWN, info.getQuickCheck());
+		assertEquals("MockTitle", info.getPageTitle());
+		assertNull(info.getException());
+		
+		assertEquals(1, statusVerifier.getTestCount());
+		assertEquals(1, titleVerifier.getTestCount());
+	}
+	
+	public void testTestWifiQuickCheckUnknown() {
+		
+		setQuickCheck(true);
+		
+		TitleVerifierMock titleVerifier = new TitleVerifierMock(true, "MockTitle", null);
+		StatusVerifierMock statusVerifier = new StatusVerifierMock(StatusVerifier.RESULT_UNKNOWN, null);
+		
+		Tester tester = new TesterImpl(getContext(),
+				new ConnectivityManagerMock(getWifiNetworkInfo()), 
+				new WifiManagerMock(getWifiInfo()), 
+				titleVerifier, statusVerifier, null, new ClockImpl());
+		
+		TestInfo info = tester.testWifi(3, 0);
+		
+		assertTrue(info.getIsExpectedTitle());
+		assertEquals(StatusVerifier.RESULT_UNKNOWN, info.getQuickCheck());
+		assertEquals("MockTitle", info.getPageTitle());
+		
+		assertEquals(1, statusVerifier.getTestCount());
+		assertEquals(1, titleVerifier.getTestCount());
+	}
+	
+	public void testTestWifiQuickCheckException() {
+		
+		setQuickCheck(true);
+		
+		TitleVerifierMock titleVerifier = new TitleVerifierMock(true, "MockTitle", null);
+		StatusVerifierMock statusVerifier = new StatusVerifierMock(StatusVerifier.RESULT_OK, new Exception("Some Exception"));
+		
+		Tester tester = new TesterImpl(getContext(),
+				new ConnectivityManagerMock(getWifiNetworkInfo()), 
+				new WifiManagerMock(getWifiInfo()), 
+				titleVerifier, statusVerifier, null, new ClockImpl());
+		
+		TestInfo info = tester.testWifi(3, 0);
+		
+		assertTrue(info.getIsExpectedTitle());
+		assertEquals(StatusVerifier.RESULT_UNKNOWN, info.getQuickCheck());
+		assertEquals("MockTitle", info.getPageTitle());
+		assertNull(info.getException());
+		
+		assertEquals(1, statusVerifier.getTestCount());
+		assertEquals(1, titleVerifier.getTestCount());
+	}
+	
+	public void testTestWifiQuickCheckDisabled() {
+		
+		TitleVerifierMock titleVerifier = new TitleVerifierMock(true, "MockTitle", null);
+		StatusVerifierMock statusVerifier = new StatusVerifierMock(StatusVerifier.RESULT_OK, null);
+		
+		Tester tester = new TesterImpl(getContext(),
+				new ConnectivityManagerMock(getWifiNetworkInfo()), 
+				new WifiManagerMock(getWifiInfo()), 
+				titleVerifier, statusVerifier, null, new ClockImpl());
+		
+		TestInfo info = tester.testWifi(3, 0);
+		
+		assertTrue(info.getIsExpectedTitle());
+		assertEquals(StatusVerifier.RESULT_UNKNOWN, info.getQuickCheck());
+		
+		assertEquals(0, statusVerifier.getTestCount());
+		assertEquals(1, titleVerifier.getTestCount());
+	}
+	
+	public void testTestMonitorQuickCheck() {
+		
+		setQuickCheck(false);
+		
+		TitleVerifierMock titleVerifier = new TitleVerifierMock(true, "MockTitle", null);
+		StatusVerifierMock statusVerifier = new StatusVerifierMock(StatusVerifier.RESULT_OK, null);
+		
+		Tester tester = new TesterImpl(getContext(),
+				new ConnectivityManagerMock(getWifiNetworkInfo()), 
+				new WifiManagerMock(getWifiInfo()), 
+				titleVerifier, statusVerifier, null, new ClockImpl());
+		
+		TestInfo info = tester.testMonitor(new Cancellation());
+		
+		// The quick check is the cheapest probe even if it is disabled in the settings
+		assertTrue(info.getIsExpectedTitle());
+		assertEquals(StatusVerifier.RESULT_OK, info.getQuickCheck());
+		assertEquals(1, info.getAttempts());
+		
+		assertEquals(1, statusVerifier.getTestCount());
+		assertEquals(0, titleVerifier.getTestCount());
+	}
+	
+	public void testTestMonitorNOKOnce() {
+		
+		TitleVerifierMock titleVerifier = new TitleVerifierMock(false, "MockTitle", null);
+		StatusVerifierMock statusVerifier = new StatusVerifierMock(StatusVerifier.RESULT_NOK, null);
+		
+		Tester tester = new TesterImpl(getContext(),
+				new ConnectivityManagerMock(getWifiNetworkInfo()), 
+				new WifiManagerMock(getWifiInfo()), 
+				titleVerifier, statusVerifier, null, new ClockImpl());
+		
+		TestInfo info = tester.testMonitor(new Cancellation());
+		
+		// No retries
+		assertFalse(info.getIsExpectedTitle());
+		assertEquals(1, info.getAttempts());
+		
+		assertEquals(1, statusVerifier.getTestCount());
+		assertEquals(1, titleVerifier.getTestCount());
+	}
+	
+	public void testTestMonitorNotConnected() {
+		
+		NetworkInfoMock networkInfo = new NetworkInfoMock();
+		networkInfo.setType(ConnectivityManager.TYPE_MOBILE);
+		networkInfo.setTypeName("MockMobile");
+		networkInfo.setConnected(true);
+		
+		TitleVerifierMock titleVerifier = new TitleVerifierMock(true, "MockTitle", null);
+		StatusVerifierMock statusVerifier = new StatusVerifierMock(StatusVerifier.RESULT_OK, null);
+		
+		Tester tester = new TesterImpl(getContext(),
+				new ConnectivityManagerMock(networkInfo), 
+				new WifiManagerMock(null), 
+				titleVerifier, statusVerifier, null, new ClockImpl());
+		
+		assertNull(tester.testMonitor(new Cancellation()));
+		
+		assertEquals(0, statusVerifier.getTestCount());
+	}
+	
+	public void testTestSimpleNoQuickCheck() {
+		
+		setQuickCheck(true);
+		
+		TitleVerifierMock titleVerifier = new TitleVerifierMock(true, "MockTitle", null);
+		StatusVerifierMock statusVerifier = new StatusVerifierMock(StatusVerifier.RESULT_OK, null);
+		
+		Tester tester = new TesterImpl(getContext(),
+				new ConnectivityManagerMock(getWifiNetworkInfo()), 
+				new WifiManagerMock(getWifiInfo()), 
+				titleVerifier, statusVerifier, null, new ClockImpl());
+		
+		TestInfo info = tester.testSimple();
+		
+		assertTrue(info.getIsExpectedTitle());
+		assertEquals("MockTitle", info.getPageTitle());
+		
+		assertEquals(0, statusVerifier.getTestCount());
+		assertEquals(1, titleVerifier.getTestCount());
+	}
+	
+	public void testTestWifiCancelDuringRequest() throws InterruptedException {
+		
+		// Blocks until cancelled, like a request waiting for a response
+		TitleVerifier titleVerifier = new TitleVerifier() {
+			public boolean isExpectedTitle(String title, String pageTitle) {
+				return true;
+			}
+			public String getPageTitle(ProbeRequest request) throws Exception {
+				final CountDownLatch latch = new CountDownLatch(1);
+				request.getCancellation().register(new Closeable() {
+					public void close() {
+						latch.countDown();
+					}
+				});
+				latch.await(10, TimeUnit.SECONDS);
+				throw new IOException("Socket closed");
+			}
+		};
+		
+		final Tester tester = new TesterImpl(getContext(),
+				new ConnectivityManagerMock(getWifiNetworkInfo()), 
+				new WifiManagerMock(getWifiInfo()), 
+				titleVerifier);
+		
+		final Cancellation cancellation = new Cancellation();
+		
+		Thread cancelThread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(500);
+					cancellation.cancel();
+				} catch (InterruptedException e) {
+					fail("Cancel thread should have not been interrupted");
+				}
+			}
+		};
+		cancelThread.start();
+		
+		long start = System.currentTimeMillis();
+		TestInfo info = tester.testWifi(new FixedRetryPolicy(3, 0), cancellation);
+		long millis = System.currentTimeMillis() - start;
+		
+		assertNull(info);
+		
+		// Cancel to idle should take much less than the blocked request
+		assertTrue(millis < 2000);
+	}
+	
+	public void testTestWifiRetryPolicy() {
+		
+		TitleVerifierMock titleVerifier = new TitleVerifierMock(false, "MockTitle", null);
+		
+		Tester tester = new TesterImpl(getContext(),
+				new ConnectivityManagerMock(getWifiNetworkInfo()), 
+				new WifiManagerMock(getWifiInfo()), 
+				titleVerifier);
+		
+		final List<TestInfo> infos = new ArrayList<TestInfo>();
+		
+		RetryPolicy policy = new RetryPolicy() {
+			public long getDelay(int attempt, TestInfo info) {
+				infos.add(info);
+				return attempt < 2 ? 100 : STOP;
+			}
+		};
+		
+		TestInfo info = tester.testWifi(policy);
+		
+		assertFalse(info.getIsExpectedTitle());
+		assertEquals(2, info.getAttempts());
+		assertTrue(info.getDuration() >= 200);
+		
+		assertEquals(3, infos.size());
+		assertNull(infos.get(0));
+		assertEquals("MockTitle", infos.get(1).getPageTitle());
+		
+		assertEquals(2, titleVerifier.getTestCount());
+	}
+	
+	public void testTestWifiRetryPolicyStopsWhenOK() {
+		
+		TitleVerifierMock titleVerifier = new TitleVerifierMock(true, "MockTitle", null);
+		
+		Tester tester = new TesterImpl(getContext(),
+				new ConnectivityManagerMock(getWifiNetworkInfo()), 
+				new WifiManagerMock(getWifiInfo()), 
+				titleVerifier);
+		
+		TestInfo info = tester.testWifi(new BackoffRetryPolicy());
+		
+		assertTrue(info.getIsExpectedTitle());
+		assertEquals(1, info.getAttempts());
+		assertTrue(info.getDuration() >= BackoffRetryPolicy.FIRST_DELAY);
+		assertTrue(info.getDuration() < BackoffRetryPolicy.FIRST_DELAY + 1000);
+		
+		assertEquals(1, titleVerifier.getTestCount());
+	}
+	
+	public void testTestSimpleKnownPortal() {
+		
+		sharedPreferences.edit().putString(Settings.INTERNET_SERVER, "www.google.de").commit();
+		
+		TitleVerifierMock titleVerifier = new TitleVerifierMock(false, "Portal Login", null);
+		TestDatabaseAdapter databaseAdapter = new TestDatabaseAdapter();
+		
+		Tester tester = new TesterImpl(getContext(),
+				new ConnectivityManagerMock(getWifiNetworkInfo()), 
+				new WifiManagerMock(getWifiInfo()), 
+				titleVerifier, null, databaseAdapter, new ClockImpl());
+		
+		TestInfo info = tester.testSimple();
+		
+		assertFalse(info.getIsExpectedTitle());
+		assertFalse(info.getIsKnownPortal());
+		
+		PortalFingerprint fingerprint = databaseAdapter.fetchFingerprint("MockBSSID", info.getSite());
+		assertNotNull(fingerprint);
+		assertEquals("Portal Login", fingerprint.getPageTitle());
+		
+		// Probe again instead of using the results in memory
+		ProbeCoordinator.getInstance().clear();
+		info = tester.testSimple();
+		
+		assertFalse(info.getIsExpectedTitle());
+		assertTrue(info.getIsKnownPortal());
+		assertEquals("Portal Login", info.getPageTitle());
+		
+		assertEquals(2, titleVerifier.getTestCount());
+	}
+	
+	public void testTestSimpleKnownPageNotPortal() {
+		
+		sharedPreferences.edit().putString(Settings.INTERNET_SERVER, "www.google.de").commit();
+		
+		TitleVerifierMock titleVerifier = new TitleVerifierMock(true, "MockTitle", null);
+		TestDatabaseAdapter databaseAdapter = new TestDatabaseAdapter();
+		
+		Tester tester = new TesterImpl(getContext(),
+				new ConnectivityManagerMock(getWifiNetworkInfo()), 
+				new WifiManagerMock(getWifiInfo()), 
+				titleVerifier, null, databaseAdapter, new ClockImpl());
+		
+		tester.testSimple();
+		ProbeCoordinator.getInstance().clear();
+		TestInfo info = tester.testSimple();
+		
+		assertTrue(info.getIsExpectedTitle());
+		assertFalse(info.getIsKnownPortal());
+	}
+	
+	public void testTestSimpleNotFromMemory() {
+		
+		TitleVerifierMock titleVerifierService = new TitleVerifierMock(true, "MockTitle", null);
+		TitleVerifierMock titleVerifierManual = new TitleVerifierMock(true, "MockTitle", null);
+		
+		Tester testerService = new TesterImpl(getContext(),
+				new ConnectivityManagerMock(getWifiNetworkInfo()), 
+				new WifiManagerMock(getWifiInfo()), 
+				titleVerifierService);
+		Tester testerManual = new TesterImpl(getContext(),
+				new ConnectivityManagerMock(getWifiNetworkInfo()), 
+				new WifiManagerMock(getWifiInfo()), 
+				titleVerifierManual);
+		
+		TestInfo infoService = testerService.testWifi(new FixedRetryPolicy(1, 0));
+		TestInfo infoManual = testerManual.testSimple();
+		
+		assertTrue(infoManual.getIsExpectedTitle());
+		assertEquals(infoService.getPageTitle(), infoManual.getPageTitle());
+		assertEquals("MockSSID", infoManual.getExtra());
+		assertEquals(1, infoManual.getAttempts());
+		
+		// A manual test always probes
+		assertEquals(1, titleVerifierService.getTestCount());
+		assertEquals(1, titleVerifierManual.getTestCount());
+		assertEquals(2, ProbeCoordinator.getInstance().getProbes());
+		assertEquals(0, ProbeCoordinator.getInstance().getCached());
+	}
+	
+	public void testTestSimpleOtherNetworkNotFromMemory() {
+		
+		TitleVerifierMock titleVerifier = new TitleVerifierMock(true, "MockTitle", null);
+		
+		Tester testerWifi = new TesterImpl(getContext(),
+				new ConnectivityManagerMock(getWifiNetworkInfo()), 
+				new WifiManagerMock(getWifiInfo()), 
+				titleVerifier);
+		
+		WifiInfoMock otherWifiInfo = getWifiInfo();
+		otherWifiInfo.setBSSID("OtherBSSID");
+		Tester testerOtherWifi = new TesterImpl(getContext(),
+				new ConnectivityManagerMock(getWifiNetworkInfo()), 
+				new WifiManagerMock(otherWifiInfo), 
+				titleVerifier);
+		
+		testerWifi.testSimple();
+		testerOtherWifi.testSimple();
+		
+		assertEquals(2, titleVerifier.getTestCount());
+		assertEquals(0, ProbeCoordinator.getInstance().getCached());
+	}
+	
+	public void testTestWifiRetriesNotFromMemory() {
+		
+		TitleVerifierMock titleVerifier = new TitleVerifierMock(false, "MockTitle", null);
+		
+		Tester tester = new TesterImpl(getContext(),
+				new ConnectivityManagerMock(getWifiNetworkInfo()), 
+				new WifiManagerMock(getWifiInfo()), 
+				titleVerifier);
+		
+		tester.testSimple();
+		TestInfo info = tester.testWifi(new FixedRetryPolicy(3, 0));
+		
+		// The first attempt uses the results of testSimple(), the retries probe again
+		assertEquals(3, info.getAttempts());
+		assertEquals(3, titleVerifier.getTestCount());
+		assertEquals(1, ProbeCoordinator.getInstance().getCached());
+	}
+	
+	public void testTestWifiVirtualClock() {
+		
+		TitleVerifierMock titleVerifier = new TitleVerifierMock(false, "MockTitle", null);
+		VirtualClock clock = new VirtualClock(1000);
+		
+		Tester tester = new TesterImpl(getContext(),
+				new ConnectivityManagerMock(getWifiNetworkInfo()), 
+				new WifiManagerMock(getWifiInfo()), 
+				titleVerifier, null, new TestDatabaseAdapter(), clock);
+		
+		long start = System.currentTimeMillis();
+		
+		TestInfo info = tester.testWifi(new FixedRetryPolicy(3, 60));
+		
+		// Three minutes of delays take no time
+		assertTrue(System.currentTimeMillis() - start < 1000);
+		assertEquals(3 * 60 * 1000, clock.elapsedRealtime());
+		assertEquals(3 * 60 * 1000, info.getDuration());
+		assertEquals(1000, info.getTimestamp());
+		assertEquals(3, info.getAttempts());
+		
+		assertEquals(3, titleVerifier.getTestCount());
+	}
+	
+	public void testTestWifiVirtualClockCancelledDuringDelay() {
+		
+		TitleVerifierMock titleVerifier = new TitleVerifierMock(false, "MockTitle", null);
+		VirtualClock clock = new VirtualClock(0);
+		
+		Tester tester = new TesterImpl(getContext(),
+				new ConnectivityManagerMock(getWifiNetworkInfo()), 
+				new WifiManagerMock(getWifiInfo()), 
+				titleVerifier, null, new TestDatabaseAdapter(), clock);
+		
+		final Cancellation cancellation = new Cancellation();
+		clock.schedule(90 * 1000, new Runnable() {
+			public void run() {
+				cancellation.cancel();
+			}
+		});
+		
+		TestInfo info = tester.testWifi(new FixedRetryPolicy(3, 60), cancellation);
+		
+		// Cancelled during the second delay, right when it happened
+		assertNull(info);
+		assertEquals(90 * 1000, clock.elapsedRealtime());
+		
+		assertEquals(1, titleVerifier.getTestCount());
+	}
+	
+	public void testTestWifiSimulation() {
+		
+		final NetworkInfoMock networkInfo = getWifiNetworkInfo();
+		TitleVerifierMock titleVerifier = new TitleVerifierMock(false, "MockTitle", null);
+		VirtualClock clock = new VirtualClock(0);
+		
+		Tester tester = new TesterImpl(getContext(),
+				new ConnectivityManagerMock(networkInfo), 
+				new WifiManagerMock(getWifiInfo()), 
+				titleVerifier, null, new TestDatabaseAdapter(), clock);
+		
+		long start = System.currentTimeMillis();
+		
+		int cycles = 1000;
+		int completed = 0;
+		for(int i = 0; i < cycles; i++) {
+			networkInfo.setConnected(true);
+			ProbeCoordinator.getInstance().clear();
+			
+			// Every other Wifi connection goes away between the first and the second attempt
+			if(i % 2 == 1) {
+				clock.schedule(15 * 1000, new Runnable() {
+					public void run() {
+						networkInfo.setConnected(false);
+					}
+				});
+			}
+			
+			TestInfo info = tester.testWifi(new FixedRetryPolicy(3, 10));
+			if(info != null) {
+				assertEquals(30 * 1000, info.getDuration());
+				completed++;
+			}
+		}
+		
+		// 500 complete tests of 30 s and 500 aborted after 20 s, in well under a minute
+		assertTrue(System.currentTimeMillis() - start < 60 * 1000);
+		assertEquals(cycles / 2, completed);
+		assertEquals(cycles / 2 * 30 * 1000L + cycles / 2 * 20 * 1000L, clock.elapsedRealtime());
+		assertEquals(0, clock.getPendingCount());
+		
+		assertEquals(cycles / 2 * 3 + cycles / 2, titleVerifier.getTestCount());
+	}
+	
+	private NetworkInfoMock getWifiNetworkInfo() {
+		NetworkInfoMock networkInfo = new NetworkInfoMock();
+		networkInfo.setType(ConnectivityManager.TYPE_WIFI);
+		networkInfo.setTypeName("MockWifi");
+		networkInfo.setConnected(true);
+		return networkInfo;
+	}
+	
+	private WifiInfoMock getWifiInfo() {
+		WifiInfoMock wifiInfo = new WifiInfoMock();
+		wifiInfo.setSSID("MockSSID");
+		wifiInfo.setBSSID("MockBSSID");
+		return wifiInfo;
+	}
+	
+	public void testTestWifiAddsTraffic() {
+		
+		TitleVerifierMock titleVerifier = new TitleVerifierMock(true, "MockTitle", null);
+		titleVerifier.setBytes(1000);
+		TestDatabaseAdapter databaseAdapter = new TestDatabaseAdapter();
+		
+		Tester tester = new TesterImpl(getContext(),
+				new ConnectivityManagerMock(getWifiNetworkInfo()), 
+				new WifiManagerMock(getWifiInfo()), 
+				titleVerifier, null, databaseAdapter, new ClockImpl());
+		
+		TestInfo info = tester.testWifi(3, 0);
+		
+		assertTrue(info.getIsExpectedTitle());
+		assertEquals(1000, info.getReceivedBytes());
+		assertEquals(1000, databaseAdapter.fetchDailyTraffic(System.currentTimeMillis()));
+		
+		// Uses the result in memory without any traffic
+		info = tester.testSimple();
+		
+		assertEquals(0, info.getReceivedBytes());
+		assertEquals(1000, databaseAdapter.fetchMonthlyTraffic(System.currentTimeMillis()));
+		assertEquals(1, titleVerifier.getTestCount());
+	}
+	
+	public void testTestWifiBudgetReached() {
+		
+		setBudget("1");
+		
+		TitleVerifierMock titleVerifier = new TitleVerifierMock(true, "MockTitle", null);
+		StatusVerifierMock statusVerifier = new StatusVerifierMock(StatusVerifier.RESULT_OK, null);
+		TestDatabaseAdapter databaseAdapter = new TestDatabaseAdapter();
+		databaseAdapter.addTraffic(System.currentTimeMillis(), 1024 * 1024);
+		
+		Tester tester = new TesterImpl(getContext(),
+				new ConnectivityManagerMock(getWifiNetworkInfo()), 
+				new WifiManagerMock(getWifiInfo()), 
+				titleVerifier, statusVerifier, databaseAdapter, new ClockImpl());
+		
+		TestInfo info = tester.testWifi(3, 0);
+		
+		// Only the quick check although it is disabled in the settings
+		assertTrue(info.getIsExpectedTitle());
+		assertEquals(StatusVerifier.RESULT_OK, info.getQuickCheck());
+		assertEquals(1, statusVerifier.getTestCount());
+		assertEquals(0, titleVerifier.getTestCount());
+	}
+	
+	private void setBudget(final String budget) {
+		sharedPreferences.edit().putString(Settings.INTERNET_BUDGET, budget).commit();
+	}
+	
+	private void setQuickCheck(final boolean quickCheck) {
+		sharedPreferences.edit().putBoolean(Settings.INTERNET_QUICK_CHECK, quickCheck).commit();
+		sharedPreferences.edit().putString(Settings.INTERNET_QUICK_SERVER, "http://quick.server").commit();
+	}
+	
 	private class TitleVerifierMock implements TitleVerifier {
 		
 		private boolean expectedTitle;
 		private String pageTitle;
 		private Exception exception;
 		
+		private long bytes = 0;
+		
 		private int testCount = 0;
 		
 		public TitleVerifierMock(final boolean expectedTitle, final String pageTitle, final Exception exception) {
@@ -518,14 +1148,57 @@ public class TesterImplTest extends AndroidTestCase {
 			return expectedTitle;
 		}
 
-		public String getPageTitle(String server) throws Exception {
+		public String getPageTitle(ProbeRequest request) throws Exception {
+			
+			testCount++;
+			
+			request.getConnections().received(bytes);
+			
+			if(exception != null) {
+				throw exception;
+			}
+			
+			PortalFingerprint fingerprint = request.getFingerprint();
+			if(fingerprint.isKnown() && pageTitle.equals(fingerprint.getPageTitle())) {
+				fingerprint.setIsMatched(true);
+			} else {
+				fingerprint.setPageTitle(pageTitle);
+				fingerprint.setHash(1);
+			}
+			
+			return pageTitle;
+		}
+		
+		public void setBytes(final long bytes) {
+			this.bytes = bytes;
+		}
+		
+		public int getTestCount() {
+			return testCount;
+		}
+		
+	}
+	
+	private class StatusVerifierMock implements StatusVerifier {
+		
+		private int result;
+		private Exception exception;
+		
+		private int testCount = 0;
+		
+		public StatusVerifierMock(final int result, final Exception exception) {
+			this.result = result;
+			this.exception = exception;
+		}
+
+		public int verify(String server, Cancellation cancellation, ProbeConnections connections) throws Exception {
 			
 			testCount++;
 			
 			if(exception != null) {
 				throw exception;
 			} else {
-				return pageTitle;
+				return result;
 			}
 		}
 		
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.test;
+
+import java.util.Locale;
+
+import net.luniks.android.inetify.TitleMatcher;
+import android.test.AndroidTestCase;
+
+public class TitleMatcherTest extends AndroidTestCase {
+	
+	public void testMatches() {
+		
+		TitleMatcher matcher = new TitleMatcher("oog");
+		
+		assertTrue(matcher.matches("Google"));
+		assertTrue(matcher.matches("GOOGLE"));
+		assertTrue(matcher.matches("oog"));
+		assertFalse(matcher.matches("Gogle"));
+		assertFalse(matcher.matches("oo"));
+		assertFalse(matcher.matches(""));
+		assertFalse(matcher.matches(null));
+		
+		assertTrue(new TitleMatcher("gOOGLE").matches("Google"));
+		assertTrue(new TitleMatcher("Google").matches("Google Search"));
+		assertTrue(new TitleMatcher("Search").matches("Google Search"));
+		assertFalse(new TitleMatcher("Some Title").matches("Google"));
+	}
+	
+	public void testEmptyTitle() {
+		
+		assertFalse(new TitleMatcher(null).matches("Google"));
+		assertFalse(new TitleMatcher("").matches("Google"));
+		assertFalse(new TitleMatcher(" ").matches("Google"));
+		assertTrue(new TitleMatcher(" ").matches("Google Search"));
+	}
+	
+	public void testRepeatedCharacters() {
+		
+		assertTrue(new TitleMatcher("aab").matches("aaaaab"));
+		assertTrue(new TitleMatcher("abab").matches("abaabab"));
+		assertFalse(new TitleMatcher("abab").matches("abaaba"));
+	}
+	
+	public void testCharactersSharingShift() {
+		
+		// Same low bits, different characters
+		assertTrue(new TitleMatcher("\u0100x").matches("a\u0100x"));
+		assertFalse(new TitleMatcher("\u0100x").matches("a\u0200x"));
+		assertTrue(new TitleMatcher("\u0200\u0100").matches("\u0100\u0200\u0200\u0100"));
+	}
+	
+	public void testNotLocaleSensitive() {
+		
+		Locale locale = Locale.getDefault();
+		try {
+			Locale.setDefault(new Locale("tr", "TR"));
+			
+			assertTrue(new TitleMatcher("TITLE").matches("title"));
+			assertTrue(new TitleMatcher("title").matches("TITLE"));
+			assertTrue(new TitleMatcher("istanbul").matches("\u0130stanbul"));
+			assertTrue(new TitleMatcher("ISPARTA").matches("\u0131sparta"));
+			assertTrue(new TitleMatcher("gr\u00FC\u00DFe").matches("GR\u00DC\u00DFE"));
+		} finally {
+			Locale.setDefault(locale);
+		}
+	}
+	
+	public void testMatchesChars() {
+		
+		TitleMatcher matcher = new TitleMatcher("oog");
+		char[] chars = "xxGooglexx".toCharArray();
+		
+		assertTrue(matcher.matches(chars, 0, chars.length));
+		assertTrue(matcher.matches(chars, 2, 6));
+		assertTrue(matcher.matches(chars, 3, 3));
+		assertFalse(matcher.matches(chars, 4, 6));
+		assertFalse(matcher.matches(chars, 2, 3));
+		assertFalse(matcher.matches(null, 0, 0));
+	}
+	
+	public void testForTitle() {
+		
+		TitleMatcher matcher = TitleMatcher.forTitle("Google");
+		
+		assertEquals("Google", matcher.getTitle());
+		
+		// Not compiled again for the same title
+		assertSame(matcher, TitleMatcher.forTitle(new String("Google")));
+		
+		TitleMatcher other = TitleMatcher.forTitle("Yahoo");
+		assertNotSame(matcher, other);
+		assertEquals("Yahoo", other.getTitle());
+		assertTrue(other.matches("Yahoo!"));
+		
+		assertFalse(TitleMatcher.forTitle(null).matches("Google"));
+		assertSame(TitleMatcher.forTitle(null), TitleMatcher.forTitle(null));
+	}
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.test;
+
+import net.luniks.android.inetify.TitleScanner;
+import android.test.AndroidTestCase;
+
+public class TitleScannerTest extends AndroidTestCase {
+
+	public void testSimpleTitle() throws Exception {
+
+		TitleScanner scanner = scan("<html><head><title>Google</title></head><body></body></html>");
+
+		assertTrue(scanner.isDone());
+		assertEquals("Google", scanner.getTitle(null));
+	}
+
+	public void testNoTitle() throws Exception {
+
+		TitleScanner scanner = scan("<html><head></head><body><p>No title</p></body></html>");
+
+		assertFalse(scanner.isDone());
+		assertFalse(scanner.hasTitle());
+		assertEquals("", scanner.getTitle(null));
+	}
+
+	public void testUpperCaseAndAttributes() throws Exception {
+
+		TitleScanner scanner = scan("<!DOCTYPE html><HTML><HEAD><TITLE lang=\"en\" data-x='>'>Hotspot Login</TITLE ></HEAD>");
+
+		assertTrue(scanner.isDone());
+		assertEquals("Hotspot Login", scanner.getTitle(null));
+	}
+
+	public void testSimilarTagNames() throws Exception {
+
+		TitleScanner scanner = scan("<html><titles>Wrong</titles><tit>Wrong</tit><title>Right</title>");
+
+		assertEquals("Right", scanner.getTitle(null));
+	}
+
+	public void testTitleInComment() throws Exception {
+
+		TitleScanner scanner = scan("<html><!-- <title>Wrong</title> --><title>Right</title>");
+
+		assertEquals("Right", scanner.getTitle(null));
+	}
+
+	public void testMarkupInTitle() throws Exception {
+
+		TitleScanner scanner = scan("<title>a < b </ti </b></title>");
+
+		assertTrue(scanner.isDone());
+		assertEquals("a < b </ti </b>", scanner.getTitle(null));
+	}
+
+	public void testWhitespaceAndReferences() throws Exception {
+
+		TitleScanner scanner = scan("<title>\n  Tom &amp; Jerry &#38; &#x26;\t&lt;3&gt;  &unknown;\n</title>");
+
+		assertEquals("Tom & Jerry & & <3> &unknown;", scanner.getTitle(null));
+	}
+
+	public void testSplitIntoChunks() throws Exception {
+
+		byte[] page = "<html><head><meta charset=\"utf-8\"><title>Split Title</title></head>".getBytes("UTF-8");
+
+		for(int chunk = 1; chunk < page.length; chunk++) {
+			TitleScanner scanner = new TitleScanner();
+			for(int offset = 0; offset < page.length; offset += chunk) {
+				scanner.scan(page, offset, Math.min(chunk, page.length - offset));
+			}
+
+			assertTrue(scanner.isDone());
+			assertEquals("Split Title", scanner.getTitle(null));
+		}
+	}
+
+	public void testStopsAtEndOfTitle() throws Exception {
+
+		byte[] page = "<title>First</title><title>Second</title>".getBytes("UTF-8");
+
+		TitleScanner scanner = new TitleScanner();
+
+		assertTrue(scanner.scan(page, 0, page.length));
+		assertEquals("First", scanner.getTitle(null));
+	}
+
+	public void testIncompleteTitle() throws Exception {
+
+		TitleScanner scanner = scan("<html><head><title>Incompl");
+
+		assertFalse(scanner.isDone());
+		assertTrue(scanner.hasTitle());
+		assertEquals("Incompl", scanner.getTitle(null));
+	}
+
+	public void testCharsetGiven() throws Exception {
+
+		byte[] page = "<title>Gr\u00FC\u00DFe</title>".getBytes("ISO-8859-1");
+
+		TitleScanner scanner = new TitleScanner();
+		scanner.scan(page, 0, page.length);
+
+		assertEquals("Gr\u00FC\u00DFe", scanner.getTitle("ISO-8859-1"));
+	}
+
+	public void testCharsetDeclared() throws Exception {
+
+		byte[] page = "<meta http-equiv=\"Content-Type\" content=\"text/html; charset=ISO-8859-1\"><title>Gr\u00FC\u00DFe</title>".getBytes("ISO-8859-1");
+
+		TitleScanner scanner = new TitleScanner();
+		scanner.scan(page, 0, page.length);
+
+		assertEquals("iso-8859-1", scanner.getDeclaredCharset());
+		assertEquals("Gr\u00FC\u00DFe", scanner.getTitle(null));
+	}
+
+	public void testCharsetDefault() throws Exception {
+
+		byte[] page = "<title>Gr\u00FC\u00DFe</title>".getBytes("UTF-8");
+
+		TitleScanner scanner = new TitleScanner();
+		scanner.scan(page, 0, page.length);
+
+		assertNull(scanner.getDeclaredCharset());
+		assertEquals("Gr\u00FC\u00DFe", scanner.getTitle(null));
+	}
+
+	public void testCharsetUnsupported() throws Exception {
+
+		TitleScanner scanner = scan("<title>Google</title>");
+
+		assertEquals("Google", scanner.getTitle("no-such-charset"));
+	}
+
+	private TitleScanner scan(final String page) throws Exception {
+		byte[] bytes = page.getBytes("UTF-8");
+		TitleScanner scanner = new TitleScanner();
+		scanner.scan(bytes, 0, bytes.length);
+		return scanner;
+	}
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.test;
+
+import net.luniks.android.inetify.TlsSessionCache;
+import android.test.AndroidTestCase;
+
+public class TlsSessionCacheTest extends AndroidTestCase {
+	
+	public void testHandshaken() {
+		
+		TlsSessionCache cache = new TlsSessionCache();
+		
+		assertEquals(0, cache.getHitRate());
+		
+		assertFalse(cache.handshaken("www.google.de", 443, new TestSSLSession(new byte[] {1, 2, 3})));
+		assertTrue(cache.handshaken("WWW.Google.de", 443, new TestSSLSession(new byte[] {1, 2, 3})));
+		
+		// Other port, other session
+		assertFalse(cache.handshaken("www.google.de", 8443, new TestSSLSession(new byte[] {1, 2, 3})));
+		assertFalse(cache.handshaken("www.google.de", 443, new TestSSLSession(new byte[] {4, 5, 6})));
+		
+		assertEquals(1, cache.getHits());
+		assertEquals(3, cache.getMisses());
+		assertEquals(25, cache.getHitRate());
+		assertEquals(2, cache.getHostCount());
+		
+	}
+	
+	public void testHandshakenEmptyId() {
+		
+		TlsSessionCache cache = new TlsSessionCache();
+		
+		assertFalse(cache.handshaken("www.google.de", 443, new TestSSLSession(new byte[0])));
+		assertFalse(cache.handshaken("www.google.de", 443, new TestSSLSession(new byte[0])));
+		
+		assertEquals(0, cache.getHits());
+		assertEquals(2, cache.getMisses());
+		
+	}
+	
+	public void testBounded() {
+		
+		TlsSessionCache cache = new TlsSessionCache();
+		
+		for(int i = 0; i <= TlsSessionCache.MAX_HOSTS; i++) {
+			cache.handshaken("host" + i, 443, new TestSSLSession(new byte[] {(byte)i}));
+		}
+		
+		assertEquals(TlsSessionCache.MAX_HOSTS, cache.getHostCount());
+		
+		// The least recently used host was evicted
+		assertFalse(cache.handshaken("host0", 443, new TestSSLSession(new byte[] {0})));
+		assertTrue(cache.handshaken("host" + TlsSessionCache.MAX_HOSTS, 443, 
+				new TestSSLSession(new byte[] {(byte)TlsSessionCache.MAX_HOSTS})));
+		
+	}
+
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.test;
+
+import net.luniks.android.inetify.TestInfo;
+import net.luniks.android.inetify.VerdictCache;
+import net.luniks.android.test.mock.VirtualClock;
+import android.net.ConnectivityManager;
+import android.test.AndroidTestCase;
+
+public class VerdictCacheTest extends AndroidTestCase {
+	
+	private static final long TTL = 15 * 60 * 1000;
+	
+	private static final long NOK_TTL = 60 * 1000;
+	
+	public void setUp() throws Exception {
+		super.setUp();
+		VerdictCache.clear();
+	}
+	
+	public void tearDown() throws Exception {
+		VerdictCache.clear();
+		super.tearDown();
+	}
+	
+	public void testMiss() {
+		
+		VerdictCache cache = new VerdictCache(new TestDatabaseAdapter());
+		
+		assertNull(cache.get("Celsten", "00:21:29:A2:48:80", TTL, NOK_TTL));
+		assertNull(cache.get(null, "00:21:29:A2:48:80", TTL, NOK_TTL));
+		assertNull(cache.get("Celsten", null, TTL, NOK_TTL));
+		
+		assertEquals(0, VerdictCache.getHits());
+		assertEquals(3, VerdictCache.getMisses());
+	}
+	
+	public void testHit() {
+		
+		TestDatabaseAdapter databaseAdapter = new TestDatabaseAdapter();
+		VerdictCache cache = new VerdictCache(databaseAdapter);
+		
+		TestInfo info = getVerdict(System.currentTimeMillis(), "Celsten", "00:21:29:A2:48:80", true);
+		cache.put(info);
+		
+		assertSame(info, cache.get("Celsten", "00:21:29:A2:48:80", TTL, NOK_TTL));
+		
+		// Also written to the database
+		assertSame(info, databaseAdapter.fetchVerdict("00:21:29:A2:48:80"));
+		
+		assertEquals(1, VerdictCache.getHits());
+		assertEquals(0, VerdictCache.getMisses());
+	}
+	
+	public void testHitFromDatabase() {
+		
+		TestDatabaseAdapter databaseAdapter = new TestDatabaseAdapter();
+		
+		TestInfo info = getVerdict(System.currentTimeMillis(), "Celsten", "00:21:29:A2:48:80", true);
+		databaseAdapter.updateVerdict(info);
+		
+		// Nothing in memory, i.e. after the process was restarted
+		VerdictCache cache = new VerdictCache(databaseAdapter);
+		
+		assertSame(info, cache.get("Celsten", "00:21:29:A2:48:80", TTL, NOK_TTL));
+		
+		assertEquals(1, VerdictCache.getHits());
+	}
+	
+	public void testOtherSSID() {
+		
+		VerdictCache cache = new VerdictCache(new TestDatabaseAdapter());
+		
+		cache.put(getVerdict(System.currentTimeMillis(), "Celsten", "00:21:29:A2:48:80", true));
+		
+		assertNull(cache.get("Sputnik", "00:21:29:A2:48:80", TTL, NOK_TTL));
+		
+		assertEquals(0, VerdictCache.getHits());
+		assertEquals(1, VerdictCache.getMisses());
+	}
+	
+	public void testExpired() {
+		
+		VerdictCache cache = new VerdictCache(new TestDatabaseAdapter());
+		
+		long now = System.currentTimeMillis();
+		
+		cache.put(getVerdict(now - TTL - 1, "Celsten", "00:21:29:A2:48:80", true));
+		cache.put(getVerdict(now - NOK_TTL - 1, "Sputnik", "00:21:29:A2:48:81", false));
+		
+		assertNull(cache.get("Celsten", "00:21:29:A2:48:80", TTL, NOK_TTL));
+		assertNull(cache.get("Sputnik", "00:21:29:A2:48:81", TTL, NOK_TTL));
+		
+		assertEquals(0, VerdictCache.getHits());
+		assertEquals(2, VerdictCache.getMisses());
+	}
+	
+	public void testExpiresOnClock() {
+		
+		VirtualClock clock = new VirtualClock(1000000000000L);
+		VerdictCache cache = new VerdictCache(new TestDatabaseAdapter(), clock);
+		
+		cache.put(getVerdict(clock.currentTimeMillis(), "Celsten", "00:21:29:A2:48:80", true));
+		cache.put(getVerdict(clock.currentTimeMillis(), "Sputnik", "00:21:29:A2:48:81", false));
+		
+		clock.advance(NOK_TTL - 1);
+		
+		assertNotNull(cache.get("Celsten", "00:21:29:A2:48:80", TTL, NOK_TTL));
+		assertNotNull(cache.get("Sputnik", "00:21:29:A2:48:81", TTL, NOK_TTL));
+		
+		// A not OK verdict expires first
+		clock.advance(1);
+		
+		assertNotNull(cache.get("Celsten", "00:21:29:A2:48:80", TTL, NOK_TTL));
+		assertNull(cache.get("Sputnik", "00:21:29:A2:48:81", TTL, NOK_TTL));
+		
+		clock.advance(TTL - NOK_TTL);
+		
+		assertNull(cache.get("Celsten", "00:21:29:A2:48:80", TTL, NOK_TTL));
+	}
+	
+	public void testDisabled() {
+		
+		VerdictCache cache = new VerdictCache(new TestDatabaseAdapter());
+		
+		cache.put(getVerdict(System.currentTimeMillis(), "Celsten", "00:21:29:A2:48:80", true));
+		
+		assertNull(cache.get("Celsten", "00:21:29:A2:48:80", 0, 0));
+	}
+	
+	public void testPutNull() {
+		
+		TestDatabaseAdapter databaseAdapter = new TestDatabaseAdapter();
+		VerdictCache cache = new VerdictCache(databaseAdapter);
+		
+		cache.put(null);
+		cache.put(getVerdict(System.currentTimeMillis(), "Celsten", null, true));
+		
+		assertNull(databaseAdapter.fetchVerdict("00:21:29:A2:48:80"));
+	}
+	
+	public void testIsFresh() {
+		
+		TestInfo ok = getVerdict(1000, "Celsten", "00:21:29:A2:48:80", true);
+		TestInfo nok = getVerdict(1000, "Celsten", "00:21:29:A2:48:80", false);
+		
+		assertTrue(VerdictCache.isFresh(ok, 1000, 100, 10));
+		assertTrue(VerdictCache.isFresh(ok, 1099, 100, 10));
+		assertFalse(VerdictCache.isFresh(ok, 1100, 100, 10));
+		assertFalse(VerdictCache.isFresh(ok, 999, 100, 10));
+		
+		assertTrue(VerdictCache.isFresh(nok, 1009, 100, 10));
+		assertFalse(VerdictCache.isFresh(nok, 1010, 100, 10));
+	}
+	
+	private TestInfo getVerdict(final long timestamp, final String ssid, final String bssid, final boolean isExpectedTitle) {
+		TestInfo info = new TestInfo();
+		info.setTimestamp(timestamp);
+		info.setType(ConnectivityManager.TYPE_WIFI);
+		info.setExtra(ssid);
+		info.setExtra2(bssid);
+		info.setIsExpectedTitle(isExpectedTitle);
+		return info;
+	}
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import net.luniks.android.test.mock.VirtualClock;
+import android.test.AndroidTestCase;
+
+public class VirtualClockTest extends AndroidTestCase {
+	
+	public void testTime() {
+		
+		VirtualClock clock = new VirtualClock(1000);
+		
+		assertEquals(1000, clock.currentTimeMillis());
+		assertEquals(0, clock.elapsedRealtime());
+		
+		clock.advance(500);
+		
+		assertEquals(1500, clock.currentTimeMillis());
+		assertEquals(500, clock.elapsedRealtime());
+	}
+	
+	public void testAdvanceRunsEventsInOrder() {
+		
+		final VirtualClock clock = new VirtualClock(0);
+		final List<String> events = new ArrayList<String>();
+		
+		clock.schedule(300, new Event(clock, events, "c"));
+		clock.schedule(100, new Event(clock, events, "a"));
+		clock.schedule(100, new Event(clock, events, "b"));
+		clock.schedule(1000, new Event(clock, events, "d"));
+		
+		clock.advance(500);
+		
+		assertEquals("[a@100, b@100, c@300]", events.toString());
+		assertEquals(500, clock.elapsedRealtime());
+		assertEquals(1, clock.getPendingCount());
+	}
+	
+	public void testEventSchedulesEvent() {
+		
+		final VirtualClock clock = new VirtualClock(0);
+		final List<String> events = new ArrayList<String>();
+		
+		clock.schedule(100, new Runnable() {
+			public void run() {
+				clock.schedule(50, new Event(clock, events, "b"));
+			}
+		});
+		
+		clock.advance(200);
+		
+		assertEquals("[b@150]", events.toString());
+		assertEquals(0, clock.getPendingCount());
+	}
+	
+	public void testAwaitTimeout() throws Exception {
+		
+		VirtualClock clock = new VirtualClock(0);
+		CountDownLatch latch = new CountDownLatch(1);
+		
+		long start = System.currentTimeMillis();
+		
+		assertFalse(clock.await(latch, 60 * 60 * 1000));
+		
+		assertTrue(System.currentTimeMillis() - start < 1000);
+		assertEquals(60 * 60 * 1000, clock.elapsedRealtime());
+		assertEquals(1, clock.getAwaitCount());
+	}
+	
+	public void testAwaitCountedDown() throws Exception {
+		
+		VirtualClock clock = new VirtualClock(0);
+		final CountDownLatch latch = new CountDownLatch(1);
+		
+		clock.schedule(250, new Runnable() {
+			public void run() {
+				latch.countDown();
+			}
+		});
+		clock.schedule(500, new Runnable() {
+			public void run() {
+				fail("Should not have been run");
+			}
+		});
+		
+		assertTrue(clock.await(latch, 1000));
+		
+		assertEquals(250, clock.elapsedRealtime());
+		assertEquals(1, clock.getPendingCount());
+		
+		// Already counted down
+		assertTrue(clock.await(latch, 1000));
+		
+		assertEquals(250, clock.elapsedRealtime());
+	}
+	
+	public void testAwaitInterrupted() throws Exception {
+		
+		VirtualClock clock = new VirtualClock(0);
+		
+		Thread.currentThread().interrupt();
+		try {
+			clock.await(new CountDownLatch(1), 1000);
+			fail("Expected InterruptedException");
+		} catch(InterruptedException e) {
+			// Expected
+		}
+		
+		assertEquals(0, clock.elapsedRealtime());
+	}
+	
+	private static class Event implements Runnable {
+		
+		private final VirtualClock clock;
+		private final List<String> events;
+		private final String name;
+		
+		private Event(final VirtualClock clock, final List<String> events, final String name) {
+			this.clock = clock;
+			this.events = events;
+			this.name = name;
+		}
+
+		public void run() {
+			events.add(name + "@" + clock.elapsedRealtime());
+		}
+	}
+
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.inetify.test;
+
+import net.luniks.android.inetify.WifiLocations;
+import android.test.AndroidTestCase;
+
+public class WifiLocationsTest extends AndroidTestCase {
+	
+	public void testNotLoaded() {
+		
+		WifiLocations wifiLocations = new WifiLocations();
+		
+		assertNull(wifiLocations.getSnapshot());
+	}
+	
+	public void testInvalidate() {
+		
+		WifiLocations wifiLocations = new WifiLocations();
+		
+		wifiLocations.set(wifiLocations.getGeneration(), createSnapshot(new double[] {50}, new double[] {3}));
+		wifiLocations.invalidate();
+		
+		assertNull(wifiLocations.getSnapshot());
+	}
+	
+	public void testSetChangedWhileLoading() {
+		
+		WifiLocations wifiLocations = new WifiLocations();
+		
+		int generation = wifiLocations.getGeneration();
+		
+		// The location list changes and is loaded again while the first load is ongoing
+		wifiLocations.invalidate();
+		WifiLocations.Snapshot current = createSnapshot(new double[] {51}, new double[] {4});
+		wifiLocations.set(wifiLocations.getGeneration(), current);
+		
+		WifiLocations.Snapshot stale = createSnapshot(new double[] {50}, new double[] {3});
+		
+		// The caller still gets what it loaded
+		assertSame(stale, wifiLocations.set(generation, stale));
+		
+		assertSame(current, wifiLocations.getSnapshot());
+	}
+	
+	public void testDistanceBetween() {
+		
+		// Example of Vincenty, Flinders Peak to Buninyong
+		assertEquals(54972.271, WifiLocations.distanceBetween(-37.95103342, 144.42486789, -37.65282114, 143.92649554), 0.01);
+		
+		// One degree on the equator
+		assertEquals(111319.49, WifiLocations.distanceBetween(0, 0, 0, 1), 0.01);
+		
+		assertEquals(0.0f, WifiLocations.distanceBetween(50, 3, 50, 3));
+		assertEquals(WifiLocations.distanceBetween(50, 3, 51, 4), WifiLocations.distanceBetween(51, 4, 50, 3), 0.001);
+	}
+	
+	public void testGetNearestNone() {
+		
+		WifiLocations.Snapshot snapshot = createSnapshot(new double[0], new double[0]);
+		
+		assertEquals(0, snapshot.size());
+		assertEquals(-1, snapshot.getNearest(50, 3, Float.MAX_VALUE));
+	}
+	
+	public void testGetNearest() {
+		
+		WifiLocations.Snapshot snapshot = createSnapshot(
+				new double[] {50, 50.5, 50.64, 51}, 
+				new double[] {3, 3.5, 3.54, 4});
+		
+		assertEquals(2, snapshot.getNearest(50.628707, 3.538688, 1500));
+		assertEquals("BSSID2", snapshot.getBSSID(2));
+		assertEquals("SSID2", snapshot.getSSID(2));
+		assertEquals("Name2", snapshot.getName(2));
+		assertEquals(10.0f, snapshot.getAccuracy(2));
+		assertEquals(13, Math.round(snapshot.getDistance(2, 50.628707, 3.538688) / 100));
+		
+		assertEquals(-1, snapshot.getNearest(50.628707, 3.538688, 1000));
+		assertEquals(2, snapshot.getNearest(50.628707, 3.538688, Float.MAX_VALUE));
+		assertEquals(3, snapshot.getNearest(60, 5, Float.MAX_VALUE));
+		assertEquals(0, snapshot.getNearest(-60, 3, Float.MAX_VALUE));
+	}
+	
+	public void testGetNearestAntimeridian() {
+		
+		WifiLocations.Snapshot snapshot = createSnapshot(
+				new double[] {-17.71, -17.7, -17.69}, 
+				new double[] {170, -179.995, 179});
+		
+		assertEquals(1, snapshot.getNearest(-17.7, 179.995, 1500));
+		assertEquals(1, Math.round(snapshot.getDistance(1, -17.7, 179.995) / 1000));
+	}
+	
+	public void testGetNearestPole() {
+		
+		WifiLocations.Snapshot snapshot = createSnapshot(
+				new double[] {89.98, 89.995}, 
+				new double[] {0, 180});
+		
+		// Across the pole, the prefilter is not used there
+		assertEquals(1, snapshot.getNearest(89.995, 0, 5000));
+	}
+	
+	public void testGetNearestHighLatitude() {
+		
+		// Nearer the pole than the query, a degree of longitude is notably shorter
+		int count = 2000;
+		double[] lats = new double[count];
+		double[] lons = new double[count];
+		for(int i = 0; i < count; i++) {
+			lats[i] = 78.0 + i / 1000.0;
+			lons[i] = 15.0 + (i * 7919 % count) / 250.0;
+		}
+		WifiLocations.Snapshot snapshot = createSnapshot(lats, lons);
+		
+		assertSameAsAll(snapshot, lats, lons, new float[] {10000, 50000, 100000}, 
+				78.0, 0.01, 15.0, 0.1);
+	}
+	
+	public void testGetNearestSameAsAll() {
+		
+		int count = 2000;
+		double[] lats = new double[count];
+		double[] lons = new double[count];
+		for(int i = 0; i < count; i++) {
+			lats[i] = 50.0 + i / 10000.0;
+			lons[i] = 3.0 + (i * 7919 % count) / 10000.0;
+		}
+		WifiLocations.Snapshot snapshot = createSnapshot(lats, lons);
+		
+		assertSameAsAll(snapshot, lats, lons, new float[] {100, 1500, 10000, Float.MAX_VALUE}, 
+				49.99, 1 / 200.0, 3.0, 1 / 300.0);
+	}
+	
+	/**
+	 * Asserts that getNearest() finds the same location as looking at all locations
+	 * for 50 queries starting at the given latitude and longitude.
+	 */
+	private void assertSameAsAll(final WifiLocations.Snapshot snapshot, 
+			final double[] lats, final double[] lons, final float[] maxDistances, 
+			final double lat0, final double latStep, final double lon0, final double lonStep) {
+		int count = lats.length;
+		for(float maxDistance : maxDistances) {
+			for(int q = 0; q < 50; q++) {
+				double lat = lat0 + q * latStep;
+				double lon = lon0 + q * lonStep;
+				
+				// Looks at all locations
+				int nearest = -1;
+				float shortestDistance = maxDistance;
+				for(int i = 0; i < count; i++) {
+					float distance = WifiLocations.distanceBetween(lats[i], lons[i], lat, lon);
+					if(distance <= shortestDistance && (nearest == -1 || distance < shortestDistance)) {
+						shortestDistance = distance;
+						nearest = i;
+					}
+				}
+				
+				assertEquals(nearest, snapshot.getNearest(lat, lon, maxDistance));
+			}
+		}
+	}
+	
+	private WifiLocations.Snapshot createSnapshot(final double[] lats, final double[] lons) {
+		String[] bssids = new String[lats.length];
+		String[] ssids = new String[lats.length];
+		String[] names = new String[lats.length];
+		float[] accs = new float[lats.length];
+		for(int i = 0; i < lats.length; i++) {
+			bssids[i] = "BSSID" + i;
+			ssids[i] = "SSID" + i;
+			names[i] = "Name" + i;
+			accs[i] = 10;
+		}
+		return new WifiLocations.Snapshot(bssids, ssids, names, lats, lons, accs);
+	}
+
+}
@@ -36,6 +36,14 @@ public class AlarmManagerMock implements IAlarmManager {
 		this.operation = operation;
 	}
 
+	public void set(final int type, final long triggerAtTime, 
+			final PendingIntent operation) {
+		this.type = type;
+		this.triggerAtTime = triggerAtTime;
+		this.interval = 0;
+		this.operation = operation;
+	}
+
 	public void cancel(final PendingIntent operation) {
 		this.cancelled = true;
 		this.cancelledOperation = operation;
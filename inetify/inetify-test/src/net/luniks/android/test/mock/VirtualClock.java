@@ -0,0 +1,162 @@
+/*
+ * Copyright 2011 Torsten Römer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.luniks.android.test.mock;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.CountDownLatch;
+
+import net.luniks.android.interfaces.IClock;
+
+/**
+ * Deterministic IClock running in virtual time: Waiting does not take any wall time,
+ * but advances the clock to when the latch waited for is counted down by one of
+ * the scheduled events, or to the end of the timeout. Events are run in the order
+ * of their time, and those with the same time in the order they were scheduled,
+ * on the thread that waits or advances the clock.
+ */
+public class VirtualClock implements IClock {
+	
+	private final long epoch;
+	
+	/** Guarded by this */
+	private long elapsed = 0;
+	
+	/** Guarded by this */
+	private long sequence = 0;
+	
+	/** Guarded by this */
+	private final PriorityQueue<Event> events = new PriorityQueue<Event>();
+	
+	private int awaitCount = 0;
+	
+	/**
+	 * Creates a clock at the given wall clock time and 0 elapsed realtime.
+	 * @param epoch
+	 */
+	public VirtualClock(final long epoch) {
+		this.epoch = epoch;
+	}
+
+	public synchronized long currentTimeMillis() {
+		return epoch + elapsed;
+	}
+
+	public synchronized long elapsedRealtime() {
+		return elapsed;
+	}
+
+	/**
+	 * Runs the events up to the given time in ms from now, or until one of them
+	 * counts the given latch down, and returns true if it was counted down.
+	 */
+	public boolean await(final CountDownLatch latch, final long millis) throws InterruptedException {
+		if(Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+		synchronized(this) {
+			awaitCount++;
+		}
+		long deadline = elapsedRealtime() + millis;
+		while(latch.getCount() > 0) {
+			if(! runNext(deadline)) {
+				synchronized(this) {
+					elapsed = Math.max(elapsed, deadline);
+				}
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Schedules the given event to run the given time in ms from now.
+	 * @param delay
+	 * @param event
+	 */
+	public synchronized void schedule(final long delay, final Runnable event) {
+		events.add(new Event(elapsed + Math.max(0, delay), sequence++, event));
+	}
+	
+	/**
+	 * Runs the events up to the given time in ms from now and advances the clock.
+	 * @param millis
+	 */
+	public void advance(final long millis) {
+		long deadline = elapsedRealtime() + millis;
+		while(runNext(deadline)) {
+			// Next one
+		}
+		synchronized(this) {
+			elapsed = Math.max(elapsed, deadline);
+		}
+	}
+	
+	/**
+	 * Returns the number of events not run yet.
+	 * @return int
+	 */
+	public synchronized int getPendingCount() {
+		return events.size();
+	}
+	
+	/**
+	 * Returns how often await() was called.
+	 * @return int
+	 */
+	public synchronized int getAwaitCount() {
+		return awaitCount;
+	}
+	
+	/**
+	 * Runs the next event if it is due before or at the given deadline, 
+	 * advancing the clock to its time, and returns true if there was one.
+	 */
+	private boolean runNext(final long deadline) {
+		Event event;
+		synchronized(this) {
+			event = events.peek();
+			if(event == null || event.time > deadline) {
+				return false;
+			}
+			events.poll();
+			elapsed = Math.max(elapsed, event.time);
+		}
+		// Not holding the lock, the event may schedule others
+		event.runnable.run();
+		return true;
+	}
+	
+	private static class Event implements Comparable<Event> {
+		
+		private final long time;
+		private final long sequence;
+		private final Runnable runnable;
+		
+		private Event(final long time, final long sequence, final Runnable runnable) {
+			this.time = time;
+			this.sequence = sequence;
+			this.runnable = runnable;
+		}
+
+		public int compareTo(final Event other) {
+			if(time != other.time) {
+				return time < other.time ? -1 : 1;
+			}
+			return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+		}
+	}
+
+}